@@ -0,0 +1,44 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat;
+
+/**
+ * An interface for compression algorithms that can write checkpoints into the
+ * compressed data, so that decompression can start at any of them.
+ * 
+ * @author Jacobo Tarrio
+ */
+public interface CheckpointingAlgorithm extends CompressionAlgorithm {
+
+	/**
+	 * Returns the minimum number of uncompressed bytes between checkpoints, or
+	 * 0 if this algorithm writes no checkpoints.
+	 */
+	long getCheckpointInterval();
+
+	/**
+	 * Returns a new instance of this algorithm that writes checkpoints at a
+	 * given interval, and is otherwise configured like this one. This
+	 * instance is not modified, so it is safe to call on a shared instance.
+	 * 
+	 * @param interval
+	 *            The minimum number of uncompressed bytes between checkpoints,
+	 *            or 0 to write no checkpoints.
+	 * @return The new instance.
+	 */
+	CheckpointingAlgorithm withCheckpointInterval(long interval);
+}
@@ -107,4 +107,68 @@ public interface Codec {
 		 */
 		Symbol read() throws IOException;
 	}
+
+	/**
+	 * Defines an API for encoders that can write many symbols in one call.
+	 * 
+	 * Use {@link SymbolBuffer#writeTo(Encoder)} to write a batch of symbols
+	 * into any encoder, whether it implements this interface or not.
+	 */
+	public interface BatchEncoder extends Encoder {
+
+		/**
+		 * Writes all the symbols in a buffer to the output stream.
+		 * 
+		 * @param symbols
+		 *            The symbols to write. The buffer is not modified.
+		 * @throws IOException
+		 *             If there was any problem encoding or writing the data.
+		 */
+		void write(SymbolBuffer symbols) throws IOException;
+	}
+
+	/**
+	 * Defines an API for decoders that can read many symbols in one call.
+	 * 
+	 * Use {@link SymbolBuffer#readFrom(Decoder, int)} to read a batch of
+	 * symbols from any decoder, whether it implements this interface or not.
+	 */
+	public interface BatchDecoder extends Decoder {
+
+		/**
+		 * Reads symbols from the input stream and appends them to a buffer.
+		 * 
+		 * @param symbols
+		 *            The buffer to append the symbols to.
+		 * @param maxSymbols
+		 *            The maximum number of symbols to read.
+		 * @return The number of symbols that were read. It is smaller than
+		 *         maxSymbols only if the end of the stream was reached.
+		 * @throws IOException
+		 *             If there was any problem reading or decoding the data.
+		 */
+		int read(SymbolBuffer symbols, int maxSymbols) throws IOException;
+	}
+
+	/**
+	 * Defines an API for decoders that can push the symbols they decode into
+	 * a {@link SymbolVisitor}, without creating an object for each symbol.
+	 * 
+	 * Use {@link SymbolBuffer#visit(Decoder, SymbolVisitor)} to push the
+	 * symbols of any decoder, whether it implements this interface or not.
+	 */
+	public interface PushDecoder extends Decoder {
+
+		/**
+		 * Reads all the remaining symbols from the input stream and passes
+		 * them to a visitor, in order.
+		 * 
+		 * @param visitor
+		 *            The visitor to pass the symbols to.
+		 * @throws IOException
+		 *             If there was any problem reading or decoding the data,
+		 *             or the visitor could not process a symbol.
+		 */
+		void decode(SymbolVisitor visitor) throws IOException;
+	}
 }
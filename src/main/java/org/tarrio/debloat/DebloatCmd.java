@@ -16,6 +16,7 @@
 
 package org.tarrio.debloat;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -25,6 +26,8 @@ import java.io.OutputStream;
 
 import org.tarrio.debloat.Codec.Decoder;
 import org.tarrio.debloat.codecs.CodecFactory;
+import org.tarrio.debloat.codecs.SeekIndex;
+import org.tarrio.debloat.codecs.Transcoder;
 import org.tarrio.debloat.registry.CompressionAlgorithmRegistry;
 
 /**
@@ -37,39 +40,181 @@ public class DebloatCmd {
 
 	private static final String DEFAULT_ALGORITHM = "lz77";
 
+	/**
+	 * The suffix of the name of the seek index file written next to the
+	 * compressed file.
+	 */
+	private static final String INDEX_SUFFIX = ".idx";
+
+	private final String inputFileName;
+	private final String outputFileName;
 	private final InputStream inputStream;
 	private final OutputStream outputStream;
 	private final String algorithm;
 	private final Operation operation;
+	private String codecName;
+	private long checkpointInterval;
+	private int level;
+	private long rangeOffset;
+	private long rangeLength;
 
 	public enum Operation {
-		COMPRESS, DECOMPRESS;
+		COMPRESS, DECOMPRESS, DECOMPRESS_RANGE, TRANSCODE;
 	}
 
 	public DebloatCmd(String inputFileName, String outputFileName,
 			String algorithm, Operation operation) throws FileNotFoundException {
+		this.inputFileName = inputFileName;
+		this.outputFileName = outputFileName;
 		this.inputStream = inputFileName == null ? System.in
 				: new FileInputStream(inputFileName);
 		this.outputStream = outputFileName == null ? System.out
 				: new FileOutputStream(outputFileName);
 		this.algorithm = algorithm;
 		this.operation = operation;
+		this.codecName = CodecFactory.XML;
+		this.checkpointInterval = 0;
+		this.level = 0;
+		this.rangeOffset = 0;
+		this.rangeLength = 0;
+	}
+
+	/**
+	 * Sets the name of the codec to write compressed or converted data with.
+	 * When reading compressed data, the codec is detected from the data.
+	 * 
+	 * @param codecName
+	 *            The name of a codec registered in {@link CodecFactory}.
+	 */
+	public void setCodec(String codecName) {
+		this.codecName = codecName;
+	}
+
+	/**
+	 * Makes compression write checkpoints at the given interval, and a seek
+	 * index next to the output file.
+	 * 
+	 * @param checkpointInterval
+	 *            The minimum number of uncompressed bytes between
+	 *            checkpoints.
+	 */
+	public void setCheckpointInterval(long checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Sets the compression level to compress with.
+	 * 
+	 * @param level
+	 *            The compression level, between
+	 *            {@link LeveledAlgorithm#MIN_LEVEL} and
+	 *            {@link LeveledAlgorithm#MAX_LEVEL}, or 0 to use the
+	 *            algorithm's default.
+	 */
+	public void setLevel(int level) {
+		this.level = level;
+	}
+
+	/**
+	 * Sets the range of uncompressed data to write when decompressing a
+	 * range.
+	 * 
+	 * @param offset
+	 *            The offset of the first byte to write.
+	 * @param length
+	 *            The number of bytes to write.
+	 */
+	public void setRange(long offset, long length) {
+		this.rangeOffset = offset;
+		this.rangeLength = length;
 	}
 
 	private void run() throws IOException {
-		Codec codec = CodecFactory.getCodec();
 		if (operation == Operation.COMPRESS) {
+			Codec codec = CodecFactory.getCodec(codecName);
+			if (codec == null) {
+				throw new IllegalArgumentException("Unknown codec " + codecName);
+			}
 			CompressionAlgorithm compressor = CompressionAlgorithmRegistry
 					.getInstance().get(algorithm);
+			if (level > 0) {
+				if (!(compressor instanceof LeveledAlgorithm)) {
+					throw new IllegalArgumentException(String.format(
+							"Algorithm %s does not support compression levels",
+							algorithm));
+				}
+				compressor = ((LeveledAlgorithm) compressor).withLevel(level);
+			}
+			if (checkpointInterval > 0) {
+				if (!(compressor instanceof CheckpointingAlgorithm)) {
+					throw new IllegalArgumentException(String.format(
+							"Algorithm %s cannot write checkpoints", algorithm));
+				}
+				compressor = ((CheckpointingAlgorithm) compressor)
+						.withCheckpointInterval(checkpointInterval);
+			}
 			compressor.compress(inputStream, codec.getEncoder(outputStream));
+			if (checkpointInterval > 0) {
+				outputStream.close();
+				writeIndex(SeekIndex.build(new File(outputFileName)),
+						outputFileName + INDEX_SUFFIX);
+			}
+		} else if (operation == Operation.TRANSCODE) {
+			Codec codec = CodecFactory.getCodec(codecName);
+			if (codec == null) {
+				throw new IllegalArgumentException("Unknown codec " + codecName);
+			}
+			Transcoder.transcode(inputStream, codec, outputStream);
+		} else if (operation == Operation.DECOMPRESS_RANGE) {
+			if (inputFileName == null) {
+				throw new IllegalArgumentException(
+						"Decompressing a range needs an input file");
+			}
+			File input = new File(inputFileName);
+			SeekIndex index = readIndex(inputFileName + INDEX_SUFFIX);
+			if (index == null) {
+				index = SeekIndex.build(input);
+			}
+			CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+					.getInstance().get(index.getAlgorithm());
+			index.decompressRange(input, compressor, rangeOffset, rangeLength,
+					outputStream);
+			outputStream.flush();
 		} else {
-			Decoder decoder = codec.getDecoder(inputStream);
+			Decoder decoder = CodecFactory.getDecoder(inputStream);
 			CompressionAlgorithm compressor = CompressionAlgorithmRegistry
 					.getInstance().get(decoder);
 			compressor.decompress(decoder, outputStream);
 		}
 	}
 
+	private static void writeIndex(SeekIndex index, String fileName)
+			throws IOException {
+		OutputStream output = new FileOutputStream(fileName);
+		try {
+			index.write(output);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Reads the seek index in the given file, if it exists.
+	 * 
+	 * @return The index, or null if the file does not exist.
+	 */
+	private static SeekIndex readIndex(String fileName) throws IOException {
+		if (!new File(fileName).exists()) {
+			return null;
+		}
+		InputStream input = new FileInputStream(fileName);
+		try {
+			return SeekIndex.read(input);
+		} finally {
+			input.close();
+		}
+	}
+
 	private static void showHelp() {
 		System.err
 				.println("Arguments: [<command>] <inputFilename> <outputFilename>");
@@ -81,6 +226,18 @@ public class DebloatCmd {
 		System.err.println("Commands:");
 		System.err.println("  -c : Compress (default)");
 		System.err.println("  -d : Decompress");
+		System.err
+				.println("  -t : Convert compressed data to the format selected with -f,");
+		System.err.println("        without decompressing it");
+		System.err
+				.println("  -r=<offset>:<length> : Decompress only a range of the data");
+		System.err
+				.println("  -k=<bytes> : Write checkpoints every <bytes> bytes, and a seek index");
+		System.err
+				.println("        next to the output file (xml and xml-dense formats only)");
+		System.err
+				.println("  -1 .. -9 : Compress faster (-1) or better (-9) with algorithms that");
+		System.err.println("        support compression levels");
 		System.err.println("  -a=<algorithm> : Select algorithm (default: "
 				+ DEFAULT_ALGORITHM + ")");
 		System.err.println("        Available algorithms:");
@@ -88,6 +245,14 @@ public class DebloatCmd {
 				.getAlgorithms()) {
 			System.err.println("          - " + algorithm);
 		}
+		System.err
+				.println("  -f=<codec> : Select the format of the compressed data (default: "
+						+ CodecFactory.XML + ")");
+		System.err
+				.println("        The format is detected when decompressing. Available formats:");
+		for (String codec : CodecFactory.getCodecNames()) {
+			System.err.println("          - " + codec);
+		}
 	}
 
 	public static DebloatCmd parseArgs(String[] args)
@@ -95,15 +260,34 @@ public class DebloatCmd {
 		String input = null;
 		String output = null;
 		String algorithm = DEFAULT_ALGORITHM;
+		String codec = CodecFactory.XML;
 		Operation operation = Operation.COMPRESS;
+		long checkpointInterval = 0;
+		int level = 0;
+		long rangeOffset = 0;
+		long rangeLength = 0;
 		for (String arg : args) {
 			if (arg.startsWith("-") && !"-".equals(arg)) {
 				if ("-d".equals(arg)) {
 					operation = Operation.DECOMPRESS;
+				} else if ("-t".equals(arg)) {
+					operation = Operation.TRANSCODE;
 				} else if ("-c".equals(arg)) {
 					operation = Operation.COMPRESS;
+				} else if (arg.length() == 2 && arg.charAt(1) >= '1'
+						&& arg.charAt(1) <= '9') {
+					level = arg.charAt(1) - '0';
 				} else if (arg.startsWith("-a=")) {
 					algorithm = arg.substring(3);
+				} else if (arg.startsWith("-f=")) {
+					codec = arg.substring(3);
+				} else if (arg.startsWith("-k=")) {
+					checkpointInterval = Long.parseLong(arg.substring(3));
+				} else if (arg.startsWith("-r=") && arg.indexOf(':') > 3) {
+					operation = Operation.DECOMPRESS_RANGE;
+					int colon = arg.indexOf(':');
+					rangeOffset = Long.parseLong(arg.substring(3, colon));
+					rangeLength = Long.parseLong(arg.substring(colon + 1));
 				} else {
 					showHelp();
 				}
@@ -118,7 +302,24 @@ public class DebloatCmd {
 			}
 		}
 
-		return new DebloatCmd(input, output, algorithm, operation);
+		if (operation == Operation.COMPRESS && checkpointInterval > 0
+				&& output == null) {
+			throw new IllegalArgumentException(
+					"Writing a seek index needs an output file");
+		}
+		if (operation == Operation.COMPRESS && checkpointInterval > 0
+				&& !CodecFactory.XML.equals(codec)
+				&& !CodecFactory.DENSE_XML.equals(codec)) {
+			throw new IllegalArgumentException(String.format(
+					"Cannot build a seek index for codec %s", codec));
+		}
+
+		DebloatCmd cmd = new DebloatCmd(input, output, algorithm, operation);
+		cmd.setCodec(codec);
+		cmd.setCheckpointInterval(checkpointInterval);
+		cmd.setLevel(level);
+		cmd.setRange(rangeOffset, rangeLength);
+		return cmd;
 	}
 
 	public static void main(String[] args) throws IOException {
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat;
+
+/**
+ * An interface for compression algorithms that can trade compression speed
+ * for compression ratio, using a level between {@link #MIN_LEVEL} (fastest)
+ * and {@link #MAX_LEVEL} (best compression).
+ * 
+ * @author Jacobo Tarrio
+ */
+public interface LeveledAlgorithm extends CompressionAlgorithm {
+
+	/**
+	 * The fastest compression level.
+	 */
+	int MIN_LEVEL = 1;
+
+	/**
+	 * The compression level that yields the best compression.
+	 */
+	int MAX_LEVEL = 9;
+
+	/**
+	 * Returns the compression level this algorithm compresses at.
+	 */
+	int getLevel();
+
+	/**
+	 * Returns a new instance of this algorithm that compresses at a given
+	 * level, and is otherwise configured like this one. This instance is not
+	 * modified, so it is safe to call on a shared instance.
+	 * 
+	 * @param level
+	 *            The compression level, between {@link #MIN_LEVEL} and
+	 *            {@link #MAX_LEVEL}.
+	 * @return The new instance.
+	 * @throws IllegalArgumentException
+	 *             If the level is out of range.
+	 */
+	LeveledAlgorithm withLevel(int level);
+}
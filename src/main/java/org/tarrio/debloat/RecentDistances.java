@@ -0,0 +1,125 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tarrio.debloat;
+
+/**
+ * The history of the last distances used by back-reference and repeat
+ * reference symbols, which repeat references point into.
+ *
+ * The most recently used distance is in slot 0. A back-reference puts its
+ * distance in slot 0 and shifts the others down, dropping the oldest one; a
+ * repeat reference moves the distance in its slot to slot 0. A checkpoint
+ * empties the history, so that no repeat reference after it depends on the
+ * symbols before it.
+ *
+ * @author Jacobo Tarrio
+ */
+public class RecentDistances {
+
+	/**
+	 * The number of distances in the history.
+	 */
+	public static final int SLOTS = 4;
+
+	private final int[] distances;
+	private int count;
+
+	/**
+	 * Creates an empty history.
+	 */
+	public RecentDistances() {
+		this.distances = new int[SLOTS];
+		this.count = 0;
+	}
+
+	/**
+	 * Returns the number of distances in the history.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the distance in a slot.
+	 *
+	 * @param slot
+	 *            The slot number, between 0 and size() - 1.
+	 */
+	public int get(int slot) {
+		checkSlot(slot);
+		return distances[slot];
+	}
+
+	/**
+	 * Returns the slot that contains a distance.
+	 *
+	 * @param distance
+	 *            The distance to look for.
+	 * @return The first slot containing the distance, or -1 if it is not in
+	 *         the history.
+	 */
+	public int find(int distance) {
+		for (int slot = 0; slot < count; ++slot) {
+			if (distances[slot] == distance) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Records the distance of a back-reference.
+	 *
+	 * @param distance
+	 *            The distance of the back-reference.
+	 */
+	public void push(int distance) {
+		if (count < SLOTS) {
+			++count;
+		}
+		System.arraycopy(distances, 0, distances, 1, count - 1);
+		distances[0] = distance;
+	}
+
+	/**
+	 * Records a repeat reference and returns the distance it refers to.
+	 *
+	 * @param slot
+	 *            The slot of the repeat reference, between 0 and size() - 1.
+	 * @return The distance in that slot.
+	 */
+	public int use(int slot) {
+		checkSlot(slot);
+		int distance = distances[slot];
+		System.arraycopy(distances, 0, distances, 1, slot);
+		distances[0] = distance;
+		return distance;
+	}
+
+	/**
+	 * Empties the history.
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	private void checkSlot(int slot) {
+		if (slot < 0 || slot >= count) {
+			throw new IndexOutOfBoundsException(String.format(
+					"Repeat slot %d is out of bounds for size %d", slot, count));
+		}
+	}
+}
@@ -16,10 +16,13 @@
 
 package org.tarrio.debloat;
 
+import java.util.Arrays;
+
 /**
  * A class that represents a symbol. There are several types of symbols, such as
- * single bytes, references to past data, dictionary entry references, or
- * "reset buffer" symbols.
+ * single bytes, runs of literal bytes, references to past data, references
+ * to recently used distances, dictionary entry references, "reset buffer"
+ * symbols, or checkpoints where decoding can start.
  * 
  * @author Jacobo Tarrio
  */
@@ -27,6 +30,8 @@ public abstract class Symbol {
 
 	private static final Reset theResetSymbol = new Reset();
 
+	private static final Byte[] theByteSymbols = makeByteSymbols();
+
 	/**
 	 * Factory method to get a symbol that represents a byte.
 	 * 
@@ -35,7 +40,25 @@ public abstract class Symbol {
 	 * @return A symbol of byte type.
 	 */
 	public static Symbol newByte(byte byteValue) {
-		return new Byte(byteValue);
+		return theByteSymbols[byteValue & 0xff];
+	}
+
+	/**
+	 * Factory method to get a symbol that represents a run of literal bytes.
+	 * 
+	 * @param bytes
+	 *            An array containing the bytes. They are copied into the
+	 *            symbol.
+	 * @param offset
+	 *            The position of the first byte in the array.
+	 * @param length
+	 *            The number of bytes in the run.
+	 * @return A symbol of literals type.
+	 */
+	public static Symbol newLiterals(byte[] bytes, int offset, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(bytes, offset, copy, 0, length);
+		return new Literals(copy);
 	}
 
 	/**
@@ -51,6 +74,21 @@ public abstract class Symbol {
 		return new BackRef(distance, length);
 	}
 
+	/**
+	 * Factory method to get a symbol that represents a backreference to one
+	 * of the recently used distances.
+	 * 
+	 * @param slot
+	 *            The slot of the distance in the {@link RecentDistances}
+	 *            history.
+	 * @param length
+	 *            The match length.
+	 * @return A symbol of repeat reference type.
+	 */
+	public static Symbol newRepeatRef(int slot, int length) {
+		return new RepeatRef(slot, length);
+	}
+
 	/**
 	 * Factory method to get a symbol that represents a reference to a
 	 * dictionary entry.
@@ -72,6 +110,31 @@ public abstract class Symbol {
 		return theResetSymbol;
 	}
 
+	/**
+	 * Factory method to get a symbol that marks a checkpoint: a position in
+	 * the symbol stream where decoding can start from scratch, since no
+	 * symbol after it refers to data before it.
+	 * 
+	 * @param offset
+	 *            The offset in the uncompressed data of the first byte the
+	 *            symbols after the checkpoint represent.
+	 * @return A symbol of checkpoint type.
+	 */
+	public static Symbol newCheckpoint(long offset) {
+		return new Checkpoint(offset);
+	}
+
+	/**
+	 * Creates the shared instances of the symbols for every byte value.
+	 */
+	private static Byte[] makeByteSymbols() {
+		Byte[] symbols = new Byte[256];
+		for (int i = 0; i < symbols.length; ++i) {
+			symbols[i] = new Byte((byte) i);
+		}
+		return symbols;
+	}
+
 	/**
 	 * A class for symbols that represent single bytes.
 	 */
@@ -118,6 +181,57 @@ public abstract class Symbol {
 		}
 	}
 
+	/**
+	 * A class for symbols that represent runs of literal bytes. A run is
+	 * equivalent to a sequence of byte symbols, but it is processed in one
+	 * step.
+	 */
+	public static class Literals extends Symbol {
+
+		private final byte[] bytes;
+
+		private Literals(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Returns the bytes this symbol represents. The array must not be
+		 * modified.
+		 */
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Returns the number of bytes this symbol represents.
+		 */
+		public int getLength() {
+			return bytes.length;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Literals other = (Literals) obj;
+			return Arrays.equals(bytes, other.bytes);
+		}
+
+		@Override
+		public String toString() {
+			return "Literals [bytes=" + Arrays.toString(bytes) + "]";
+		}
+	}
+
 	/**
 	 * A class for symbols that represent back references.
 	 */
@@ -176,6 +290,65 @@ public abstract class Symbol {
 		}
 	}
 
+	/**
+	 * A class for symbols that represent back references to recently used
+	 * distances.
+	 */
+	public static class RepeatRef extends Symbol {
+
+		private final int slot;
+		private final int length;
+
+		private RepeatRef(int slot, int length) {
+			this.slot = slot;
+			this.length = length;
+		}
+
+		/**
+		 * The slot in the recent distances history this symbol refers to.
+		 */
+		public int getSlot() {
+			return slot;
+		}
+
+		/**
+		 * The length of the backreference this symbol represents.
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + slot;
+			result = prime * result + length;
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			RepeatRef other = (RepeatRef) obj;
+			if (slot != other.slot)
+				return false;
+			if (length != other.length)
+				return false;
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "RepeatRef [slot=" + slot + ", length=" + length + "]";
+		}
+	}
+
 	/**
 	 * A class for symbols that represent dictionary references.
 	 */
@@ -235,4 +408,51 @@ public abstract class Symbol {
 			return "Reset []";
 		}
 	}
+
+	/**
+	 * A class for symbols that mark checkpoints.
+	 */
+	public static class Checkpoint extends Symbol {
+
+		private final long offset;
+
+		private Checkpoint(long offset) {
+			this.offset = offset;
+		}
+
+		/**
+		 * Returns the offset in the uncompressed data this checkpoint
+		 * corresponds to.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (int) (offset ^ (offset >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Checkpoint other = (Checkpoint) obj;
+			if (offset != other.offset)
+				return false;
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "Checkpoint [offset=" + offset + "]";
+		}
+	}
 }
@@ -0,0 +1,638 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A growable sequence of symbols, packed into an array of longs so that
+ * storing them does not require an object per symbol.
+ *
+ * Each symbol takes one long: the kind of symbol goes in the top 8 bits, and
+ * its values in the rest. A back-reference stores its distance in the low 32
+ * bits and its length in the next 24 bits, and a repeat reference stores its
+ * slot and its length in the same way; a checkpoint stores its offset in the
+ * low 56 bits. The bytes of literal runs are kept in a separate byte
+ * array, and the run's symbol stores their position in that array in the low
+ * 32 bits and their number in the next 24 bits.
+ *
+ * As a {@link SymbolVisitor}, the buffer appends every symbol it receives.
+ *
+ * @author Jacobo Tarrio
+ */
+public class SymbolBuffer implements SymbolVisitor {
+
+	/**
+	 * The kind of the symbols that represent single bytes.
+	 */
+	public static final int BYTE = 0;
+
+	/**
+	 * The kind of the symbols that represent back-references.
+	 */
+	public static final int BACK_REF = 1;
+
+	/**
+	 * The kind of the symbols that represent dictionary references.
+	 */
+	public static final int DICTIONARY_REF = 2;
+
+	/**
+	 * The kind of the symbols that represent dictionary resets.
+	 */
+	public static final int RESET = 3;
+
+	/**
+	 * The kind of the symbols that mark checkpoints.
+	 */
+	public static final int CHECKPOINT = 4;
+
+	/**
+	 * The kind of the symbols that represent runs of literal bytes.
+	 */
+	public static final int LITERALS = 5;
+
+	/**
+	 * The kind of the symbols that represent back-references to recently used
+	 * distances.
+	 */
+	public static final int REPEAT_REF = 6;
+
+	/**
+	 * The maximum length a back-reference, a repeat reference or a literal run
+	 * can have in this buffer.
+	 */
+	public static final int MAX_LENGTH = (1 << 24) - 1;
+
+	/**
+	 * The maximum offset a checkpoint can have in this buffer.
+	 */
+	public static final long MAX_OFFSET = (1L << 56) - 1;
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final int KIND_SHIFT = 56;
+	private static final int LENGTH_SHIFT = 32;
+	private static final long LOW_MASK = 0xffffffffL;
+
+	private long[] symbols;
+	private int size;
+	private byte[] literalBytes;
+	private int literalSize;
+
+	/**
+	 * Creates an empty buffer with the default initial capacity.
+	 */
+	public SymbolBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty buffer.
+	 *
+	 * @param capacity
+	 *            The number of symbols the buffer can hold before it needs to
+	 *            grow.
+	 */
+	public SymbolBuffer(int capacity) {
+		this.symbols = new long[Math.max(capacity, 1)];
+		this.size = 0;
+		this.literalBytes = new byte[0];
+		this.literalSize = 0;
+	}
+
+	/**
+	 * Returns the number of symbols in the buffer.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes the symbols in the buffer take up: eight for
+	 * each packed symbol, plus the bytes of the literal runs.
+	 */
+	public long getByteSize() {
+		return 8L * size + literalSize;
+	}
+
+	/**
+	 * Shrinks the storage of the buffer to fit the symbols it holds.
+	 */
+	public void trimToSize() {
+		if (symbols.length > size) {
+			symbols = Arrays.copyOf(symbols, Math.max(size, 1));
+		}
+		if (literalBytes.length > literalSize) {
+			literalBytes = Arrays.copyOf(literalBytes, literalSize);
+		}
+	}
+
+	/**
+	 * Removes all the symbols from the buffer.
+	 */
+	public void clear() {
+		size = 0;
+		literalSize = 0;
+	}
+
+	/**
+	 * Appends a byte symbol.
+	 *
+	 * @param byteValue
+	 *            The value of the byte.
+	 */
+	public void addByte(byte byteValue) {
+		append((long) BYTE << KIND_SHIFT | (byteValue & 0xff));
+	}
+
+	/**
+	 * Appends a byte symbol for each byte in an array.
+	 *
+	 * @param bytes
+	 *            The array containing the bytes.
+	 * @param offset
+	 *            The position of the first byte in the array.
+	 * @param length
+	 *            The number of bytes to append.
+	 */
+	public void addBytes(byte[] bytes, int offset, int length) {
+		ensureCapacity(size + length);
+		for (int i = 0; i < length; ++i) {
+			symbols[size++] = (long) BYTE << KIND_SHIFT
+					| (bytes[offset + i] & 0xff);
+		}
+	}
+
+	/**
+	 * Appends a literal run symbol.
+	 *
+	 * @param bytes
+	 *            The array containing the bytes of the run. They are copied
+	 *            into the buffer.
+	 * @param offset
+	 *            The position of the first byte in the array.
+	 * @param length
+	 *            The number of bytes in the run. It must be between 0 and
+	 *            MAX_LENGTH.
+	 */
+	public void addLiterals(byte[] bytes, int offset, int length) {
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new IllegalArgumentException(String.format(
+					"Literal run length %d is out of range", length));
+		}
+		if (literalSize + length > literalBytes.length) {
+			byte[] newBytes = new byte[Math.max(literalSize + length,
+					literalBytes.length * 2)];
+			System.arraycopy(literalBytes, 0, newBytes, 0, literalSize);
+			literalBytes = newBytes;
+		}
+		System.arraycopy(bytes, offset, literalBytes, literalSize, length);
+		append((long) LITERALS << KIND_SHIFT | (long) length << LENGTH_SHIFT
+				| literalSize);
+		literalSize += length;
+	}
+
+	/**
+	 * Appends a back-reference symbol.
+	 *
+	 * @param distance
+	 *            The distance to the referenced data.
+	 * @param length
+	 *            The length of the referenced data. It must be between 0 and
+	 *            MAX_LENGTH.
+	 */
+	public void addBackRef(int distance, int length) {
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new IllegalArgumentException(String.format(
+					"Back-reference length %d is out of range", length));
+		}
+		append((long) BACK_REF << KIND_SHIFT | (long) length << LENGTH_SHIFT
+				| (distance & LOW_MASK));
+	}
+
+	/**
+	 * Appends a repeat reference symbol.
+	 *
+	 * @param slot
+	 *            The slot of the referenced distance in the
+	 *            {@link RecentDistances} history.
+	 * @param length
+	 *            The length of the referenced data. It must be between 0 and
+	 *            MAX_LENGTH.
+	 */
+	public void addRepeatRef(int slot, int length) {
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new IllegalArgumentException(String.format(
+					"Repeat reference length %d is out of range", length));
+		}
+		append((long) REPEAT_REF << KIND_SHIFT | (long) length << LENGTH_SHIFT
+				| (slot & LOW_MASK));
+	}
+
+	/**
+	 * Appends a dictionary reference symbol.
+	 *
+	 * @param entry
+	 *            The referenced dictionary entry.
+	 */
+	public void addDictionaryRef(int entry) {
+		append((long) DICTIONARY_REF << KIND_SHIFT | (entry & LOW_MASK));
+	}
+
+	/**
+	 * Appends a dictionary reset symbol.
+	 */
+	public void addReset() {
+		append((long) RESET << KIND_SHIFT);
+	}
+
+	/**
+	 * Appends a checkpoint symbol.
+	 *
+	 * @param offset
+	 *            The offset in the uncompressed data of the checkpoint. It
+	 *            must be between 0 and MAX_OFFSET.
+	 */
+	public void addCheckpoint(long offset) {
+		if (offset < 0 || offset > MAX_OFFSET) {
+			throw new IllegalArgumentException(String.format(
+					"Checkpoint offset %d is out of range", offset));
+		}
+		append((long) CHECKPOINT << KIND_SHIFT | offset);
+	}
+
+	/**
+	 * Appends a symbol.
+	 *
+	 * @param symbol
+	 *            The symbol to append.
+	 */
+	public void add(Symbol symbol) {
+		if (symbol instanceof Symbol.Byte) {
+			addByte(((Symbol.Byte) symbol).getByteValue());
+		} else if (symbol instanceof Symbol.Literals) {
+			byte[] bytes = ((Symbol.Literals) symbol).getBytes();
+			addLiterals(bytes, 0, bytes.length);
+		} else if (symbol instanceof Symbol.BackRef) {
+			Symbol.BackRef backRef = (Symbol.BackRef) symbol;
+			addBackRef(backRef.getDistance(), backRef.getLength());
+		} else if (symbol instanceof Symbol.RepeatRef) {
+			Symbol.RepeatRef repeatRef = (Symbol.RepeatRef) symbol;
+			addRepeatRef(repeatRef.getSlot(), repeatRef.getLength());
+		} else if (symbol instanceof Symbol.DictionaryRef) {
+			addDictionaryRef(((Symbol.DictionaryRef) symbol).getEntry());
+		} else if (symbol instanceof Symbol.Reset) {
+			addReset();
+		} else if (symbol instanceof Symbol.Checkpoint) {
+			addCheckpoint(((Symbol.Checkpoint) symbol).getOffset());
+		} else {
+			throw new IllegalArgumentException(
+					"Cannot store symbol of unknown type "
+							+ symbol.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * Appends a copy of a symbol in another buffer.
+	 *
+	 * @param source
+	 *            The buffer containing the symbol.
+	 * @param index
+	 *            The position of the symbol in the source buffer.
+	 */
+	public void add(SymbolBuffer source, int index) {
+		if (source.getKind(index) == LITERALS) {
+			addLiterals(source.literalBytes, source.getLiteralOffset(index),
+					source.getLength(index));
+		} else {
+			append(source.get(index));
+		}
+	}
+
+	/**
+	 * Reads symbols from a decoder and appends them to this buffer.
+	 * 
+	 * Decoders that implement {@link Codec.BatchDecoder} fill the buffer
+	 * directly; the symbols of any other decoder are read one by one.
+	 * 
+	 * @param decoder
+	 *            The decoder to read the symbols from.
+	 * @param maxSymbols
+	 *            The maximum number of symbols to read.
+	 * @return The number of symbols that were read. It is smaller than
+	 *         maxSymbols only if the end of the stream was reached.
+	 * @throws IOException
+	 *             If there was any problem reading or decoding the data.
+	 */
+	public int readFrom(Codec.Decoder decoder, int maxSymbols)
+			throws IOException {
+		if (decoder instanceof Codec.BatchDecoder) {
+			return ((Codec.BatchDecoder) decoder).read(this, maxSymbols);
+		}
+		int count = 0;
+		Symbol symbol;
+		while (count < maxSymbols && (symbol = decoder.read()) != null) {
+			add(symbol);
+			++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes all the symbols in this buffer into an encoder.
+	 * 
+	 * Encoders that implement {@link Codec.BatchEncoder} take the whole
+	 * buffer in one call; any other encoder receives the symbols one by one.
+	 * 
+	 * @param encoder
+	 *            The encoder to write the symbols into.
+	 * @throws IOException
+	 *             If there was any problem encoding or writing the data.
+	 */
+	public void writeTo(Codec.Encoder encoder) throws IOException {
+		if (encoder instanceof Codec.BatchEncoder) {
+			((Codec.BatchEncoder) encoder).write(this);
+			return;
+		}
+		for (int i = 0; i < size; ++i) {
+			encoder.write(getSymbol(i));
+		}
+	}
+
+	/**
+	 * Passes all the symbols in this buffer to a visitor, in order.
+	 * 
+	 * @param visitor
+	 *            The visitor to pass the symbols to.
+	 * @throws IOException
+	 *             If the visitor could not process a symbol.
+	 */
+	public void accept(SymbolVisitor visitor) throws IOException {
+		accept(visitor, 0, size);
+	}
+
+	/**
+	 * Passes a range of the symbols in this buffer to a visitor, in order.
+	 * 
+	 * @param visitor
+	 *            The visitor to pass the symbols to.
+	 * @param start
+	 *            The position of the first symbol to pass.
+	 * @param end
+	 *            The position after the last symbol to pass.
+	 * @throws IOException
+	 *             If the visitor could not process a symbol.
+	 */
+	public void accept(SymbolVisitor visitor, int start, int end)
+			throws IOException {
+		for (int i = start; i < end; ++i) {
+			long symbol = symbols[i];
+			switch ((int) (symbol >>> KIND_SHIFT)) {
+			case BYTE:
+				visitor.onByte((byte) symbol);
+				break;
+			case LITERALS:
+				visitor.onLiterals(literalBytes, (int) symbol,
+						(int) (symbol >>> LENGTH_SHIFT) & MAX_LENGTH);
+				break;
+			case BACK_REF:
+				visitor.onBackRef((int) symbol, (int) (symbol >>> LENGTH_SHIFT)
+						& MAX_LENGTH);
+				break;
+			case REPEAT_REF:
+				visitor.onRepeatRef((int) symbol,
+						(int) (symbol >>> LENGTH_SHIFT) & MAX_LENGTH);
+				break;
+			case DICTIONARY_REF:
+				visitor.onDictionaryRef((int) symbol);
+				break;
+			case CHECKPOINT:
+				visitor.onCheckpoint(symbol & MAX_OFFSET);
+				break;
+			default:
+				visitor.onReset();
+			}
+		}
+	}
+
+	/**
+	 * Passes all the remaining symbols in a decoder to a visitor, in order.
+	 * 
+	 * Decoders that implement {@link Codec.PushDecoder} pass the symbols
+	 * directly; the symbols of any other decoder are read in batches into a
+	 * buffer.
+	 * 
+	 * @param decoder
+	 *            The decoder to read the symbols from.
+	 * @param visitor
+	 *            The visitor to pass the symbols to.
+	 * @throws IOException
+	 *             If there was any problem reading or decoding the data, or
+	 *             the visitor could not process a symbol.
+	 */
+	public static void visit(Codec.Decoder decoder, SymbolVisitor visitor)
+			throws IOException {
+		if (decoder instanceof Codec.PushDecoder) {
+			((Codec.PushDecoder) decoder).decode(visitor);
+			return;
+		}
+		SymbolBuffer buffer = new SymbolBuffer(DEFAULT_CAPACITY);
+		int count;
+		do {
+			buffer.clear();
+			count = buffer.readFrom(decoder, DEFAULT_CAPACITY);
+			buffer.accept(visitor);
+		} while (count == DEFAULT_CAPACITY);
+	}
+
+	@Override
+	public void onByte(byte value) {
+		addByte(value);
+	}
+
+	@Override
+	public void onLiterals(byte[] bytes, int offset, int length) {
+		addLiterals(bytes, offset, length);
+	}
+
+	@Override
+	public void onBackRef(int distance, int length) {
+		addBackRef(distance, length);
+	}
+
+	@Override
+	public void onRepeatRef(int slot, int length) {
+		addRepeatRef(slot, length);
+	}
+
+	@Override
+	public void onDictionaryRef(int entry) {
+		addDictionaryRef(entry);
+	}
+
+	@Override
+	public void onReset() {
+		addReset();
+	}
+
+	@Override
+	public void onCheckpoint(long offset) {
+		addCheckpoint(offset);
+	}
+
+	/**
+	 * Returns the kind of a symbol: BYTE, LITERALS, BACK_REF, REPEAT_REF,
+	 * DICTIONARY_REF, RESET or CHECKPOINT.
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public int getKind(int index) {
+		return (int) (get(index) >>> KIND_SHIFT);
+	}
+
+	/**
+	 * Returns the value of a byte symbol.
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public byte getByteValue(int index) {
+		return (byte) get(index);
+	}
+
+	/**
+	 * Returns the distance of a back-reference symbol.
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public int getDistance(int index) {
+		return (int) get(index);
+	}
+
+	/**
+	 * Returns the slot of a repeat reference symbol.
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public int getSlot(int index) {
+		return (int) get(index);
+	}
+
+	/**
+	 * Returns the array that holds the bytes of the literal run symbols. It
+	 * must not be modified, and it may be replaced when symbols are added.
+	 */
+	public byte[] getLiteralBytes() {
+		return literalBytes;
+	}
+
+	/**
+	 * Returns the position of the bytes of a literal run symbol in the array
+	 * returned by getLiteralBytes().
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public int getLiteralOffset(int index) {
+		return (int) get(index);
+	}
+
+	/**
+	 * Returns the length of a back-reference, repeat reference or literal run
+	 * symbol.
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public int getLength(int index) {
+		return (int) (get(index) >>> LENGTH_SHIFT) & MAX_LENGTH;
+	}
+
+	/**
+	 * Returns the entry of a dictionary reference symbol.
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public int getEntry(int index) {
+		return (int) get(index);
+	}
+
+	/**
+	 * Returns the offset of a checkpoint symbol.
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public long getOffset(int index) {
+		return get(index) & MAX_OFFSET;
+	}
+
+	/**
+	 * Returns a symbol as an object.
+	 *
+	 * @param index
+	 *            The position of the symbol in the buffer.
+	 */
+	public Symbol getSymbol(int index) {
+		switch (getKind(index)) {
+		case BYTE:
+			return Symbol.newByte(getByteValue(index));
+		case LITERALS:
+			return Symbol.newLiterals(literalBytes, getLiteralOffset(index),
+					getLength(index));
+		case BACK_REF:
+			return Symbol.newBackRef(getDistance(index), getLength(index));
+		case REPEAT_REF:
+			return Symbol.newRepeatRef(getSlot(index), getLength(index));
+		case DICTIONARY_REF:
+			return Symbol.newDictionaryRef(getEntry(index));
+		case CHECKPOINT:
+			return Symbol.newCheckpoint(getOffset(index));
+		default:
+			return Symbol.newReset();
+		}
+	}
+
+	private long get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(String.format(
+					"Index %d is out of bounds for size %d", index, size));
+		}
+		return symbols[index];
+	}
+
+	private void append(long symbol) {
+		if (size == symbols.length) {
+			ensureCapacity(size + 1);
+		}
+		symbols[size++] = symbol;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > symbols.length) {
+			long[] newSymbols = new long[Math.max(capacity,
+					symbols.length * 2)];
+			System.arraycopy(symbols, 0, newSymbols, 0, size);
+			symbols = newSymbols;
+		}
+	}
+}
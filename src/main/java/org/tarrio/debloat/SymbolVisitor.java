@@ -0,0 +1,106 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat;
+
+import java.io.IOException;
+
+/**
+ * Receives the symbols pushed by a {@link Codec.PushDecoder}, one call per
+ * symbol, with the symbol's values as arguments.
+ * 
+ * @author Jacobo Tarrio
+ */
+public interface SymbolVisitor {
+
+	/**
+	 * Receives a byte symbol.
+	 * 
+	 * @param value
+	 *            The value of the byte.
+	 * @throws IOException
+	 *             If there was any problem processing the symbol.
+	 */
+	void onByte(byte value) throws IOException;
+
+	/**
+	 * Receives a run of literal bytes.
+	 * 
+	 * @param bytes
+	 *            An array containing the bytes. It is only valid during the
+	 *            call and must not be modified.
+	 * @param offset
+	 *            The position of the first byte in the array.
+	 * @param length
+	 *            The number of bytes in the run.
+	 * @throws IOException
+	 *             If there was any problem processing the symbol.
+	 */
+	void onLiterals(byte[] bytes, int offset, int length) throws IOException;
+
+	/**
+	 * Receives a back-reference symbol.
+	 * 
+	 * @param distance
+	 *            The distance to the referenced data.
+	 * @param length
+	 *            The length of the referenced data.
+	 * @throws IOException
+	 *             If there was any problem processing the symbol.
+	 */
+	void onBackRef(int distance, int length) throws IOException;
+
+	/**
+	 * Receives a repeat reference symbol.
+	 * 
+	 * @param slot
+	 *            The slot of the referenced distance in the
+	 *            {@link RecentDistances} history.
+	 * @param length
+	 *            The length of the referenced data.
+	 * @throws IOException
+	 *             If there was any problem processing the symbol.
+	 */
+	void onRepeatRef(int slot, int length) throws IOException;
+
+	/**
+	 * Receives a dictionary reference symbol.
+	 * 
+	 * @param entry
+	 *            The referenced dictionary entry.
+	 * @throws IOException
+	 *             If there was any problem processing the symbol.
+	 */
+	void onDictionaryRef(int entry) throws IOException;
+
+	/**
+	 * Receives a dictionary reset symbol.
+	 * 
+	 * @throws IOException
+	 *             If there was any problem processing the symbol.
+	 */
+	void onReset() throws IOException;
+
+	/**
+	 * Receives a checkpoint symbol.
+	 * 
+	 * @param offset
+	 *            The offset in the uncompressed data of the checkpoint.
+	 * @throws IOException
+	 *             If there was any problem processing the symbol.
+	 */
+	void onCheckpoint(long offset) throws IOException;
+}
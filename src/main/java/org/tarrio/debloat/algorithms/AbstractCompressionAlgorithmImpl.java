@@ -36,6 +36,11 @@ import org.tarrio.debloat.Codec.Encoder;
 public abstract class AbstractCompressionAlgorithmImpl implements
 		CompressionAlgorithm {
 
+	/**
+	 * The number of symbols the implementations pass to the codecs at a time.
+	 */
+	protected static final int BATCH_SIZE = 1024;
+
 	/**
 	 * Returns the name of the algorithm implemented by this class.
 	 */
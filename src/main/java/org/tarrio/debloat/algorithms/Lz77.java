@@ -20,18 +20,121 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.tarrio.debloat.CheckpointingAlgorithm;
 import org.tarrio.debloat.Codec;
-import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.LeveledAlgorithm;
+import org.tarrio.debloat.RecentDistances;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.SymbolVisitor;
 import org.tarrio.debloat.buffers.RingBuffer;
 import org.tarrio.debloat.buffers.RingBufferFactory;
-import org.tarrio.debloat.buffers.RingBuffer.Match;
 
 /**
  * Implementation of LZ77.
  * 
+ * When checkpoints are enabled, the window is emptied at each checkpoint so
+ * no back-reference reaches past it.
+ * 
+ * Symbols are written to the codecs in batches, using a {@link SymbolBuffer},
+ * and pushed by the codecs straight into the decompressor. Matches and
+ * symbols are handled as primitive values, so the compression loop does not
+ * create any objects. Consecutive literal bytes are emitted as a single
+ * literal run.
+ * 
+ * Before looking for a match in the hash chains, the compressor checks the
+ * distances in the {@link RecentDistances} history, and matches at any of
+ * them are emitted as repeat references, which are cheaper to store than
+ * back-references in structured data where the same distances keep
+ * appearing.
+ * 
+ * From level 4 up, matches are evaluated lazily: before a match is taken, the
+ * compressor looks for a match at the next position, and if it is longer, it
+ * emits a literal and considers that match instead.
+ * 
+ * The compression level sets how many past positions are checked for each
+ * match, the match length that is good enough to stop looking for a longer
+ * one, the longest match whose positions are all indexed for future matches,
+ * and the longest match for which a better one is looked for at the next
+ * position. The values are modeled on zlib's.
+ * 
  * @author Jacobo Tarrio
  */
-public class Lz77 extends AbstractCompressionAlgorithmImpl {
+public class Lz77 extends AbstractCompressionAlgorithmImpl implements
+		CheckpointingAlgorithm, LeveledAlgorithm {
+
+	/**
+	 * The maximum number of bytes in a literal run.
+	 */
+	private static final int MAX_LITERAL_RUN = 4096;
+
+	/**
+	 * The compression level used when none is set.
+	 */
+	public static final int DEFAULT_LEVEL = 6;
+
+	/**
+	 * The maximum number of past positions checked for each match, by level.
+	 */
+	private static final int[] MAX_CHAIN_LENGTHS = { 4, 8, 16, 32, 64, 128,
+			256, 1024, 4096 };
+
+	/**
+	 * The match length at which the search stops, by level. A match at a
+	 * recent distance at least this long is also taken without looking for a
+	 * longer one in the hash chains.
+	 */
+	private static final int[] NICE_LENGTHS = { 8, 16, 32, 64, 64, 128, 128,
+			258, 258 };
+
+	/**
+	 * The longest match whose positions are all indexed, by level.
+	 */
+	private static final int[] MAX_INSERT_LENGTHS = { 4, 8, 16, 32,
+			Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+			Integer.MAX_VALUE, Integer.MAX_VALUE };
+
+	/**
+	 * Matches shorter than this are only taken if there is no longer match at
+	 * the next position, by level. 0 disables lazy evaluation.
+	 */
+	private static final int[] MAX_LAZY_LENGTHS = { 0, 0, 0, 4, 16, 16, 32,
+			128, 258 };
+
+	private final int level;
+	private final long checkpointInterval;
+
+	public Lz77() {
+		this(DEFAULT_LEVEL, 0);
+	}
+
+	private Lz77(int level, long checkpointInterval) {
+		this.level = level;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	@Override
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	@Override
+	public Lz77 withCheckpointInterval(long interval) {
+		return new Lz77(level, interval);
+	}
+
+	@Override
+	public int getLevel() {
+		return level;
+	}
+
+	@Override
+	public Lz77 withLevel(int level) {
+		if (level < MIN_LEVEL || level > MAX_LEVEL) {
+			throw new IllegalArgumentException(String.format(
+					"Compression level %d is out of range", level));
+		}
+		return new Lz77(level, checkpointInterval);
+	}
 
 	@Override
 	protected String getAlgorithmName() {
@@ -41,50 +144,212 @@ public class Lz77 extends AbstractCompressionAlgorithmImpl {
 	@Override
 	public void doCompress(InputStream input, Codec.Encoder encoder)
 			throws IOException {
-		RingBuffer buffer = RingBufferFactory.newReadBuffer(input);
-		Symbol symbol = readNextSymbol(buffer);
-		while (symbol != null) {
-			encoder.write(symbol);
-			symbol = readNextSymbol(buffer);
+		int niceLength = NICE_LENGTHS[level - MIN_LEVEL];
+		int maxLazyLength = MAX_LAZY_LENGTHS[level - MIN_LEVEL];
+		RingBuffer buffer = RingBufferFactory.newReadBuffer(input,
+				MAX_CHAIN_LENGTHS[level - MIN_LEVEL], niceLength,
+				MAX_INSERT_LENGTHS[level - MIN_LEVEL]);
+		SymbolBuffer symbols = new SymbolBuffer(BATCH_SIZE);
+		byte[] buf = new byte[1];
+		byte[] literals = new byte[MAX_LITERAL_RUN];
+		int literalCount = 0;
+		RecentDistances recent = new RecentDistances();
+		long position = 0;
+		long nextCheckpoint = checkpointInterval;
+		boolean hasNextMatch = false;
+		long nextMatch = 0;
+		while (true) {
+			long match = hasNextMatch ? nextMatch : findMatch(buffer, recent,
+					niceLength);
+			hasNextMatch = false;
+			int length = (int) match;
+			if (length > 0 && length < maxLazyLength) {
+				buffer.read(buf, 1);
+				nextMatch = findMatch(buffer, recent, niceLength);
+				if ((int) nextMatch > length) {
+					literals[literalCount++] = buf[0];
+					++position;
+					hasNextMatch = true;
+				} else {
+					buffer.skip(length - 1);
+					addLiterals(symbols, literals, literalCount);
+					literalCount = 0;
+					addMatch(symbols, recent, match);
+					position += length;
+				}
+			} else if (length > 0) {
+				buffer.skip(length);
+				addLiterals(symbols, literals, literalCount);
+				literalCount = 0;
+				addMatch(symbols, recent, match);
+				position += length;
+			} else if (buffer.read(buf, 1) == 1) {
+				literals[literalCount++] = buf[0];
+				++position;
+			} else {
+				break;
+			}
+			if (checkpointInterval > 0 && position >= nextCheckpoint) {
+				buffer.resetWindow();
+				recent.clear();
+				addLiterals(symbols, literals, literalCount);
+				literalCount = 0;
+				symbols.addCheckpoint(position);
+				nextCheckpoint = position + checkpointInterval;
+				hasNextMatch = false;
+			} else if (literalCount == MAX_LITERAL_RUN) {
+				addLiterals(symbols, literals, literalCount);
+				literalCount = 0;
+			}
+			if (symbols.size() >= BATCH_SIZE) {
+				symbols.writeTo(encoder);
+				symbols.clear();
+			}
 		}
+		addLiterals(symbols, literals, literalCount);
+		symbols.writeTo(encoder);
 	}
 
 	@Override
 	public void doDecompress(Codec.Decoder decoder, OutputStream output)
 			throws IOException {
-		RingBuffer buffer = RingBufferFactory.newWriteBuffer(output);
-		Symbol symbol = decoder.read();
-		while (symbol != null) {
-			if (symbol instanceof Symbol.BackRef) {
-				Symbol.BackRef backref = (Symbol.BackRef) symbol;
-				buffer.repeatPastMatch(backref.getDistance(), backref.getLength());
-			} else if (symbol instanceof Symbol.Byte) {
-				buffer.write(((Symbol.Byte) symbol).getByteValue());
-			} else {
-				throw new IllegalStateException("Found symbol of unrecognized type " + symbol.getClass().getSimpleName());
-			}
-			symbol = decoder.read();
-		}
+		SymbolBuffer.visit(decoder, new Decompressor(RingBufferFactory
+				.newWriteBuffer(output)));
 	}
 
 	/**
-	 * Obtains the next symbol from the contents of a look-up buffer.
+	 * Finds the longest match at the current position of a ring buffer,
+	 * preferring matches at the distances in the history.
 	 * 
 	 * @param buffer
-	 *            The look-up buffer to read from.
-	 * @return The symbol that was read.
+	 *            The buffer to look for the match in.
+	 * @param recent
+	 *            The history of recently used distances.
+	 * @param niceLength
+	 *            The length of a match at a recent distance that is taken
+	 *            without looking in the hash chains.
+	 * @return The match packed as returned by
+	 *         {@link RingBuffer#findPastMatchPacked()}, or 0 if there is none.
 	 * @throws IOException
-	 *             If there was any problem reading from the buffer.
+	 *             If there was a problem reading from the buffer.
 	 */
-	private Symbol readNextSymbol(RingBuffer buffer) throws IOException {
-		byte[] buf = new byte[1];
-		Match match = buffer.findPastMatch();
-		if (match != null) {
-			buffer.skip(match.getLength());
-			return Symbol.newBackRef(match.getDistance(), match.getLength());
+	private static long findMatch(RingBuffer buffer, RecentDistances recent,
+			int niceLength) throws IOException {
+		int repeatDistance = 0;
+		int repeatLength = 0;
+		for (int slot = 0; slot < recent.size(); ++slot) {
+			int length = buffer.getPastMatchLength(recent.get(slot));
+			if (length > repeatLength) {
+				repeatDistance = recent.get(slot);
+				repeatLength = length;
+			}
+		}
+		long match = repeatLength >= niceLength ? 0 : buffer
+				.findPastMatchPacked();
+		if (repeatLength > 0 && repeatLength >= (int) match) {
+			return (long) repeatDistance << 32 | repeatLength;
+		}
+		return match;
+	}
+
+	/**
+	 * Appends a match to a symbol buffer: a repeat reference if its distance
+	 * is in the history, and a back-reference otherwise.
+	 * 
+	 * @param symbols
+	 *            The buffer to append the symbol to.
+	 * @param recent
+	 *            The history of recently used distances, which is updated.
+	 * @param match
+	 *            The match, packed as returned by
+	 *            {@link RingBuffer#findPastMatchPacked()}.
+	 */
+	private static void addMatch(SymbolBuffer symbols, RecentDistances recent,
+			long match) {
+		int distance = (int) (match >>> 32);
+		int length = (int) match;
+		int slot = recent.find(distance);
+		if (slot >= 0) {
+			symbols.addRepeatRef(slot, length);
+			recent.use(slot);
 		} else {
-			int read = buffer.read(buf, 1);
-			return read == 1 ? Symbol.newByte(buf[0]) : null;
+			symbols.addBackRef(distance, length);
+			recent.push(distance);
+		}
+	}
+
+	/**
+	 * Appends the pending literal bytes to a symbol buffer: nothing if there
+	 * are none, a byte symbol if there is only one, and a literal run
+	 * otherwise.
+	 * 
+	 * @param symbols
+	 *            The buffer to append the symbol to.
+	 * @param literals
+	 *            The array containing the pending literal bytes.
+	 * @param count
+	 *            The number of pending literal bytes.
+	 */
+	private static void addLiterals(SymbolBuffer symbols, byte[] literals,
+			int count) {
+		if (count == 1) {
+			symbols.addByte(literals[0]);
+		} else if (count > 1) {
+			symbols.addLiterals(literals, 0, count);
+		}
+	}
+
+	/**
+	 * Receives the symbols to decompress and writes the data they represent
+	 * into a ring buffer.
+	 */
+	private static class Decompressor implements SymbolVisitor {
+		private final RingBuffer buffer;
+		private final RecentDistances recent;
+
+		public Decompressor(RingBuffer buffer) {
+			this.buffer = buffer;
+			this.recent = new RecentDistances();
+		}
+
+		@Override
+		public void onByte(byte value) throws IOException {
+			buffer.write(value);
+		}
+
+		@Override
+		public void onLiterals(byte[] bytes, int offset, int length)
+				throws IOException {
+			buffer.write(bytes, offset, length);
+		}
+
+		@Override
+		public void onBackRef(int distance, int length) throws IOException {
+			buffer.repeatPastMatch(distance, length);
+			recent.push(distance);
+		}
+
+		@Override
+		public void onRepeatRef(int slot, int length) throws IOException {
+			buffer.repeatPastMatch(recent.use(slot), length);
+		}
+
+		@Override
+		public void onDictionaryRef(int entry) {
+			throw new IllegalStateException(
+					"Found symbol of unrecognized type DictionaryRef");
+		}
+
+		@Override
+		public void onReset() {
+			throw new IllegalStateException(
+					"Found symbol of unrecognized type Reset");
+		}
+
+		@Override
+		public void onCheckpoint(long offset) {
+			buffer.resetWindow();
+			recent.clear();
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -20,20 +20,30 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.CheckpointingAlgorithm;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.SymbolVisitor;
 import org.tarrio.debloat.Codec.Decoder;
 import org.tarrio.debloat.Codec.Encoder;
 
 /**
  * Implementation of the Lempel-Ziv-Welch compression algorithm.
  * 
+ * When checkpoints are enabled, the dictionary is reset right before each
+ * checkpoint.
+ * 
+ * Symbols are written to the codecs in batches, using a {@link SymbolBuffer},
+ * and pushed by the codecs straight into the decompressor.
+ * 
  * @author Jacobo Tarrio
  */
-public class Lzw extends AbstractCompressionAlgorithmImpl {
+public class Lzw extends AbstractCompressionAlgorithmImpl implements
+		CheckpointingAlgorithm {
 
 	static final int MAX_ENTRIES = 4096;
 
-	private int maxEntries;
+	private final int maxEntries;
+	private final long checkpointInterval;
 
 	/**
 	 * Creates a LZW compressor with a dictionary of size 4096.
@@ -51,7 +61,22 @@ public class Lzw extends AbstractCompressionAlgorithmImpl {
 	 *            The maximum number of entries in the dictionary.
 	 */
 	Lzw(int maxEntries) {
+		this(maxEntries, 0);
+	}
+
+	private Lzw(int maxEntries, long checkpointInterval) {
 		this.maxEntries = maxEntries;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	@Override
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	@Override
+	public Lzw withCheckpointInterval(long interval) {
+		return new Lzw(maxEntries, interval);
 	}
 
 	@Override
@@ -65,20 +90,39 @@ public class Lzw extends AbstractCompressionAlgorithmImpl {
 		byte[] buffer = new byte[maxEntries];
 		int bufTop = 0;
 		Dictionary dict = new Dictionary(maxEntries);
+		SymbolBuffer symbols = new SymbolBuffer(BATCH_SIZE);
 		int prevEntry = -1;
+		long position = 0;
+		long nextCheckpoint = checkpointInterval;
 		int read = 1;
 		while (read > 0) {
+			if (symbols.size() >= BATCH_SIZE) {
+				symbols.writeTo(outputEncoder);
+				symbols.clear();
+			}
+			if (checkpointInterval > 0 && position >= nextCheckpoint) {
+				if (prevEntry != -1) {
+					symbols.addDictionaryRef(prevEntry);
+				}
+				dict.reset();
+				symbols.addReset();
+				symbols.addCheckpoint(position);
+				bufTop = 0;
+				prevEntry = -1;
+				nextCheckpoint = position + checkpointInterval;
+			}
 			if (dict.getSize() == maxEntries) {
 				dict.reset();
-				outputEncoder.write(Symbol.newReset());
+				symbols.addReset();
 			}
 			read = input.read(buffer, bufTop, 1);
 			if (read > 0) {
 				++bufTop;
+				++position;
 			}
 			int curEntry = dict.getEntryNum(buffer, bufTop);
 			if (prevEntry != -1 && curEntry == -1) {
-				outputEncoder.write(Symbol.newDictionaryRef(prevEntry));
+				symbols.addDictionaryRef(prevEntry);
 				dict.addEntry(prevEntry, buffer, bufTop);
 				buffer[0] = buffer[bufTop - 1];
 				bufTop = 1;
@@ -88,49 +132,86 @@ public class Lzw extends AbstractCompressionAlgorithmImpl {
 			}
 		}
 		if (prevEntry != -1) {
-			outputEncoder.write(Symbol.newDictionaryRef(prevEntry));
+			symbols.addDictionaryRef(prevEntry);
 		}
+		symbols.writeTo(outputEncoder);
 	}
 
 	@Override
 	public void doDecompress(Decoder inputDecoder, OutputStream output)
 			throws IOException {
-		byte[] buffer = new byte[maxEntries - 256];
-		int bufTop = 0;
-		Dictionary dict = new Dictionary(maxEntries);
-		Integer prevEntry = null;
-		Symbol symbol = null;
-		do {
-			if (bufTop > 0) {
-				output.write(buffer, 0, bufTop);
+		SymbolBuffer.visit(inputDecoder, new Decompressor(maxEntries, output));
+	}
+
+	/**
+	 * Receives the symbols to decompress and writes the data they represent
+	 * into an output stream.
+	 */
+	private static class Decompressor implements SymbolVisitor {
+		private final OutputStream output;
+		private final Dictionary dict;
+		private final byte[] buffer;
+		private int bufTop;
+		private int prevEntry;
+
+		public Decompressor(int maxEntries, OutputStream output) {
+			this.output = output;
+			this.dict = new Dictionary(maxEntries);
+			this.buffer = new byte[maxEntries - 256];
+			this.bufTop = 0;
+			this.prevEntry = -1;
+		}
+
+		@Override
+		public void onDictionaryRef(int entryNum) throws IOException {
+			int dictSize = dict.getSize();
+			if (entryNum == dictSize) {
+				buffer[bufTop] = buffer[0];
+				dict.addEntry(prevEntry, buffer, bufTop + 1);
 			}
-			symbol = inputDecoder.read();
-			if (symbol instanceof Symbol.Reset) {
-				dict.reset();
-				prevEntry = null;
-				bufTop = 0;
-			} else if (symbol instanceof Symbol.DictionaryRef) {
-				Symbol.DictionaryRef ref = (Symbol.DictionaryRef) symbol;
-				int entryNum = ref.getEntry();
-				int dictSize = dict.getSize();
-				if (entryNum == dictSize) {
-					buffer[bufTop] = buffer[0];
-					dict.addEntry(prevEntry, buffer, bufTop + 1);
-				}
-				int length = dict.getEntry(entryNum, buffer, bufTop);
-				if (prevEntry != null && entryNum != dictSize) {
-					dict.addEntry(prevEntry, buffer, bufTop + 1);
-				}
-				if (bufTop > 0) {
-					System.arraycopy(buffer, bufTop, buffer, 0, length);
-				}
-				bufTop = length;
-				prevEntry = entryNum;
-			} else if (symbol != null) {
-				throw new IllegalStateException("Read invalid symbol type "
-						+ symbol.getClass().getSimpleName());
+			int length = dict.getEntry(entryNum, buffer, bufTop);
+			if (prevEntry != -1 && entryNum != dictSize) {
+				dict.addEntry(prevEntry, buffer, bufTop + 1);
+			}
+			if (bufTop > 0) {
+				System.arraycopy(buffer, bufTop, buffer, 0, length);
 			}
-		} while (symbol != null);
+			bufTop = length;
+			prevEntry = entryNum;
+			output.write(buffer, 0, bufTop);
+		}
+
+		@Override
+		public void onReset() {
+			dict.reset();
+			prevEntry = -1;
+			bufTop = 0;
+		}
+
+		@Override
+		public void onCheckpoint(long offset) {
+			onReset();
+		}
+
+		@Override
+		public void onByte(byte value) {
+			throw new IllegalStateException("Read invalid symbol type Byte");
+		}
+
+		@Override
+		public void onLiterals(byte[] bytes, int offset, int length) {
+			throw new IllegalStateException("Read invalid symbol type Literals");
+		}
+
+		@Override
+		public void onBackRef(int distance, int length) {
+			throw new IllegalStateException("Read invalid symbol type BackRef");
+		}
+
+		@Override
+		public void onRepeatRef(int slot, int length) {
+			throw new IllegalStateException("Read invalid symbol type RepeatRef");
+		}
 	}
 
 	/**
@@ -65,6 +65,30 @@ public interface RingBuffer {
 	 */
 	Match findPastMatch() throws IOException;
 
+	/**
+	 * Works like findPastMatch(), but returns the match packed into a
+	 * primitive value so that no object needs to be created.
+	 * 
+	 * @return The distance of the best match in the high 32 bits and its
+	 *         length in the low 32 bits, or 0 if no good match was found.
+	 * @throws IOException
+	 *             If there was a problem reading from the stream.
+	 */
+	long findPastMatchPacked() throws IOException;
+
+	/**
+	 * Checks if the next-to-be-read data is a duplicate of the data read at a
+	 * given distance in the past, and returns the length of the match.
+	 * 
+	 * @param distance
+	 *            The match distance to check.
+	 * @return The length of the match, or 0 if no good match was found at that
+	 *         distance or the distance is outside the window.
+	 * @throws IOException
+	 *             If there was a problem reading from the stream.
+	 */
+	int getPastMatchLength(int distance) throws IOException;
+
 	/**
 	 * Writes one byte to the output stream.
 	 * 
@@ -112,6 +136,12 @@ public interface RingBuffer {
 	 */
 	void repeatPastMatch(int distance, int length) throws IOException;
 
+	/**
+	 * Forgets all the data before the current position, so that no match
+	 * found or repeated from now on refers to it.
+	 */
+	void resetWindow();
+
 	/**
 	 * Contains the results of a search for a past matching substring, as
 	 * returned by findPastMatch.
@@ -37,6 +37,28 @@ public class RingBufferFactory {
 		return new RingBufferImpl(inputStream);
 	}
 
+	/**
+	 * Creates a ring buffer that reads its data from the given input stream
+	 * and limits the effort spent looking for matches.
+	 * 
+	 * @param inputStream
+	 *            The stream to read data from.
+	 * @param maxChainLength
+	 *            The maximum number of past positions to check for each match.
+	 * @param niceLength
+	 *            The match length at which to stop looking for a longer match.
+	 * @param maxInsertLength
+	 *            The maximum length of a skipped match whose positions are
+	 *            indexed for future matches.
+	 * @return A ring buffer that reads the data from the stream.
+	 */
+	public static RingBuffer newReadBuffer(InputStream inputStream,
+			int maxChainLength, int niceLength, int maxInsertLength) {
+		RingBufferImpl buffer = new RingBufferImpl(inputStream);
+		buffer.setSearchLimits(maxChainLength, niceLength, maxInsertLength);
+		return buffer;
+	}
+
 	/**
 	 * Creates a ring buffer that writes its data to the given output stream.
 	 * 
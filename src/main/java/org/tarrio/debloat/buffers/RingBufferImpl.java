@@ -19,6 +19,8 @@ package org.tarrio.debloat.buffers;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * A circular buffer implementation that keeps enough space for as many bytes
@@ -27,6 +29,10 @@ import java.io.OutputStream;
  * That extra byte serves to be able to distinguish between completely empty and
  * completely full buffers.
  * 
+ * Read buffers are followed by a mirror of their first maxLength bytes, so
+ * matches and hashes can be checked on contiguous memory without wrapping the
+ * indices around. Matches are compared 8 bytes at a time.
+ * 
  * @author Jacobo Tarrio
  */
 public class RingBufferImpl implements RingBuffer {
@@ -45,13 +51,19 @@ public class RingBufferImpl implements RingBuffer {
 	private final OutputStream outputStream;
 	private final int maxDistance;
 	private final int maxLength;
+	private final int size;
 	private final byte[] buffer;
-	private int bufPosOffset;
+	private final ByteBuffer window;
+	private long bufPosOffset;
+	private long windowStartOffset;
 	private int bufBottom;
 	private int bufPos;
 	private int bufTop;
 	private boolean eof;
 	private PositionMap positionMap;
+	private int maxChainLength;
+	private int niceLength;
+	private int maxInsertLength;
 
 	/**
 	 * Creates a ringbuffer to read data from a given input stream.
@@ -78,13 +90,19 @@ public class RingBufferImpl implements RingBuffer {
 		this.outputStream = null;
 		this.maxDistance = maxDistance;
 		this.maxLength = maxLength;
-		this.buffer = new byte[Math.max(bufferSize, maxDistance + maxLength + 1)];
+		this.size = Math.max(bufferSize, maxDistance + maxLength + 1);
+		this.buffer = new byte[size + Math.max(maxLength, PositionMap.KEY_LENGTH)];
+		this.window = ByteBuffer.wrap(buffer);
 		this.bufPosOffset = 0;
+		this.windowStartOffset = 0;
 		this.bufBottom = 0;
 		this.bufPos = 0;
 		this.bufTop = 0;
 		this.eof = false;
 		this.positionMap = new PositionMap();
+		this.maxChainLength = Integer.MAX_VALUE;
+		this.niceLength = maxLength;
+		this.maxInsertLength = Integer.MAX_VALUE;
 	}
 
 	/**
@@ -112,11 +130,33 @@ public class RingBufferImpl implements RingBuffer {
 		this.inputStream = null;
 		this.maxDistance = maxDistance;
 		this.maxLength = maxLength;
-		this.buffer = new byte[maxDistance + maxLength + 1];
+		this.size = maxDistance + maxLength + 1;
+		this.buffer = new byte[size];
+		this.window = null;
 		this.bufBottom = 0;
 		this.bufPos = 0;
 	}
 
+	/**
+	 * Limits the effort spent looking for matches in a read ringbuffer. By
+	 * default, there are no limits.
+	 * 
+	 * @param maxChainLength
+	 *            The maximum number of past positions to check for each match.
+	 * @param niceLength
+	 *            The match length at which to stop looking for a longer match.
+	 * @param maxInsertLength
+	 *            The maximum length of a skipped match whose positions are
+	 *            indexed. Only the first position of longer matches is
+	 *            indexed.
+	 */
+	void setSearchLimits(int maxChainLength, int niceLength,
+			int maxInsertLength) {
+		this.maxChainLength = maxChainLength;
+		this.niceLength = Math.min(niceLength, maxLength);
+		this.maxInsertLength = maxInsertLength;
+	}
+
 	@Override
 	public int read(byte[] destBuffer, int length) throws IOException {
 		int readSoFar = 0;
@@ -132,29 +172,57 @@ public class RingBufferImpl implements RingBuffer {
 
 	@Override
 	public int skip(int length) throws IOException {
-		return read(null, length);
+		if (length <= maxInsertLength) {
+			return read(null, length);
+		}
+		positionMap.indexPositions(bufPosOffset + 1);
+		int skipped = read(null, length);
+		positionMap.skipPositions(bufPosOffset);
+		return skipped;
 	}
 
 	@Override
 	public Match findPastMatch() throws IOException {
+		long match = findPastMatchPacked();
+		return match == 0 ? null : new MatchImpl((int) (match >>> 32),
+				(int) match);
+	}
+
+	@Override
+	public long findPastMatchPacked() throws IOException {
 		fillBuffer();
-		Match bestMatch = null;
-		Position position = positionMap.getFirstMatchingPosition();
-		while (position != null) {
-			int distance = position.getDistance();
-			if (distance > maxDistance) {
+		positionMap.indexPositions(bufPosOffset);
+		int bestDistance = 0;
+		int bestLength = 0;
+		long offset = positionMap.getFirstMatchingOffset();
+		for (int chain = 0; offset >= 0 && chain < maxChainLength; ++chain) {
+			if (bufPosOffset - offset > maxDistance
+					|| offset < windowStartOffset) {
 				break;
 			}
-			if (distance >= 1) {
-				int length = checkMatch(distance);
-				if (length >= 3
-						&& (bestMatch == null || bestMatch.getLength() < length)) {
-					bestMatch = new MatchImpl(distance, length);
+			int distance = (int) (bufPosOffset - offset);
+			int length = checkMatch(distance);
+			if (length >= 3 && bestLength < length) {
+				bestDistance = distance;
+				bestLength = length;
+				if (length >= niceLength) {
+					break;
 				}
 			}
-			position = position.getNext();
+			offset = positionMap.getPreviousOffset(offset);
+		}
+		return (long) bestDistance << 32 | bestLength;
+	}
+
+	@Override
+	public int getPastMatchLength(int distance) throws IOException {
+		fillBuffer();
+		if (distance < 1 || distance > maxDistance
+				|| distance > bufPosOffset - windowStartOffset) {
+			return 0;
 		}
-		return bestMatch;
+		int length = checkMatch(distance);
+		return length >= 3 ? length : 0;
 	}
 
 	@Override
@@ -162,8 +230,9 @@ public class RingBufferImpl implements RingBuffer {
 		makeRoom(1);
 		buffer[bufPos] = b;
 		outputStream.write(b);
-		++bufPos;
-		bufPos %= buffer.length;
+		if (++bufPos == size) {
+			bufPos = 0;
+		}
 	}
 
 	@Override
@@ -173,11 +242,14 @@ public class RingBufferImpl implements RingBuffer {
 
 	@Override
 	public void write(byte[] data, int offset, int length) throws IOException {
-		makeRoom(length);
 		int writtenSoFar = 0;
 		while (writtenSoFar < length) {
-			writtenSoFar += partialWrite(data, offset + writtenSoFar, length
-					- writtenSoFar);
+			int chunkEnd = writtenSoFar + Math.min(maxLength, length - writtenSoFar);
+			makeRoom(chunkEnd - writtenSoFar);
+			while (writtenSoFar < chunkEnd) {
+				writtenSoFar += partialWrite(data, offset + writtenSoFar,
+						chunkEnd - writtenSoFar);
+			}
 		}
 	}
 
@@ -191,14 +263,27 @@ public class RingBufferImpl implements RingBuffer {
 			throw new IndexOutOfBoundsException("Repeat length is not valid: "
 					+ length);
 		}
-		int past = (bufPos + buffer.length - distance) % buffer.length;
-		for (int i = 0; i < length; ++i) {
-			write(buffer[past]);
-			++past;
-			past %= buffer.length;
+		int past = bufPos - distance;
+		if (past < 0) {
+			past += size;
+		}
+		while (length > 0) {
+			int chunk = Math.min(Math.min(length, distance), size - past);
+			write(buffer, past, chunk);
+			length -= chunk;
+			past += chunk;
+			if (past == size) {
+				past = 0;
+			}
 		}
 	}
 
+	@Override
+	public void resetWindow() {
+		windowStartOffset = bufPosOffset;
+		bufBottom = bufPos;
+	}
+
 	/**
 	 * Reads a contiguous sequence of bytes until a buffer boundary has been
 	 * reached.
@@ -219,7 +304,7 @@ public class RingBufferImpl implements RingBuffer {
 			throws IOException {
 		fillBuffer();
 		int maxRead = Math.min(length, (bufTop >= bufPos ? bufTop
-				: buffer.length) - bufPos);
+				: size) - bufPos);
 		if (maxRead == 0) {
 			return -1;
 		}
@@ -227,7 +312,9 @@ public class RingBufferImpl implements RingBuffer {
 			System.arraycopy(buffer, bufPos, destBuffer, offset, maxRead);
 		}
 		bufPos += maxRead;
-		bufPos %= buffer.length;
+		if (bufPos == size) {
+			bufPos = 0;
+		}
 		bufPosOffset += maxRead;
 		return maxRead;
 	}
@@ -245,15 +332,14 @@ public class RingBufferImpl implements RingBuffer {
 		if (eof) {
 			return;
 		}
-		int usedBelow = (bufPos + buffer.length - bufBottom) % buffer.length;
-		int usedAbove = (bufTop + buffer.length - bufPos) % buffer.length;
+		int usedBelow = used(bufBottom, bufPos);
+		int usedAbove = used(bufPos, bufTop);
 		if (usedBelow > maxDistance && usedAbove <= maxLength) {
 			int discard = usedBelow - maxDistance;
-			bufBottom += discard;
-			bufBottom %= buffer.length;
+			bufBottom = wrap(bufBottom + discard);
 			usedBelow -= discard;
 		}
-		int available = buffer.length - usedBelow - usedAbove - 1;
+		int available = size - usedBelow - usedAbove - 1;
 		while (available > 0 && !eof) {
 			available -= partialFillBuffer(available);
 		}
@@ -261,7 +347,8 @@ public class RingBufferImpl implements RingBuffer {
 
 	/**
 	 * Reads from the input stream and writes into a contiguous area in the
-	 * buffer until a buffer boundary is reached.
+	 * buffer until a buffer boundary is reached, updating the mirror of the
+	 * first bytes of the buffer.
 	 * 
 	 * @param length
 	 *            The desired number of bytes to read.
@@ -272,15 +359,20 @@ public class RingBufferImpl implements RingBuffer {
 	 */
 	private int partialFillBuffer(int length) throws IOException {
 		int maxRead = Math.min(length, (bufBottom > bufTop ? bufBottom
-				: buffer.length) - bufTop);
+				: size) - bufTop);
 		int read = inputStream.read(buffer, bufTop, maxRead);
 		if (read == -1) {
 			eof = true;
 			return 0;
 		}
+		if (bufTop < buffer.length - size) {
+			System.arraycopy(buffer, bufTop, buffer, size + bufTop,
+					Math.min(read, buffer.length - size - bufTop));
+		}
 		bufTop += read;
-		bufTop %= buffer.length;
-		positionMap.indexPositions(read);
+		if (bufTop == size) {
+			bufTop = 0;
+		}
 		return read;
 	}
 
@@ -293,12 +385,25 @@ public class RingBufferImpl implements RingBuffer {
 	 * @return The length of the match, from 0 up to maxLength.
 	 */
 	private int checkMatch(int distance) {
-		int j;
-		for (j = 0; j < maxLength && (bufPos + j) % buffer.length != bufTop; ++j) {
-			if (buffer[(bufPos - distance + j + buffer.length) % buffer.length] != buffer[(bufPos + j)
-					% buffer.length]) {
-				break;
+		int available = bufTop - bufPos;
+		if (available < 0) {
+			available += size;
+		}
+		int limit = Math.min(maxLength, available);
+		int past = bufPos - distance;
+		if (past < 0) {
+			past += size;
+		}
+		int j = 0;
+		while (j + 8 <= limit) {
+			long diff = window.getLong(past + j) ^ window.getLong(bufPos + j);
+			if (diff != 0) {
+				return j + (Long.numberOfLeadingZeros(diff) >>> 3);
 			}
+			j += 8;
+		}
+		while (j < limit && buffer[past + j] == buffer[bufPos + j]) {
+			++j;
 		}
 		return j;
 	}
@@ -320,11 +425,13 @@ public class RingBufferImpl implements RingBuffer {
 	private int partialWrite(byte[] data, int offset, int length)
 			throws IOException {
 		int maxWrite = Math.min(length, (bufBottom > bufPos ? bufBottom
-				: buffer.length) - bufPos);
+				: size) - bufPos);
 		System.arraycopy(data, offset, buffer, bufPos, maxWrite);
 		outputStream.write(data, offset, maxWrite);
 		bufPos += maxWrite;
-		bufPos %= buffer.length;
+		if (bufPos == size) {
+			bufPos = 0;
+		}
 		return maxWrite;
 	}
 
@@ -339,15 +446,35 @@ public class RingBufferImpl implements RingBuffer {
 		if (outputStream == null) {
 			throw new IllegalStateException("Cannot write to read buffer");
 		}
-		int usedBelow = (bufPos + buffer.length - bufBottom) % buffer.length;
+		int usedBelow = used(bufBottom, bufPos);
 		if (usedBelow > maxDistance) {
-			int discard = usedBelow - maxDistance;
-			bufBottom += discard;
-			bufBottom %= buffer.length;
-			usedBelow -= discard;
+			bufBottom = wrap(bufBottom + usedBelow - maxDistance);
 		}
 	}
 
+	/**
+	 * Returns the number of bytes between two positions in the buffer.
+	 * 
+	 * @param from
+	 *            The starting position.
+	 * @param to
+	 *            The ending position, which may have wrapped around.
+	 */
+	private int used(int from, int to) {
+		int used = to - from;
+		return used < 0 ? used + size : used;
+	}
+
+	/**
+	 * Wraps around a position that may be past the end of the buffer.
+	 * 
+	 * @param pos
+	 *            A position between 0 and twice the buffer size.
+	 */
+	private int wrap(int pos) {
+		return pos >= size ? pos - size : pos;
+	}
+
 	/**
 	 * An implementation of RingBuffer.Match.
 	 */
@@ -372,43 +499,99 @@ public class RingBufferImpl implements RingBuffer {
 	}
 
 	/**
-	 * A hash map of linked lists of positions within the buffer where certain
-	 * byte sequences may appear.
+	 * A hash map of chains of positions within the buffer where certain byte
+	 * sequences may appear.
+	 * 
+	 * The map stores file offsets in two arrays of ints, like zlib does: head
+	 * holds the most recent offset for each bucket, and prev holds, for each
+	 * offset, the previous one in the same bucket. The offsets are stored in
+	 * prev at their position modulo its size, which is at least the size of
+	 * the buffer, so the entries for old data are overwritten as the window
+	 * slides and the map uses a fixed amount of memory. The chains are in
+	 * decreasing offset order and must not be followed past the window.
 	 * 
-	 * The positions are stored in increasing distance order and are not cleaned
-	 * automatically.
+	 * File offsets are 64-bit, but the arrays store them relative to a base
+	 * offset. When the relative offsets grow too large, the base is moved
+	 * forward by a multiple of the size of prev, and the stored offsets that
+	 * would become negative are dropped, as they are far outside the window.
+	 * 
+	 * Positions are indexed once they have been read, right before looking
+	 * for a match, so the positions within long matches can be left out.
 	 */
 	private class PositionMap {
 		private static final int KEY_LENGTH = 3;
-		private static final int BUCKETS = 32771;
-		private Position[] positions = new Position[BUCKETS];
+		private static final int BUCKETS = 1 << 15;
+		private static final int HASH_SHIFT = 5;
+		private static final int MAX_RELATIVE_OFFSET = 1 << 30;
+		private final int[] head;
+		private final int[] prev;
+		private final int prevMask;
+		private long baseOffset;
+		private long nextOffset;
+
+		public PositionMap() {
+			head = new int[BUCKETS];
+			Arrays.fill(head, -1);
+			prev = new int[Integer.highestOneBit(size - 1) << 1];
+			prevMask = prev.length - 1;
+			baseOffset = 0;
+			nextOffset = 0;
+		}
 
 		/**
-		 * Indexes the last bytes read in the buffer.
+		 * Indexes the positions that have not been indexed or skipped yet
+		 * before a given file offset, as long as they are still in the
+		 * buffer and are followed by enough bytes to calculate their hash.
 		 * 
-		 * @param read
-		 *            The number of bytes that were read.
+		 * @param endOffset
+		 *            The file offset to stop indexing at.
 		 */
-		public void indexPositions(int read) {
-			int bufBottomOffset = bufPosOffset
-					- (buffer.length + bufBottom - bufPos) % buffer.length;
-			int bufTopOffset = bufPosOffset + (buffer.length + bufTop - bufPos)
-					% buffer.length;
-			for (int i = 1 - read - KEY_LENGTH; i < 1 - KEY_LENGTH; ++i) {
-				int curPos = (bufTop + buffer.length + i) % buffer.length;
-				int curPosOffset = bufTopOffset + i;
-				if (curPosOffset >= bufBottomOffset) {
-					indexPosition(curPos, curPosOffset);
+		public void indexPositions(long endOffset) {
+			long bufBottomOffset = bufPosOffset - used(bufBottom, bufPos);
+			long bufTopOffset = bufPosOffset + used(bufPos, bufTop);
+			long start = Math.max(nextOffset, bufBottomOffset);
+			long end = Math.min(endOffset, bufTopOffset - KEY_LENGTH + 1);
+			int curPos = bufPos - (int) (bufPosOffset - start);
+			if (curPos < 0) {
+				curPos += size;
+			}
+			for (long curPosOffset = start; curPosOffset < end; ++curPosOffset) {
+				indexPosition(curPos, curPosOffset);
+				if (++curPos == size) {
+					curPos = 0;
 				}
 			}
+			nextOffset = Math.max(nextOffset, endOffset);
+		}
+
+		/**
+		 * Leaves the positions that have not been indexed yet before a given
+		 * file offset out of the map.
+		 * 
+		 * @param endOffset
+		 *            The file offset to stop skipping at.
+		 */
+		public void skipPositions(long endOffset) {
+			nextOffset = Math.max(nextOffset, endOffset);
+		}
+
+		/**
+		 * Returns the most recent offset for the bytes at the current read
+		 * position, or -1 if there is none.
+		 */
+		public long getFirstMatchingOffset() {
+			return toOffset(head[calculateHash(bufPos)]);
 		}
 
 		/**
-		 * Returns the first Position object for the bytes at the current read
-		 * position.
+		 * Returns the offset that precedes a given one in its chain, or -1 if
+		 * there is none.
+		 * 
+		 * @param offset
+		 *            An offset within the window.
 		 */
-		public Position getFirstMatchingPosition() {
-			return positions[calculateHash(bufPos)];
+		public long getPreviousOffset(long offset) {
+			return toOffset(prev[(int) (offset - baseOffset) & prevMask]);
 		}
 
 		/**
@@ -419,54 +602,65 @@ public class RingBufferImpl implements RingBuffer {
 		 * @param posOffset
 		 *            The file offset this position represents.
 		 */
-		private void indexPosition(int pos, int posOffset) {
+		private void indexPosition(int pos, long posOffset) {
+			if (posOffset - baseOffset >= MAX_RELATIVE_OFFSET) {
+				rebase(posOffset);
+			}
 			int hash = calculateHash(pos);
-			positions[hash] = new Position(posOffset, positions[hash]);
+			int relativeOffset = (int) (posOffset - baseOffset);
+			prev[relativeOffset & prevMask] = head[hash];
+			head[hash] = relativeOffset;
 		}
 
 		/**
-		 * Calculates a bucket number for the bytes at a given position.
+		 * Converts a stored relative offset into a file offset.
 		 * 
-		 * @param pos
-		 *            The position to calculate the hash for.
-		 * @return The bucket number for the bytes.
+		 * @param relativeOffset
+		 *            The stored offset, or -1 if there is none.
+		 * @return The file offset, or -1 if there is none.
 		 */
-		private int calculateHash(int pos) {
-			int hash = 0;
-			for (int i = 0; i < KEY_LENGTH; ++i) {
-				hash *= 257;
-				hash += buffer[(pos + i) % buffer.length] & 0xff;
-				hash %= BUCKETS;
-			}
-			return hash;
-		}
-
-	}
-
-	/**
-	 * A position in the input file name where a given byte sequence may appear.
-	 */
-	private class Position {
-		private final int offset;
-		private final Position next;
-
-		private Position(int offset, Position next) {
-			this.offset = offset;
-			this.next = next;
+		private long toOffset(int relativeOffset) {
+			return relativeOffset < 0 ? -1 : baseOffset + relativeOffset;
 		}
 
 		/**
-		 * Returns the match distance.
+		 * Moves the base offset forward, keeping the stored offsets within a
+		 * buffer's length of a given file offset.
+		 * 
+		 * @param posOffset
+		 *            The file offset that is about to be indexed.
 		 */
-		public int getDistance() {
-			return bufPosOffset - offset;
+		private void rebase(long posOffset) {
+			long delta = ((posOffset - baseOffset) & ~(long) prevMask)
+					- prev.length;
+			rebaseArray(head, delta);
+			rebaseArray(prev, delta);
+			baseOffset += delta;
+		}
+
+		private void rebaseArray(int[] offsets, long delta) {
+			for (int i = 0; i < offsets.length; ++i) {
+				offsets[i] = offsets[i] < delta ? -1 : (int) (offsets[i] - delta);
+			}
 		}
 
 		/**
-		 * Returns the next position in the linked list.
+		 * Calculates a bucket number for the bytes at a given position, like
+		 * zlib does, so that the last KEY_LENGTH bytes fill all the bits of
+		 * the bucket number. The bytes past the end of the buffer are read
+		 * from its mirror.
+		 * 
+		 * @param pos
+		 *            The position to calculate the hash for.
+		 * @return The bucket number for the bytes.
 		 */
-		public Position getNext() {
-			return next;
+		private int calculateHash(int pos) {
+			int hash = 0;
+			for (int i = 0; i < KEY_LENGTH; ++i) {
+				hash = (hash << HASH_SHIFT) ^ (buffer[pos + i] & 0xff);
+			}
+			return hash & (BUCKETS - 1);
 		}
+
 	}
 }
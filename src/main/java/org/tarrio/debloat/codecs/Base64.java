@@ -0,0 +1,188 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+/**
+ * Encodes and decodes byte arrays to and from base64 (RFC 4648) without
+ * creating intermediate strings.
+ *
+ * @author Jacobo Tarrio
+ */
+final class Base64 {
+
+	private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.getBytes();
+
+	private static final byte PAD = '=';
+
+	/**
+	 * Maps each character to its 6-bit value, or to -1 if it is not part of
+	 * the alphabet.
+	 */
+	private static final byte[] VALUES = makeValues();
+
+	/**
+	 * Avoid subclassing and instantiation.
+	 */
+	private Base64() {
+	}
+
+	/**
+	 * Returns the number of characters needed to encode a given number of
+	 * bytes.
+	 */
+	public static int encodedLength(int length) {
+		return (length + 2) / 3 * 4;
+	}
+
+	/**
+	 * Returns the maximum number of bytes a given number of characters can
+	 * decode into.
+	 */
+	public static int maxDecodedLength(int length) {
+		return (length + 3) / 4 * 3;
+	}
+
+	/**
+	 * Encodes a part of a byte array.
+	 *
+	 * @param data
+	 *            The array containing the data to encode.
+	 * @param offset
+	 *            The offset of the data within the array.
+	 * @param length
+	 *            The number of bytes to encode.
+	 * @param dest
+	 *            The array to write the encoded characters into. It must have
+	 *            room for encodedLength(length) characters.
+	 * @param destOffset
+	 *            The offset within dest to start writing at.
+	 * @return The number of characters written.
+	 */
+	public static int encode(byte[] data, int offset, int length, byte[] dest,
+			int destOffset) {
+		int out = destOffset;
+		int end = offset + length;
+		int i = offset;
+		for (; i + 3 <= end; i += 3) {
+			int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8
+					| (data[i + 2] & 0xff);
+			dest[out++] = ALPHABET[bits >>> 18];
+			dest[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+			dest[out++] = ALPHABET[(bits >>> 6) & 0x3f];
+			dest[out++] = ALPHABET[bits & 0x3f];
+		}
+		if (i < end) {
+			int bits = (data[i] & 0xff) << 16;
+			if (i + 1 < end) {
+				bits |= (data[i + 1] & 0xff) << 8;
+			}
+			dest[out++] = ALPHABET[bits >>> 18];
+			dest[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+			dest[out++] = i + 1 < end ? ALPHABET[(bits >>> 6) & 0x3f] : PAD;
+			dest[out++] = PAD;
+		}
+		return out - destOffset;
+	}
+
+	/**
+	 * Decodes a sequence of base64 characters, ignoring any whitespace.
+	 *
+	 * @param chars
+	 *            The array containing the characters to decode.
+	 * @param offset
+	 *            The offset of the characters within the array.
+	 * @param length
+	 *            The number of characters to decode.
+	 * @param dest
+	 *            The array to write the decoded bytes into. It must have room
+	 *            for maxDecodedLength(length) bytes.
+	 * @param destOffset
+	 *            The offset within dest to start writing at.
+	 * @return The number of bytes written, or -1 if the characters were not
+	 *         valid base64.
+	 */
+	public static int decode(byte[] chars, int offset, int length,
+			byte[] dest, int destOffset) {
+		int out = destOffset;
+		int bits = 0;
+		int count = 0;
+		int padding = 0;
+		for (int i = offset; i < offset + length; ++i) {
+			byte c = chars[i];
+			if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+				continue;
+			}
+			int value;
+			if (c == PAD) {
+				++padding;
+				value = 0;
+			} else if (c < 0 || VALUES[c] == -1 || padding > 0) {
+				return -1;
+			} else {
+				value = VALUES[c];
+			}
+			bits = bits << 6 | value;
+			if (++count == 4) {
+				dest[out++] = (byte) (bits >>> 16);
+				dest[out++] = (byte) (bits >>> 8);
+				dest[out++] = (byte) bits;
+				bits = 0;
+				count = 0;
+			}
+		}
+		if (count != 0 || padding > 2) {
+			return -1;
+		}
+		return out - destOffset - padding;
+	}
+
+	/**
+	 * Decodes a string of base64 characters, ignoring any whitespace.
+	 *
+	 * @param chars
+	 *            The characters to decode.
+	 * @return The decoded bytes, or null if the characters were not valid
+	 *         base64.
+	 */
+	public static byte[] decode(String chars) {
+		byte[] ascii = new byte[chars.length()];
+		for (int i = 0; i < ascii.length; ++i) {
+			char c = chars.charAt(i);
+			ascii[i] = c < 128 ? (byte) c : -1;
+		}
+		byte[] decoded = new byte[maxDecodedLength(ascii.length)];
+		int length = decode(ascii, 0, ascii.length, decoded, 0);
+		if (length == -1) {
+			return null;
+		}
+		byte[] result = new byte[length];
+		System.arraycopy(decoded, 0, result, 0, length);
+		return result;
+	}
+
+	private static byte[] makeValues() {
+		byte[] values = new byte[128];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = -1;
+		}
+		for (int i = 0; i < ALPHABET.length; ++i) {
+			values[ALPHABET[i]] = (byte) i;
+		}
+		return values;
+	}
+}
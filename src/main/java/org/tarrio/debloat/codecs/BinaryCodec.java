@@ -0,0 +1,427 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.SymbolVisitor;
+
+/**
+ * A Codec that stores the compressed data in a compact binary format.
+ *
+ * The data starts with a magic number, a version byte and the algorithm's
+ * name, and then contains a sequence of symbols. Each symbol starts with a
+ * varint whose low three bits are a tag and whose remaining bits hold the
+ * symbol's first value. Consecutive bytes and literal runs are stored
+ * together as a literal run, which is decoded as a literal run symbol (or a
+ * byte symbol if it only has one byte). The data ends with an end tag.
+ *
+ * @author Jacobo Tarrio
+ */
+class BinaryCodec implements Codec {
+
+	static final byte[] MAGIC = new byte[] { 'D', 'B', 'L', 'B' };
+	static final int VERSION = 1;
+
+	static final int END_TAG = 0;
+	static final int LITERALS_TAG = 1;
+	static final int REFERENCE_TAG = 2;
+	static final int DICTIONARY_TAG = 3;
+	static final int RESET_TAG = 4;
+	static final int CHECKPOINT_TAG = 5;
+	static final int REPEAT_TAG = 6;
+
+	static final int TAG_BITS = 3;
+	static final int TAG_MASK = (1 << TAG_BITS) - 1;
+
+	/**
+	 * The maximum number of bytes in a literal run.
+	 */
+	static final int MAX_LITERALS = 4096;
+
+	/**
+	 * The maximum length of the algorithm's name, in bytes.
+	 */
+	static final int MAX_NAME_LENGTH = 256;
+
+	private static final String NAME_ENCODING = "UTF-8";
+	private static final long UNSIGNED_INT_MASK = 0xffffffffL;
+
+	@Override
+	public Encoder getEncoder(OutputStream output) throws IOException {
+		return new EncoderImpl(output);
+	}
+
+	@Override
+	public Decoder getDecoder(InputStream input) throws IOException {
+		return new DecoderImpl(input);
+	}
+
+	/**
+	 * Writes the header of a binary format: the magic number, the version byte
+	 * and the algorithm's name.
+	 * 
+	 * @param output
+	 *            The buffer to write the header into.
+	 * @param magic
+	 *            The format's magic number.
+	 * @param version
+	 *            The format's version.
+	 * @param algorithm
+	 *            The name of the algorithm.
+	 * @throws IOException
+	 *             If there was a problem writing into the output stream.
+	 */
+	static void writeHeader(OutputBuffer output, byte[] magic, int version,
+			String algorithm) throws IOException {
+		byte[] name = algorithm.getBytes(NAME_ENCODING);
+		if (name.length > MAX_NAME_LENGTH) {
+			throw new IllegalArgumentException(
+					"The algorithm's name is too long: " + algorithm);
+		}
+		output.write(magic);
+		output.write(version);
+		output.writeVarint(name.length);
+		output.write(name);
+	}
+
+	/**
+	 * Reads the header written by writeHeader().
+	 * 
+	 * @param input
+	 *            The buffer to read the header from.
+	 * @param magic
+	 *            The expected magic number.
+	 * @param version
+	 *            The expected version.
+	 * @return The name of the algorithm.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream, or
+	 *             the header was not the expected one.
+	 */
+	static String readHeader(InputBuffer input, byte[] magic, int version)
+			throws IOException {
+		byte[] readMagic = new byte[magic.length];
+		input.readFully(readMagic, readMagic.length);
+		for (int i = 0; i < magic.length; ++i) {
+			if (readMagic[i] != magic[i]) {
+				throw new IOException(
+						"The stream does not contain the expected compressed data");
+			}
+		}
+		int readVersion = input.readByte();
+		if (readVersion != version) {
+			throw new IOException("Unsupported format version " + readVersion);
+		}
+		long length = input.readVarint();
+		if (length > MAX_NAME_LENGTH) {
+			throw new IOException("The algorithm's name is too long");
+		}
+		byte[] name = new byte[(int) length];
+		input.readFully(name, name.length);
+		return new String(name, NAME_ENCODING);
+	}
+
+	/**
+	 * A class to encode compressed data in the binary format.
+	 */
+	private static class EncoderImpl implements BatchEncoder {
+
+		private final OutputBuffer output;
+		private boolean wroteHeader;
+		private final byte[] literals;
+		private int literalCount;
+
+		public EncoderImpl(OutputStream output) {
+			this.output = new OutputBuffer(output);
+			this.wroteHeader = false;
+			this.literals = new byte[MAX_LITERALS];
+			this.literalCount = 0;
+		}
+
+		@Override
+		public void setAlgorithm(String algorithm) throws IOException {
+			writeHeader(output, MAGIC, VERSION, algorithm);
+			wroteHeader = true;
+		}
+
+		@Override
+		public void write(Symbol symbol) throws IOException {
+			checkWroteHeader();
+			if (symbol instanceof Symbol.Byte) {
+				writeByte(((Symbol.Byte) symbol).getByteValue());
+			} else if (symbol instanceof Symbol.Literals) {
+				byte[] bytes = ((Symbol.Literals) symbol).getBytes();
+				writeLiterals(bytes, 0, bytes.length);
+			} else if (symbol instanceof Symbol.BackRef) {
+				Symbol.BackRef backRef = (Symbol.BackRef) symbol;
+				writeBackRef(backRef.getDistance(), backRef.getLength());
+			} else if (symbol instanceof Symbol.RepeatRef) {
+				Symbol.RepeatRef repeatRef = (Symbol.RepeatRef) symbol;
+				writeRepeatRef(repeatRef.getSlot(), repeatRef.getLength());
+			} else if (symbol instanceof Symbol.DictionaryRef) {
+				writeDictionaryRef(((Symbol.DictionaryRef) symbol).getEntry());
+			} else if (symbol instanceof Symbol.Reset) {
+				writeReset();
+			} else if (symbol instanceof Symbol.Checkpoint) {
+				writeCheckpoint(((Symbol.Checkpoint) symbol).getOffset());
+			} else {
+				throw new IllegalStateException(
+						"Cannot write symbol of unknown type "
+								+ symbol.getClass().getSimpleName());
+			}
+		}
+
+		@Override
+		public void write(SymbolBuffer symbols) throws IOException {
+			checkWroteHeader();
+			int size = symbols.size();
+			for (int i = 0; i < size; ++i) {
+				switch (symbols.getKind(i)) {
+				case SymbolBuffer.BYTE:
+					writeByte(symbols.getByteValue(i));
+					break;
+				case SymbolBuffer.LITERALS:
+					writeLiterals(symbols.getLiteralBytes(),
+							symbols.getLiteralOffset(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.BACK_REF:
+					writeBackRef(symbols.getDistance(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.REPEAT_REF:
+					writeRepeatRef(symbols.getSlot(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.DICTIONARY_REF:
+					writeDictionaryRef(symbols.getEntry(i));
+					break;
+				case SymbolBuffer.RESET:
+					writeReset();
+					break;
+				default:
+					writeCheckpoint(symbols.getOffset(i));
+				}
+			}
+		}
+
+		private void writeByte(byte value) throws IOException {
+			if (literalCount == MAX_LITERALS) {
+				flushLiterals();
+			}
+			literals[literalCount++] = value;
+		}
+
+		private void writeLiterals(byte[] bytes, int offset, int length)
+				throws IOException {
+			while (length > 0) {
+				if (literalCount == MAX_LITERALS) {
+					flushLiterals();
+				}
+				int chunk = Math.min(length, MAX_LITERALS - literalCount);
+				System.arraycopy(bytes, offset, literals, literalCount, chunk);
+				literalCount += chunk;
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		private void writeBackRef(int distance, int length) throws IOException {
+			flushLiterals();
+			writeTagged(REFERENCE_TAG, distance & UNSIGNED_INT_MASK);
+			output.writeVarint(length & UNSIGNED_INT_MASK);
+		}
+
+		private void writeRepeatRef(int slot, int length) throws IOException {
+			flushLiterals();
+			writeTagged(REPEAT_TAG, slot & UNSIGNED_INT_MASK);
+			output.writeVarint(length & UNSIGNED_INT_MASK);
+		}
+
+		private void writeDictionaryRef(int entry) throws IOException {
+			flushLiterals();
+			writeTagged(DICTIONARY_TAG, entry & UNSIGNED_INT_MASK);
+		}
+
+		private void writeReset() throws IOException {
+			flushLiterals();
+			writeTagged(RESET_TAG, 0);
+		}
+
+		private void writeCheckpoint(long offset) throws IOException {
+			flushLiterals();
+			writeTagged(CHECKPOINT_TAG, 0);
+			output.writeVarint(offset);
+		}
+
+		@Override
+		public void close() throws IOException {
+			checkWroteHeader();
+			flushLiterals();
+			writeTagged(END_TAG, 0);
+			output.flush();
+		}
+
+		private void checkWroteHeader() {
+			if (!wroteHeader) {
+				throw new IllegalStateException(
+						"Must set the algorithm's name before encoding data");
+			}
+		}
+
+		private void flushLiterals() throws IOException {
+			if (literalCount > 0) {
+				writeTagged(LITERALS_TAG, literalCount);
+				output.write(literals, 0, literalCount);
+				literalCount = 0;
+			}
+		}
+
+		private void writeTagged(int tag, long value) throws IOException {
+			output.writeVarint(value << TAG_BITS | tag);
+		}
+	}
+
+	/**
+	 * A class to decode compressed data in the binary format.
+	 * 
+	 * Symbols can be read one by one or pushed into a visitor, which avoids
+	 * creating an object for each one.
+	 */
+	private static class DecoderImpl implements PushDecoder {
+
+		private final InputBuffer input;
+		private final String algorithm;
+		private final byte[] literals;
+		private boolean finished;
+
+		public DecoderImpl(InputStream input) throws IOException {
+			this.input = new InputBuffer(input);
+			this.literals = new byte[MAX_LITERALS];
+			this.finished = false;
+			this.algorithm = readHeader(this.input, MAGIC, VERSION);
+		}
+
+		@Override
+		public String getAlgoritm() throws IOException {
+			return algorithm;
+		}
+
+		@Override
+		public Symbol read() throws IOException {
+			while (!finished) {
+				long value = input.readVarint();
+				int tag = (int) (value & TAG_MASK);
+				value >>>= TAG_BITS;
+				switch (tag) {
+				case END_TAG:
+					finished = true;
+					break;
+				case LITERALS_TAG:
+					int count = readLiterals(value);
+					return count == 1 ? Symbol.newByte(literals[0]) : Symbol
+							.newLiterals(literals, 0, count);
+				case REFERENCE_TAG:
+					int distance = toInt(value);
+					int length = toInt(input.readVarint());
+					return Symbol.newBackRef(distance, length);
+				case REPEAT_TAG:
+					int slot = toInt(value);
+					return Symbol.newRepeatRef(slot, toInt(input.readVarint()));
+				case DICTIONARY_TAG:
+					return Symbol.newDictionaryRef(toInt(value));
+				case RESET_TAG:
+					return Symbol.newReset();
+				case CHECKPOINT_TAG:
+					return Symbol.newCheckpoint(input.readVarint());
+				default:
+					throw new IOException("Unknown symbol tag " + tag);
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void decode(SymbolVisitor visitor) throws IOException {
+			while (!finished) {
+				long value = input.readVarint();
+				int tag = (int) (value & TAG_MASK);
+				value >>>= TAG_BITS;
+				switch (tag) {
+				case END_TAG:
+					finished = true;
+					break;
+				case LITERALS_TAG:
+					int count = readLiterals(value);
+					if (count == 1) {
+						visitor.onByte(literals[0]);
+					} else {
+						visitor.onLiterals(literals, 0, count);
+					}
+					break;
+				case REFERENCE_TAG:
+					int distance = toInt(value);
+					visitor.onBackRef(distance, toInt(input.readVarint()));
+					break;
+				case REPEAT_TAG:
+					int slot = toInt(value);
+					visitor.onRepeatRef(slot, toInt(input.readVarint()));
+					break;
+				case DICTIONARY_TAG:
+					visitor.onDictionaryRef(toInt(value));
+					break;
+				case RESET_TAG:
+					visitor.onReset();
+					break;
+				case CHECKPOINT_TAG:
+					visitor.onCheckpoint(input.readVarint());
+					break;
+				default:
+					throw new IOException("Unknown symbol tag " + tag);
+				}
+			}
+		}
+
+		/**
+		 * Reads a literal run into the literals buffer.
+		 * 
+		 * @param length
+		 *            The length of the run.
+		 * @return The length of the run.
+		 * @throws IOException
+		 *             If the length is invalid or there was a problem reading
+		 *             from the input stream.
+		 */
+		private int readLiterals(long length) throws IOException {
+			if (length == 0 || length > MAX_LITERALS) {
+				throw new IOException("Invalid literal run length " + length);
+			}
+			input.readFully(literals, (int) length);
+			return (int) length;
+		}
+
+		private static int toInt(long value) throws IOException {
+			if (value > UNSIGNED_INT_MASK) {
+				throw new IOException("Value out of range: " + value);
+			}
+			return (int) value;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.SymbolVisitor;
+
+/**
+ * A codec that keeps the symbols of the documents it has decoded recently,
+ * so decoding the same document again does not require parsing it.
+ * 
+ * Documents are identified by the SHA-256 digest of their bytes. The cache
+ * holds symbols up to a maximum size in bytes, counting eight bytes for each
+ * packed symbol plus the bytes of its literal runs, and evicts the least
+ * recently used documents when it is full. Encoding is delegated to the
+ * wrapped codec.
+ * 
+ * @author Jacobo Tarrio
+ */
+public class CachingCodec implements Codec {
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private final Codec codec;
+	private final long maxBytes;
+	private final LinkedHashMap<BigInteger, CachedDocument> cache;
+	private long cachedBytes;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Creates a caching codec.
+	 * 
+	 * @param codec
+	 *            The codec to encode data and to parse the documents that are
+	 *            not in the cache.
+	 * @param maxBytes
+	 *            The maximum total size of the symbols to keep in the cache,
+	 *            in bytes.
+	 */
+	public CachingCodec(Codec codec, long maxBytes) {
+		this.codec = codec;
+		this.maxBytes = maxBytes;
+		this.cache = new LinkedHashMap<BigInteger, CachedDocument>(16, 0.75f,
+				true);
+		this.cachedBytes = 0;
+		this.hitCount = 0;
+		this.missCount = 0;
+		this.evictionCount = 0;
+	}
+
+	@Override
+	public Encoder getEncoder(OutputStream output) throws IOException {
+		return codec.getEncoder(output);
+	}
+
+	/**
+	 * Returns a decoder for the document in the input stream. The whole
+	 * document is read before this method returns, and it is parsed unless it
+	 * was found in the cache.
+	 */
+	@Override
+	public Decoder getDecoder(InputStream input) throws IOException {
+		byte[] data = readAll(input);
+		BigInteger digest = digest(data);
+		CachedDocument document = lookup(digest);
+		if (document == null) {
+			document = parse(data);
+			store(digest, document);
+		}
+		return new ReplayDecoder(document);
+	}
+
+	/**
+	 * Returns the number of documents that were found in the cache.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of documents that had to be parsed.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of documents that were removed from the cache to make
+	 * room for others.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the number of documents in the cache.
+	 */
+	public synchronized int getDocumentCount() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the total size of the symbols in the cache, in bytes.
+	 */
+	public synchronized long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	/**
+	 * Removes all the documents from the cache. The counters are not reset.
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		cachedBytes = 0;
+	}
+
+	private synchronized CachedDocument lookup(BigInteger digest) {
+		CachedDocument document = cache.get(digest);
+		if (document == null) {
+			++missCount;
+		} else {
+			++hitCount;
+		}
+		return document;
+	}
+
+	private synchronized void store(BigInteger digest, CachedDocument document) {
+		long size = document.getWeight();
+		if (size > maxBytes || cache.containsKey(digest)) {
+			return;
+		}
+		Iterator<Map.Entry<BigInteger, CachedDocument>> it = cache.entrySet()
+				.iterator();
+		while (cachedBytes + size > maxBytes && it.hasNext()) {
+			cachedBytes -= it.next().getValue().getWeight();
+			it.remove();
+			++evictionCount;
+		}
+		cache.put(digest, document);
+		cachedBytes += size;
+	}
+
+	private CachedDocument parse(byte[] data) throws IOException {
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(data));
+		String algorithm = decoder.getAlgoritm();
+		SymbolBuffer symbols = new SymbolBuffer();
+		symbols.readFrom(decoder, Integer.MAX_VALUE);
+		symbols.trimToSize();
+		return new CachedDocument(algorithm, symbols);
+	}
+
+	private static byte[] readAll(InputStream input) throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			data.write(buffer, 0, read);
+		}
+		return data.toByteArray();
+	}
+
+	private static BigInteger digest(byte[] data) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+			return new BigInteger(1, digest.digest(data));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(DIGEST_ALGORITHM
+					+ " is not available", e);
+		}
+	}
+
+	/**
+	 * The algorithm and symbols of a parsed document. It is not modified after
+	 * it is created, so it can be replayed by several decoders at once.
+	 */
+	private static class CachedDocument {
+		private final String algorithm;
+		private final SymbolBuffer symbols;
+
+		public CachedDocument(String algorithm, SymbolBuffer symbols) {
+			this.algorithm = algorithm;
+			this.symbols = symbols;
+		}
+
+		public String getAlgorithm() {
+			return algorithm;
+		}
+
+		public SymbolBuffer getSymbols() {
+			return symbols;
+		}
+
+		/**
+		 * Returns the number of bytes this document counts as in the cache.
+		 * Empty documents count as one so that they can be evicted too.
+		 */
+		public long getWeight() {
+			return Math.max(symbols.getByteSize(), 1);
+		}
+	}
+
+	/**
+	 * A decoder that returns the symbols of a cached document.
+	 */
+	private static class ReplayDecoder implements BatchDecoder, PushDecoder {
+		private final CachedDocument document;
+		private int position;
+
+		public ReplayDecoder(CachedDocument document) {
+			this.document = document;
+			this.position = 0;
+		}
+
+		@Override
+		public String getAlgoritm() throws IOException {
+			return document.getAlgorithm();
+		}
+
+		@Override
+		public Symbol read() throws IOException {
+			SymbolBuffer symbols = document.getSymbols();
+			if (position == symbols.size()) {
+				return null;
+			}
+			return symbols.getSymbol(position++);
+		}
+
+		@Override
+		public int read(SymbolBuffer symbols, int maxSymbols)
+				throws IOException {
+			SymbolBuffer cached = document.getSymbols();
+			int count = Math.min(cached.size() - position, maxSymbols);
+			int end = position + count;
+			while (position < end) {
+				symbols.add(cached, position++);
+			}
+			return count;
+		}
+
+		@Override
+		public void decode(SymbolVisitor visitor) throws IOException {
+			SymbolBuffer symbols = document.getSymbols();
+			int end = symbols.size();
+			symbols.accept(visitor, position, end);
+			position = end;
+		}
+	}
+}
@@ -16,15 +16,193 @@
 
 package org.tarrio.debloat.codecs;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
 import org.tarrio.debloat.Codec;
 
 /**
- * Returns a codec instance.
+ * A central registry for codecs, which returns codec instances by name and
+ * detects the codec that wrote some data.
+ * 
+ * The built-in codecs are always registered, followed by the providers found
+ * through {@link ServiceLoader}. More providers can be registered with
+ * register().
  * 
  * @author Jacobo Tarrio
  */
 public class CodecFactory {
 
+	/**
+	 * The name of the codec that writes verbose XML documents, with one
+	 * element per symbol.
+	 */
+	public static final String XML = "xml";
+
+	/**
+	 * The name of the codec that writes dense XML documents, with packed
+	 * literal runs and short element names.
+	 */
+	public static final String DENSE_XML = "xml-dense";
+
+	/**
+	 * The name of the codec that writes XML documents with the symbols
+	 * grouped in blocks and their values stored in columns.
+	 */
+	public static final String COLUMNAR_XML = "xml-columnar";
+
+	/**
+	 * The name of the codec that writes a compact binary format.
+	 */
+	public static final String BINARY = "binary";
+
+	/**
+	 * The name of the codec that entropy-codes the symbols with rANS.
+	 */
+	public static final String RANS = "rans";
+
+	/**
+	 * The name of the codec that writes gzip files, which can only store
+	 * LZ77 symbols.
+	 */
+	public static final String GZIP = "gzip";
+
+	/**
+	 * The name of the codec that writes zlib streams, which can only store
+	 * LZ77 symbols.
+	 */
+	public static final String ZLIB = "zlib";
+
+	/**
+	 * The name of the codec that writes raw DEFLATE streams, which can only
+	 * store LZ77 symbols. Their format cannot be detected.
+	 */
+	public static final String DEFLATE = "deflate";
+
+	/**
+	 * The number of bytes that are examined to detect the codec that wrote
+	 * some data.
+	 */
+	public static final int HEADER_LENGTH = 512;
+
+	private static final Map<String, CodecProvider> providers = new LinkedHashMap<String, CodecProvider>();
+
+	static {
+		register(new XmlCodecProvider(XML, XmlCodec.ROOT_TAG, true) {
+			@Override
+			public Codec getCodec() {
+				return new XmlCodec();
+			}
+		});
+		// Documents in both dialects are detected by the verbose codec,
+		// whose decoder reads them all.
+		register(new XmlCodecProvider(DENSE_XML, XmlCodec.ROOT_TAG, false) {
+			@Override
+			public Codec getCodec() {
+				return new XmlCodec(XmlCodec.Dialect.DENSE);
+			}
+		});
+		register(new XmlCodecProvider(COLUMNAR_XML, ColumnarXmlCodec.ROOT_TAG,
+				true) {
+			@Override
+			public Codec getCodec() {
+				return new ColumnarXmlCodec();
+			}
+		});
+		register(new CodecProvider() {
+			@Override
+			public String getName() {
+				return BINARY;
+			}
+
+			@Override
+			public Codec getCodec() {
+				return new BinaryCodec();
+			}
+
+			@Override
+			public boolean matches(byte[] header, int length) {
+				return startsWith(header, length, BinaryCodec.MAGIC);
+			}
+		});
+		register(new CodecProvider() {
+			@Override
+			public String getName() {
+				return RANS;
+			}
+
+			@Override
+			public Codec getCodec() {
+				return new RansCodec();
+			}
+
+			@Override
+			public boolean matches(byte[] header, int length) {
+				return startsWith(header, length, RansCodec.MAGIC);
+			}
+		});
+		register(new CodecProvider() {
+			@Override
+			public String getName() {
+				return GZIP;
+			}
+
+			@Override
+			public Codec getCodec() {
+				return new DeflateCodec(DeflateCodec.Container.GZIP);
+			}
+
+			@Override
+			public boolean matches(byte[] header, int length) {
+				return startsWith(header, length, DeflateCodec.GZIP_MAGIC);
+			}
+		});
+		register(new CodecProvider() {
+			@Override
+			public String getName() {
+				return ZLIB;
+			}
+
+			@Override
+			public Codec getCodec() {
+				return new DeflateCodec(DeflateCodec.Container.ZLIB);
+			}
+
+			@Override
+			public boolean matches(byte[] header, int length) {
+				return DeflateCodec.isZlibHeader(header, length);
+			}
+		});
+		register(new CodecProvider() {
+			@Override
+			public String getName() {
+				return DEFLATE;
+			}
+
+			@Override
+			public Codec getCodec() {
+				return new DeflateCodec(DeflateCodec.Container.RAW);
+			}
+
+			@Override
+			public boolean matches(byte[] header, int length) {
+				return false;
+			}
+		});
+		for (CodecProvider provider : ServiceLoader.load(CodecProvider.class)) {
+			register(provider);
+		}
+	}
+
 	/**
 	 * Avoid subclassing and instantiation.
 	 */
@@ -32,9 +210,192 @@ public class CodecFactory {
 	}
 
 	/**
-	 * Returns a codec instance.
+	 * Returns an instance of the default codec.
 	 */
 	public static Codec getCodec() {
-		return new XmlCodec();
+		return getCodec(XML);
+	}
+
+	/**
+	 * Returns an instance of the codec with the given name.
+	 * 
+	 * @param name
+	 *            The name of the codec.
+	 * @return The codec, or null if there is no codec with that name.
+	 */
+	public static Codec getCodec(String name) {
+		CodecProvider provider;
+		synchronized (providers) {
+			provider = providers.get(name);
+		}
+		return provider == null ? null : provider.getCodec();
+	}
+
+	/**
+	 * Returns all the registered codec names, in registration order.
+	 */
+	public static Set<String> getCodecNames() {
+		synchronized (providers) {
+			return Collections.unmodifiableSet(new LinkedHashSet<String>(
+					providers.keySet()));
+		}
+	}
+
+	/**
+	 * Registers a codec. If there was already a codec with the same name, it
+	 * is replaced.
+	 * 
+	 * @param provider
+	 *            The provider of the codec.
+	 */
+	public static void register(CodecProvider provider) {
+		synchronized (providers) {
+			providers.put(provider.getName(), provider);
+		}
+	}
+
+	/**
+	 * Returns a decoder for the data in an input stream, using the codec that
+	 * wrote it.
+	 * 
+	 * The first bytes of the stream are examined to detect the codec, and
+	 * then they are passed to the decoder. If the stream does not support
+	 * mark() and reset(), it is wrapped in a buffered stream.
+	 * 
+	 * @param input
+	 *            The stream to read data from.
+	 * @return A decoder instance.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream, or no
+	 *             registered codec could read the data.
+	 */
+	public static Codec.Decoder getDecoder(InputStream input)
+			throws IOException {
+		if (!input.markSupported()) {
+			input = new BufferedInputStream(input);
+		}
+		CodecProvider provider = detect(input);
+		if (provider == null) {
+			throw new IOException("The data was not written by a known codec");
+		}
+		return provider.getCodec().getDecoder(input);
+	}
+
+	/**
+	 * Returns the name of the codec that wrote the data in an input stream.
+	 * The stream's position is not changed.
+	 * 
+	 * @param input
+	 *            The stream to read data from. It must support mark() and
+	 *            reset().
+	 * @return The name of the codec, or null if no registered codec could
+	 *         read the data.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream.
+	 */
+	public static String detectCodec(InputStream input) throws IOException {
+		CodecProvider provider = detect(input);
+		return provider == null ? null : provider.getName();
+	}
+
+	private static CodecProvider detect(InputStream input) throws IOException {
+		if (!input.markSupported()) {
+			throw new IllegalArgumentException(
+					"The stream must support mark() and reset()");
+		}
+		byte[] header = new byte[HEADER_LENGTH];
+		int length = 0;
+		input.mark(HEADER_LENGTH);
+		try {
+			int read;
+			while (length < HEADER_LENGTH
+					&& (read = input.read(header, length, HEADER_LENGTH
+							- length)) != -1) {
+				length += read;
+			}
+		} finally {
+			input.reset();
+		}
+		List<CodecProvider> candidates;
+		synchronized (providers) {
+			candidates = new ArrayList<CodecProvider>(providers.values());
+		}
+		for (CodecProvider provider : candidates) {
+			if (provider.matches(header, length)) {
+				return provider;
+			}
+		}
+		return null;
+	}
+
+	private static boolean startsWith(byte[] header, int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; ++i) {
+			if (header[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A provider for a codec that writes XML documents, which detects them by
+	 * the name of their root element.
+	 */
+	private static abstract class XmlCodecProvider implements CodecProvider {
+		private final String name;
+		private final byte[] rootStart;
+		private final boolean detects;
+
+		public XmlCodecProvider(String name, String rootTag, boolean detects) {
+			this.name = name;
+			this.rootStart = ("<" + rootTag).getBytes();
+			this.detects = detects;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Skips the XML declaration, comments and whitespace, and checks the
+		 * name of the first element.
+		 */
+		@Override
+		public boolean matches(byte[] header, int length) {
+			if (!detects) {
+				return false;
+			}
+			int pos = 0;
+			while (pos < length) {
+				if (header[pos] != '<') {
+					if (!Character.isWhitespace(header[pos])) {
+						return false;
+					}
+					++pos;
+				} else if (pos + 1 < length
+						&& (header[pos + 1] == '?' || header[pos + 1] == '!')) {
+					while (pos < length && header[pos] != '>') {
+						++pos;
+					}
+					++pos;
+				} else {
+					break;
+				}
+			}
+			if (pos + rootStart.length >= length) {
+				return false;
+			}
+			for (int i = 0; i < rootStart.length; ++i) {
+				if (header[pos + i] != rootStart[i]) {
+					return false;
+				}
+			}
+			byte next = header[pos + rootStart.length];
+			return next == '>' || next == '/' || Character.isWhitespace(next);
+		}
 	}
 }
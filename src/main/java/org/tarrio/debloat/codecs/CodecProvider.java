@@ -0,0 +1,54 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import org.tarrio.debloat.Codec;
+
+/**
+ * Defines an API for classes that make a codec available to
+ * {@link CodecFactory}.
+ * 
+ * Providers can be registered with {@link CodecFactory#register}, or listed
+ * in a META-INF/services/org.tarrio.debloat.codecs.CodecProvider resource to
+ * be found by {@link java.util.ServiceLoader}.
+ * 
+ * @author Jacobo Tarrio
+ */
+public interface CodecProvider {
+
+	/**
+	 * Returns the name of the codec.
+	 */
+	String getName();
+
+	/**
+	 * Returns an instance of the codec.
+	 */
+	Codec getCodec();
+
+	/**
+	 * Returns whether some data looks like it was written by this codec.
+	 * 
+	 * @param header
+	 *            An array containing the first bytes of the data.
+	 * @param length
+	 *            The number of bytes in the array. It is only smaller than
+	 *            {@link CodecFactory#HEADER_LENGTH} if the data is shorter.
+	 * @return Whether this codec can read the data.
+	 */
+	boolean matches(byte[] header, int length);
+}
@@ -0,0 +1,567 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.Symbol;
+
+/**
+ * A Codec that stores the compressed data in XML, grouping the symbols in
+ * blocks and storing each kind of value in a separate column.
+ *
+ * Each block contains a column with a character for the kind of each symbol,
+ * and then one column each for the literal bytes (in base64), the
+ * back-reference distances, the repeat reference slots, the lengths of
+ * back-references, repeat references and literal runs, the dictionary entries
+ * and the checkpoint offsets. Columns with no values
+ * are omitted.
+ *
+ * @author Jacobo Tarrio
+ */
+class ColumnarXmlCodec implements Codec {
+
+	static final String ROOT_TAG = "compressedColumns";
+	static final String ALGORITHM_ATTRIB = "algorithm";
+	static final String BLOCK_TAG = "block";
+	static final String KINDS_TAG = "kinds";
+	static final String LITERALS_TAG = "literals";
+	static final String DISTANCES_TAG = "distances";
+	static final String SLOTS_TAG = "slots";
+	static final String LENGTHS_TAG = "lengths";
+	static final String ENTRIES_TAG = "entries";
+	static final String OFFSETS_TAG = "offsets";
+
+	static final byte BYTE_KIND = 'b';
+	static final byte LITERALS_KIND = 'l';
+	static final byte REFERENCE_KIND = 'r';
+	static final byte REPEAT_KIND = 'p';
+	static final byte DICTIONARY_KIND = 'd';
+	static final byte RESET_KIND = 'z';
+	static final byte CHECKPOINT_KIND = 'c';
+
+	/**
+	 * The maximum number of symbols, and of literal bytes, in a block.
+	 */
+	static final int BLOCK_SIZE = 4096;
+
+	private static final byte[] XML_HEADER_1 = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			.getBytes();
+	private static final String XML_HEADER_2_FORMAT = "<" + ROOT_TAG + " "
+			+ ALGORITHM_ATTRIB + "=\"%s\">\n";
+	private static final byte[] XML_FOOTER = ("</" + ROOT_TAG + ">\n")
+			.getBytes();
+	private static final byte[] BLOCK_START = ("<" + BLOCK_TAG + ">\n")
+			.getBytes();
+	private static final byte[] BLOCK_END = ("</" + BLOCK_TAG + ">\n")
+			.getBytes();
+
+	@Override
+	public Encoder getEncoder(OutputStream output) throws IOException {
+		return new EncoderImpl(output);
+	}
+
+	@Override
+	public Decoder getDecoder(InputStream input) throws IOException {
+		return new DecoderImpl(input);
+	}
+
+	/**
+	 * A class to encode compressed data into columnar XML documents.
+	 */
+	private static class EncoderImpl implements Encoder {
+
+		private final OutputBuffer output;
+		private boolean wroteHeader;
+
+		private final byte[] kinds;
+		private int kindCount;
+		private final byte[] literals;
+		private int literalCount;
+		private final long[] distances;
+		private int distanceCount;
+		private final long[] slots;
+		private int slotCount;
+		private final long[] lengths;
+		private int lengthCount;
+		private final long[] entries;
+		private int entryCount;
+		private final long[] offsets;
+		private int offsetCount;
+
+		public EncoderImpl(OutputStream output) throws IOException {
+			this.output = new OutputBuffer(output);
+			this.wroteHeader = false;
+			this.kinds = new byte[BLOCK_SIZE];
+			this.literals = new byte[BLOCK_SIZE];
+			this.distances = new long[BLOCK_SIZE];
+			this.slots = new long[BLOCK_SIZE];
+			this.lengths = new long[BLOCK_SIZE];
+			this.entries = new long[BLOCK_SIZE];
+			this.offsets = new long[BLOCK_SIZE];
+			this.output.write(XML_HEADER_1);
+		}
+
+		@Override
+		public void setAlgorithm(String algorithm) throws IOException {
+			output.write(String.format(XML_HEADER_2_FORMAT, algorithm)
+					.getBytes());
+			this.wroteHeader = true;
+		}
+
+		@Override
+		public void write(Symbol symbol) throws IOException {
+			checkWroteHeader();
+			if (symbol instanceof Symbol.Byte) {
+				if (literalCount == literals.length) {
+					writeBlock();
+				}
+				literals[literalCount++] = ((Symbol.Byte) symbol)
+						.getByteValue();
+				kinds[kindCount++] = BYTE_KIND;
+			} else if (symbol instanceof Symbol.Literals) {
+				writeLiterals(((Symbol.Literals) symbol).getBytes());
+			} else if (symbol instanceof Symbol.BackRef) {
+				Symbol.BackRef backRef = (Symbol.BackRef) symbol;
+				distances[distanceCount++] = backRef.getDistance();
+				lengths[lengthCount++] = backRef.getLength();
+				kinds[kindCount++] = REFERENCE_KIND;
+			} else if (symbol instanceof Symbol.RepeatRef) {
+				Symbol.RepeatRef repeatRef = (Symbol.RepeatRef) symbol;
+				slots[slotCount++] = repeatRef.getSlot();
+				lengths[lengthCount++] = repeatRef.getLength();
+				kinds[kindCount++] = REPEAT_KIND;
+			} else if (symbol instanceof Symbol.DictionaryRef) {
+				entries[entryCount++] = ((Symbol.DictionaryRef) symbol)
+						.getEntry();
+				kinds[kindCount++] = DICTIONARY_KIND;
+			} else if (symbol instanceof Symbol.Reset) {
+				kinds[kindCount++] = RESET_KIND;
+			} else if (symbol instanceof Symbol.Checkpoint) {
+				offsets[offsetCount++] = ((Symbol.Checkpoint) symbol)
+						.getOffset();
+				kinds[kindCount++] = CHECKPOINT_KIND;
+			} else {
+				throw new IllegalStateException(
+						"Cannot write symbol of unknown type "
+								+ symbol.getClass().getSimpleName());
+			}
+			if (kindCount == BLOCK_SIZE) {
+				writeBlock();
+			}
+		}
+
+		/**
+		 * Adds a literal run to the pending symbols, splitting it if it does
+		 * not fit in the current block.
+		 *
+		 * @throws IOException
+		 *             If there was a problem writing into the output stream.
+		 */
+		private void writeLiterals(byte[] bytes) throws IOException {
+			int offset = 0;
+			while (offset < bytes.length) {
+				if (literalCount == literals.length
+						|| kindCount == BLOCK_SIZE) {
+					writeBlock();
+				}
+				int length = Math.min(bytes.length - offset, literals.length
+						- literalCount);
+				System.arraycopy(bytes, offset, literals, literalCount, length);
+				literalCount += length;
+				offset += length;
+				lengths[lengthCount++] = length;
+				kinds[kindCount++] = LITERALS_KIND;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			checkWroteHeader();
+			writeBlock();
+			output.write(XML_FOOTER);
+			output.flush();
+		}
+
+		private void checkWroteHeader() {
+			if (!wroteHeader) {
+				throw new IllegalStateException(
+						"Must set the algorithm's name before encoding data");
+			}
+		}
+
+		/**
+		 * Writes the pending symbols, if any, as a block.
+		 *
+		 * @throws IOException
+		 *             If there was a problem writing into the output stream.
+		 */
+		private void writeBlock() throws IOException {
+			if (kindCount == 0) {
+				return;
+			}
+			output.write(BLOCK_START);
+			writeColumnStart(KINDS_TAG);
+			output.write(kinds, 0, kindCount);
+			writeColumnEnd(KINDS_TAG);
+			if (literalCount > 0) {
+				writeColumnStart(LITERALS_TAG);
+				output.writeBase64(literals, 0, literalCount);
+				writeColumnEnd(LITERALS_TAG);
+			}
+			writeNumberColumn(DISTANCES_TAG, distances, distanceCount);
+			writeNumberColumn(SLOTS_TAG, slots, slotCount);
+			writeNumberColumn(LENGTHS_TAG, lengths, lengthCount);
+			writeNumberColumn(ENTRIES_TAG, entries, entryCount);
+			writeNumberColumn(OFFSETS_TAG, offsets, offsetCount);
+			output.write(BLOCK_END);
+			kindCount = 0;
+			literalCount = 0;
+			distanceCount = 0;
+			slotCount = 0;
+			lengthCount = 0;
+			entryCount = 0;
+			offsetCount = 0;
+		}
+
+		/**
+		 * Writes a column of space-separated numbers, unless it is empty.
+		 *
+		 * @throws IOException
+		 *             If there was a problem writing into the output stream.
+		 */
+		private void writeNumberColumn(String tag, long[] values, int count)
+				throws IOException {
+			if (count == 0) {
+				return;
+			}
+			writeColumnStart(tag);
+			for (int i = 0; i < count; ++i) {
+				if (i > 0) {
+					output.write(' ');
+				}
+				output.writeNumber(values[i]);
+			}
+			writeColumnEnd(tag);
+		}
+
+		private void writeColumnStart(String tag) throws IOException {
+			output.write('<');
+			output.write(tag.getBytes());
+			output.write('>');
+		}
+
+		private void writeColumnEnd(String tag) throws IOException {
+			output.write('<');
+			output.write('/');
+			output.write(tag.getBytes());
+			output.write('>');
+			output.write('\n');
+		}
+	}
+
+	/**
+	 * A class to decode compressed data stored in columnar XML documents.
+	 *
+	 * The document is read with a pull parser, one block at a time.
+	 */
+	private static class DecoderImpl implements Decoder {
+
+		private static final int[] NO_NUMBERS = new int[0];
+		private static final long[] NO_LONG_NUMBERS = new long[0];
+		private static final byte[] NO_BYTES = new byte[0];
+
+		private final XMLStreamReader reader;
+		private final String algorithm;
+		private boolean finished;
+
+		private byte[] kinds;
+		private int kindPos;
+		private byte[] literals;
+		private int literalPos;
+		private int[] distances;
+		private int distancePos;
+		private int[] slots;
+		private int slotPos;
+		private int[] lengths;
+		private int lengthPos;
+		private int[] entries;
+		private int entryPos;
+		private long[] offsets;
+		private int offsetPos;
+
+		public DecoderImpl(InputStream input) throws IOException {
+			try {
+				reader = XMLInputFactory.newInstance().createXMLStreamReader(
+						input);
+				reader.nextTag();
+				if (!ROOT_TAG.equals(reader.getLocalName())) {
+					throw new IOException(String.format(
+							"XML document root is not %s but %s", ROOT_TAG,
+							reader.getLocalName()));
+				}
+				String algorithmAttrib = reader.getAttributeValue(null,
+						ALGORITHM_ATTRIB);
+				algorithm = algorithmAttrib == null ? "" : algorithmAttrib;
+				finished = false;
+				kinds = NO_BYTES;
+				kindPos = 0;
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public String getAlgoritm() throws IOException {
+			return algorithm;
+		}
+
+		@Override
+		public Symbol read() throws IOException {
+			while (kindPos == kinds.length) {
+				if (finished || !readBlock()) {
+					return null;
+				}
+			}
+			switch (kinds[kindPos++]) {
+			case BYTE_KIND:
+				return Symbol.newByte(literals[literalPos++]);
+			case LITERALS_KIND:
+				int length = lengths[lengthPos++];
+				Symbol run = Symbol.newLiterals(literals, literalPos, length);
+				literalPos += length;
+				return run;
+			case REFERENCE_KIND:
+				return Symbol.newBackRef(distances[distancePos++],
+						lengths[lengthPos++]);
+			case REPEAT_KIND:
+				return Symbol.newRepeatRef(slots[slotPos++],
+						lengths[lengthPos++]);
+			case DICTIONARY_KIND:
+				return Symbol.newDictionaryRef(entries[entryPos++]);
+			case CHECKPOINT_KIND:
+				return Symbol.newCheckpoint(offsets[offsetPos++]);
+			default:
+				return Symbol.newReset();
+			}
+		}
+
+		/**
+		 * Reads the next block of symbols.
+		 *
+		 * @return Whether a block was read, or false if the end of the
+		 *         document was reached.
+		 * @throws IOException
+		 *             If there was a problem reading the block or it was not
+		 *             valid.
+		 */
+		private boolean readBlock() throws IOException {
+			try {
+				if (reader.nextTag() == XMLStreamConstants.END_ELEMENT) {
+					finished = true;
+					reader.close();
+					return false;
+				}
+				if (!BLOCK_TAG.equals(reader.getLocalName())) {
+					throw new IOException(String.format(
+							"Unexpected tag '%s'", reader.getLocalName()));
+				}
+				byte[] newKinds = NO_BYTES;
+				literals = NO_BYTES;
+				distances = NO_NUMBERS;
+				slots = NO_NUMBERS;
+				lengths = NO_NUMBERS;
+				entries = NO_NUMBERS;
+				offsets = NO_LONG_NUMBERS;
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					String tagName = reader.getLocalName();
+					String text = reader.getElementText();
+					if (KINDS_TAG.equals(tagName)) {
+						newKinds = text.getBytes("US-ASCII");
+					} else if (LITERALS_TAG.equals(tagName)) {
+						literals = Base64.decode(text);
+						if (literals == null) {
+							throw new IOException("Invalid literal bytes");
+						}
+					} else if (DISTANCES_TAG.equals(tagName)) {
+						distances = parseNumbers(text);
+					} else if (SLOTS_TAG.equals(tagName)) {
+						slots = parseNumbers(text);
+					} else if (LENGTHS_TAG.equals(tagName)) {
+						lengths = parseNumbers(text);
+					} else if (ENTRIES_TAG.equals(tagName)) {
+						entries = parseNumbers(text);
+					} else if (OFFSETS_TAG.equals(tagName)) {
+						offsets = parseLongNumbers(text);
+					} else {
+						throw new IOException(String.format(
+								"Unexpected tag '%s'", tagName));
+					}
+				}
+				checkColumns(newKinds);
+				kinds = newKinds;
+				kindPos = 0;
+				literalPos = 0;
+				distancePos = 0;
+				slotPos = 0;
+				lengthPos = 0;
+				entryPos = 0;
+				offsetPos = 0;
+				return true;
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
+		}
+
+		/**
+		 * Checks that the number of values in each column matches the kinds
+		 * of symbols in the block.
+		 *
+		 * @throws IOException
+		 *             If the columns do not match.
+		 */
+		private void checkColumns(byte[] newKinds) throws IOException {
+			long byteCount = 0;
+			int runCount = 0;
+			int referenceCount = 0;
+			int repeatCount = 0;
+			int entryCount = 0;
+			int offsetCount = 0;
+			for (byte kind : newKinds) {
+				if (kind == BYTE_KIND) {
+					++byteCount;
+				} else if (kind == LITERALS_KIND) {
+					++runCount;
+				} else if (kind == REFERENCE_KIND) {
+					++referenceCount;
+				} else if (kind == REPEAT_KIND) {
+					++repeatCount;
+				} else if (kind == DICTIONARY_KIND) {
+					++entryCount;
+				} else if (kind == CHECKPOINT_KIND) {
+					++offsetCount;
+				} else if (kind != RESET_KIND) {
+					throw new IOException(String.format(
+							"Unexpected symbol kind '%c'", (char) kind));
+				}
+			}
+			if (runCount + referenceCount + repeatCount != lengths.length) {
+				throw new IOException(
+						"Column sizes do not match the symbol kinds");
+			}
+			int lengthPos = 0;
+			for (byte kind : newKinds) {
+				if (kind == LITERALS_KIND) {
+					if (lengths[lengthPos] < 0) {
+						throw new IOException(String.format(
+								"Invalid literal run length %d",
+								lengths[lengthPos]));
+					}
+					byteCount += lengths[lengthPos];
+				}
+				if (kind == LITERALS_KIND || kind == REFERENCE_KIND
+						|| kind == REPEAT_KIND) {
+					++lengthPos;
+				}
+			}
+			if (byteCount != literals.length
+					|| referenceCount != distances.length
+					|| repeatCount != slots.length
+					|| entryCount != entries.length
+					|| offsetCount != offsets.length) {
+				throw new IOException(
+						"Column sizes do not match the symbol kinds");
+			}
+		}
+
+		/**
+		 * Parses a whitespace-separated list of decimal numbers that fit in an
+		 * int.
+		 *
+		 * @throws IOException
+		 *             If the list contained anything other than numbers.
+		 */
+		private static int[] parseNumbers(String text) throws IOException {
+			long[] values = parseLongNumbers(text);
+			int[] numbers = new int[values.length];
+			for (int i = 0; i < values.length; ++i) {
+				if (values[i] < Integer.MIN_VALUE
+						|| values[i] > Integer.MAX_VALUE) {
+					throw new IOException(String.format(
+							"Number out of range in column: %d", values[i]));
+				}
+				numbers[i] = (int) values[i];
+			}
+			return numbers;
+		}
+
+		/**
+		 * Parses a whitespace-separated list of decimal numbers.
+		 *
+		 * @throws IOException
+		 *             If the list contained anything other than numbers.
+		 */
+		private static long[] parseLongNumbers(String text) throws IOException {
+			int count = 0;
+			boolean inNumber = false;
+			for (int i = 0; i < text.length(); ++i) {
+				boolean isSpace = Character.isWhitespace(text.charAt(i));
+				if (!isSpace && !inNumber) {
+					++count;
+				}
+				inNumber = !isSpace;
+			}
+			long[] numbers = new long[count];
+			int pos = 0;
+			for (int i = 0; i < count; ++i) {
+				while (Character.isWhitespace(text.charAt(pos))) {
+					++pos;
+				}
+				boolean negative = text.charAt(pos) == '-';
+				if (negative) {
+					++pos;
+				}
+				long value = 0;
+				int digitsStart = pos;
+				while (pos < text.length()
+						&& !Character.isWhitespace(text.charAt(pos))) {
+					char c = text.charAt(pos++);
+					if (c < '0' || c > '9'
+							|| value > (Long.MAX_VALUE - (c - '0')) / 10) {
+						throw new IOException(String.format(
+								"Invalid number in column: '%s'",
+								text.substring(digitsStart, pos)));
+					}
+					value = value * 10 + (c - '0');
+				}
+				if (pos == digitsStart) {
+					throw new IOException("Invalid number in column: '-'");
+				}
+				numbers[i] = negative ? -value : value;
+			}
+			return numbers;
+		}
+	}
+}
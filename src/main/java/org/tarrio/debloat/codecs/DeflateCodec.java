@@ -0,0 +1,1047 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.RecentDistances;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+
+/**
+ * A Codec that stores LZ77 symbols as a DEFLATE bitstream (RFC 1951), in a
+ * raw stream, a zlib stream (RFC 1950) or a gzip file (RFC 1952). The output
+ * can be decompressed with {@link java.util.zip.Inflater} or zlib, and the
+ * decoder turns any DEFLATE stream back into symbols.
+ *
+ * Only byte, literal run, back-reference and repeat reference symbols can be
+ * stored. Repeat references are stored as back-references to the distance
+ * they refer to. The contents of stored blocks are decoded as literal runs.
+ * Back-references must not be farther than MAX_DISTANCE; longer ones than
+ * MAX_LENGTH are split, and shorter ones than MIN_LENGTH are stored as bytes.
+ * Checkpoints end the current block but are not stored.
+ *
+ * The gzip container stores the algorithm's name in an extra field; in the
+ * other containers, or if the field is missing, the decoder reports the
+ * algorithm as DEFAULT_ALGORITHM. The decoder reads all the members of a gzip
+ * file, as a single stream of symbols.
+ *
+ * @author Jacobo Tarrio
+ */
+class DeflateCodec implements Codec {
+
+	/**
+	 * The algorithm reported by the decoder when the data does not say.
+	 */
+	static final String DEFAULT_ALGORITHM = "lz77";
+
+	static final int MAX_DISTANCE = 32768;
+	static final int MIN_LENGTH = 3;
+	static final int MAX_LENGTH = 258;
+
+	/**
+	 * The maximum number of symbols in a block.
+	 */
+	static final int BLOCK_SIZE = 16384;
+
+	static final byte[] GZIP_MAGIC = new byte[] { 0x1f, (byte) 0x8b };
+	private static final int GZIP_FEXTRA = 4;
+	private static final int GZIP_FNAME = 8;
+	private static final int GZIP_FCOMMENT = 16;
+	private static final int GZIP_FHCRC = 2;
+	private static final int GZIP_OS_UNKNOWN = 255;
+	private static final byte[] GZIP_SUBFIELD_ID = new byte[] { 'D', 'b' };
+	private static final int ZLIB_CMF = 0x78;
+	private static final int ZLIB_FLG = 0x9c;
+	private static final int DEFLATE_METHOD = 8;
+
+	private static final int STORED_BLOCK = 0;
+	private static final int FIXED_BLOCK = 1;
+	private static final int DYNAMIC_BLOCK = 2;
+
+	private static final int END_OF_BLOCK = 256;
+	private static final int LITERAL_CODES = 286;
+	private static final int DISTANCE_CODES = 30;
+	private static final int CODE_LENGTH_CODES = 19;
+	private static final int MAX_CODE_LENGTH = 15;
+	private static final int MAX_CODE_LENGTH_CODE_LENGTH = 7;
+
+	private static final int[] LENGTH_BASE = new int[] { 3, 4, 5, 6, 7, 8, 9,
+			10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115,
+			131, 163, 195, 227, 258 };
+	private static final int[] LENGTH_EXTRA = new int[] { 0, 0, 0, 0, 0, 0, 0,
+			0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+	private static final int[] DISTANCE_BASE = new int[] { 1, 2, 3, 4, 5, 7,
+			9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025,
+			1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+	private static final int[] DISTANCE_EXTRA = new int[] { 0, 0, 0, 0, 1, 1,
+			2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12,
+			12, 13, 13 };
+	private static final int[] CODE_LENGTH_ORDER = new int[] { 16, 17, 18, 0,
+			8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+	private static final int[] FIXED_LITERAL_LENGTHS = new int[288];
+	private static final int[] FIXED_DISTANCE_LENGTHS = new int[DISTANCE_CODES];
+	private static final int[] FIXED_LITERAL_CODES;
+	private static final int[] FIXED_DISTANCE_CODES;
+
+	/**
+	 * The length code for each length, indexed by length.
+	 */
+	private static final int[] LENGTH_CODE = new int[MAX_LENGTH + 1];
+
+	static {
+		Arrays.fill(FIXED_LITERAL_LENGTHS, 0, 144, 8);
+		Arrays.fill(FIXED_LITERAL_LENGTHS, 144, 256, 9);
+		Arrays.fill(FIXED_LITERAL_LENGTHS, 256, 280, 7);
+		Arrays.fill(FIXED_LITERAL_LENGTHS, 280, 288, 8);
+		Arrays.fill(FIXED_DISTANCE_LENGTHS, 5);
+		FIXED_LITERAL_CODES = Huffman.buildCodes(FIXED_LITERAL_LENGTHS);
+		FIXED_DISTANCE_CODES = Huffman.buildCodes(FIXED_DISTANCE_LENGTHS);
+		for (int code = 0; code < LENGTH_BASE.length; ++code) {
+			for (int length = LENGTH_BASE[code]; length <= MAX_LENGTH
+					&& length < LENGTH_BASE[code] + (1 << LENGTH_EXTRA[code]); ++length) {
+				LENGTH_CODE[length] = code;
+			}
+		}
+		LENGTH_CODE[MAX_LENGTH] = LENGTH_BASE.length - 1;
+	}
+
+	/**
+	 * The container the DEFLATE stream is stored in.
+	 */
+	enum Container {
+		RAW, ZLIB, GZIP;
+	}
+
+	private final Container container;
+
+	/**
+	 * Creates a codec that writes gzip files.
+	 */
+	DeflateCodec() {
+		this(Container.GZIP);
+	}
+
+	/**
+	 * Creates a codec.
+	 *
+	 * @param container
+	 *            The container to write and read the DEFLATE stream in.
+	 */
+	DeflateCodec(Container container) {
+		this.container = container;
+	}
+
+	@Override
+	public Encoder getEncoder(OutputStream output) throws IOException {
+		return new EncoderImpl(output, container);
+	}
+
+	@Override
+	public Decoder getDecoder(InputStream input) throws IOException {
+		return new DecoderImpl(input, container);
+	}
+
+	/**
+	 * Returns whether some data starts with a zlib header for a DEFLATE
+	 * stream.
+	 */
+	static boolean isZlibHeader(byte[] header, int length) {
+		return length >= 2 && (header[0] & 0x0f) == DEFLATE_METHOD
+				&& (header[0] & 0xf0) <= 0x70
+				&& ((header[0] & 0xff) << 8 | (header[1] & 0xff)) % 31 == 0
+				&& (header[1] & 0x20) == 0;
+	}
+
+	private static Checksum newChecksum(Container container) {
+		return container == Container.ZLIB ? new Adler32() : new CRC32();
+	}
+
+	private static int distanceCode(int distance) {
+		int code = Arrays.binarySearch(DISTANCE_BASE, distance);
+		return code >= 0 ? code : -code - 2;
+	}
+
+	/**
+	 * A class to encode LZ77 symbols as a DEFLATE stream.
+	 */
+	private static class EncoderImpl implements BatchEncoder {
+
+		private final OutputBuffer output;
+		private final Container container;
+		private final BitOutput bits;
+		private final History history;
+		private final RecentDistances recent;
+		private boolean wroteHeader;
+
+		private final int[] symbolLengths;
+		private final int[] symbolValues;
+		private int symbolCount;
+		private final int[] literalFreqs;
+		private final int[] distanceFreqs;
+
+		public EncoderImpl(OutputStream output, Container container) {
+			this.output = new OutputBuffer(output);
+			this.container = container;
+			this.bits = new BitOutput(this.output);
+			this.history = new History(newChecksum(container));
+			this.recent = new RecentDistances();
+			this.wroteHeader = false;
+			this.symbolLengths = new int[BLOCK_SIZE];
+			this.symbolValues = new int[BLOCK_SIZE];
+			this.symbolCount = 0;
+			this.literalFreqs = new int[LITERAL_CODES];
+			this.distanceFreqs = new int[DISTANCE_CODES];
+		}
+
+		@Override
+		public void setAlgorithm(String algorithm) throws IOException {
+			if (container == Container.GZIP) {
+				byte[] name = algorithm.getBytes("UTF-8");
+				output.write(GZIP_MAGIC);
+				output.write(DEFLATE_METHOD);
+				output.write(GZIP_FEXTRA);
+				output.write(new byte[] { 0, 0, 0, 0, 0 });
+				output.write(GZIP_OS_UNKNOWN);
+				writeShort(name.length + 4);
+				output.write(GZIP_SUBFIELD_ID);
+				writeShort(name.length);
+				output.write(name);
+			} else if (container == Container.ZLIB) {
+				output.write(ZLIB_CMF);
+				output.write(ZLIB_FLG);
+			}
+			wroteHeader = true;
+		}
+
+		@Override
+		public void write(Symbol symbol) throws IOException {
+			checkWroteHeader();
+			if (symbol instanceof Symbol.Byte) {
+				addLiteral(((Symbol.Byte) symbol).getByteValue());
+			} else if (symbol instanceof Symbol.Literals) {
+				byte[] bytes = ((Symbol.Literals) symbol).getBytes();
+				addLiterals(bytes, 0, bytes.length);
+			} else if (symbol instanceof Symbol.BackRef) {
+				Symbol.BackRef backRef = (Symbol.BackRef) symbol;
+				addBackRef(backRef.getDistance(), backRef.getLength());
+			} else if (symbol instanceof Symbol.RepeatRef) {
+				Symbol.RepeatRef repeatRef = (Symbol.RepeatRef) symbol;
+				addRepeatRef(repeatRef.getSlot(), repeatRef.getLength());
+			} else if (symbol instanceof Symbol.Checkpoint) {
+				recent.clear();
+				writeBlock(false);
+			} else {
+				throwUnsupported(symbol);
+			}
+		}
+
+		@Override
+		public void write(SymbolBuffer symbols) throws IOException {
+			checkWroteHeader();
+			int size = symbols.size();
+			for (int i = 0; i < size; ++i) {
+				switch (symbols.getKind(i)) {
+				case SymbolBuffer.BYTE:
+					addLiteral(symbols.getByteValue(i));
+					break;
+				case SymbolBuffer.LITERALS:
+					addLiterals(symbols.getLiteralBytes(),
+							symbols.getLiteralOffset(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.BACK_REF:
+					addBackRef(symbols.getDistance(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.REPEAT_REF:
+					addRepeatRef(symbols.getSlot(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.CHECKPOINT:
+					recent.clear();
+					writeBlock(false);
+					break;
+				default:
+					throwUnsupported(symbols.getSymbol(i));
+				}
+			}
+		}
+
+		private void throwUnsupported(Symbol symbol) {
+			throw new IllegalStateException("Cannot write symbol of type "
+					+ symbol.getClass().getSimpleName()
+					+ " in a DEFLATE stream");
+		}
+
+		@Override
+		public void close() throws IOException {
+			checkWroteHeader();
+			writeBlock(true);
+			bits.flush();
+			long checksum = history.getChecksum();
+			if (container == Container.GZIP) {
+				writeInt(checksum);
+				writeInt(history.getMemberSize());
+			} else if (container == Container.ZLIB) {
+				for (int shift = 24; shift >= 0; shift -= 8) {
+					output.write((int) (checksum >>> shift));
+				}
+			}
+			output.flush();
+		}
+
+		private void checkWroteHeader() {
+			if (!wroteHeader) {
+				throw new IllegalStateException(
+						"Must set the algorithm's name before encoding data");
+			}
+		}
+
+		private void addLiteral(byte value) throws IOException {
+			history.add(value);
+			symbolLengths[symbolCount] = 0;
+			symbolValues[symbolCount] = value & 0xff;
+			++literalFreqs[value & 0xff];
+			if (++symbolCount == BLOCK_SIZE) {
+				writeBlock(false);
+			}
+		}
+
+		private void addLiterals(byte[] bytes, int offset, int length)
+				throws IOException {
+			for (int i = 0; i < length; ++i) {
+				addLiteral(bytes[offset + i]);
+			}
+		}
+
+		private void addBackRef(int distance, int length) throws IOException {
+			addMatch(distance, length);
+			recent.push(distance);
+		}
+
+		private void addRepeatRef(int slot, int length) throws IOException {
+			if (slot < 0 || slot >= recent.size()) {
+				throw new IllegalStateException("Repeat reference slot "
+						+ slot + " does not refer to a recent distance");
+			}
+			addMatch(recent.get(slot), length);
+			recent.use(slot);
+		}
+
+		/**
+		 * Adds a match to the pending symbols, splitting it into pieces
+		 * DEFLATE can store.
+		 */
+		private void addMatch(int distance, int length) throws IOException {
+			if (distance < 1 || distance > MAX_DISTANCE
+					|| distance > history.getSize()) {
+				throw new IllegalStateException("Back-reference distance "
+						+ distance + " cannot be stored in a DEFLATE stream");
+			}
+			while (length >= MIN_LENGTH) {
+				int chunk = Math.min(length, MAX_LENGTH);
+				if (length - chunk > 0 && length - chunk < MIN_LENGTH) {
+					chunk = length - MIN_LENGTH;
+				}
+				history.copy(distance, chunk);
+				symbolLengths[symbolCount] = chunk;
+				symbolValues[symbolCount] = distance;
+				++literalFreqs[257 + LENGTH_CODE[chunk]];
+				++distanceFreqs[distanceCode(distance)];
+				length -= chunk;
+				if (++symbolCount == BLOCK_SIZE) {
+					writeBlock(false);
+				}
+			}
+			for (int i = 0; i < length; ++i) {
+				addLiteral(history.get(distance));
+			}
+		}
+
+		/**
+		 * Writes the pending symbols as a block, with the fixed code or with
+		 * a dynamic code, whichever is smaller.
+		 */
+		private void writeBlock(boolean last) throws IOException {
+			if (symbolCount == 0 && !last) {
+				return;
+			}
+			literalFreqs[END_OF_BLOCK] = 1;
+			int[] literalLengths = Huffman.buildLengths(literalFreqs,
+					MAX_CODE_LENGTH);
+			int[] distanceLengths = Huffman.buildLengths(distanceFreqs,
+					MAX_CODE_LENGTH);
+			int literalCount = trimmedLength(literalLengths, 257);
+			int distanceCount = trimmedLength(distanceLengths, 1);
+			int[] codeLengths = new int[literalCount + distanceCount];
+			System.arraycopy(literalLengths, 0, codeLengths, 0, literalCount);
+			System.arraycopy(distanceLengths, 0, codeLengths, literalCount,
+					distanceCount);
+			int[] runs = encodeRuns(codeLengths);
+			int[] runFreqs = new int[CODE_LENGTH_CODES];
+			for (int run : runs) {
+				++runFreqs[run & 0x1f];
+			}
+			int[] runLengths = Huffman.buildLengths(runFreqs,
+					MAX_CODE_LENGTH_CODE_LENGTH);
+			int runLengthCount = CODE_LENGTH_CODES;
+			while (runLengthCount > 4
+					&& runLengths[CODE_LENGTH_ORDER[runLengthCount - 1]] == 0) {
+				--runLengthCount;
+			}
+
+			long dynamicCost = 14 + 3 * runLengthCount
+					+ cost(runFreqs, runLengths)
+					+ cost(literalFreqs, literalLengths)
+					+ cost(distanceFreqs, distanceLengths);
+			for (int run : runs) {
+				dynamicCost += runExtraBits(run & 0x1f);
+			}
+			long fixedCost = cost(literalFreqs, FIXED_LITERAL_LENGTHS)
+					+ cost(distanceFreqs, FIXED_DISTANCE_LENGTHS);
+
+			bits.write(last ? 1 : 0, 1);
+			if (fixedCost <= dynamicCost) {
+				bits.write(FIXED_BLOCK, 2);
+				writeSymbols(FIXED_LITERAL_CODES, FIXED_LITERAL_LENGTHS,
+						FIXED_DISTANCE_CODES, FIXED_DISTANCE_LENGTHS);
+			} else {
+				bits.write(DYNAMIC_BLOCK, 2);
+				bits.write(literalCount - 257, 5);
+				bits.write(distanceCount - 1, 5);
+				bits.write(runLengthCount - 4, 4);
+				for (int i = 0; i < runLengthCount; ++i) {
+					bits.write(runLengths[CODE_LENGTH_ORDER[i]], 3);
+				}
+				int[] runCodes = Huffman.buildCodes(runLengths);
+				for (int run : runs) {
+					int code = run & 0x1f;
+					bits.write(runCodes[code], runLengths[code]);
+					int extra = runExtraBits(code);
+					if (extra > 0) {
+						bits.write(run >>> 5, extra);
+					}
+				}
+				writeSymbols(Huffman.buildCodes(literalLengths),
+						literalLengths, Huffman.buildCodes(distanceLengths),
+						distanceLengths);
+			}
+			symbolCount = 0;
+			Arrays.fill(literalFreqs, 0);
+			Arrays.fill(distanceFreqs, 0);
+		}
+
+		private void writeSymbols(int[] literalCodes, int[] literalLengths,
+				int[] distanceCodes, int[] distanceLengths) throws IOException {
+			for (int i = 0; i < symbolCount; ++i) {
+				int length = symbolLengths[i];
+				int value = symbolValues[i];
+				if (length == 0) {
+					bits.write(literalCodes[value], literalLengths[value]);
+					continue;
+				}
+				int lengthCode = LENGTH_CODE[length];
+				bits.write(literalCodes[257 + lengthCode],
+						literalLengths[257 + lengthCode]);
+				bits.write(length - LENGTH_BASE[lengthCode],
+						LENGTH_EXTRA[lengthCode]);
+				int distanceCode = distanceCode(value);
+				bits.write(distanceCodes[distanceCode],
+						distanceLengths[distanceCode]);
+				bits.write(value - DISTANCE_BASE[distanceCode],
+						DISTANCE_EXTRA[distanceCode]);
+			}
+			bits.write(literalCodes[END_OF_BLOCK],
+					literalLengths[END_OF_BLOCK]);
+		}
+
+		private void writeShort(int value) throws IOException {
+			output.write(value & 0xff);
+			output.write((value >>> 8) & 0xff);
+		}
+
+		private void writeInt(long value) throws IOException {
+			for (int shift = 0; shift < 32; shift += 8) {
+				output.write((int) (value >>> shift) & 0xff);
+			}
+		}
+
+		private static int trimmedLength(int[] lengths, int minimum) {
+			int count = lengths.length;
+			while (count > minimum && lengths[count - 1] == 0) {
+				--count;
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the number of bits the symbols take with a code, not
+		 * counting the extra bits of the literal/length and distance codes,
+		 * which are the same for all codes.
+		 */
+		private static long cost(int[] freqs, int[] lengths) {
+			long cost = 0;
+			for (int i = 0; i < freqs.length; ++i) {
+				cost += (long) freqs[i] * lengths[i];
+			}
+			return cost;
+		}
+
+		/**
+		 * Encodes the code lengths with the run-length codes 16, 17 and 18.
+		 *
+		 * @return The codes, each with its extra bits value shifted five bits
+		 *         to the left.
+		 */
+		private static int[] encodeRuns(int[] lengths) {
+			int[] runs = new int[lengths.length];
+			int count = 0;
+			int i = 0;
+			while (i < lengths.length) {
+				int length = lengths[i];
+				int repeat = 1;
+				while (i + repeat < lengths.length
+						&& lengths[i + repeat] == length) {
+					++repeat;
+				}
+				if (length == 0 && repeat >= 11) {
+					repeat = Math.min(repeat, 138);
+					runs[count++] = 18 | (repeat - 11) << 5;
+				} else if (length == 0 && repeat >= 3) {
+					runs[count++] = 17 | (repeat - 3) << 5;
+				} else if (length != 0 && repeat >= 4) {
+					repeat = Math.min(repeat, 7);
+					runs[count++] = length;
+					runs[count++] = 16 | (repeat - 4) << 5;
+				} else {
+					repeat = 1;
+					runs[count++] = length;
+				}
+				i += repeat;
+			}
+			return Arrays.copyOf(runs, count);
+		}
+
+		private static int runExtraBits(int code) {
+			switch (code) {
+			case 16:
+				return 2;
+			case 17:
+				return 3;
+			case 18:
+				return 7;
+			default:
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * A class to decode a DEFLATE stream into LZ77 symbols.
+	 */
+	private static class DecoderImpl implements Decoder {
+
+		private static final int[] FIXED_LITERAL_TABLE;
+		private static final int[] FIXED_DISTANCE_TABLE;
+
+		static {
+			try {
+				FIXED_LITERAL_TABLE = Huffman
+						.buildDecodingTable(FIXED_LITERAL_LENGTHS);
+				FIXED_DISTANCE_TABLE = Huffman
+						.buildDecodingTable(FIXED_DISTANCE_LENGTHS);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private final BitInput input;
+		private final Container container;
+		private final History history;
+		private String algorithm;
+		private boolean readHeader;
+		private boolean lastBlock;
+		private boolean inBlock;
+		private int storedRemaining;
+		private int[] literalTable;
+		private int[] distanceTable;
+		private boolean finished;
+
+		public DecoderImpl(InputStream input, Container container) {
+			this.input = new BitInput(input);
+			this.container = container;
+			this.history = new History(newChecksum(container));
+			this.algorithm = DEFAULT_ALGORITHM;
+			this.readHeader = false;
+			this.lastBlock = false;
+			this.inBlock = false;
+			this.storedRemaining = -1;
+			this.finished = false;
+		}
+
+		@Override
+		public String getAlgoritm() throws IOException {
+			checkReadHeader();
+			return algorithm;
+		}
+
+		@Override
+		public Symbol read() throws IOException {
+			checkReadHeader();
+			while (!finished) {
+				if (!inBlock) {
+					if (lastBlock) {
+						readTrailer();
+						if (container == Container.GZIP
+								&& input.startsWith(GZIP_MAGIC)) {
+							readGzipHeader();
+							history.startMember();
+							lastBlock = false;
+							continue;
+						}
+						finished = true;
+						break;
+					}
+					startBlock();
+				}
+				if (storedRemaining >= 0) {
+					if (storedRemaining == 0) {
+						storedRemaining = -1;
+						inBlock = false;
+						continue;
+					}
+					byte[] bytes = new byte[storedRemaining];
+					for (int i = 0; i < bytes.length; ++i) {
+						bytes[i] = (byte) input.readByte();
+						history.add(bytes[i]);
+					}
+					storedRemaining = 0;
+					return bytes.length == 1 ? Symbol.newByte(bytes[0])
+							: Symbol.newLiterals(bytes, 0, bytes.length);
+				}
+				int code = input.decode(literalTable);
+				if (code < END_OF_BLOCK) {
+					history.add((byte) code);
+					return Symbol.newByte((byte) code);
+				} else if (code == END_OF_BLOCK) {
+					inBlock = false;
+					continue;
+				}
+				code -= 257;
+				if (code >= LENGTH_BASE.length) {
+					throw new IOException("Invalid length code");
+				}
+				int length = LENGTH_BASE[code]
+						+ input.readBits(LENGTH_EXTRA[code]);
+				code = input.decode(distanceTable);
+				if (code >= DISTANCE_CODES) {
+					throw new IOException("Invalid distance code");
+				}
+				int distance = DISTANCE_BASE[code]
+						+ input.readBits(DISTANCE_EXTRA[code]);
+				if (distance > history.getSize()) {
+					throw new IOException("Back-reference distance "
+							+ distance + " goes past the start of the data");
+				}
+				history.copy(distance, length);
+				return Symbol.newBackRef(distance, length);
+			}
+			return null;
+		}
+
+		private void checkReadHeader() throws IOException {
+			if (readHeader) {
+				return;
+			}
+			readHeader = true;
+			if (container == Container.GZIP) {
+				readGzipHeader();
+			} else if (container == Container.ZLIB) {
+				int cmf = input.readByte();
+				int flg = input.readByte();
+				if (!isZlibHeader(new byte[] { (byte) cmf, (byte) flg }, 2)) {
+					throw new IOException("Invalid zlib header");
+				}
+			}
+		}
+
+		private void readGzipHeader() throws IOException {
+			if (input.readByte() != (GZIP_MAGIC[0] & 0xff)
+					|| input.readByte() != (GZIP_MAGIC[1] & 0xff)) {
+				throw new IOException("The stream does not contain gzip data");
+			}
+			if (input.readByte() != DEFLATE_METHOD) {
+				throw new IOException("Unsupported gzip compression method");
+			}
+			int flags = input.readByte();
+			for (int i = 0; i < 6; ++i) {
+				input.readByte();
+			}
+			if ((flags & GZIP_FEXTRA) != 0) {
+				int remaining = readShort();
+				while (remaining >= 4) {
+					int id1 = input.readByte();
+					int id2 = input.readByte();
+					int length = readShort();
+					remaining -= 4;
+					if (length > remaining) {
+						throw new IOException("Invalid gzip extra field");
+					}
+					byte[] data = new byte[length];
+					for (int i = 0; i < length; ++i) {
+						data[i] = (byte) input.readByte();
+					}
+					remaining -= length;
+					if (id1 == GZIP_SUBFIELD_ID[0]
+							&& id2 == GZIP_SUBFIELD_ID[1]) {
+						algorithm = new String(data, "UTF-8");
+					}
+				}
+				for (int i = 0; i < remaining; ++i) {
+					input.readByte();
+				}
+			}
+			if ((flags & GZIP_FNAME) != 0) {
+				while (input.readByte() != 0) {
+				}
+			}
+			if ((flags & GZIP_FCOMMENT) != 0) {
+				while (input.readByte() != 0) {
+				}
+			}
+			if ((flags & GZIP_FHCRC) != 0) {
+				readShort();
+			}
+		}
+
+		private void startBlock() throws IOException {
+			lastBlock = input.readBits(1) == 1;
+			int type = input.readBits(2);
+			if (type == STORED_BLOCK) {
+				input.alignToByte();
+				int length = readShort();
+				int complement = readShort();
+				if ((length ^ 0xffff) != complement) {
+					throw new IOException("Invalid stored block length");
+				}
+				storedRemaining = length;
+			} else if (type == FIXED_BLOCK) {
+				literalTable = FIXED_LITERAL_TABLE;
+				distanceTable = FIXED_DISTANCE_TABLE;
+			} else if (type == DYNAMIC_BLOCK) {
+				readDynamicTables();
+			} else {
+				throw new IOException("Invalid block type");
+			}
+			inBlock = true;
+		}
+
+		private void readDynamicTables() throws IOException {
+			int literalCount = input.readBits(5) + 257;
+			int distanceCount = input.readBits(5) + 1;
+			int runLengthCount = input.readBits(4) + 4;
+			if (literalCount > LITERAL_CODES || distanceCount > DISTANCE_CODES) {
+				throw new IOException("Too many codes in dynamic block");
+			}
+			int[] runLengths = new int[CODE_LENGTH_CODES];
+			for (int i = 0; i < runLengthCount; ++i) {
+				runLengths[CODE_LENGTH_ORDER[i]] = input.readBits(3);
+			}
+			int[] runTable = Huffman.buildDecodingTable(runLengths);
+			int[] lengths = new int[literalCount + distanceCount];
+			int i = 0;
+			while (i < lengths.length) {
+				int code = input.decode(runTable);
+				int repeat;
+				int value;
+				if (code < 16) {
+					lengths[i++] = code;
+					continue;
+				} else if (code == 16) {
+					if (i == 0) {
+						throw new IOException("Repeated length with no previous length");
+					}
+					value = lengths[i - 1];
+					repeat = 3 + input.readBits(2);
+				} else if (code == 17) {
+					value = 0;
+					repeat = 3 + input.readBits(3);
+				} else {
+					value = 0;
+					repeat = 11 + input.readBits(7);
+				}
+				if (i + repeat > lengths.length) {
+					throw new IOException("Too many code lengths");
+				}
+				Arrays.fill(lengths, i, i + repeat, value);
+				i += repeat;
+			}
+			if (lengths[END_OF_BLOCK] == 0) {
+				throw new IOException("Missing end-of-block code");
+			}
+			literalTable = Huffman.buildDecodingTable(Arrays.copyOf(lengths,
+					literalCount));
+			distanceTable = Huffman.buildDecodingTable(Arrays.copyOfRange(
+					lengths, literalCount, lengths.length));
+		}
+
+		private void readTrailer() throws IOException {
+			input.alignToByte();
+			long checksum = history.getChecksum();
+			if (container == Container.GZIP) {
+				long crc = readInt();
+				long size = readInt();
+				if (crc != checksum
+						|| size != (history.getMemberSize() & 0xffffffffL)) {
+					throw new IOException("gzip checksum mismatch");
+				}
+			} else if (container == Container.ZLIB) {
+				long adler = 0;
+				for (int i = 0; i < 4; ++i) {
+					adler = adler << 8 | input.readByte();
+				}
+				if (adler != checksum) {
+					throw new IOException("zlib checksum mismatch");
+				}
+			}
+		}
+
+		private int readShort() throws IOException {
+			return input.readByte() | input.readByte() << 8;
+		}
+
+		private long readInt() throws IOException {
+			return readShort() | (long) readShort() << 16;
+		}
+	}
+
+	/**
+	 * Keeps the last MAX_DISTANCE bytes of the uncompressed data, and its
+	 * size and checksum.
+	 */
+	private static class History {
+		private static final int MASK = MAX_DISTANCE - 1;
+		private static final int CHECKSUM_BUFFER_SIZE = 4096;
+
+		private final Checksum checksum;
+		private final byte[] window;
+		private long size;
+		private long memberStart;
+		private final byte[] pending;
+		private int pendingCount;
+
+		public History(Checksum checksum) {
+			this.checksum = checksum;
+			this.window = new byte[MAX_DISTANCE];
+			this.size = 0;
+			this.memberStart = 0;
+			this.pending = new byte[CHECKSUM_BUFFER_SIZE];
+			this.pendingCount = 0;
+		}
+
+		public void add(byte value) {
+			window[(int) size & MASK] = value;
+			++size;
+			pending[pendingCount++] = value;
+			if (pendingCount == pending.length) {
+				flushChecksum();
+			}
+		}
+
+		public byte get(int distance) {
+			return window[(int) (size - distance) & MASK];
+		}
+
+		public void copy(int distance, int length) {
+			for (int i = 0; i < length; ++i) {
+				add(get(distance));
+			}
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Starts a new gzip member: the checksum and the member's size start
+		 * over, but the window is kept.
+		 */
+		public void startMember() {
+			flushChecksum();
+			checksum.reset();
+			memberStart = size;
+		}
+
+		/**
+		 * Returns the size of the data since the current gzip member started.
+		 */
+		public long getMemberSize() {
+			return size - memberStart;
+		}
+
+		public long getChecksum() {
+			flushChecksum();
+			return checksum.getValue();
+		}
+
+		private void flushChecksum() {
+			checksum.update(pending, 0, pendingCount);
+			pendingCount = 0;
+		}
+	}
+
+	/**
+	 * Writes bits into an output buffer, least significant first.
+	 */
+	private static class BitOutput {
+		private final OutputBuffer output;
+		private long pending;
+		private int pendingBits;
+
+		public BitOutput(OutputBuffer output) {
+			this.output = output;
+			this.pending = 0;
+			this.pendingBits = 0;
+		}
+
+		public void write(int value, int bits) throws IOException {
+			pending |= (long) (value & ((1 << bits) - 1)) << pendingBits;
+			pendingBits += bits;
+			while (pendingBits >= 8) {
+				output.write((int) pending & 0xff);
+				pending >>>= 8;
+				pendingBits -= 8;
+			}
+		}
+
+		/**
+		 * Writes the remaining bits, padded to a whole byte.
+		 */
+		public void flush() throws IOException {
+			if (pendingBits > 0) {
+				output.write((int) pending & 0xff);
+			}
+			pending = 0;
+			pendingBits = 0;
+		}
+	}
+
+	/**
+	 * Reads bits from an input stream, least significant first.
+	 */
+	private static class BitInput {
+		private static final int BUFFER_SIZE = 65536;
+
+		private final InputStream input;
+		private final byte[] buffer;
+		private int pos;
+		private int limit;
+		private long pending;
+		private int pendingBits;
+
+		public BitInput(InputStream input) {
+			this.input = input;
+			this.buffer = new byte[BUFFER_SIZE];
+			this.pos = 0;
+			this.limit = 0;
+			this.pending = 0;
+			this.pendingBits = 0;
+		}
+
+		public int readBits(int bits) throws IOException {
+			if (bits == 0) {
+				return 0;
+			}
+			ensure(bits);
+			if (pendingBits < bits) {
+				throw new IOException("Unexpected end of DEFLATE stream");
+			}
+			int value = (int) pending & ((1 << bits) - 1);
+			pending >>>= bits;
+			pendingBits -= bits;
+			return value;
+		}
+
+		/**
+		 * Decodes a symbol with a table returned by
+		 * {@link Huffman#buildDecodingTable}.
+		 */
+		public int decode(int[] table) throws IOException {
+			ensure(MAX_CODE_LENGTH);
+			int entry = table[(int) pending & (table.length - 1)];
+			int length = entry & 0xf;
+			if (length == 0 || length > pendingBits) {
+				throw new IOException(length == 0 ? "Invalid Huffman code"
+						: "Unexpected end of DEFLATE stream");
+			}
+			pending >>>= length;
+			pendingBits -= length;
+			return entry >>> 4;
+		}
+
+		/**
+		 * Returns whether the next bytes are the given ones, without
+		 * consuming them. The input must be aligned to a byte.
+		 */
+		public boolean startsWith(byte[] bytes) throws IOException {
+			ensure(bytes.length * 8);
+			if (pendingBits < bytes.length * 8) {
+				return false;
+			}
+			for (int i = 0; i < bytes.length; ++i) {
+				if ((byte) (pending >>> (8 * i)) != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public void alignToByte() {
+			int drop = pendingBits % 8;
+			pending >>>= drop;
+			pendingBits -= drop;
+		}
+
+		/**
+		 * Reads a byte. The input must be aligned to a byte.
+		 */
+		public int readByte() throws IOException {
+			return readBits(8);
+		}
+
+		private void ensure(int bits) throws IOException {
+			while (pendingBits < bits) {
+				if (pos == limit) {
+					limit = input.read(buffer);
+					pos = 0;
+					if (limit <= 0) {
+						limit = 0;
+						return;
+					}
+				}
+				pending |= (long) (buffer[pos++] & 0xff) << pendingBits;
+				pendingBits += 8;
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+/**
+ * Converts gzip files and zlib or raw DEFLATE streams into LZ77 symbols
+ * without decompressing and compressing the data again.
+ *
+ * The back-references found by the DEFLATE compressor are written as they
+ * are, so the cost of the conversion is that of decoding the Huffman codes.
+ * The output can be decompressed by the lz77 algorithm, or by the algorithm
+ * named in the gzip file written by {@link DeflateCodec}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class DeflateTranscoder {
+
+	/**
+	 * Avoid subclassing and instantiation.
+	 */
+	private DeflateTranscoder() {
+	}
+
+	/**
+	 * Reads a gzip file, a zlib stream or a raw DEFLATE stream and writes its
+	 * symbols into an encoder, which is then closed.
+	 *
+	 * Unlike {@link Transcoder}, the input can be a raw DEFLATE stream, whose
+	 * format cannot be detected.
+	 *
+	 * The container is detected from the first bytes of the input; if it is
+	 * neither gzip nor zlib, it is read as a raw DEFLATE stream.
+	 *
+	 * @param input
+	 *            The stream to read the compressed data from.
+	 * @param encoder
+	 *            The encoder to write the symbols into.
+	 * @return The number of symbols written.
+	 * @throws IOException
+	 *             If there was a problem reading the input, it was not valid
+	 *             DEFLATE data, or there was a problem writing the symbols.
+	 */
+	public static long transcode(InputStream input, Encoder encoder)
+			throws IOException {
+		if (!input.markSupported()) {
+			input = new BufferedInputStream(input);
+		}
+		Decoder decoder = new DeflateCodec(detectContainer(input))
+				.getDecoder(input);
+		return Transcoder.transcode(decoder, encoder);
+	}
+
+	private static DeflateCodec.Container detectContainer(InputStream input)
+			throws IOException {
+		byte[] header = new byte[2];
+		input.mark(header.length);
+		int length = 0;
+		try {
+			int read;
+			while (length < header.length
+					&& (read = input.read(header, length, header.length
+							- length)) != -1) {
+				length += read;
+			}
+		} finally {
+			input.reset();
+		}
+		if (length == 2 && header[0] == DeflateCodec.GZIP_MAGIC[0]
+				&& header[1] == DeflateCodec.GZIP_MAGIC[1]) {
+			return DeflateCodec.Container.GZIP;
+		} else if (DeflateCodec.isZlibHeader(header, length)) {
+			return DeflateCodec.Container.ZLIB;
+		}
+		return DeflateCodec.Container.RAW;
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.IOException;
+import java.util.PriorityQueue;
+
+/**
+ * Functions to build canonical Huffman codes, as used by DEFLATE.
+ *
+ * Codes are returned with their bits reversed, ready to be written least
+ * significant bit first.
+ *
+ * @author Jacobo Tarrio
+ */
+class Huffman {
+
+	/**
+	 * Avoid subclassing and instantiation.
+	 */
+	private Huffman() {
+	}
+
+	/**
+	 * Returns the code lengths of a Huffman code for the given frequencies,
+	 * limited to a maximum length.
+	 *
+	 * The code is always complete: if fewer than two symbols have a nonzero
+	 * frequency, the lengths of the first one or two symbols are set to one.
+	 *
+	 * @param freqs
+	 *            The frequency of each symbol.
+	 * @param maxLength
+	 *            The maximum code length.
+	 * @return The code length of each symbol, or 0 for the symbols that do
+	 *         not appear.
+	 */
+	static int[] buildLengths(int[] freqs, int maxLength) {
+		int[] lengths = new int[freqs.length];
+		int present = 0;
+		for (int freq : freqs) {
+			if (freq > 0) {
+				++present;
+			}
+		}
+		if (present < 2) {
+			for (int i = 0; i < freqs.length && present < 2; ++i) {
+				if (freqs[i] == 0) {
+					lengths[i] = 1;
+					++present;
+				}
+			}
+			for (int i = 0; i < freqs.length; ++i) {
+				if (freqs[i] > 0) {
+					lengths[i] = 1;
+				}
+			}
+			return lengths;
+		}
+		int[] scaled = freqs.clone();
+		while (!computeLengths(scaled, lengths, maxLength)) {
+			for (int i = 0; i < scaled.length; ++i) {
+				if (scaled[i] > 0) {
+					scaled[i] = (scaled[i] >> 1) | 1;
+				}
+			}
+		}
+		return lengths;
+	}
+
+	/**
+	 * Returns the canonical codes for the given code lengths, with their bits
+	 * reversed.
+	 *
+	 * @param lengths
+	 *            The code length of each symbol.
+	 * @return The code of each symbol.
+	 */
+	static int[] buildCodes(int[] lengths) {
+		int maxLength = 0;
+		for (int length : lengths) {
+			maxLength = Math.max(maxLength, length);
+		}
+		int[] lengthCounts = new int[maxLength + 1];
+		for (int length : lengths) {
+			++lengthCounts[length];
+		}
+		lengthCounts[0] = 0;
+		int[] nextCode = new int[maxLength + 1];
+		int code = 0;
+		for (int length = 1; length <= maxLength; ++length) {
+			code = (code + lengthCounts[length - 1]) << 1;
+			nextCode[length] = code;
+		}
+		int[] codes = new int[lengths.length];
+		for (int i = 0; i < lengths.length; ++i) {
+			if (lengths[i] > 0) {
+				codes[i] = reverse(nextCode[lengths[i]]++, lengths[i]);
+			}
+		}
+		return codes;
+	}
+
+	/**
+	 * Returns a lookup table to decode a canonical code. The table is indexed
+	 * by the next MAX bits of the input, least significant first, where MAX is
+	 * the table size's logarithm; each entry contains the symbol shifted left
+	 * four bits and the length of its code, or 0 if no code matches.
+	 *
+	 * @param lengths
+	 *            The code length of each symbol. They must not exceed 15.
+	 * @return The lookup table.
+	 * @throws IOException
+	 *             If the lengths do not describe a valid code.
+	 */
+	static int[] buildDecodingTable(int[] lengths) throws IOException {
+		int maxLength = 0;
+		for (int length : lengths) {
+			maxLength = Math.max(maxLength, length);
+		}
+		long kraft = 0;
+		for (int length : lengths) {
+			if (length > 0) {
+				kraft += 1L << (maxLength - length);
+			}
+		}
+		if (kraft > 1L << maxLength) {
+			throw new IOException("Over-subscribed Huffman code");
+		}
+		int[] codes = buildCodes(lengths);
+		int[] table = new int[1 << maxLength];
+		for (int i = 0; i < lengths.length; ++i) {
+			int length = lengths[i];
+			if (length > 0) {
+				int entry = i << 4 | length;
+				for (int j = codes[i]; j < table.length; j += 1 << length) {
+					table[j] = entry;
+				}
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Reverses the low bits of a number.
+	 */
+	static int reverse(int code, int length) {
+		return Integer.reverse(code) >>> (32 - length);
+	}
+
+	/**
+	 * Builds a Huffman tree for the frequencies and stores the depth of each
+	 * leaf.
+	 *
+	 * @return Whether all depths fit in the maximum length.
+	 */
+	private static boolean computeLengths(int[] freqs, int[] lengths,
+			int maxLength) {
+		int symbols = freqs.length;
+		int[] parents = new int[symbols * 2];
+		long[] weights = new long[symbols * 2];
+		PriorityQueue<Long> queue = new PriorityQueue<Long>();
+		for (int i = 0; i < symbols; ++i) {
+			if (freqs[i] > 0) {
+				weights[i] = freqs[i];
+				queue.add(weights[i] << 32 | i);
+			}
+		}
+		int next = symbols;
+		while (queue.size() > 1) {
+			int first = (int) (queue.poll() & 0xffffffffL);
+			int second = (int) (queue.poll() & 0xffffffffL);
+			weights[next] = weights[first] + weights[second];
+			parents[first] = next;
+			parents[second] = next;
+			queue.add(weights[next] << 32 | next);
+			++next;
+		}
+		int root = next - 1;
+		int[] depths = new int[next];
+		for (int node = root - 1; node >= 0; --node) {
+			if (node >= symbols || freqs[node] > 0) {
+				depths[node] = depths[parents[node]] + 1;
+			}
+		}
+		boolean fits = true;
+		for (int i = 0; i < symbols; ++i) {
+			lengths[i] = freqs[i] > 0 ? depths[i] : 0;
+			if (lengths[i] > maxLength) {
+				fits = false;
+			}
+		}
+		return fits;
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A buffer that reads binary encoded input from an input stream in large
+ * chunks. It is the counterpart of {@link OutputBuffer}.
+ *
+ * @author Jacobo Tarrio
+ */
+class InputBuffer {
+
+	/**
+	 * The default size of the buffer.
+	 */
+	static final int DEFAULT_SIZE = 65536;
+
+	private final InputStream input;
+	private final byte[] buffer;
+	private int pos;
+	private int limit;
+
+	/**
+	 * Creates a buffer of the default size.
+	 *
+	 * @param input
+	 *            The stream to read the data from.
+	 */
+	public InputBuffer(InputStream input) {
+		this.input = input;
+		this.buffer = new byte[DEFAULT_SIZE];
+		this.pos = 0;
+		this.limit = 0;
+	}
+
+	/**
+	 * Reads a single byte.
+	 *
+	 * @return The byte, between 0 and 255.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream, or
+	 *             the end of the stream was reached.
+	 */
+	public int readByte() throws IOException {
+		if (pos == limit && !fill()) {
+			throw new IOException("Unexpected end of compressed data");
+		}
+		return buffer[pos++] & 0xff;
+	}
+
+	/**
+	 * Reads a number written by {@link OutputBuffer#writeVarint}.
+	 *
+	 * @return The number.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream, the
+	 *             end of the stream was reached or the number was invalid.
+	 */
+	public long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid varint");
+	}
+
+	/**
+	 * Reads a given number of bytes into an array.
+	 *
+	 * @param data
+	 *            The array to read the bytes into.
+	 * @param length
+	 *            The number of bytes to read.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream, or
+	 *             the end of the stream was reached.
+	 */
+	public void readFully(byte[] data, int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			if (pos == limit && !fill()) {
+				throw new IOException("Unexpected end of compressed data");
+			}
+			int chunk = Math.min(length - read, limit - pos);
+			System.arraycopy(buffer, pos, data, read, chunk);
+			pos += chunk;
+			read += chunk;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		int read = input.read(buffer);
+		if (read <= 0) {
+			return false;
+		}
+		pos = 0;
+		limit = read;
+		return true;
+	}
+}
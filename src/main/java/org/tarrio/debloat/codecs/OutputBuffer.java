@@ -0,0 +1,204 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A buffer that accumulates encoded output and writes it into an output
+ * stream in large chunks, when it fills up or when it is flushed.
+ *
+ * @author Jacobo Tarrio
+ */
+class OutputBuffer {
+
+	/**
+	 * The default size of the buffer.
+	 */
+	static final int DEFAULT_SIZE = 65536;
+
+	/**
+	 * The maximum number of characters a long takes when written in decimal.
+	 */
+	private static final int MAX_LONG_DIGITS = 20;
+
+	/**
+	 * The maximum number of bytes a long takes when written as a varint.
+	 */
+	private static final int MAX_VARINT_BYTES = 10;
+
+	private final OutputStream output;
+	private final byte[] buffer;
+	private int used;
+
+	/**
+	 * Creates a buffer of the default size.
+	 *
+	 * @param output
+	 *            The stream to write the data into.
+	 */
+	public OutputBuffer(OutputStream output) {
+		this.output = output;
+		this.buffer = new byte[DEFAULT_SIZE];
+		this.used = 0;
+	}
+
+	/**
+	 * Appends a byte array.
+	 *
+	 * @param data
+	 *            The bytes to append.
+	 * @throws IOException
+	 *             If there was a problem writing into the output stream.
+	 */
+	public void write(byte[] data) throws IOException {
+		write(data, 0, data.length);
+	}
+
+	/**
+	 * Appends a part of a byte array.
+	 *
+	 * @param data
+	 *            The array containing the bytes to append.
+	 * @param offset
+	 *            The offset of the bytes within the array.
+	 * @param length
+	 *            The number of bytes to append.
+	 * @throws IOException
+	 *             If there was a problem writing into the output stream.
+	 */
+	public void write(byte[] data, int offset, int length) throws IOException {
+		if (used + length > buffer.length) {
+			flush();
+			if (length > buffer.length) {
+				output.write(data, offset, length);
+				return;
+			}
+		}
+		System.arraycopy(data, offset, buffer, used, length);
+		used += length;
+	}
+
+	/**
+	 * Appends a single byte.
+	 *
+	 * @param b
+	 *            The byte to append.
+	 * @throws IOException
+	 *             If there was a problem writing into the output stream.
+	 */
+	public void write(int b) throws IOException {
+		if (used == buffer.length) {
+			flush();
+		}
+		buffer[used++] = (byte) b;
+	}
+
+	/**
+	 * Appends the decimal representation of a number.
+	 *
+	 * @param value
+	 *            The number to append.
+	 * @throws IOException
+	 *             If there was a problem writing into the output stream.
+	 */
+	public void writeNumber(long value) throws IOException {
+		if (used + MAX_LONG_DIGITS > buffer.length) {
+			flush();
+		}
+		if (value < 0) {
+			buffer[used++] = '-';
+			if (value == Long.MIN_VALUE) {
+				write(Long.toString(value).substring(1).getBytes());
+				return;
+			}
+			value = -value;
+		}
+		int start = used;
+		do {
+			buffer[used++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		int end = used - 1;
+		while (start < end) {
+			byte c = buffer[start];
+			buffer[start++] = buffer[end];
+			buffer[end--] = c;
+		}
+	}
+
+	/**
+	 * Appends a number as a varint: seven bits per byte, least significant
+	 * first, with the top bit set in every byte but the last. The number is
+	 * treated as unsigned.
+	 *
+	 * @param value
+	 *            The number to append.
+	 * @throws IOException
+	 *             If there was a problem writing into the output stream.
+	 */
+	public void writeVarint(long value) throws IOException {
+		if (used + MAX_VARINT_BYTES > buffer.length) {
+			flush();
+		}
+		while ((value & ~0x7fL) != 0) {
+			buffer[used++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		buffer[used++] = (byte) value;
+	}
+
+	/**
+	 * Appends the base64 representation of a part of a byte array.
+	 *
+	 * @param data
+	 *            The array containing the bytes to encode.
+	 * @param offset
+	 *            The offset of the bytes within the array.
+	 * @param length
+	 *            The number of bytes to encode.
+	 * @throws IOException
+	 *             If there was a problem writing into the output stream.
+	 */
+	public void writeBase64(byte[] data, int offset, int length)
+			throws IOException {
+		int maxChunk = buffer.length / 4 * 3;
+		while (length > 0) {
+			int chunk = Math.min(length, maxChunk);
+			if (used + Base64.encodedLength(chunk) > buffer.length) {
+				flush();
+			}
+			used += Base64.encode(data, offset, chunk, buffer, used);
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	/**
+	 * Writes the contents of the buffer into the output stream.
+	 *
+	 * @throws IOException
+	 *             If there was a problem writing into the output stream.
+	 */
+	public void flush() throws IOException {
+		if (used > 0) {
+			output.write(buffer, 0, used);
+			used = 0;
+		}
+	}
+}
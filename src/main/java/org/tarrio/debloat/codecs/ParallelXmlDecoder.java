@@ -0,0 +1,664 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.SymbolVisitor;
+
+/**
+ * A decoder for XML documents written by {@link XmlCodec} that parses
+ * several parts of the document at the same time.
+ *
+ * The document is split at element boundaries into chunks that are parsed
+ * in parallel into packed symbol buffers, which are then returned in order.
+ * Only a bounded number of chunks are parsed ahead of the reader.
+ *
+ * A chunk boundary cannot be told apart from a '&lt;' inside a comment,
+ * CDATA section or processing instruction, so if the body of the document
+ * contains any of those, the decoder falls back to parsing it sequentially,
+ * starting at the chunk where they were found.
+ *
+ * @author Jacobo Tarrio
+ */
+public class ParallelXmlDecoder implements Codec.BatchDecoder,
+		Codec.PushDecoder {
+
+	/**
+	 * The default approximate size of each chunk, in bytes.
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	private static final int MAX_PROLOG_LENGTH = 4096;
+	private static final int SCAN_WINDOW = 4096;
+	private static final byte[] ROOT_START = ("<" + XmlCodec.ROOT_TAG + " ")
+			.getBytes();
+	private static final byte[] ROOT_FOOTER = ("</" + XmlCodec.ROOT_TAG + ">")
+			.getBytes();
+	private static final byte[] XML_DECLARATION_START = "<?xml".getBytes();
+	private static final byte[] XML_DECLARATION_END = "?>".getBytes();
+
+	private final Document document;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final int chunkSize;
+	private final int maxPending;
+	private final LinkedList<Future<SymbolBuffer>> pending;
+
+	private byte[] rootTag;
+	private long bodyStart;
+	private long nextChunkStart;
+	private String algorithm;
+	private SymbolBuffer current;
+	private int pos;
+	private Codec.Decoder sequential;
+	private boolean finished;
+
+	/**
+	 * Creates a decoder for an XML document in a file, parsing it in a new
+	 * pool of threads.
+	 *
+	 * @param file
+	 *            The file containing the document.
+	 * @param threads
+	 *            The number of threads to parse the document with.
+	 * @throws IOException
+	 *             If there was a problem reading the file or it is not a
+	 *             valid document.
+	 */
+	public ParallelXmlDecoder(File file, int threads) throws IOException {
+		this(new FileDocument(file), newExecutor(threads), true,
+				DEFAULT_CHUNK_SIZE, threads * 2);
+	}
+
+	/**
+	 * Creates a decoder for an XML document in a file.
+	 *
+	 * @param file
+	 *            The file containing the document.
+	 * @param executor
+	 *            The executor to parse the document with.
+	 * @throws IOException
+	 *             If there was a problem reading the file or it is not a
+	 *             valid document.
+	 */
+	public ParallelXmlDecoder(File file, ExecutorService executor)
+			throws IOException {
+		this(new FileDocument(file), executor, false, DEFAULT_CHUNK_SIZE,
+				defaultMaxPending());
+	}
+
+	/**
+	 * Creates a decoder for an XML document read from a stream, parsing it in
+	 * a new pool of threads. The whole document is read into memory.
+	 *
+	 * @param input
+	 *            The stream to read the document from.
+	 * @param threads
+	 *            The number of threads to parse the document with.
+	 * @throws IOException
+	 *             If there was a problem reading the stream or it is not a
+	 *             valid document.
+	 */
+	public ParallelXmlDecoder(InputStream input, int threads)
+			throws IOException {
+		this(new ArrayDocument(input), newExecutor(threads), true,
+				DEFAULT_CHUNK_SIZE, threads * 2);
+	}
+
+	/**
+	 * Creates a decoder for an XML document read from a stream. The whole
+	 * document is read into memory.
+	 *
+	 * @param input
+	 *            The stream to read the document from.
+	 * @param executor
+	 *            The executor to parse the document with.
+	 * @throws IOException
+	 *             If there was a problem reading the stream or it is not a
+	 *             valid document.
+	 */
+	public ParallelXmlDecoder(InputStream input, ExecutorService executor)
+			throws IOException {
+		this(input, executor, DEFAULT_CHUNK_SIZE);
+	}
+
+	ParallelXmlDecoder(InputStream input, ExecutorService executor,
+			int chunkSize) throws IOException {
+		this(new ArrayDocument(input), executor, false, chunkSize,
+				defaultMaxPending());
+	}
+
+	private ParallelXmlDecoder(Document document, ExecutorService executor,
+			boolean ownsExecutor, int chunkSize, int maxPending)
+			throws IOException {
+		this.document = document;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.chunkSize = chunkSize;
+		this.maxPending = maxPending;
+		this.pending = new LinkedList<Future<SymbolBuffer>>();
+		this.current = null;
+		this.pos = 0;
+		this.sequential = null;
+		this.finished = false;
+		try {
+			if (scanProlog()) {
+				this.algorithm = new XmlScanningDecoder(
+						new SequenceInputStream(new ByteArrayInputStream(
+								rootTag), new ByteArrayInputStream(ROOT_FOOTER)))
+						.getAlgoritm();
+				this.nextChunkStart = 0;
+				submitChunks();
+			} else {
+				this.sequential = new XmlScanningDecoder(document.open(0,
+						document.length()));
+				this.algorithm = sequential.getAlgoritm();
+			}
+		} catch (IOException e) {
+			finish();
+			throw e;
+		}
+	}
+
+	@Override
+	public String getAlgoritm() throws IOException {
+		return algorithm;
+	}
+
+	@Override
+	public Symbol read() throws IOException {
+		try {
+			if (!nextSymbols()) {
+				return null;
+			}
+			Symbol symbol;
+			if (sequential != null) {
+				symbol = sequential.read();
+				if (symbol == null) {
+					finish();
+					return null;
+				}
+			} else {
+				symbol = current.getSymbol(pos++);
+			}
+			return symbol;
+		} catch (IOException e) {
+			finish();
+			throw e;
+		}
+	}
+
+	@Override
+	public int read(SymbolBuffer symbols, int maxSymbols) throws IOException {
+		try {
+			int count = 0;
+			while (count < maxSymbols && nextSymbols()) {
+				if (sequential != null) {
+					int read = symbols.readFrom(sequential, maxSymbols - count);
+					count += read;
+					if (count < maxSymbols) {
+						finish();
+					}
+					return count;
+				}
+				int end = pos
+						+ Math.min(current.size() - pos, maxSymbols - count);
+				count += end - pos;
+				while (pos < end) {
+					symbols.add(current, pos++);
+				}
+			}
+			return count;
+		} catch (IOException e) {
+			finish();
+			throw e;
+		}
+	}
+
+	@Override
+	public void decode(SymbolVisitor visitor) throws IOException {
+		try {
+			while (nextSymbols()) {
+				if (sequential != null) {
+					SymbolBuffer.visit(sequential, visitor);
+					finish();
+					return;
+				}
+				int end = current.size();
+				current.accept(visitor, pos, end);
+				pos = end;
+			}
+		} catch (IOException e) {
+			finish();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops parsing the document and releases its resources. Further reads
+	 * return no symbols.
+	 *
+	 * @throws IOException
+	 *             If there was a problem closing the document.
+	 */
+	public void close() throws IOException {
+		current = null;
+		sequential = null;
+		finish();
+	}
+
+	/**
+	 * Takes parsed chunks until there is one with symbols left to read, or
+	 * the decoder switches to sequential parsing.
+	 *
+	 * @return Whether there may be symbols left to read.
+	 * @throws IOException
+	 *             If there was a problem parsing a chunk.
+	 */
+	private boolean nextSymbols() throws IOException {
+		while (sequential == null
+				&& (current == null || pos == current.size())) {
+			if (pending.isEmpty()) {
+				finish();
+				return false;
+			}
+			current = takeChunk();
+			pos = 0;
+			submitChunks();
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the root element's start tag and where the body of the document
+	 * begins.
+	 *
+	 * The prolog may only contain an XML declaration. Comments, processing
+	 * instructions or a DOCTYPE could hide text that looks like the root
+	 * element, or declare entities the chunks would need, so documents that
+	 * have them are parsed sequentially.
+	 *
+	 * @return Whether the root element was found in the prolog, and the
+	 *         document can be parsed in chunks.
+	 * @throws IOException
+	 *             If there was a problem reading the document.
+	 */
+	private boolean scanProlog() throws IOException {
+		byte[] prolog = new byte[(int) Math.min(MAX_PROLOG_LENGTH,
+				document.length())];
+		document.read(0, prolog, 0, prolog.length);
+		int rootStart = indexOf(prolog, 0, prolog.length, ROOT_START);
+		if (rootStart == -1) {
+			return false;
+		}
+		int markupStart = 0;
+		if (indexOf(prolog, 0, rootStart, XML_DECLARATION_START) == 0) {
+			markupStart = indexOf(prolog, 0, rootStart, XML_DECLARATION_END);
+			if (markupStart == -1) {
+				return false;
+			}
+		}
+		if (indexOf(prolog, markupStart, rootStart, new byte[] { '<' }) != -1) {
+			return false;
+		}
+		int rootEnd = rootStart;
+		while (rootEnd < prolog.length && prolog[rootEnd] != '>') {
+			++rootEnd;
+		}
+		if (rootEnd == prolog.length || prolog[rootEnd - 1] == '/') {
+			return false;
+		}
+		rootTag = new byte[rootEnd + 1 - rootStart];
+		System.arraycopy(prolog, rootStart, rootTag, 0, rootTag.length);
+		bodyStart = rootEnd + 1;
+		return true;
+	}
+
+	/**
+	 * Submits chunks for parsing until there are enough of them pending or
+	 * the whole document has been submitted.
+	 *
+	 * @throws IOException
+	 *             If there was a problem reading the document.
+	 */
+	private void submitChunks() throws IOException {
+		while (sequential == null && pending.size() < maxPending
+				&& nextChunkStart < document.length()) {
+			long start = nextChunkStart;
+			long end = findChunkEnd(Math.max(start + chunkSize, bodyStart));
+			if (end - start > Integer.MAX_VALUE - rootTag.length
+					- ROOT_FOOTER.length) {
+				throw new IOException(String.format(
+						"No element boundary found after position %d", start));
+			}
+			pending.add(executor.submit(new ChunkParser(start, end)));
+			nextChunkStart = end;
+		}
+	}
+
+	/**
+	 * Returns the position of the first element start tag at or after a
+	 * given position, or the end of the document if there is none.
+	 *
+	 * @throws IOException
+	 *             If there was a problem reading the document.
+	 */
+	private long findChunkEnd(long position) throws IOException {
+		byte[] window = new byte[SCAN_WINDOW + 1];
+		long length = document.length();
+		while (position < length) {
+			int read = (int) Math.min(window.length, length - position);
+			document.read(position, window, 0, read);
+			for (int i = 0; i + 1 < read; ++i) {
+				if (window[i] == '<' && window[i + 1] != '/'
+						&& window[i + 1] != '!' && window[i + 1] != '?') {
+					return position + i;
+				}
+			}
+			position += Math.max(read - 1, 1);
+		}
+		return length;
+	}
+
+	/**
+	 * Waits for the next chunk to be parsed and returns its symbols. If the
+	 * chunk could not be parsed separately, switches to sequential parsing.
+	 *
+	 * @throws IOException
+	 *             If there was a problem parsing the chunk.
+	 */
+	private SymbolBuffer takeChunk() throws IOException {
+		Future<SymbolBuffer> chunk = pending.removeFirst();
+		try {
+			return chunk.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing the document");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UnsplittableException) {
+				parseSequentially(((UnsplittableException) e.getCause())
+						.getChunkStart());
+				return null;
+			} else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Switches to parsing the rest of the document sequentially, starting at
+	 * a chunk whose preceding chunks have all been read.
+	 *
+	 * @param chunkStart
+	 *            The position where the chunk starts.
+	 * @throws IOException
+	 *             If there was a problem parsing the document.
+	 */
+	private void parseSequentially(long chunkStart) throws IOException {
+		cancelPending();
+		current = null;
+		InputStream rest = document.open(chunkStart, document.length());
+		if (chunkStart > 0) {
+			rest = new SequenceInputStream(new ByteArrayInputStream(rootTag),
+					rest);
+		}
+		sequential = new XmlScanningDecoder(rest);
+	}
+
+	private void cancelPending() {
+		for (Future<SymbolBuffer> chunk : pending) {
+			chunk.cancel(false);
+		}
+		pending.clear();
+	}
+
+	private void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		cancelPending();
+		if (ownsExecutor) {
+			executor.shutdownNow();
+		}
+		document.close();
+	}
+
+	private static int indexOf(byte[] data, int start, int end, byte[] pattern) {
+		for (int i = start; i + pattern.length <= end; ++i) {
+			int j = 0;
+			while (j < pattern.length && data[i + j] == pattern[j]) {
+				++j;
+			}
+			if (j == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int defaultMaxPending() {
+		return Runtime.getRuntime().availableProcessors() * 2;
+	}
+
+	private static ExecutorService newExecutor(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Debloat XML parser");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Thrown when a chunk contains markup that may hide element boundaries.
+	 */
+	private static class UnsplittableException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final long chunkStart;
+
+		public UnsplittableException(long chunkStart) {
+			this.chunkStart = chunkStart;
+		}
+
+		public long getChunkStart() {
+			return chunkStart;
+		}
+	}
+
+	/**
+	 * Parses a chunk of the document into a symbol buffer.
+	 */
+	private class ChunkParser implements Callable<SymbolBuffer> {
+
+		private final long start;
+		private final long end;
+
+		public ChunkParser(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public SymbolBuffer call() throws IOException {
+			boolean first = start == 0;
+			boolean last = end == document.length();
+			ByteArrayOutputStream chunk = new ByteArrayOutputStream(
+					(int) (end - start) + rootTag.length + ROOT_FOOTER.length);
+			if (!first) {
+				chunk.write(rootTag);
+			}
+			byte[] body = new byte[(int) (end - start)];
+			document.read(start, body, 0, body.length);
+			int checkFrom = first ? (int) bodyStart : 0;
+			for (int i = checkFrom; i + 1 < body.length; ++i) {
+				if (body[i] == '<' && (body[i + 1] == '!' || body[i + 1] == '?')) {
+					throw new UnsplittableException(start);
+				}
+			}
+			chunk.write(body);
+			if (!last) {
+				chunk.write(ROOT_FOOTER);
+			}
+			Codec.Decoder decoder = new XmlScanningDecoder(
+					new ByteArrayInputStream(chunk.toByteArray()));
+			SymbolBuffer symbols = new SymbolBuffer();
+			symbols.readFrom(decoder, Integer.MAX_VALUE);
+			return symbols;
+		}
+	}
+
+	/**
+	 * A document that can be read at arbitrary positions from several
+	 * threads.
+	 */
+	private static abstract class Document {
+
+		public abstract long length();
+
+		/**
+		 * Reads exactly the given number of bytes starting at a position.
+		 */
+		public abstract void read(long position, byte[] dest, int offset,
+				int length) throws IOException;
+
+		public abstract void close() throws IOException;
+
+		/**
+		 * Returns a stream that reads a range of the document.
+		 */
+		public InputStream open(final long start, final long end) {
+			return new InputStream() {
+				private long position = start;
+
+				@Override
+				public int read() throws IOException {
+					byte[] b = new byte[1];
+					return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					if (position == end) {
+						return -1;
+					}
+					int count = (int) Math.min(len, end - position);
+					Document.this.read(position, b, off, count);
+					position += count;
+					return count;
+				}
+			};
+		}
+	}
+
+	/**
+	 * A document held in memory.
+	 */
+	private static class ArrayDocument extends Document {
+
+		private final byte[] data;
+		private final int length;
+
+		public ArrayDocument(InputStream input) throws IOException {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[65536];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+			}
+			this.data = output.toByteArray();
+			this.length = data.length;
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		@Override
+		public void read(long position, byte[] dest, int offset, int length)
+				throws IOException {
+			System.arraycopy(data, (int) position, dest, offset, length);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * A document in a file, read with positional reads so that several
+	 * threads can read it at the same time.
+	 */
+	private static class FileDocument extends Document {
+
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final long length;
+
+		public FileDocument(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			this.channel = this.file.getChannel();
+			this.length = channel.size();
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		@Override
+		public void read(long position, byte[] dest, int offset, int length)
+				throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(dest, offset, length);
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position + buffer.position()
+						- offset);
+				if (read == -1) {
+					throw new IOException("Unexpected end of file");
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+}
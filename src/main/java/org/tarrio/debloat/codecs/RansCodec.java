@@ -0,0 +1,738 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+
+/**
+ * A Codec that entropy-codes the symbols with interleaved rANS (range
+ * asymmetric numeral systems).
+ *
+ * The data starts with the same kind of header as {@link BinaryCodec}, and
+ * then contains a sequence of blocks of up to BLOCK_SIZE symbols, ending with
+ * an empty block. Each symbol is split into values that are modeled in
+ * separate contexts: the kind of symbol, the literal bytes, the lengths of
+ * back-references, repeat references and literal runs, the back-reference
+ * distance and the dictionary entry. The slots of repeat references share the
+ * dictionary entry context, as no algorithm produces both kinds of symbols.
+ * Numbers are coded as a bucket, which is entropy-coded, plus some extra
+ * bits, which are stored verbatim. Checkpoint offsets are stored verbatim too.
+ *
+ * Each block contains the frequency tables for its contexts, the extra bits
+ * and the rANS-coded data. The coded values are distributed among STATES
+ * interleaved rANS states, so the decoder's operations on each state do not
+ * depend on the previous value.
+ *
+ * @author Jacobo Tarrio
+ */
+class RansCodec implements Codec {
+
+	static final byte[] MAGIC = new byte[] { 'D', 'B', 'L', 'R' };
+	static final int VERSION = 1;
+
+	/**
+	 * The maximum number of symbols, and of bytes in literal runs, in a block.
+	 */
+	static final int BLOCK_SIZE = 65536;
+
+	/**
+	 * The number of interleaved rANS states.
+	 */
+	static final int STATES = 4;
+
+	/**
+	 * The frequencies in each table add up to 1 << SCALE_BITS.
+	 */
+	static final int SCALE_BITS = 12;
+
+	private static final int SCALE = 1 << SCALE_BITS;
+	private static final int SCALE_MASK = SCALE - 1;
+
+	/**
+	 * The lower bound of the rANS states. They are kept between RANS_LOW and
+	 * RANS_LOW << 8.
+	 */
+	private static final long RANS_LOW = 1L << 23;
+
+	private static final int KIND_CONTEXT = 0;
+	private static final int LITERAL_CONTEXT = 1;
+	private static final int DISTANCE_CONTEXT = 2;
+	private static final int LENGTH_CONTEXT = 3;
+	private static final int ENTRY_CONTEXT = 4;
+	private static final int CONTEXTS = 5;
+
+	/**
+	 * The number of buckets for 32-bit numbers. Numbers up to 15 have a bucket
+	 * each; larger numbers are grouped by their two most significant bits.
+	 */
+	static final int BUCKETS = 72;
+
+	private static final int DIRECT_BUCKETS = 16;
+
+	private static final int[] ALPHABET_SIZES = new int[] {
+			SymbolBuffer.REPEAT_REF + 1, 256, BUCKETS, BUCKETS, BUCKETS };
+
+	private static final long UNSIGNED_INT_MASK = 0xffffffffL;
+
+	@Override
+	public Encoder getEncoder(OutputStream output) throws IOException {
+		return new EncoderImpl(output);
+	}
+
+	@Override
+	public Decoder getDecoder(InputStream input) throws IOException {
+		return new DecoderImpl(input);
+	}
+
+	/**
+	 * Returns the bucket for a number.
+	 *
+	 * @param value
+	 *            The number, between 0 and 2^32-1.
+	 */
+	static int bucketOf(long value) {
+		if (value < DIRECT_BUCKETS) {
+			return (int) value;
+		}
+		int bits = 63 - Long.numberOfLeadingZeros(value);
+		return DIRECT_BUCKETS + (bits - 4) * 2
+				+ (int) ((value >>> (bits - 1)) & 1);
+	}
+
+	/**
+	 * Returns the number of extra bits that follow a bucket.
+	 */
+	static int extraBitsOf(int bucket) {
+		return bucket < DIRECT_BUCKETS ? 0 : (bucket - DIRECT_BUCKETS) / 2 + 3;
+	}
+
+	/**
+	 * Returns the smallest number in a bucket.
+	 */
+	static long baseOf(int bucket) {
+		if (bucket < DIRECT_BUCKETS) {
+			return bucket;
+		}
+		return (long) (2 | ((bucket - DIRECT_BUCKETS) & 1)) << extraBitsOf(bucket);
+	}
+
+	/**
+	 * A class to encode compressed data with rANS.
+	 */
+	private static class EncoderImpl implements BatchEncoder {
+
+		private final OutputBuffer output;
+		private boolean wroteHeader;
+		private final SymbolBuffer symbols;
+		private int literalCount;
+		private final byte[] codedContexts;
+		private final int[] codedValues;
+		private int codedCount;
+		private final int[][] counts;
+		private final FrequencyTable[] tables;
+		private final BitWriter extraBits;
+		private byte[] ransData;
+
+		public EncoderImpl(OutputStream output) {
+			this.output = new OutputBuffer(output);
+			this.wroteHeader = false;
+			this.symbols = new SymbolBuffer(BLOCK_SIZE);
+			this.literalCount = 0;
+			this.codedContexts = new byte[BLOCK_SIZE * 4];
+			this.codedValues = new int[BLOCK_SIZE * 4];
+			this.codedCount = 0;
+			this.counts = new int[CONTEXTS][];
+			this.tables = new FrequencyTable[CONTEXTS];
+			for (int i = 0; i < CONTEXTS; ++i) {
+				counts[i] = new int[ALPHABET_SIZES[i]];
+				tables[i] = new FrequencyTable(ALPHABET_SIZES[i]);
+			}
+			this.extraBits = new BitWriter();
+			this.ransData = new byte[0];
+		}
+
+		@Override
+		public void setAlgorithm(String algorithm) throws IOException {
+			BinaryCodec.writeHeader(output, MAGIC, VERSION, algorithm);
+			wroteHeader = true;
+		}
+
+		@Override
+		public void write(Symbol symbol) throws IOException {
+			checkWroteHeader();
+			if (symbol instanceof Symbol.Literals) {
+				byte[] bytes = ((Symbol.Literals) symbol).getBytes();
+				addLiterals(bytes, 0, bytes.length);
+				return;
+			}
+			symbols.add(symbol);
+			if (symbols.size() == BLOCK_SIZE) {
+				writeBlock();
+			}
+		}
+
+		@Override
+		public void write(SymbolBuffer batch) throws IOException {
+			checkWroteHeader();
+			int size = batch.size();
+			for (int i = 0; i < size; ++i) {
+				if (batch.getKind(i) == SymbolBuffer.LITERALS) {
+					addLiterals(batch.getLiteralBytes(),
+							batch.getLiteralOffset(i), batch.getLength(i));
+					continue;
+				}
+				symbols.add(batch, i);
+				if (symbols.size() == BLOCK_SIZE) {
+					writeBlock();
+				}
+			}
+		}
+
+		/**
+		 * Adds a literal run to the pending symbols, splitting it so that no
+		 * block has more than BLOCK_SIZE literal bytes.
+		 */
+		private void addLiterals(byte[] bytes, int offset, int length)
+				throws IOException {
+			while (length > 0) {
+				int chunk = Math.min(length, BLOCK_SIZE - literalCount);
+				symbols.addLiterals(bytes, offset, chunk);
+				literalCount += chunk;
+				offset += chunk;
+				length -= chunk;
+				if (symbols.size() == BLOCK_SIZE || literalCount == BLOCK_SIZE) {
+					writeBlock();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			checkWroteHeader();
+			writeBlock();
+			output.writeVarint(0);
+			output.flush();
+		}
+
+		private void checkWroteHeader() {
+			if (!wroteHeader) {
+				throw new IllegalStateException(
+						"Must set the algorithm's name before encoding data");
+			}
+		}
+
+		/**
+		 * Writes the pending symbols, if any, as a block.
+		 */
+		private void writeBlock() throws IOException {
+			int count = symbols.size();
+			if (count == 0) {
+				return;
+			}
+			model();
+			output.writeVarint(count);
+			for (int i = 0; i < CONTEXTS; ++i) {
+				tables[i].normalize(counts[i]);
+				tables[i].write(output);
+			}
+			output.writeVarint(extraBits.size());
+			output.write(extraBits.getData(), 0, extraBits.size());
+			int ransStart = encode();
+			output.writeVarint(ransData.length - ransStart);
+			output.write(ransData, ransStart, ransData.length - ransStart);
+			symbols.clear();
+			literalCount = 0;
+		}
+
+		/**
+		 * Splits the symbols into the values to code in each context, counts
+		 * them and writes the extra bits.
+		 */
+		private void model() {
+			codedCount = 0;
+			for (int i = 0; i < CONTEXTS; ++i) {
+				Arrays.fill(counts[i], 0);
+			}
+			extraBits.clear();
+			for (int i = 0; i < symbols.size(); ++i) {
+				int kind = symbols.getKind(i);
+				addValue(KIND_CONTEXT, kind);
+				switch (kind) {
+				case SymbolBuffer.BYTE:
+					addValue(LITERAL_CONTEXT, symbols.getByteValue(i) & 0xff);
+					break;
+				case SymbolBuffer.LITERALS:
+					int length = symbols.getLength(i);
+					addNumber(LENGTH_CONTEXT, length);
+					byte[] bytes = symbols.getLiteralBytes();
+					int start = symbols.getLiteralOffset(i);
+					for (int j = 0; j < length; ++j) {
+						addValue(LITERAL_CONTEXT, bytes[start + j] & 0xff);
+					}
+					break;
+				case SymbolBuffer.BACK_REF:
+					addNumber(DISTANCE_CONTEXT, symbols.getDistance(i)
+							& UNSIGNED_INT_MASK);
+					addNumber(LENGTH_CONTEXT, symbols.getLength(i));
+					break;
+				case SymbolBuffer.REPEAT_REF:
+					addNumber(ENTRY_CONTEXT, symbols.getSlot(i)
+							& UNSIGNED_INT_MASK);
+					addNumber(LENGTH_CONTEXT, symbols.getLength(i));
+					break;
+				case SymbolBuffer.DICTIONARY_REF:
+					addNumber(ENTRY_CONTEXT, symbols.getEntry(i)
+							& UNSIGNED_INT_MASK);
+					break;
+				case SymbolBuffer.CHECKPOINT:
+					long offset = symbols.getOffset(i);
+					extraBits.write(offset & UNSIGNED_INT_MASK, 32);
+					extraBits.write(offset >>> 32, 32);
+					break;
+				default:
+					break;
+				}
+			}
+			extraBits.flush();
+		}
+
+		private void addValue(int context, int value) {
+			codedContexts[codedCount] = (byte) context;
+			codedValues[codedCount++] = value;
+			++counts[context][value];
+		}
+
+		private void addNumber(int context, long value) {
+			int bucket = bucketOf(value);
+			addValue(context, bucket);
+			int bits = extraBitsOf(bucket);
+			if (bits > 0) {
+				extraBits.write(value - baseOf(bucket), bits);
+			}
+		}
+
+		/**
+		 * Codes the values in reverse order, so the decoder can read them
+		 * forwards.
+		 *
+		 * @return The position of the coded data in ransData.
+		 */
+		private int encode() {
+			int capacity = codedCount * 2 + STATES * 4;
+			if (ransData.length != capacity) {
+				ransData = new byte[capacity];
+			}
+			int pos = capacity;
+			long[] states = new long[STATES];
+			Arrays.fill(states, RANS_LOW);
+			for (int i = codedCount - 1; i >= 0; --i) {
+				FrequencyTable table = tables[codedContexts[i]];
+				int value = codedValues[i];
+				long freq = table.freqs[value];
+				long state = states[i % STATES];
+				long max = ((RANS_LOW >>> SCALE_BITS) << 8) * freq;
+				while (state >= max) {
+					ransData[--pos] = (byte) state;
+					state >>>= 8;
+				}
+				states[i % STATES] = ((state / freq) << SCALE_BITS)
+						+ (state % freq) + table.starts[value];
+			}
+			for (int i = STATES - 1; i >= 0; --i) {
+				long state = states[i];
+				ransData[--pos] = (byte) (state >>> 24);
+				ransData[--pos] = (byte) (state >>> 16);
+				ransData[--pos] = (byte) (state >>> 8);
+				ransData[--pos] = (byte) state;
+			}
+			return pos;
+		}
+	}
+
+	/**
+	 * A class to decode compressed data coded with rANS.
+	 */
+	private static class DecoderImpl implements Decoder {
+
+		private final InputBuffer input;
+		private final String algorithm;
+		private final FrequencyTable[] tables;
+		private final BitReader extraBits;
+		private final long[] states;
+		private final byte[] literals;
+		private byte[] ransData;
+		private int ransPos;
+		private int ransLimit;
+		private int codedIndex;
+		private int remaining;
+		private boolean finished;
+
+		public DecoderImpl(InputStream input) throws IOException {
+			this.input = new InputBuffer(input);
+			this.tables = new FrequencyTable[CONTEXTS];
+			for (int i = 0; i < CONTEXTS; ++i) {
+				tables[i] = new FrequencyTable(ALPHABET_SIZES[i]);
+			}
+			this.extraBits = new BitReader();
+			this.states = new long[STATES];
+			this.literals = new byte[BLOCK_SIZE];
+			this.ransData = new byte[0];
+			this.remaining = 0;
+			this.finished = false;
+			this.algorithm = BinaryCodec.readHeader(this.input, MAGIC,
+					VERSION);
+		}
+
+		@Override
+		public String getAlgoritm() throws IOException {
+			return algorithm;
+		}
+
+		@Override
+		public Symbol read() throws IOException {
+			if (remaining == 0 && !finished) {
+				readBlock();
+			}
+			if (finished) {
+				return null;
+			}
+			--remaining;
+			int kind = decodeValue(KIND_CONTEXT);
+			switch (kind) {
+			case SymbolBuffer.BYTE:
+				return Symbol.newByte((byte) decodeValue(LITERAL_CONTEXT));
+			case SymbolBuffer.LITERALS:
+				long count = decodeNumber(LENGTH_CONTEXT);
+				if (count > BLOCK_SIZE) {
+					throw new IOException("Invalid literal run length "
+							+ count);
+				}
+				for (int i = 0; i < count; ++i) {
+					literals[i] = (byte) decodeValue(LITERAL_CONTEXT);
+				}
+				return Symbol.newLiterals(literals, 0, (int) count);
+			case SymbolBuffer.BACK_REF:
+				int distance = (int) decodeNumber(DISTANCE_CONTEXT);
+				long length = decodeNumber(LENGTH_CONTEXT);
+				if (length > SymbolBuffer.MAX_LENGTH) {
+					throw new IOException("Invalid back-reference length "
+							+ length);
+				}
+				return Symbol.newBackRef(distance, (int) length);
+			case SymbolBuffer.REPEAT_REF:
+				int slot = (int) decodeNumber(ENTRY_CONTEXT);
+				long repeatLength = decodeNumber(LENGTH_CONTEXT);
+				if (repeatLength > SymbolBuffer.MAX_LENGTH) {
+					throw new IOException("Invalid repeat reference length "
+							+ repeatLength);
+				}
+				return Symbol.newRepeatRef(slot, (int) repeatLength);
+			case SymbolBuffer.DICTIONARY_REF:
+				return Symbol.newDictionaryRef((int) decodeNumber(ENTRY_CONTEXT));
+			case SymbolBuffer.RESET:
+				return Symbol.newReset();
+			default:
+				long offset = extraBits.read(32);
+				return Symbol.newCheckpoint(offset | extraBits.read(32) << 32);
+			}
+		}
+
+		private void readBlock() throws IOException {
+			long count = input.readVarint();
+			if (count == 0) {
+				finished = true;
+				return;
+			}
+			if (count > BLOCK_SIZE) {
+				throw new IOException("Invalid block size " + count);
+			}
+			for (int i = 0; i < CONTEXTS; ++i) {
+				tables[i].read(input);
+			}
+			extraBits.setData(readBytes());
+			ransData = readBytes();
+			ransLimit = ransData.length;
+			ransPos = 0;
+			for (int i = 0; i < STATES; ++i) {
+				long state = 0;
+				for (int j = 0; j < 4; ++j) {
+					state |= (long) nextRansByte() << (8 * j);
+				}
+				states[i] = state;
+			}
+			codedIndex = 0;
+			remaining = (int) count;
+		}
+
+		private byte[] readBytes() throws IOException {
+			long length = input.readVarint();
+			if (length > BLOCK_SIZE * 16L) {
+				throw new IOException("Invalid block section length "
+						+ length);
+			}
+			byte[] data = new byte[(int) length];
+			input.readFully(data, data.length);
+			return data;
+		}
+
+		private int nextRansByte() throws IOException {
+			if (ransPos == ransLimit) {
+				throw new IOException("Truncated rANS data");
+			}
+			return ransData[ransPos++] & 0xff;
+		}
+
+		private int decodeValue(int context) throws IOException {
+			FrequencyTable table = tables[context];
+			int index = codedIndex++ % STATES;
+			long state = states[index];
+			int slot = (int) (state & SCALE_MASK);
+			int value = table.slots[slot];
+			if (value < 0) {
+				throw new IOException("Invalid rANS data");
+			}
+			state = table.freqs[value] * (state >>> SCALE_BITS) + slot
+					- table.starts[value];
+			while (state < RANS_LOW) {
+				state = (state << 8) | nextRansByte();
+			}
+			states[index] = state;
+			return value;
+		}
+
+		private long decodeNumber(int context) throws IOException {
+			int bucket = decodeValue(context);
+			int bits = extraBitsOf(bucket);
+			return baseOf(bucket) + (bits > 0 ? extraBits.read(bits) : 0);
+		}
+	}
+
+	/**
+	 * The frequencies of the values in a context, scaled so they add up to
+	 * SCALE.
+	 */
+	private static class FrequencyTable {
+		final int[] freqs;
+		final int[] starts;
+		final int[] slots;
+
+		public FrequencyTable(int alphabetSize) {
+			this.freqs = new int[alphabetSize];
+			this.starts = new int[alphabetSize];
+			this.slots = new int[SCALE];
+		}
+
+		/**
+		 * Sets the frequencies from the number of times each value appears.
+		 * Every value that appears gets a frequency of at least one.
+		 */
+		public void normalize(int[] counts) {
+			long total = 0;
+			for (int count : counts) {
+				total += count;
+			}
+			int sum = 0;
+			int largest = -1;
+			for (int i = 0; i < counts.length; ++i) {
+				if (counts[i] == 0) {
+					freqs[i] = 0;
+					continue;
+				}
+				freqs[i] = (int) Math.max(1, counts[i] * SCALE / total);
+				sum += freqs[i];
+				if (largest == -1 || counts[i] > counts[largest]) {
+					largest = i;
+				}
+			}
+			if (largest == -1) {
+				return;
+			}
+			if (sum < SCALE) {
+				freqs[largest] += SCALE - sum;
+			}
+			while (sum > SCALE) {
+				int biggest = 0;
+				for (int i = 1; i < freqs.length; ++i) {
+					if (freqs[i] > freqs[biggest]) {
+						biggest = i;
+					}
+				}
+				int decrease = Math.min(freqs[biggest] - 1, sum - SCALE);
+				freqs[biggest] -= decrease;
+				sum -= decrease;
+			}
+			computeStarts();
+		}
+
+		/**
+		 * Writes the table as the number of values with a nonzero frequency,
+		 * followed by the difference with the previous value and the
+		 * frequency of each.
+		 */
+		public void write(OutputBuffer output) throws IOException {
+			int present = 0;
+			for (int freq : freqs) {
+				if (freq > 0) {
+					++present;
+				}
+			}
+			output.writeVarint(present);
+			int previous = -1;
+			for (int i = 0; i < freqs.length; ++i) {
+				if (freqs[i] > 0) {
+					output.writeVarint(i - previous - 1);
+					output.writeVarint(freqs[i] - 1);
+					previous = i;
+				}
+			}
+		}
+
+		/**
+		 * Reads a table written by write() and prepares it for decoding.
+		 */
+		public void read(InputBuffer input) throws IOException {
+			Arrays.fill(freqs, 0);
+			long present = input.readVarint();
+			if (present > freqs.length) {
+				throw new IOException("Invalid frequency table");
+			}
+			long value = -1;
+			long sum = 0;
+			for (int i = 0; i < present; ++i) {
+				value += input.readVarint() + 1;
+				long freq = input.readVarint() + 1;
+				sum += freq;
+				if (value >= freqs.length || sum > SCALE) {
+					throw new IOException("Invalid frequency table");
+				}
+				freqs[(int) value] = (int) freq;
+			}
+			if (present > 0 && sum != SCALE) {
+				throw new IOException("Invalid frequency table");
+			}
+			computeStarts();
+			Arrays.fill(slots, -1);
+			for (int i = 0; i < freqs.length; ++i) {
+				Arrays.fill(slots, starts[i], starts[i] + freqs[i], i);
+			}
+		}
+
+		private void computeStarts() {
+			int start = 0;
+			for (int i = 0; i < freqs.length; ++i) {
+				starts[i] = start;
+				start += freqs[i];
+			}
+		}
+	}
+
+	/**
+	 * Writes numbers of up to 32 bits into a growable array, least
+	 * significant bit first.
+	 */
+	private static class BitWriter {
+		private byte[] data;
+		private int size;
+		private long pending;
+		private int pendingBits;
+
+		public BitWriter() {
+			this.data = new byte[1024];
+			clear();
+		}
+
+		public void clear() {
+			size = 0;
+			pending = 0;
+			pendingBits = 0;
+		}
+
+		public void write(long value, int bits) {
+			pending |= (value & ((1L << bits) - 1)) << pendingBits;
+			pendingBits += bits;
+			while (pendingBits >= 8) {
+				append((byte) pending);
+				pending >>>= 8;
+				pendingBits -= 8;
+			}
+		}
+
+		/**
+		 * Writes the remaining bits, padded to a whole byte.
+		 */
+		public void flush() {
+			if (pendingBits > 0) {
+				append((byte) pending);
+				pending = 0;
+				pendingBits = 0;
+			}
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		private void append(byte b) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			data[size++] = b;
+		}
+	}
+
+	/**
+	 * Reads the numbers written by {@link BitWriter}.
+	 */
+	private static class BitReader {
+		private byte[] data;
+		private int pos;
+		private long pending;
+		private int pendingBits;
+
+		public void setData(byte[] data) {
+			this.data = data;
+			this.pos = 0;
+			this.pending = 0;
+			this.pendingBits = 0;
+		}
+
+		public long read(int bits) throws IOException {
+			while (pendingBits < bits) {
+				if (pos == data.length) {
+					throw new IOException("Truncated extra bits");
+				}
+				pending |= (long) (data[pos++] & 0xff) << pendingBits;
+				pendingBits += 8;
+			}
+			long value = pending & ((1L << bits) - 1);
+			pending >>>= bits;
+			pendingBits -= bits;
+			return value;
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.CompressionAlgorithm;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.SymbolVisitor;
+
+/**
+ * An index of the checkpoints in an XML document written by {@link XmlCodec},
+ * which allows decompressing a range of the data without decoding everything
+ * before it.
+ *
+ * Each entry records the uncompressed offset of a checkpoint, the index of its
+ * symbol in the symbol stream and the offset of its element in the document.
+ * The first entry always represents the beginning of the document's body.
+ *
+ * An index can be built by scanning the document, and stored as a sidecar
+ * file with write() and read().
+ *
+ * @author Jacobo Tarrio
+ */
+public class SeekIndex {
+
+	private static final int MAGIC = 0x44424958;
+	private static final int VERSION = 1;
+
+	private final byte[] header;
+	private final List<Entry> entries;
+
+	private SeekIndex(byte[] header, List<Entry> entries) {
+		this.header = header;
+		this.entries = Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Builds the index for a document by scanning it.
+	 *
+	 * @param file
+	 *            The file containing the document.
+	 * @return The index.
+	 * @throws IOException
+	 *             If there was a problem reading the file, or the document did
+	 *             not have the layout written by {@link XmlCodec}.
+	 */
+	public static SeekIndex build(File file) throws IOException {
+		InputStream input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			XmlScanningDecoder decoder = new XmlScanningDecoder(input);
+			long bodyStart = decoder.getElementOffset();
+			checkOffset(bodyStart);
+			List<Entry> entries = new ArrayList<Entry>();
+			entries.add(new Entry(0, 0, bodyStart));
+			long symbolIndex = 0;
+			Symbol symbol;
+			while ((symbol = decoder.read()) != null) {
+				if (symbol instanceof Symbol.Checkpoint) {
+					long byteOffset = decoder.getElementOffset();
+					checkOffset(byteOffset);
+					entries.add(new Entry(((Symbol.Checkpoint) symbol)
+							.getOffset(), symbolIndex, byteOffset));
+				}
+				++symbolIndex;
+			}
+			return new SeekIndex(readHeader(file, (int) bodyStart), entries);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads an index from a stream, as written by write().
+	 *
+	 * @param input
+	 *            The stream to read the index from.
+	 * @return The index.
+	 * @throws IOException
+	 *             If there was a problem reading the stream or it did not
+	 *             contain an index.
+	 */
+	public static SeekIndex read(InputStream input) throws IOException {
+		DataInputStream data = new DataInputStream(input);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("The stream does not contain a seek index");
+		}
+		int version = data.readInt();
+		if (version != VERSION) {
+			throw new IOException(String.format(
+					"Unsupported seek index version %d", version));
+		}
+		byte[] header = new byte[data.readInt()];
+		data.readFully(header);
+		int count = data.readInt();
+		List<Entry> entries = new ArrayList<Entry>(count);
+		for (int i = 0; i < count; ++i) {
+			entries.add(new Entry(data.readLong(), data.readLong(), data
+					.readLong()));
+		}
+		if (entries.isEmpty()) {
+			throw new IOException("The seek index has no entries");
+		}
+		return new SeekIndex(header, entries);
+	}
+
+	/**
+	 * Writes the index into a stream.
+	 *
+	 * @param output
+	 *            The stream to write the index into.
+	 * @throws IOException
+	 *             If there was a problem writing into the stream.
+	 */
+	public void write(OutputStream output) throws IOException {
+		DataOutputStream data = new DataOutputStream(output);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(header.length);
+		data.write(header);
+		data.writeInt(entries.size());
+		for (Entry entry : entries) {
+			data.writeLong(entry.getUncompressedOffset());
+			data.writeLong(entry.getSymbolIndex());
+			data.writeLong(entry.getByteOffset());
+		}
+		data.flush();
+	}
+
+	/**
+	 * Returns the name of the algorithm the document was compressed with, as
+	 * recorded in the document's header.
+	 *
+	 * @throws IOException
+	 *             If the stored header could not be parsed.
+	 */
+	public String getAlgorithm() throws IOException {
+		return new XmlScanningDecoder(new ByteArrayInputStream(header))
+				.getAlgoritm();
+	}
+
+	/**
+	 * Returns the entries in the index, in order.
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Returns the last entry at or before an uncompressed offset.
+	 *
+	 * @param offset
+	 *            The uncompressed offset.
+	 * @return The entry decompression must start at to reach the offset.
+	 */
+	public Entry find(long offset) {
+		int low = 0;
+		int high = entries.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (entries.get(middle).getUncompressedOffset() <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return entries.get(low);
+	}
+
+	/**
+	 * Decompresses a range of the data in a document, starting at the closest
+	 * checkpoint before it.
+	 *
+	 * @param file
+	 *            The file containing the document this index was built for.
+	 * @param algorithm
+	 *            The algorithm to decompress the data with.
+	 * @param offset
+	 *            The uncompressed offset of the first byte to write.
+	 * @param length
+	 *            The maximum number of bytes to write.
+	 * @param output
+	 *            The stream to write the uncompressed bytes into.
+	 * @throws IOException
+	 *             If there was a problem reading the document or writing into
+	 *             the output stream.
+	 */
+	public void decompressRange(File file, CompressionAlgorithm algorithm,
+			long offset, long length, OutputStream output) throws IOException {
+		Entry entry = find(offset);
+		FileInputStream fileInput = new FileInputStream(file);
+		try {
+			fileInput.getChannel().position(entry.getByteOffset());
+			InputStream input = new SequenceInputStream(
+					new ByteArrayInputStream(header), new BufferedInputStream(
+							fileInput));
+			RangeOutputStream rangeOutput = new RangeOutputStream(output,
+					offset - entry.getUncompressedOffset(), length);
+			algorithm.decompress(new RangeDecoder(new XmlScanningDecoder(
+					input), rangeOutput), rangeOutput);
+		} finally {
+			fileInput.close();
+		}
+	}
+
+	private static void checkOffset(long offset) throws IOException {
+		if (offset == -1) {
+			throw new IOException(
+					"Cannot index a document with an unexpected layout");
+		}
+	}
+
+	private static byte[] readHeader(File file, int length) throws IOException {
+		DataInputStream input = new DataInputStream(new FileInputStream(file));
+		try {
+			byte[] header = new byte[length];
+			input.readFully(header);
+			return header;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * An entry in the index.
+	 */
+	public static class Entry {
+		private final long uncompressedOffset;
+		private final long symbolIndex;
+		private final long byteOffset;
+
+		private Entry(long uncompressedOffset, long symbolIndex,
+				long byteOffset) {
+			this.uncompressedOffset = uncompressedOffset;
+			this.symbolIndex = symbolIndex;
+			this.byteOffset = byteOffset;
+		}
+
+		/**
+		 * Returns the offset in the uncompressed data of this entry.
+		 */
+		public long getUncompressedOffset() {
+			return uncompressedOffset;
+		}
+
+		/**
+		 * Returns the index of this entry's symbol in the symbol stream.
+		 */
+		public long getSymbolIndex() {
+			return symbolIndex;
+		}
+
+		/**
+		 * Returns the offset in the document of this entry's element.
+		 */
+		public long getByteOffset() {
+			return byteOffset;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry [uncompressedOffset=" + uncompressedOffset
+					+ ", symbolIndex=" + symbolIndex + ", byteOffset="
+					+ byteOffset + "]";
+		}
+	}
+
+	/**
+	 * An output stream that discards the bytes before a range and after it.
+	 */
+	private static class RangeOutputStream extends OutputStream {
+		private final OutputStream output;
+		private long skip;
+		private long remaining;
+
+		public RangeOutputStream(OutputStream output, long skip, long length) {
+			this.output = output;
+			this.skip = skip;
+			this.remaining = length;
+		}
+
+		/**
+		 * Returns whether the whole range has been written.
+		 */
+		public boolean isComplete() {
+			return remaining == 0;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (skip > 0) {
+				--skip;
+			} else if (remaining > 0) {
+				output.write(b);
+				--remaining;
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int skipped = (int) Math.min(skip, len);
+			skip -= skipped;
+			off += skipped;
+			len -= skipped;
+			int written = (int) Math.min(remaining, len);
+			if (written > 0) {
+				output.write(b, off, written);
+				remaining -= written;
+			}
+		}
+	}
+
+	/**
+	 * A decoder that stops returning symbols once the range has been written.
+	 *
+	 * Symbols are pushed one at a time, so decoding stops right after the
+	 * symbol that completes the range instead of at the end of a batch.
+	 */
+	private static class RangeDecoder implements Codec.PushDecoder {
+		private final Codec.Decoder decoder;
+		private final RangeOutputStream output;
+		private final SymbolBuffer symbol;
+
+		public RangeDecoder(Codec.Decoder decoder, RangeOutputStream output) {
+			this.decoder = decoder;
+			this.output = output;
+			this.symbol = new SymbolBuffer(1);
+		}
+
+		@Override
+		public String getAlgoritm() throws IOException {
+			return decoder.getAlgoritm();
+		}
+
+		@Override
+		public Symbol read() throws IOException {
+			return output.isComplete() ? null : decoder.read();
+		}
+
+		@Override
+		public void decode(SymbolVisitor visitor) throws IOException {
+			while (!output.isComplete()) {
+				symbol.clear();
+				if (symbol.readFrom(decoder, 1) == 0) {
+					return;
+				}
+				symbol.accept(visitor);
+			}
+		}
+	}
+}
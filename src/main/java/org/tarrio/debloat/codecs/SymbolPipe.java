@@ -0,0 +1,268 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+import org.tarrio.debloat.Symbol;
+
+/**
+ * Connects an encoder, written to by one thread, to a decoder, read from by
+ * another thread, without serializing the symbols.
+ *
+ * Symbols are handed over in chunks through a bounded queue, so the writer
+ * blocks when it gets too far ahead of the reader.
+ *
+ * @author Jacobo Tarrio
+ */
+class SymbolPipe implements Closeable {
+
+	/**
+	 * The number of symbols in each chunk.
+	 */
+	static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * The maximum number of chunks waiting to be read.
+	 */
+	static final int QUEUE_SIZE = 16;
+
+	/**
+	 * How often the writer checks whether the reader has gone away while it
+	 * waits for room in the queue, in milliseconds.
+	 */
+	private static final long POLL_INTERVAL = 100;
+
+	private final BlockingQueue<Chunk> queue;
+	private volatile boolean closed;
+
+	private final EncoderImpl encoder;
+	private final DecoderImpl decoder;
+
+	public SymbolPipe() {
+		this.queue = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE);
+		this.closed = false;
+		this.encoder = new EncoderImpl();
+		this.decoder = new DecoderImpl();
+	}
+
+	/**
+	 * Returns the encoder that writes into the pipe.
+	 */
+	public Encoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * Returns the decoder that reads from the pipe.
+	 */
+	public Decoder getDecoder() {
+		return decoder;
+	}
+
+	/**
+	 * Makes the pipe fail with the given exception. The reader gets the
+	 * exception once it has read all the previously written symbols.
+	 *
+	 * @param error
+	 *            The cause of the failure.
+	 */
+	public void fail(Throwable error) {
+		try {
+			put(new Chunk(error));
+		} catch (IOException e) {
+			// The reader has gone away, so nobody will see the error.
+		}
+	}
+
+	/**
+	 * Closes the reading end of the pipe, so the writer fails on its next
+	 * write.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		queue.clear();
+	}
+
+	private void put(Chunk chunk) throws IOException {
+		try {
+			while (!queue.offer(chunk, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (closed) {
+					throw new IOException("The pipe was closed by the reader");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing into the pipe");
+		}
+	}
+
+	/**
+	 * A piece of data handed over from the writer to the reader.
+	 */
+	private static class Chunk {
+		private final String algorithm;
+		private final Symbol[] symbols;
+		private final int count;
+		private final Throwable error;
+		private final boolean last;
+
+		public Chunk(String algorithm) {
+			this(algorithm, null, 0, null, false);
+		}
+
+		public Chunk(Symbol[] symbols, int count, boolean last) {
+			this(null, symbols, count, null, last);
+		}
+
+		public Chunk(Throwable error) {
+			this(null, null, 0, error, true);
+		}
+
+		private Chunk(String algorithm, Symbol[] symbols, int count,
+				Throwable error, boolean last) {
+			this.algorithm = algorithm;
+			this.symbols = symbols;
+			this.count = count;
+			this.error = error;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * The writing end of the pipe.
+	 */
+	private class EncoderImpl implements Codec.Encoder {
+
+		private Symbol[] symbols;
+		private int count;
+		private boolean wroteHeader;
+
+		public EncoderImpl() {
+			this.symbols = new Symbol[CHUNK_SIZE];
+			this.count = 0;
+			this.wroteHeader = false;
+		}
+
+		@Override
+		public void setAlgorithm(String algorithm) throws IOException {
+			put(new Chunk(algorithm));
+			wroteHeader = true;
+		}
+
+		@Override
+		public void write(Symbol symbol) throws IOException {
+			checkWroteHeader();
+			symbols[count++] = symbol;
+			if (count == CHUNK_SIZE) {
+				put(new Chunk(symbols, count, false));
+				symbols = new Symbol[CHUNK_SIZE];
+				count = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			checkWroteHeader();
+			put(new Chunk(symbols, count, true));
+			symbols = null;
+		}
+
+		private void checkWroteHeader() {
+			if (!wroteHeader) {
+				throw new IllegalStateException(
+						"Must set the algorithm's name before encoding data");
+			}
+		}
+	}
+
+	/**
+	 * The reading end of the pipe.
+	 */
+	private class DecoderImpl implements Codec.Decoder {
+
+		private String algorithm;
+		private Chunk current;
+		private int pos;
+		private Throwable error;
+
+		public DecoderImpl() {
+			this.algorithm = null;
+			this.current = null;
+			this.pos = 0;
+			this.error = null;
+		}
+
+		@Override
+		public String getAlgoritm() throws IOException {
+			if (algorithm == null) {
+				Chunk chunk = take();
+				if (chunk.algorithm == null) {
+					throw new IOException(
+							"The writer did not set the algorithm's name");
+				}
+				algorithm = chunk.algorithm;
+			}
+			return algorithm;
+		}
+
+		@Override
+		public Symbol read() throws IOException {
+			getAlgoritm();
+			while (current == null || pos == current.count) {
+				if (current != null && current.last) {
+					return null;
+				}
+				current = take();
+				pos = 0;
+			}
+			return current.symbols[pos++];
+		}
+
+		private Chunk take() throws IOException {
+			if (closed) {
+				throw new IOException("The pipe is closed");
+			}
+			if (error == null) {
+				Chunk chunk;
+				try {
+					chunk = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(
+							"Interrupted while reading from the pipe");
+				}
+				if (chunk.error == null) {
+					return chunk;
+				}
+				error = chunk.error;
+			}
+			if (error instanceof IOException) {
+				throw (IOException) error;
+			}
+			throw new IOException(error);
+		}
+	}
+}
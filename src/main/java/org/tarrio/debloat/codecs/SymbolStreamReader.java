@@ -0,0 +1,571 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Symbol;
+
+/**
+ * An XMLStreamReader that generates the events for the document
+ * {@link XmlCodec} would write, directly from the symbols read from a
+ * decoder.
+ *
+ * Events are generated as they are requested, one symbol at a time, and no
+ * text is produced except for the attribute values and literal runs that are
+ * asked for. Whitespace between elements is not reported.
+ *
+ * @author Jacobo Tarrio
+ */
+class SymbolStreamReader implements XMLStreamReader {
+
+	private static final QName ROOT_NAME = new QName(XmlCodec.ROOT_TAG);
+	private static final QName BYTE_NAME = new QName(XmlCodec.BYTE_TAG);
+	private static final QName LITERALS_NAME = new QName(XmlCodec.LITERALS_TAG);
+	private static final QName REFERENCE_NAME = new QName(
+			XmlCodec.REFERENCE_TAG);
+	private static final QName REPEAT_NAME = new QName(XmlCodec.REPEAT_TAG);
+	private static final QName DICTIONARY_NAME = new QName(
+			XmlCodec.DICTIONARY_TAG);
+	private static final QName RESET_NAME = new QName(XmlCodec.RESET_TAG);
+	private static final QName CHECKPOINT_NAME = new QName(
+			XmlCodec.CHECKPOINT_TAG);
+
+	private static final QName[] ROOT_ATTRIBS = new QName[] { new QName(
+			XmlCodec.ALGORITHM_ATTRIB) };
+	private static final QName[] BYTE_ATTRIBS = new QName[] { new QName(
+			XmlCodec.VALUE_ATTRIB) };
+	private static final QName[] REFERENCE_ATTRIBS = new QName[] {
+			new QName(XmlCodec.DISTANCE_ATTRIB),
+			new QName(XmlCodec.LENGTH_ATTRIB) };
+	private static final QName[] REPEAT_ATTRIBS = new QName[] {
+			new QName(XmlCodec.SLOT_ATTRIB), new QName(XmlCodec.LENGTH_ATTRIB) };
+	private static final QName[] DICTIONARY_ATTRIBS = new QName[] { new QName(
+			XmlCodec.ENTRY_ATTRIB) };
+	private static final QName[] CHECKPOINT_ATTRIBS = new QName[] { new QName(
+			XmlCodec.OFFSET_ATTRIB) };
+	private static final QName[] NO_ATTRIBS = new QName[0];
+
+	private static final Location NO_LOCATION = new Location() {
+		@Override
+		public int getLineNumber() {
+			return -1;
+		}
+
+		@Override
+		public int getColumnNumber() {
+			return -1;
+		}
+
+		@Override
+		public int getCharacterOffset() {
+			return -1;
+		}
+
+		@Override
+		public String getPublicId() {
+			return null;
+		}
+
+		@Override
+		public String getSystemId() {
+			return null;
+		}
+	};
+
+	private static final NamespaceContext NO_NAMESPACES = new NamespaceContext() {
+		@Override
+		public String getNamespaceURI(String prefix) {
+			if (prefix == null) {
+				throw new IllegalArgumentException("The prefix is null");
+			}
+			if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+				return XMLConstants.XML_NS_URI;
+			} else if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+				return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+			}
+			return XMLConstants.NULL_NS_URI;
+		}
+
+		@Override
+		public String getPrefix(String namespaceURI) {
+			if (namespaceURI == null) {
+				throw new IllegalArgumentException("The namespace URI is null");
+			}
+			if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+				return XMLConstants.XML_NS_PREFIX;
+			} else if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI
+					.equals(namespaceURI)) {
+				return XMLConstants.XMLNS_ATTRIBUTE;
+			} else if (XMLConstants.NULL_NS_URI.equals(namespaceURI)) {
+				return XMLConstants.DEFAULT_NS_PREFIX;
+			}
+			return null;
+		}
+
+		@Override
+		public Iterator<String> getPrefixes(String namespaceURI) {
+			String prefix = getPrefix(namespaceURI);
+			if (prefix == null) {
+				return Collections.<String> emptyList().iterator();
+			}
+			return Collections.singletonList(prefix).iterator();
+		}
+	};
+
+	private final Decoder decoder;
+	private final Closeable onClose;
+	private int eventType;
+	private String algorithm;
+	private Symbol symbol;
+	private QName name;
+	private QName[] attribs;
+	private String text;
+
+	/**
+	 * Creates a reader for the symbols in a decoder.
+	 *
+	 * @param decoder
+	 *            The decoder to read the symbols from.
+	 * @param onClose
+	 *            An object to close when the reader is closed, or null.
+	 */
+	public SymbolStreamReader(Decoder decoder, Closeable onClose) {
+		this.decoder = decoder;
+		this.onClose = onClose;
+		this.eventType = START_DOCUMENT;
+		this.algorithm = null;
+		this.symbol = null;
+		this.name = null;
+		this.attribs = NO_ATTRIBS;
+		this.text = null;
+	}
+
+	@Override
+	public Object getProperty(String name) throws IllegalArgumentException {
+		if (name == null) {
+			throw new IllegalArgumentException("The property name is null");
+		}
+		return null;
+	}
+
+	@Override
+	public int next() throws XMLStreamException {
+		try {
+			switch (eventType) {
+			case START_DOCUMENT:
+				algorithm = decoder.getAlgoritm();
+				setElement(START_ELEMENT, null, ROOT_NAME, ROOT_ATTRIBS);
+				break;
+			case START_ELEMENT:
+				if (name == ROOT_NAME) {
+					readSymbol();
+				} else if (name == LITERALS_NAME) {
+					setElement(CHARACTERS, symbol, name, NO_ATTRIBS);
+				} else {
+					setElement(END_ELEMENT, symbol, name, NO_ATTRIBS);
+				}
+				break;
+			case CHARACTERS:
+				setElement(END_ELEMENT, symbol, name, NO_ATTRIBS);
+				break;
+			case END_ELEMENT:
+				if (name == ROOT_NAME) {
+					setElement(END_DOCUMENT, null, null, NO_ATTRIBS);
+				} else {
+					readSymbol();
+				}
+				break;
+			default:
+				throw new NoSuchElementException(
+						"There are no more events in the document");
+			}
+			return eventType;
+		} catch (IOException e) {
+			throw new XMLStreamException(e);
+		}
+	}
+
+	/**
+	 * Reads the next symbol and sets up the event for its element, or for the
+	 * end of the root element if there are no more symbols.
+	 *
+	 * @throws IOException
+	 *             If there was a problem reading the symbol.
+	 */
+	private void readSymbol() throws IOException {
+		Symbol next = decoder.read();
+		if (next == null) {
+			setElement(END_ELEMENT, null, ROOT_NAME, NO_ATTRIBS);
+		} else if (next instanceof Symbol.Byte) {
+			setElement(START_ELEMENT, next, BYTE_NAME, BYTE_ATTRIBS);
+		} else if (next instanceof Symbol.Literals) {
+			setElement(START_ELEMENT, next, LITERALS_NAME, NO_ATTRIBS);
+		} else if (next instanceof Symbol.BackRef) {
+			setElement(START_ELEMENT, next, REFERENCE_NAME, REFERENCE_ATTRIBS);
+		} else if (next instanceof Symbol.RepeatRef) {
+			setElement(START_ELEMENT, next, REPEAT_NAME, REPEAT_ATTRIBS);
+		} else if (next instanceof Symbol.DictionaryRef) {
+			setElement(START_ELEMENT, next, DICTIONARY_NAME,
+					DICTIONARY_ATTRIBS);
+		} else if (next instanceof Symbol.Reset) {
+			setElement(START_ELEMENT, next, RESET_NAME, NO_ATTRIBS);
+		} else if (next instanceof Symbol.Checkpoint) {
+			setElement(START_ELEMENT, next, CHECKPOINT_NAME,
+					CHECKPOINT_ATTRIBS);
+		} else {
+			throw new IOException("Cannot represent symbol of unknown type "
+					+ next.getClass().getSimpleName());
+		}
+	}
+
+	private void setElement(int eventType, Symbol symbol, QName name,
+			QName[] attribs) {
+		this.eventType = eventType;
+		this.symbol = symbol;
+		this.name = name;
+		this.attribs = attribs;
+		this.text = null;
+	}
+
+	@Override
+	public void require(int type, String namespaceURI, String localName)
+			throws XMLStreamException {
+		if (type != eventType) {
+			throw new XMLStreamException(String.format(
+					"Expected event %d but the current event is %d", type,
+					eventType));
+		}
+		if (namespaceURI != null && namespaceURI.length() > 0) {
+			throw new XMLStreamException(String.format(
+					"Expected namespace %s but the current element has none",
+					namespaceURI));
+		}
+		if (localName != null && (!hasName() || !localName.equals(getLocalName()))) {
+			throw new XMLStreamException(String.format(
+					"Expected element %s", localName));
+		}
+	}
+
+	@Override
+	public String getElementText() throws XMLStreamException {
+		if (eventType != START_ELEMENT) {
+			throw new XMLStreamException(
+					"The current event is not a start element");
+		}
+		String elementText = "";
+		if (next() == CHARACTERS) {
+			elementText = getText();
+			next();
+		}
+		if (eventType != END_ELEMENT) {
+			throw new XMLStreamException(
+					"The element contains other elements");
+		}
+		return elementText;
+	}
+
+	@Override
+	public int nextTag() throws XMLStreamException {
+		int event = next();
+		if (event != START_ELEMENT && event != END_ELEMENT) {
+			throw new XMLStreamException("Expected a start or end element");
+		}
+		return event;
+	}
+
+	@Override
+	public boolean hasNext() throws XMLStreamException {
+		return eventType != END_DOCUMENT;
+	}
+
+	@Override
+	public void close() throws XMLStreamException {
+		if (onClose != null) {
+			try {
+				onClose.close();
+			} catch (IOException e) {
+				throw new XMLStreamException(e);
+			}
+		}
+	}
+
+	@Override
+	public String getNamespaceURI(String prefix) {
+		return NO_NAMESPACES.getNamespaceURI(prefix);
+	}
+
+	@Override
+	public boolean isStartElement() {
+		return eventType == START_ELEMENT;
+	}
+
+	@Override
+	public boolean isEndElement() {
+		return eventType == END_ELEMENT;
+	}
+
+	@Override
+	public boolean isCharacters() {
+		return eventType == CHARACTERS;
+	}
+
+	@Override
+	public boolean isWhiteSpace() {
+		return false;
+	}
+
+	@Override
+	public String getAttributeValue(String namespaceURI, String localName) {
+		checkStartElement();
+		if (namespaceURI != null && namespaceURI.length() > 0) {
+			return null;
+		}
+		for (int i = 0; i < attribs.length; ++i) {
+			if (attribs[i].getLocalPart().equals(localName)) {
+				return getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int getAttributeCount() {
+		checkStartElement();
+		return attribs.length;
+	}
+
+	@Override
+	public QName getAttributeName(int index) {
+		checkStartElement();
+		return attribs[index];
+	}
+
+	@Override
+	public String getAttributeNamespace(int index) {
+		checkStartElement();
+		return null;
+	}
+
+	@Override
+	public String getAttributeLocalName(int index) {
+		return getAttributeName(index).getLocalPart();
+	}
+
+	@Override
+	public String getAttributePrefix(int index) {
+		return getAttributeName(index).getPrefix();
+	}
+
+	@Override
+	public String getAttributeType(int index) {
+		checkStartElement();
+		return "CDATA";
+	}
+
+	@Override
+	public String getAttributeValue(int index) {
+		QName attrib = getAttributeName(index);
+		if (symbol == null) {
+			return algorithm;
+		} else if (symbol instanceof Symbol.Byte) {
+			return Integer
+					.toString(((Symbol.Byte) symbol).getByteValue() & 0xff);
+		} else if (symbol instanceof Symbol.BackRef) {
+			Symbol.BackRef backRef = (Symbol.BackRef) symbol;
+			return Integer.toString(attrib == REFERENCE_ATTRIBS[0] ? backRef
+					.getDistance() : backRef.getLength());
+		} else if (symbol instanceof Symbol.RepeatRef) {
+			Symbol.RepeatRef repeatRef = (Symbol.RepeatRef) symbol;
+			return Integer.toString(attrib == REPEAT_ATTRIBS[0] ? repeatRef
+					.getSlot() : repeatRef.getLength());
+		} else if (symbol instanceof Symbol.DictionaryRef) {
+			return Integer.toString(((Symbol.DictionaryRef) symbol)
+					.getEntry());
+		} else {
+			return Long.toString(((Symbol.Checkpoint) symbol).getOffset());
+		}
+	}
+
+	@Override
+	public boolean isAttributeSpecified(int index) {
+		checkStartElement();
+		return true;
+	}
+
+	@Override
+	public int getNamespaceCount() {
+		if (eventType != START_ELEMENT && eventType != END_ELEMENT) {
+			throw new IllegalStateException(
+					"The current event is not an element");
+		}
+		return 0;
+	}
+
+	@Override
+	public String getNamespacePrefix(int index) {
+		throw new IndexOutOfBoundsException("There are no namespaces");
+	}
+
+	@Override
+	public String getNamespaceURI(int index) {
+		throw new IndexOutOfBoundsException("There are no namespaces");
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return NO_NAMESPACES;
+	}
+
+	@Override
+	public int getEventType() {
+		return eventType;
+	}
+
+	@Override
+	public String getText() {
+		if (eventType != CHARACTERS) {
+			throw new IllegalStateException("The current event has no text");
+		}
+		if (text == null) {
+			byte[] bytes = ((Symbol.Literals) symbol).getBytes();
+			byte[] chars = new byte[Base64.encodedLength(bytes.length)];
+			Base64.encode(bytes, 0, bytes.length, chars, 0);
+			text = new String(chars);
+		}
+		return text;
+	}
+
+	@Override
+	public char[] getTextCharacters() {
+		return getText().toCharArray();
+	}
+
+	@Override
+	public int getTextCharacters(int sourceStart, char[] target,
+			int targetStart, int length) throws XMLStreamException {
+		String chars = getText();
+		int count = Math.max(0,
+				Math.min(length, chars.length() - sourceStart));
+		chars.getChars(sourceStart, sourceStart + count, target, targetStart);
+		return count;
+	}
+
+	@Override
+	public int getTextStart() {
+		getText();
+		return 0;
+	}
+
+	@Override
+	public int getTextLength() {
+		return getText().length();
+	}
+
+	@Override
+	public String getEncoding() {
+		return null;
+	}
+
+	@Override
+	public boolean hasText() {
+		return eventType == CHARACTERS;
+	}
+
+	@Override
+	public Location getLocation() {
+		return NO_LOCATION;
+	}
+
+	@Override
+	public QName getName() {
+		if (!hasName()) {
+			throw new IllegalStateException(
+					"The current event is not an element");
+		}
+		return name;
+	}
+
+	@Override
+	public String getLocalName() {
+		return getName().getLocalPart();
+	}
+
+	@Override
+	public boolean hasName() {
+		return eventType == START_ELEMENT || eventType == END_ELEMENT;
+	}
+
+	@Override
+	public String getNamespaceURI() {
+		return null;
+	}
+
+	@Override
+	public String getPrefix() {
+		return hasName() ? name.getPrefix() : null;
+	}
+
+	@Override
+	public String getVersion() {
+		return null;
+	}
+
+	@Override
+	public boolean isStandalone() {
+		return false;
+	}
+
+	@Override
+	public boolean standaloneSet() {
+		return false;
+	}
+
+	@Override
+	public String getCharacterEncodingScheme() {
+		return null;
+	}
+
+	@Override
+	public String getPITarget() {
+		return null;
+	}
+
+	@Override
+	public String getPIData() {
+		return null;
+	}
+
+	private void checkStartElement() {
+		if (eventType != START_ELEMENT) {
+			throw new IllegalStateException(
+					"The current event is not a start element");
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+/**
+ * Converts compressed data from one codec to another without decompressing
+ * it.
+ *
+ * The symbols are copied in fixed-size batches from the decoder to the
+ * encoder, so the memory used does not depend on the size of the data, and no
+ * compression algorithm is involved.
+ *
+ * @author Jacobo Tarrio
+ */
+public class Transcoder {
+
+	private static final int BATCH_SIZE = 1024;
+
+	/**
+	 * Avoid subclassing and instantiation.
+	 */
+	private Transcoder() {
+	}
+
+	/**
+	 * Copies all the symbols from a decoder into an encoder, keeping the
+	 * algorithm's name, and closes the encoder.
+	 *
+	 * @param decoder
+	 *            The decoder to read the symbols from.
+	 * @param encoder
+	 *            The encoder to write the symbols into.
+	 * @return The number of symbols copied.
+	 * @throws IOException
+	 *             If there was a problem reading or writing the symbols.
+	 */
+	public static long transcode(Decoder decoder, Encoder encoder)
+			throws IOException {
+		encoder.setAlgorithm(decoder.getAlgoritm());
+		SymbolBuffer symbols = new SymbolBuffer(BATCH_SIZE);
+		long count = 0;
+		int read;
+		do {
+			symbols.clear();
+			read = symbols.readFrom(decoder, BATCH_SIZE);
+			symbols.writeTo(encoder);
+			count += read;
+		} while (read == BATCH_SIZE);
+		encoder.close();
+		return count;
+	}
+
+	/**
+	 * Converts the compressed data in an input stream, whose codec is
+	 * detected by {@link CodecFactory}, into another codec.
+	 *
+	 * @param input
+	 *            The stream to read the compressed data from.
+	 * @param codec
+	 *            The codec to write the data with.
+	 * @param output
+	 *            The stream to write the converted data into.
+	 * @return The number of symbols copied.
+	 * @throws IOException
+	 *             If there was a problem reading or writing the data, or the
+	 *             codec of the input could not be detected.
+	 */
+	public static long transcode(InputStream input, Codec codec,
+			OutputStream output) throws IOException {
+		return transcode(CodecFactory.getDecoder(input),
+				codec.getEncoder(output));
+	}
+}
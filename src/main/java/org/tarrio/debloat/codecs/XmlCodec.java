@@ -20,136 +20,464 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.tarrio.debloat.Codec;
 import org.tarrio.debloat.Symbol;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import org.tarrio.debloat.SymbolBuffer;
 
 /**
  * A Codec that stores the compressed data in XML.
  * 
+ * There are two dialects: a verbose one, with one indented element per
+ * symbol, and a dense one, marked by a version attribute in the root element,
+ * that packs all consecutive literal bytes in base64 and uses short element
+ * names. In both dialects, literal runs are written in base64, and they are
+ * decoded as literal run symbols, and repeat references are written with
+ * their slot and length. The decoders understand both; the dialect to
+ * write is chosen when the codec is created.
+ * 
  * @author Jacobo Tarrio
  */
 class XmlCodec implements Codec {
 
-	private static final String ROOT_TAG = "compressedData";
-	private static final String ALGORITHM_ATTRIB = "algorithm";
-	private static final String BYTE_TAG = "byte";
-	private static final String VALUE_ATTRIB = "value";
-	private static final String REFERENCE_TAG = "reference";
-	private static final String DISTANCE_ATTRIB = "distance";
-	private static final String LENGTH_ATTRIB = "length";
-	private static final String DICTIONARY_TAG = "dictionary";
-	private static final String ENTRY_ATTRIB = "entry";
-	private static final String RESET_TAG = "reset";
+	static final String ROOT_TAG = "compressedData";
+	static final String ALGORITHM_ATTRIB = "algorithm";
+	static final String VERSION_ATTRIB = "version";
+	static final String BYTE_TAG = "byte";
+	static final String VALUE_ATTRIB = "value";
+	static final String LITERALS_TAG = "literals";
+	static final String REFERENCE_TAG = "reference";
+	static final String DISTANCE_ATTRIB = "distance";
+	static final String LENGTH_ATTRIB = "length";
+	static final String REPEAT_TAG = "repeat";
+	static final String SLOT_ATTRIB = "slot";
+	static final String DICTIONARY_TAG = "dictionary";
+	static final String ENTRY_ATTRIB = "entry";
+	static final String RESET_TAG = "reset";
+	static final String CHECKPOINT_TAG = "checkpoint";
+	static final String OFFSET_ATTRIB = "offset";
+
+	static final String DENSE_LITERALS_TAG = "l";
+	static final String DENSE_REFERENCE_TAG = "r";
+	static final String DENSE_DISTANCE_ATTRIB = "d";
+	static final String DENSE_LENGTH_ATTRIB = "l";
+	static final String DENSE_REPEAT_TAG = "p";
+	static final String DENSE_SLOT_ATTRIB = "s";
+	static final String DENSE_DICTIONARY_TAG = "d";
+	static final String DENSE_ENTRY_ATTRIB = "e";
+	static final String DENSE_RESET_TAG = "z";
+	static final String DENSE_CHECKPOINT_TAG = "c";
+	static final String DENSE_OFFSET_ATTRIB = "o";
 
 	private static final byte[] XML_HEADER_1 = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
 			.getBytes();
 	private static final String XML_HEADER_2_FORMAT = "<" + ROOT_TAG + " algorithm=\"%s\">\n";
+	private static final String DENSE_XML_HEADER_2_FORMAT = "<" + ROOT_TAG
+			+ " algorithm=\"%s\" " + VERSION_ATTRIB + "=\"%s\">";
 	private static final byte[] XML_FOOTER = ("</" + ROOT_TAG + ">\n")
 			.getBytes();
 	private static final String BYTE_FORMAT = "  <" + BYTE_TAG + " "
 			+ VALUE_ATTRIB + "=\"%d\"/>\n";
-	private static final String REFERENCE_FORMAT = "  <" + REFERENCE_TAG + " "
-			+ DISTANCE_ATTRIB + "=\"%d\" " + LENGTH_ATTRIB + "=\"%d\"/>\n";
-	private static final String DICTIONARY_FORMAT = "  <" + DICTIONARY_TAG + " "
-			+ ENTRY_ATTRIB + "=\"%d\"/>\n";
-	private static final byte[] RESET = ("  <" + RESET_TAG + "/>\n").getBytes();
+
+	/**
+	 * Precomputed lines for every possible byte symbol, indexed by the byte's
+	 * unsigned value.
+	 */
+	private static final byte[][] BYTE_LINES = makeByteLines();
+
+	/**
+	 * The maximum number of literal bytes packed into a single element. It is
+	 * a multiple of 3 so that base64 padding only appears in the last element
+	 * of a run.
+	 */
+	static final int MAX_ELEMENT_LITERALS = 3072;
+
+	/**
+	 * The XML dialects this codec can write.
+	 */
+	enum Dialect {
+		/**
+		 * One indented element per symbol, with descriptive names.
+		 */
+		VERBOSE(null, LITERALS_TAG, REFERENCE_TAG, DISTANCE_ATTRIB, LENGTH_ATTRIB,
+				REPEAT_TAG, SLOT_ATTRIB, DICTIONARY_TAG, ENTRY_ATTRIB, RESET_TAG,
+				CHECKPOINT_TAG, OFFSET_ATTRIB, "  ", "\n"),
+		/**
+		 * Runs of literal bytes packed into base64 text, short names and no
+		 * indentation.
+		 */
+		DENSE("2", DENSE_LITERALS_TAG, DENSE_REFERENCE_TAG, DENSE_DISTANCE_ATTRIB,
+				DENSE_LENGTH_ATTRIB, DENSE_REPEAT_TAG, DENSE_SLOT_ATTRIB,
+				DENSE_DICTIONARY_TAG, DENSE_ENTRY_ATTRIB, DENSE_RESET_TAG,
+				DENSE_CHECKPOINT_TAG, DENSE_OFFSET_ATTRIB, "", "");
+
+		final String version;
+		final String literalsTag;
+		final String referenceTag;
+		final String distanceAttrib;
+		final String lengthAttrib;
+		final String repeatTag;
+		final String slotAttrib;
+		final String dictionaryTag;
+		final String entryAttrib;
+		final String resetTag;
+		final String checkpointTag;
+		final String offsetAttrib;
+		final String indent;
+		final String lineEnd;
+
+		private Dialect(String version, String literalsTag,
+				String referenceTag, String distanceAttrib, String lengthAttrib,
+				String repeatTag, String slotAttrib, String dictionaryTag,
+				String entryAttrib, String resetTag, String checkpointTag,
+				String offsetAttrib, String indent, String lineEnd) {
+			this.version = version;
+			this.literalsTag = literalsTag;
+			this.referenceTag = referenceTag;
+			this.distanceAttrib = distanceAttrib;
+			this.lengthAttrib = lengthAttrib;
+			this.repeatTag = repeatTag;
+			this.slotAttrib = slotAttrib;
+			this.dictionaryTag = dictionaryTag;
+			this.entryAttrib = entryAttrib;
+			this.resetTag = resetTag;
+			this.checkpointTag = checkpointTag;
+			this.offsetAttrib = offsetAttrib;
+			this.indent = indent;
+			this.lineEnd = lineEnd;
+		}
+
+		/**
+		 * Returns the dialect marked with the given version attribute value.
+		 * 
+		 * @param version
+		 *            The value of the version attribute, or null if it was
+		 *            not present.
+		 * @throws IOException
+		 *             If the version is not known.
+		 */
+		static Dialect forVersion(String version) throws IOException {
+			for (Dialect dialect : values()) {
+				if (version == null ? dialect.version == null : version
+						.equals(dialect.version)) {
+					return dialect;
+				}
+			}
+			if ("1".equals(version)) {
+				return VERBOSE;
+			}
+			throw new IOException(String.format(
+					"Unsupported XML dialect version '%s'", version));
+		}
+	}
+
+	private final Dialect dialect;
+
+	/**
+	 * Creates a codec that writes the verbose dialect.
+	 */
+	XmlCodec() {
+		this(Dialect.VERBOSE);
+	}
+
+	/**
+	 * Creates a codec that writes the given dialect.
+	 * 
+	 * @param dialect
+	 *            The dialect to use when encoding.
+	 */
+	XmlCodec(Dialect dialect) {
+		this.dialect = dialect;
+	}
 
 	@Override
 	public Encoder getEncoder(OutputStream output) throws IOException {
-		return new EncoderImpl(output);
+		return new EncoderImpl(output, dialect);
 	}
 
 	@Override
 	public Decoder getDecoder(InputStream input) throws IOException {
-		return new DecoderImpl(input);
+		return new XmlScanningDecoder(input);
+	}
+
+	/**
+	 * Renders the line for each possible byte symbol.
+	 */
+	private static byte[][] makeByteLines() {
+		byte[][] lines = new byte[256][];
+		for (int i = 0; i < lines.length; ++i) {
+			lines[i] = String.format(BYTE_FORMAT, i).getBytes();
+		}
+		return lines;
 	}
 
 	/**
 	 * A class to encode compressed data into XML documents.
+	 * 
+	 * The encoder renders each symbol from precomputed templates into an
+	 * {@link OutputBuffer}, which is written into the output stream when it
+	 * fills up or when the encoder is closed. Batches of symbols are rendered
+	 * straight from their packed form.
 	 */
-	private class EncoderImpl implements Encoder {
+	private static class EncoderImpl implements BatchEncoder {
 
-		private final OutputStream output;
+		private final OutputBuffer output;
+		private final Dialect dialect;
+		private final byte[] literals;
+		private int literalCount;
 		private boolean wroteHeader;
 
-		public EncoderImpl(OutputStream output) throws IOException {
-			this.output = output;
+		private final byte[] referencePrefix;
+		private final byte[] referenceMiddle;
+		private final byte[] repeatPrefix;
+		private final byte[] dictionaryPrefix;
+		private final byte[] attribElementEnd;
+		private final byte[] reset;
+		private final byte[] checkpointPrefix;
+		private final byte[] literalsStart;
+		private final byte[] literalsEnd;
+
+		public EncoderImpl(OutputStream output, Dialect dialect)
+				throws IOException {
+			this.output = new OutputBuffer(output);
+			this.dialect = dialect;
+			this.literals = dialect == Dialect.DENSE ? new byte[MAX_ELEMENT_LITERALS]
+					: null;
+			this.literalCount = 0;
 			this.wroteHeader = false;
-			output.write(XML_HEADER_1);
+			this.referencePrefix = (dialect.indent + "<" + dialect.referenceTag
+					+ " " + dialect.distanceAttrib + "=\"").getBytes();
+			this.referenceMiddle = ("\" " + dialect.lengthAttrib + "=\"")
+					.getBytes();
+			this.repeatPrefix = (dialect.indent + "<" + dialect.repeatTag + " "
+					+ dialect.slotAttrib + "=\"").getBytes();
+			this.dictionaryPrefix = (dialect.indent + "<"
+					+ dialect.dictionaryTag + " " + dialect.entryAttrib + "=\"")
+					.getBytes();
+			this.attribElementEnd = ("\"/>" + dialect.lineEnd).getBytes();
+			this.reset = (dialect.indent + "<" + dialect.resetTag + "/>" + dialect.lineEnd)
+					.getBytes();
+			this.checkpointPrefix = (dialect.indent + "<"
+					+ dialect.checkpointTag + " " + dialect.offsetAttrib + "=\"")
+					.getBytes();
+			this.literalsStart = (dialect.indent + "<" + dialect.literalsTag + ">")
+					.getBytes();
+			this.literalsEnd = ("</" + dialect.literalsTag + ">" + dialect.lineEnd)
+					.getBytes();
+			this.output.write(XML_HEADER_1);
 		}
 		
 		@Override
 		public void setAlgorithm(String algorithm) throws IOException {
-			output.write(String.format(XML_HEADER_2_FORMAT, algorithm).getBytes());
+			if (dialect.version == null) {
+				output.write(String.format(XML_HEADER_2_FORMAT, algorithm)
+						.getBytes());
+			} else {
+				output.write(String.format(DENSE_XML_HEADER_2_FORMAT,
+						algorithm, dialect.version).getBytes());
+			}
 			this.wroteHeader = true;
 		}
 		
 		@Override
 		public void close() throws IOException {
 			checkWroteHeader();
+			flushLiterals();
 			output.write(XML_FOOTER);
+			output.flush();
 		}
 
 		@Override
 		public void write(Symbol symbol) throws IOException {
 			checkWroteHeader();
 			if (symbol instanceof Symbol.Byte) {
-				Symbol.Byte theByte = (Symbol.Byte) symbol; 
-				output.write(String.format(BYTE_FORMAT, theByte.getByteValue() & 0xff)
-						.getBytes());
+				writeByte(((Symbol.Byte) symbol).getByteValue());
+			} else if (symbol instanceof Symbol.Literals) {
+				byte[] bytes = ((Symbol.Literals) symbol).getBytes();
+				writeLiterals(bytes, 0, bytes.length);
 			} else if (symbol instanceof Symbol.BackRef) {
 				Symbol.BackRef backRef = (Symbol.BackRef) symbol;
-				output.write(String.format(REFERENCE_FORMAT,
-						backRef.getDistance(), backRef.getLength()).getBytes());
-			} else if (symbol instanceof Symbol.DictionaryRef){
-				Symbol.DictionaryRef dicRef = (Symbol.DictionaryRef) symbol;
-				output.write(String.format(DICTIONARY_FORMAT,
-						dicRef.getEntry()).getBytes());
+				writeBackRef(backRef.getDistance(), backRef.getLength());
+			} else if (symbol instanceof Symbol.RepeatRef) {
+				Symbol.RepeatRef repeatRef = (Symbol.RepeatRef) symbol;
+				writeRepeatRef(repeatRef.getSlot(), repeatRef.getLength());
+			} else if (symbol instanceof Symbol.DictionaryRef) {
+				writeDictionaryRef(((Symbol.DictionaryRef) symbol).getEntry());
 			} else if (symbol instanceof Symbol.Reset) {
-				output.write(RESET);
+				writeReset();
+			} else if (symbol instanceof Symbol.Checkpoint) {
+				writeCheckpoint(((Symbol.Checkpoint) symbol).getOffset());
 			} else {
 				throw new IllegalStateException("Cannot write symbol of unknown type " + symbol.getClass().getSimpleName());
 			}
 		}
 
+		@Override
+		public void write(SymbolBuffer symbols) throws IOException {
+			checkWroteHeader();
+			int size = symbols.size();
+			for (int i = 0; i < size; ++i) {
+				switch (symbols.getKind(i)) {
+				case SymbolBuffer.BYTE:
+					writeByte(symbols.getByteValue(i));
+					break;
+				case SymbolBuffer.LITERALS:
+					writeLiterals(symbols.getLiteralBytes(),
+							symbols.getLiteralOffset(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.BACK_REF:
+					writeBackRef(symbols.getDistance(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.REPEAT_REF:
+					writeRepeatRef(symbols.getSlot(i), symbols.getLength(i));
+					break;
+				case SymbolBuffer.DICTIONARY_REF:
+					writeDictionaryRef(symbols.getEntry(i));
+					break;
+				case SymbolBuffer.RESET:
+					writeReset();
+					break;
+				default:
+					writeCheckpoint(symbols.getOffset(i));
+				}
+			}
+		}
+
+		private void writeByte(byte value) throws IOException {
+			if (literals == null) {
+				output.write(BYTE_LINES[value & 0xff]);
+			} else {
+				if (literalCount == literals.length) {
+					flushLiterals();
+				}
+				literals[literalCount++] = value;
+			}
+		}
+
+		private void writeLiterals(byte[] bytes, int offset, int length)
+				throws IOException {
+			if (literals == null) {
+				while (length > 0) {
+					int chunk = Math.min(length, MAX_ELEMENT_LITERALS);
+					output.write(literalsStart);
+					output.writeBase64(bytes, offset, chunk);
+					output.write(literalsEnd);
+					offset += chunk;
+					length -= chunk;
+				}
+				return;
+			}
+			while (length > 0) {
+				if (literalCount == literals.length) {
+					flushLiterals();
+				}
+				int chunk = Math.min(length, literals.length - literalCount);
+				System.arraycopy(bytes, offset, literals, literalCount, chunk);
+				literalCount += chunk;
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		private void writeBackRef(int distance, int length) throws IOException {
+			flushLiterals();
+			output.write(referencePrefix);
+			output.writeNumber(distance);
+			output.write(referenceMiddle);
+			output.writeNumber(length);
+			output.write(attribElementEnd);
+		}
+
+		private void writeRepeatRef(int slot, int length) throws IOException {
+			flushLiterals();
+			output.write(repeatPrefix);
+			output.writeNumber(slot);
+			output.write(referenceMiddle);
+			output.writeNumber(length);
+			output.write(attribElementEnd);
+		}
+
+		private void writeDictionaryRef(int entry) throws IOException {
+			flushLiterals();
+			output.write(dictionaryPrefix);
+			output.writeNumber(entry);
+			output.write(attribElementEnd);
+		}
+
+		private void writeReset() throws IOException {
+			flushLiterals();
+			output.write(reset);
+		}
+
+		private void writeCheckpoint(long offset) throws IOException {
+			flushLiterals();
+			output.write(checkpointPrefix);
+			output.writeNumber(offset);
+			output.write(attribElementEnd);
+		}
+
 		private void checkWroteHeader() {
 			if (!wroteHeader) {
 				throw new IllegalStateException("Must set the algorithm's name before encoding data");
 			}
 		}
+
+		/**
+		 * Writes the pending literal bytes, if any, as a base64 element.
+		 * 
+		 * @throws IOException
+		 *             If there was a problem writing into the output stream.
+		 */
+		private void flushLiterals() throws IOException {
+			if (literalCount == 0) {
+				return;
+			}
+			output.write(literalsStart);
+			output.writeBase64(literals, 0, literalCount);
+			output.write(literalsEnd);
+			literalCount = 0;
+		}
 	}
 
 	/**
 	 * A class to decode compressed data stored in XML documents.
+	 * 
+	 * The document is read with a pull parser, one element per symbol, so it
+	 * is never held in memory as a whole. Literal run elements with a single
+	 * byte are returned as byte symbols.
+	 * 
+	 * This decoder understands any well-formed document, and it is used by
+	 * {@link XmlScanningDecoder} for documents it cannot scan by itself.
 	 */
-	private class DecoderImpl implements Decoder {
-		private String algorithm;
-		private NodeList symbols;
-		private int currentSymbol;
+	static class DecoderImpl implements Decoder {
+		private final XMLStreamReader reader;
+		private final String algorithm;
+		private final Dialect dialect;
+		private boolean finished;
 
 		public DecoderImpl(InputStream input) throws IOException {
 			try {
-				DocumentBuilder db = DocumentBuilderFactory.newInstance()
-						.newDocumentBuilder();
-				Element root = db.parse(input).getDocumentElement();
-				if (!ROOT_TAG.equals(root.getTagName())) {
+				reader = XMLInputFactory.newInstance().createXMLStreamReader(
+						input);
+				while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+					// Skip the prolog, including any DOCTYPE.
+				}
+				if (!ROOT_TAG.equals(reader.getLocalName())) {
 					throw new IOException(String.format(
 							"XML document root is not %s but %s", ROOT_TAG,
-							root.getTagName()));
+							reader.getLocalName()));
 				}
-				algorithm = root.getAttribute(ALGORITHM_ATTRIB);
-				symbols = root.getElementsByTagName("*");
-				currentSymbol = 0;
-			} catch (ParserConfigurationException e) {
-				throw new IOException(e);
-			} catch (SAXException e) {
+				String algorithmAttrib = reader.getAttributeValue(null,
+						ALGORITHM_ATTRIB);
+				algorithm = algorithmAttrib == null ? "" : algorithmAttrib;
+				dialect = Dialect.forVersion(reader.getAttributeValue(null,
+						VERSION_ATTRIB));
+				finished = false;
+			} catch (XMLStreamException e) {
 				throw new IOException(e);
 			}
 		}
@@ -161,31 +489,78 @@ class XmlCodec implements Codec {
 		
 		@Override
 		public Symbol read() throws IOException {
-			if (currentSymbol == symbols.getLength()) {
-				return null;
-			}
-			Element symbol = (Element) symbols.item(currentSymbol++);
-			String tagName = symbol.getTagName();
-			if (BYTE_TAG.equals(tagName)) {
-				return Symbol.newByte((byte) getNumericAttrib(symbol, VALUE_ATTRIB));
-			} else if (REFERENCE_TAG.equals(tagName)) {
-				return Symbol.newBackRef(getNumericAttrib(symbol, DISTANCE_ATTRIB),
-						getNumericAttrib(symbol, LENGTH_ATTRIB));
-			} else if (DICTIONARY_TAG.equals(tagName)) {
-				return Symbol.newDictionaryRef(getNumericAttrib(symbol, ENTRY_ATTRIB));
-			} else if (RESET_TAG.equals(tagName)) {
+			try {
+				while (true) {
+					if (finished) {
+						return null;
+					}
+					if (reader.nextTag() == XMLStreamConstants.END_ELEMENT) {
+						finished = true;
+						while (reader.hasNext()) {
+							reader.next();
+						}
+						reader.close();
+						return null;
+					}
+					String tagName = reader.getLocalName();
+					if (dialect.literalsTag.equals(tagName)) {
+						byte[] literals = Base64.decode(reader.getElementText());
+						if (literals == null) {
+							throw new IOException("Invalid literal bytes");
+						}
+						if (literals.length == 0) {
+							continue;
+						}
+						return literals.length == 1 ? Symbol
+								.newByte(literals[0]) : Symbol.newLiterals(
+								literals, 0, literals.length);
+					}
+					Symbol symbol = parseSymbol(tagName);
+					if (reader.nextTag() != XMLStreamConstants.END_ELEMENT) {
+						throw new IOException(String.format(
+								"Unexpected content inside '%s'",
+								reader.getLocalName()));
+					}
+					return symbol;
+				}
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
+		}
+
+		/**
+		 * Returns the symbol represented by the element the reader is
+		 * positioned at.
+		 * 
+		 * @param tagName
+		 *            The element's name.
+		 * @throws IOException
+		 *             If the element does not represent a valid symbol.
+		 */
+		private Symbol parseSymbol(String tagName) throws IOException {
+			if (dialect == Dialect.VERBOSE && BYTE_TAG.equals(tagName)) {
+				return Symbol.newByte((byte) getNumericAttrib(VALUE_ATTRIB));
+			} else if (dialect.referenceTag.equals(tagName)) {
+				return Symbol.newBackRef(
+						getNumericAttrib(dialect.distanceAttrib),
+						getNumericAttrib(dialect.lengthAttrib));
+			} else if (dialect.repeatTag.equals(tagName)) {
+				return Symbol.newRepeatRef(getNumericAttrib(dialect.slotAttrib),
+						getNumericAttrib(dialect.lengthAttrib));
+			} else if (dialect.dictionaryTag.equals(tagName)) {
+				return Symbol.newDictionaryRef(getNumericAttrib(dialect.entryAttrib));
+			} else if (dialect.resetTag.equals(tagName)) {
 				return Symbol.newReset();
+			} else if (dialect.checkpointTag.equals(tagName)) {
+				return Symbol.newCheckpoint(getLongAttrib(dialect.offsetAttrib));
 			} else {
 				throw new IOException(String.format("Unexpected tag '%s'",
 						tagName));
 			}
 		}
-
 		/**
-		 * Interprets an attribute as an integer value.
+		 * Interprets an attribute of the current element as an integer value.
 		 * 
-		 * @param element
-		 *            The element that contains the attribute.
 		 * @param attrName
 		 *            The attribute's name.
 		 * @return The attribute's integer value.
@@ -193,14 +568,34 @@ class XmlCodec implements Codec {
 		 *             If the attribute was not defined or there was a problem
 		 *             parsing its value.
 		 */
-		private int getNumericAttrib(Element element, String attrName)
-				throws IOException {
-			if (!element.hasAttribute(attrName)) {
+		private int getNumericAttrib(String attrName) throws IOException {
+			long value = getLongAttrib(attrName);
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new IOException(String.format(
+						"Invalid value for '%s' attribute", attrName));
+			}
+			return (int) value;
+		}
+
+		/**
+		 * Interprets an attribute of the current element as a long integer
+		 * value.
+		 * 
+		 * @param attrName
+		 *            The attribute's name.
+		 * @return The attribute's long integer value.
+		 * @throws IOException
+		 *             If the attribute was not defined or there was a problem
+		 *             parsing its value.
+		 */
+		private long getLongAttrib(String attrName) throws IOException {
+			String value = reader.getAttributeValue(null, attrName);
+			if (value == null) {
 				throw new IOException(String.format("Expected '%s' attribute",
 						attrName));
 			}
 			try {
-				return Integer.valueOf(element.getAttribute(attrName));
+				return Long.valueOf(value);
 			} catch (NumberFormatException e) {
 				throw new IOException(String.format(
 						"Invalid value for '%s' attribute", attrName), e);
@@ -0,0 +1,633 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import org.tarrio.debloat.Codec.BatchDecoder;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.PushDecoder;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.SymbolVisitor;
+
+/**
+ * A decoder for the XML documents written by {@link XmlCodec} that scans the
+ * raw bytes instead of using an XML parser.
+ *
+ * The scanner only understands the exact layouts the encoder produces for
+ * each dialect: an XML declaration, a root element with only the algorithm
+ * and version attributes, and one element per symbol or literal run with its
+ * attributes in the usual order. Numeric values and literal runs are decoded
+ * in place, so no strings are created while decoding symbols, and no symbol
+ * objects either when they are read in batches or pushed into a visitor.
+ *
+ * When the scanner finds something outside that layout (comments, entities,
+ * reordered attributes, etc.) it hands the rest of the document over to the
+ * general {@link XmlCodec.DecoderImpl}, starting at the element it could not
+ * understand.
+ *
+ * @author Jacobo Tarrio
+ */
+class XmlScanningDecoder implements BatchDecoder, PushDecoder {
+
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * The number of bytes that must be available in the buffer to hold any
+	 * element the scanner understands, except for literal runs.
+	 */
+	private static final int MAX_ELEMENT_LENGTH = 64;
+
+	/**
+	 * The number of bytes that must be available in the buffer to hold the
+	 * XML declaration and the root element.
+	 */
+	private static final int MAX_PROLOG_LENGTH = 4096;
+
+	private static final byte[] XML_DECLARATION_START = "<?xml".getBytes();
+	private static final byte[] XML_DECLARATION_END = "?>".getBytes();
+	private static final byte[] ROOT_START = ("<" + XmlCodec.ROOT_TAG + " "
+			+ XmlCodec.ALGORITHM_ATTRIB + "=\"").getBytes();
+	private static final byte[] VERSION_START = (XmlCodec.VERSION_ATTRIB + "=\"")
+			.getBytes();
+	private static final byte[] COMMENT_START = "<!--".getBytes();
+	private static final byte[] COMMENT_END = "-->".getBytes();
+	private static final byte[] PI_START = "<?".getBytes();
+	private static final byte[] PI_END = "?>".getBytes();
+	private static final byte[] ROOT_END = ("/" + XmlCodec.ROOT_TAG)
+			.getBytes();
+	private static final byte[] BYTE_START = (XmlCodec.BYTE_TAG + " "
+			+ XmlCodec.VALUE_ATTRIB + "=\"").getBytes();
+
+	private final InputStream input;
+	private final byte[] buffer;
+	private int pos;
+	private int limit;
+	private boolean eof;
+	private String algorithm;
+	private Decoder fallback;
+	private boolean finished;
+
+	/**
+	 * The position the buffer must be preserved from when more data is read.
+	 */
+	private int mark;
+
+	private XmlCodec.Dialect dialect;
+	private byte[] literalsStart;
+	private byte[] literalsEnd;
+	private byte[] referenceStart;
+	private byte[] referenceMiddle;
+	private byte[] repeatStart;
+	private byte[] dictionaryStart;
+	private byte[] resetStart;
+	private byte[] checkpointStart;
+
+	/**
+	 * Holds the value of the last number parsed by scanNumber().
+	 */
+	private long number;
+
+	/**
+	 * The offset in the input stream of the first byte in the buffer.
+	 */
+	private long bufferOffset;
+
+	/**
+	 * The offset in the input stream of the element that produced the last
+	 * symbol.
+	 */
+	private long elementOffset;
+
+	/**
+	 * Holds the bytes of the last literal run.
+	 */
+	private byte[] literals;
+
+	/**
+	 * Holds the symbol being returned by read().
+	 */
+	private final SymbolBuffer single;
+
+	public XmlScanningDecoder(InputStream input) throws IOException {
+		this.input = input;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.pos = 0;
+		this.limit = 0;
+		this.mark = 0;
+		this.bufferOffset = 0;
+		this.elementOffset = -1;
+		this.eof = false;
+		this.finished = false;
+		this.single = new SymbolBuffer(1);
+		fill(MAX_PROLOG_LENGTH);
+		if (scanProlog()) {
+			literalsStart = (dialect.literalsTag + ">").getBytes();
+			literalsEnd = ("</" + dialect.literalsTag + ">").getBytes();
+			referenceStart = (dialect.referenceTag + " "
+					+ dialect.distanceAttrib + "=\"").getBytes();
+			referenceMiddle = ("\" " + dialect.lengthAttrib + "=\"")
+					.getBytes();
+			repeatStart = (dialect.repeatTag + " " + dialect.slotAttrib + "=\"")
+					.getBytes();
+			dictionaryStart = (dialect.dictionaryTag + " "
+					+ dialect.entryAttrib + "=\"").getBytes();
+			resetStart = dialect.resetTag.getBytes();
+			checkpointStart = (dialect.checkpointTag + " "
+					+ dialect.offsetAttrib + "=\"").getBytes();
+			literals = new byte[Base64.maxDecodedLength(BUFFER_SIZE)];
+		} else {
+			pos = 0;
+			fallback = new XmlCodec.DecoderImpl(remainingInput(null));
+			algorithm = fallback.getAlgoritm();
+		}
+	}
+
+	@Override
+	public String getAlgoritm() throws IOException {
+		return algorithm;
+	}
+
+	@Override
+	public Symbol read() throws IOException {
+		if (fallback != null) {
+			return fallback.read();
+		}
+		single.clear();
+		return read(single, 1) == 0 ? null : single.getSymbol(0);
+	}
+
+	@Override
+	public int read(SymbolBuffer symbols, int maxSymbols) throws IOException {
+		int count = 0;
+		while (fallback == null && count < maxSymbols) {
+			if (finished) {
+				return count;
+			}
+			skipWhitespace();
+			fill(MAX_ELEMENT_LENGTH);
+			elementOffset = bufferOffset + mark;
+			if (scanElement(symbols)) {
+				++count;
+			} else if (finished) {
+				return count;
+			} else {
+				startFallback();
+			}
+		}
+		if (fallback != null && count < maxSymbols) {
+			count += symbols.readFrom(fallback, maxSymbols - count);
+		}
+		return count;
+	}
+
+	@Override
+	public void decode(SymbolVisitor visitor) throws IOException {
+		while (fallback == null) {
+			if (finished) {
+				return;
+			}
+			skipWhitespace();
+			fill(MAX_ELEMENT_LENGTH);
+			elementOffset = bufferOffset + mark;
+			if (!scanElement(visitor) && !finished) {
+				startFallback();
+			}
+		}
+		SymbolBuffer.visit(fallback, visitor);
+	}
+
+	/**
+	 * Hands the rest of the document, starting at the current element, over
+	 * to the general decoder.
+	 *
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream.
+	 */
+	private void startFallback() throws IOException {
+		pos = mark;
+		elementOffset = -1;
+		String fallbackRoot = "<" + XmlCodec.ROOT_TAG;
+		if (dialect.version != null) {
+			fallbackRoot += " " + XmlCodec.VERSION_ATTRIB + "=\""
+					+ dialect.version + "\"";
+		}
+		fallback = new XmlCodec.DecoderImpl(
+				remainingInput((fallbackRoot + ">").getBytes()));
+	}
+
+	/**
+	 * Returns the offset in the input stream of the element that produced the
+	 * last symbol returned by read(), or of the document's body if no symbol
+	 * has been read yet.
+	 * 
+	 * @return The offset, or -1 if it is not known because the document did
+	 *         not have the expected layout.
+	 */
+	long getElementOffset() {
+		return fallback == null ? elementOffset : -1;
+	}
+
+	/**
+	 * Scans the XML declaration and the root element's start tag, and sets the
+	 * algorithm and dialect attributes.
+	 *
+	 * @return Whether the prolog followed the expected layout.
+	 * @throws IOException
+	 *             If the document's dialect is not supported.
+	 */
+	private boolean scanProlog() throws IOException {
+		if (scanBytes(XML_DECLARATION_START)) {
+			while (pos < limit && !startsWith(XML_DECLARATION_END)) {
+				++pos;
+			}
+			if (!scanBytes(XML_DECLARATION_END)) {
+				return false;
+			}
+		}
+		skipBufferedWhitespace();
+		if (!scanBytes(ROOT_START)) {
+			return false;
+		}
+		algorithm = scanAttributeValue();
+		if (algorithm == null) {
+			return false;
+		}
+		String version = null;
+		skipBufferedWhitespace();
+		if (scanBytes(VERSION_START)) {
+			version = scanAttributeValue();
+			if (version == null) {
+				return false;
+			}
+			skipBufferedWhitespace();
+		}
+		dialect = XmlCodec.Dialect.forVersion(version);
+		elementOffset = pos + 1;
+		return scanByte('>');
+	}
+
+	/**
+	 * Scans the rest of an attribute value that contains no references, and
+	 * its closing quote.
+	 *
+	 * @return The attribute value, or null if it could not be scanned.
+	 */
+	private String scanAttributeValue() {
+		int start = pos;
+		while (pos < limit && buffer[pos] != '"') {
+			if (buffer[pos] == '&' || buffer[pos] == '<' || buffer[pos] < 0) {
+				return null;
+			}
+			++pos;
+		}
+		if (pos == limit) {
+			return null;
+		}
+		return new String(buffer, start, pos++ - start);
+	}
+
+	/**
+	 * Scans one element and passes the symbol it represents to a visitor.
+	 *
+	 * @param visitor
+	 *            The visitor to pass the symbol to.
+	 * @return Whether the element was a symbol. If it was the end of the root
+	 *         element, the rest of the document is scanned and the finished
+	 *         attribute is set. Empty literal runs are skipped, and runs of a
+	 *         single byte are passed as byte symbols.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream, or
+	 *             unexpected content after the root element.
+	 */
+	private boolean scanElement(SymbolVisitor visitor) throws IOException {
+		if (!scanByte('<') || pos == limit) {
+			return false;
+		}
+		byte first = buffer[pos];
+		if (first == '/') {
+			if (scanBytes(ROOT_END)) {
+				skipBufferedWhitespace();
+				if (scanByte('>')) {
+					scanEpilog();
+					finished = true;
+				}
+			}
+		} else if (dialect == XmlCodec.Dialect.VERBOSE && first == 'b') {
+			if (scanBytes(BYTE_START) && scanInt() && scanElementEnd(true)) {
+				visitor.onByte((byte) number);
+				return true;
+			}
+		} else if (scanBytes(literalsStart)) {
+			int length = scanLiterals();
+			if (length == 1) {
+				visitor.onByte(literals[0]);
+				return true;
+			} else if (length > 1) {
+				visitor.onLiterals(literals, 0, length);
+				return true;
+			} else if (length == 0) {
+				skipWhitespace();
+				fill(MAX_ELEMENT_LENGTH);
+				elementOffset = bufferOffset + mark;
+				return scanElement(visitor);
+			}
+		} else if (scanBytes(referenceStart) && scanInt()) {
+			int distance = (int) number;
+			if (scanBytes(referenceMiddle) && scanInt() && number >= 0
+					&& number <= SymbolBuffer.MAX_LENGTH
+					&& scanElementEnd(true)) {
+				visitor.onBackRef(distance, (int) number);
+				return true;
+			}
+		} else if (scanBytes(repeatStart) && scanInt()) {
+			int slot = (int) number;
+			if (scanBytes(referenceMiddle) && scanInt() && number >= 0
+					&& number <= SymbolBuffer.MAX_LENGTH
+					&& scanElementEnd(true)) {
+				visitor.onRepeatRef(slot, (int) number);
+				return true;
+			}
+		} else if (scanBytes(dictionaryStart)) {
+			if (scanInt() && scanElementEnd(true)) {
+				visitor.onDictionaryRef((int) number);
+				return true;
+			}
+		} else if (scanBytes(resetStart)) {
+			if (scanElementEnd(false)) {
+				visitor.onReset();
+				return true;
+			}
+		} else if (scanBytes(checkpointStart)) {
+			if (scanNumber() && number >= 0 && number <= SymbolBuffer.MAX_OFFSET
+					&& scanElementEnd(true)) {
+				visitor.onCheckpoint(number);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Scans the rest of the document after the end of the root element, which
+	 * may only contain whitespace, comments and processing instructions.
+	 *
+	 * @throws IOException
+	 *             If there was anything else after the root element, or a
+	 *             problem reading from the input stream.
+	 */
+	private void scanEpilog() throws IOException {
+		while (true) {
+			skipWhitespace();
+			if (!fill(1)) {
+				return;
+			}
+			if (!scanMarkup(COMMENT_START, COMMENT_END)
+					&& !scanMarkup(PI_START, PI_END)) {
+				throw new IOException(
+						"Unexpected content after the root element");
+			}
+		}
+	}
+
+	/**
+	 * Scans a comment or processing instruction, discarding its contents.
+	 *
+	 * @param start
+	 *            The bytes that start the markup.
+	 * @param end
+	 *            The bytes that end the markup.
+	 * @return Whether the complete markup was at the current position.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream.
+	 */
+	private boolean scanMarkup(byte[] start, byte[] end) throws IOException {
+		fill(start.length);
+		if (!scanBytes(start)) {
+			return false;
+		}
+		while (true) {
+			mark = pos;
+			if (!fill(end.length)) {
+				return false;
+			}
+			if (scanBytes(end)) {
+				return true;
+			}
+			++pos;
+		}
+	}
+
+	/**
+	 * Scans the base64 text of a literal run and the end of its element, and
+	 * decodes it into the literals buffer.
+	 *
+	 * @return The number of decoded bytes, or -1 if the run could not be
+	 *         scanned.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream.
+	 */
+	private int scanLiterals() throws IOException {
+		int textOffset = pos - mark;
+		while (true) {
+			while (pos < limit && buffer[pos] != '<') {
+				++pos;
+			}
+			if (pos < limit || !fill(1)) {
+				break;
+			}
+		}
+		int textStart = mark + textOffset;
+		int textEnd = pos;
+		if (!scanBytes(literalsEnd)) {
+			return -1;
+		}
+		return Base64.decode(buffer, textStart, textEnd - textStart, literals,
+				0);
+	}
+
+	/**
+	 * Scans the end of an empty element.
+	 *
+	 * @param afterAttribute
+	 *            Whether the element ends right after an attribute value, so
+	 *            a closing quote is expected.
+	 * @return Whether the element end was found.
+	 */
+	private boolean scanElementEnd(boolean afterAttribute) {
+		if (afterAttribute && !scanByte('"')) {
+			return false;
+		}
+		skipBufferedWhitespace();
+		return scanByte('/') && scanByte('>');
+	}
+
+	/**
+	 * Scans a decimal number and stores its value in the number attribute.
+	 *
+	 * @return Whether there was a valid number at the current position.
+	 */
+	private boolean scanNumber() {
+		boolean negative = scanByte('-');
+		int digitsStart = pos;
+		long value = 0;
+		while (pos < limit && buffer[pos] >= '0' && buffer[pos] <= '9') {
+			int digit = buffer[pos] - '0';
+			if (value > (Long.MAX_VALUE - digit) / 10) {
+				return false;
+			}
+			value = value * 10 + digit;
+			++pos;
+		}
+		if (pos == digitsStart) {
+			return false;
+		}
+		number = negative ? -value : value;
+		return true;
+	}
+
+	/**
+	 * Scans a decimal number that fits in an int and stores its value in the
+	 * number attribute.
+	 *
+	 * @return Whether there was a valid number at the current position.
+	 */
+	private boolean scanInt() {
+		return scanNumber() && number >= Integer.MIN_VALUE
+				&& number <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Scans a given byte.
+	 *
+	 * @return Whether the byte was at the current position.
+	 */
+	private boolean scanByte(char expected) {
+		if (pos == limit || buffer[pos] != expected) {
+			return false;
+		}
+		++pos;
+		return true;
+	}
+
+	/**
+	 * Scans a given sequence of bytes.
+	 *
+	 * @return Whether the sequence was at the current position.
+	 */
+	private boolean scanBytes(byte[] expected) {
+		if (!startsWith(expected)) {
+			return false;
+		}
+		pos += expected.length;
+		return true;
+	}
+
+	/**
+	 * Returns whether the given sequence of bytes is at the current position.
+	 */
+	private boolean startsWith(byte[] expected) {
+		if (limit - pos < expected.length) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; ++i) {
+			if (buffer[pos + i] != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Skips any whitespace, reading more data as necessary.
+	 *
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream.
+	 */
+	private void skipWhitespace() throws IOException {
+		do {
+			skipBufferedWhitespace();
+			mark = pos;
+		} while (pos == limit && fill(1));
+	}
+
+	/**
+	 * Skips any whitespace that is already in the buffer.
+	 */
+	private void skipBufferedWhitespace() {
+		while (pos < limit && isWhitespace(buffer[pos])) {
+			++pos;
+		}
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+	/**
+	 * Makes sure the buffer contains a given number of bytes after the current
+	 * position, unless the end of the input stream is reached first or the
+	 * buffer is full. The data after the mark is preserved.
+	 *
+	 * @param length
+	 *            The number of bytes needed.
+	 * @return Whether that number of bytes is available.
+	 * @throws IOException
+	 *             If there was a problem reading from the input stream.
+	 */
+	private boolean fill(int length) throws IOException {
+		if (limit - pos >= length) {
+			return true;
+		}
+		if (mark > 0) {
+			System.arraycopy(buffer, mark, buffer, 0, limit - mark);
+			bufferOffset += mark;
+			limit -= mark;
+			pos -= mark;
+			mark = 0;
+		}
+		while (limit - pos < length && limit < buffer.length && !eof) {
+			int read = input.read(buffer, limit, buffer.length - limit);
+			if (read == -1) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+		}
+		return limit - pos >= length;
+	}
+
+	/**
+	 * Returns a stream containing the unscanned data.
+	 *
+	 * @param prefix
+	 *            Data to prepend to the stream, or null.
+	 */
+	private InputStream remainingInput(byte[] prefix) {
+		InputStream remaining = new SequenceInputStream(
+				new ByteArrayInputStream(buffer, pos, limit - pos), input);
+		if (prefix == null) {
+			return remaining;
+		}
+		return new SequenceInputStream(new ByteArrayInputStream(prefix),
+				remaining);
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.stax.StAXSource;
+
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.CompressionAlgorithm;
+
+/**
+ * Returns XML readers and sources that present compressed data as the
+ * document {@link XmlCodec} would write, without serializing or parsing it.
+ *
+ * @author Jacobo Tarrio
+ */
+public class XmlStreamReaderFactory {
+
+	/**
+	 * Avoid subclassing and instantiation.
+	 */
+	private XmlStreamReaderFactory() {
+	}
+
+	/**
+	 * Returns an XMLStreamReader whose events are generated from the symbols
+	 * read from a decoder.
+	 *
+	 * @param decoder
+	 *            The decoder to read the symbols from.
+	 * @return The reader.
+	 */
+	public static XMLStreamReader newXmlStreamReader(Decoder decoder) {
+		return new SymbolStreamReader(decoder, null);
+	}
+
+	/**
+	 * Returns an XMLStreamReader whose events are generated from the symbols
+	 * produced by compressing the data in an input stream.
+	 *
+	 * The compression runs in a background thread that stays a bounded
+	 * number of symbols ahead of the reader. Closing the reader stops the
+	 * compression.
+	 *
+	 * @param algorithm
+	 *            The algorithm to compress the data with.
+	 * @param input
+	 *            The stream to read uncompressed data from.
+	 * @return The reader.
+	 */
+	public static XMLStreamReader newXmlStreamReader(
+			final CompressionAlgorithm algorithm, final InputStream input) {
+		final SymbolPipe pipe = new SymbolPipe();
+		Thread compressor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					algorithm.compress(input, pipe.getEncoder());
+				} catch (Throwable e) {
+					pipe.fail(e);
+				}
+			}
+		}, "Debloat compressor");
+		compressor.setDaemon(true);
+		compressor.start();
+		return new SymbolStreamReader(pipe.getDecoder(), pipe);
+	}
+
+	/**
+	 * Returns a Source whose contents are generated from the symbols produced
+	 * by compressing the data in an input stream.
+	 *
+	 * @param algorithm
+	 *            The algorithm to compress the data with.
+	 * @param input
+	 *            The stream to read uncompressed data from.
+	 * @return The source.
+	 * @see #newXmlStreamReader(CompressionAlgorithm, InputStream)
+	 */
+	public static Source newSource(CompressionAlgorithm algorithm,
+			InputStream input) {
+		return new StAXSource(newXmlStreamReader(algorithm, input));
+	}
+}
@@ -25,6 +25,7 @@ import java.util.Set;
 
 import org.tarrio.debloat.Codec;
 import org.tarrio.debloat.CompressionAlgorithm;
+import org.tarrio.debloat.LeveledAlgorithm;
 
 /**
  * A central registry for compression algorithms.
@@ -63,14 +64,45 @@ public class CompressionAlgorithmRegistry {
 	/**
 	 * Returns an instance of the registered algorithm with the given name.
 	 * 
+	 * The name may be followed by a colon and a compression level, as in
+	 * "lz77:9", to get an algorithm that supports compression levels set to
+	 * that level.
+	 * 
 	 * @param algorithm
 	 *            The name of the algorithm to retrieve.
 	 * @return The algorithm, or null if no algorithm was registered with that
 	 *         name.
+	 * @throws IllegalArgumentException
+	 *             If a compression level was given and the algorithm does not
+	 *             support it.
 	 */
 	public CompressionAlgorithm get(String algorithm) {
 		CompressionAlgorithmProvider provider = algorithms.get(algorithm);
-		return provider == null ? null : provider.get();
+		if (provider != null) {
+			return provider.get();
+		}
+		int colon = algorithm.lastIndexOf(':');
+		if (colon < 0) {
+			return null;
+		}
+		provider = algorithms.get(algorithm.substring(0, colon));
+		if (provider == null) {
+			return null;
+		}
+		int level;
+		try {
+			level = Integer.parseInt(algorithm.substring(colon + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid compression level in "
+					+ algorithm, e);
+		}
+		CompressionAlgorithm instance = provider.get();
+		if (!(instance instanceof LeveledAlgorithm)) {
+			throw new IllegalArgumentException(String.format(
+					"Algorithm %s does not support compression levels",
+					algorithm.substring(0, colon)));
+		}
+		return ((LeveledAlgorithm) instance).withLevel(level);
 	}
 
 	/**
@@ -19,7 +19,20 @@ package org.tarrio.debloat;
 import org.tarrio.debloat.algorithms.Lz77Test;
 import org.tarrio.debloat.algorithms.LzwTest;
 import org.tarrio.debloat.buffers.RingBufferImplTest;
+import org.tarrio.debloat.codecs.BinaryCodecTest;
+import org.tarrio.debloat.codecs.CachingCodecTest;
+import org.tarrio.debloat.codecs.CodecFactoryTest;
+import org.tarrio.debloat.codecs.ColumnarXmlCodecTest;
+import org.tarrio.debloat.codecs.DeflateCodecTest;
+import org.tarrio.debloat.codecs.DeflateTranscoderTest;
+import org.tarrio.debloat.codecs.ParallelXmlDecoderTest;
+import org.tarrio.debloat.codecs.RansCodecTest;
+import org.tarrio.debloat.codecs.SeekIndexTest;
+import org.tarrio.debloat.codecs.SymbolStreamReaderTest;
+import org.tarrio.debloat.codecs.TranscoderTest;
 import org.tarrio.debloat.codecs.XmlCodecTest;
+import org.tarrio.debloat.codecs.XmlScanningDecoderTest;
+import org.tarrio.debloat.codecs.XmlStreamReaderFactoryTest;
 import org.tarrio.debloat.registry.CompressionAlgorithmRegistryTest;
 
 import junit.framework.Test;
@@ -35,12 +48,27 @@ public class AllTests {
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		// $JUnit-BEGIN$
+		suite.addTestSuite(BinaryCodecTest.class);
+		suite.addTestSuite(CachingCodecTest.class);
+		suite.addTestSuite(CodecFactoryTest.class);
+		suite.addTestSuite(ColumnarXmlCodecTest.class);
 		suite.addTestSuite(CompressionAlgorithmRegistryTest.class);
+		suite.addTestSuite(DeflateCodecTest.class);
+		suite.addTestSuite(DeflateTranscoderTest.class);
 		suite.addTestSuite(EndToEndTest.class);
 		suite.addTestSuite(Lz77Test.class);
 		suite.addTestSuite(LzwTest.class);
+		suite.addTestSuite(ParallelXmlDecoderTest.class);
+		suite.addTestSuite(RansCodecTest.class);
+		suite.addTestSuite(RecentDistancesTest.class);
 		suite.addTestSuite(RingBufferImplTest.class);
+		suite.addTestSuite(SeekIndexTest.class);
+		suite.addTestSuite(SymbolBufferTest.class);
+		suite.addTestSuite(SymbolStreamReaderTest.class);
+		suite.addTestSuite(TranscoderTest.class);
 		suite.addTestSuite(XmlCodecTest.class);
+		suite.addTestSuite(XmlScanningDecoderTest.class);
+		suite.addTestSuite(XmlStreamReaderFactoryTest.class);
 		// $JUnit-END$
 		return suite;
 	}
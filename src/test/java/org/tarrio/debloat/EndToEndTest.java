@@ -19,6 +19,10 @@ package org.tarrio.debloat;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.Random;
 
 import org.tarrio.debloat.CompressionAlgorithm;
@@ -58,6 +62,15 @@ public class EndToEndTest extends TestCase {
 
 	private static final byte[] BINARY_DATA = makeBinaryData();
 
+	/**
+	 * The number of bytes to stream through Lz77 in
+	 * testCompressUncompressLongStreamWithLz77. Set the
+	 * debloat.longStreamLength system property to a value over 4 GiB to check
+	 * that very long inputs are handled correctly.
+	 */
+	private static final long LONG_STREAM_LENGTH = Long.getLong(
+			"debloat.longStreamLength", 1 << 20);
+
 	public void testCompressUncompressTextWithLz77() throws Exception {
 		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
 				.getInstance().get("lz77");
@@ -70,6 +83,50 @@ public class EndToEndTest extends TestCase {
 		doTestCompressUncompress(compressor, BINARY_DATA);
 	}
 
+	public void testCompressUncompressTextWithFastestLz77() throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lz77:1");
+		doTestCompressUncompress(compressor, TEST_DATA.getBytes());
+	}
+
+	public void testCompressUncompressTextWithBestLz77() throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lz77:9");
+		doTestCompressUncompress(compressor, TEST_DATA.getBytes());
+	}
+
+	public void testCompressUncompressLongStreamWithLz77() throws Exception {
+		final CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lz77");
+		final Codec codec = CodecFactory.getCodec(CodecFactory.BINARY);
+		PipedInputStream compressedInput = new PipedInputStream(65536);
+		final PipedOutputStream compressedOutput = new PipedOutputStream(
+				compressedInput);
+		final Throwable[] error = new Throwable[1];
+		Thread compressThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					compressor.compress(new SyntheticInputStream(
+							LONG_STREAM_LENGTH), codec
+							.getEncoder(compressedOutput));
+					compressedOutput.close();
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		};
+		compressThread.start();
+		VerifyingOutputStream uncompressedOutput = new VerifyingOutputStream(
+				new SyntheticInputStream(LONG_STREAM_LENGTH));
+		compressor.decompress(codec.getDecoder(compressedInput),
+				uncompressedOutput);
+		compressThread.join();
+		assertNull(error[0]);
+		assertEquals(LONG_STREAM_LENGTH, uncompressedOutput.getPosition());
+		assertEquals(-1, uncompressedOutput.expected.read());
+	}
+
 	public void testCompressUncompressTextWithLzw() throws Exception {
 		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
 				.getInstance().get("lzw");
@@ -82,10 +139,75 @@ public class EndToEndTest extends TestCase {
 		doTestCompressUncompress(compressor, BINARY_DATA);
 	}
 
+	public void testCompressUncompressTextWithDenseXml() throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lz77");
+		doTestCompressUncompress(compressor,
+				CodecFactory.getCodec(CodecFactory.DENSE_XML),
+				TEST_DATA.getBytes());
+	}
+
+	public void testCompressUncompressBinaryDataWithDenseXml()
+			throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lzw");
+		doTestCompressUncompress(compressor,
+				CodecFactory.getCodec(CodecFactory.DENSE_XML), BINARY_DATA);
+	}
+
+	public void testCompressUncompressTextWithColumnarXml() throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lz77");
+		doTestCompressUncompress(compressor,
+				CodecFactory.getCodec(CodecFactory.COLUMNAR_XML),
+				TEST_DATA.getBytes());
+	}
+
+	public void testCompressUncompressBinaryDataWithColumnarXml()
+			throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lzw");
+		doTestCompressUncompress(compressor,
+				CodecFactory.getCodec(CodecFactory.COLUMNAR_XML), BINARY_DATA);
+	}
+
+	public void testCompressUncompressTextWithBinary() throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lz77");
+		doTestCompressUncompress(compressor,
+				CodecFactory.getCodec(CodecFactory.BINARY),
+				TEST_DATA.getBytes());
+	}
+
+	public void testCompressUncompressBinaryDataWithBinary() throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lzw");
+		doTestCompressUncompress(compressor,
+				CodecFactory.getCodec(CodecFactory.BINARY), BINARY_DATA);
+	}
+
+	public void testCompressUncompressTextWithRans() throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lz77");
+		doTestCompressUncompress(compressor,
+				CodecFactory.getCodec(CodecFactory.RANS), TEST_DATA.getBytes());
+	}
+
+	public void testCompressUncompressBinaryDataWithRans() throws Exception {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get("lzw");
+		doTestCompressUncompress(compressor,
+				CodecFactory.getCodec(CodecFactory.RANS), BINARY_DATA);
+	}
+
 	private void doTestCompressUncompress(CompressionAlgorithm compressor,
 			byte[] testData) throws IOException {
+		doTestCompressUncompress(compressor, CodecFactory.getCodec(), testData);
+	}
+
+	private void doTestCompressUncompress(CompressionAlgorithm compressor,
+			Codec codec, byte[] testData) throws IOException {
 		ByteArrayInputStream inputStream = new ByteArrayInputStream(testData);
-		Codec codec = CodecFactory.getCodec();
 		ByteArrayOutputStream compressedStream = new ByteArrayOutputStream();
 		compressor.compress(inputStream, codec.getEncoder(compressedStream));
 
@@ -125,6 +247,103 @@ public class EndToEndTest extends TestCase {
 		}
 	}
 
+	/**
+	 * An input stream that generates a given number of bytes of log-like
+	 * text, always the same for the same length.
+	 */
+	private static class SyntheticInputStream extends InputStream {
+		private static final String[] WORDS = { "GET", "POST", "/index.html",
+				"/api/v1/items", "/static/debloat.css", "200", "404", "500",
+				"user", "admin", "guest" };
+		private final Random random;
+		private long remaining;
+		private byte[] line;
+		private int linePos;
+
+		public SyntheticInputStream(long length) {
+			this.random = new Random(length);
+			this.remaining = length;
+			this.line = new byte[0];
+			this.linePos = 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			if (linePos == line.length) {
+				makeLine();
+			}
+			int read = (int) Math.min(Math.min(len, remaining), line.length
+					- linePos);
+			System.arraycopy(line, linePos, b, off, read);
+			linePos += read;
+			remaining -= read;
+			return read;
+		}
+
+		private void makeLine() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(random.nextInt(1000000));
+			for (int i = 0; i < 5; ++i) {
+				sb.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			sb.append(' ').append(random.nextInt(100000)).append('\n');
+			line = sb.toString().getBytes();
+			linePos = 0;
+		}
+	}
+
+	/**
+	 * An output stream that checks that the data written to it is the same
+	 * that is read from another stream.
+	 */
+	private static class VerifyingOutputStream extends OutputStream {
+		private final InputStream expected;
+		private final byte[] expectedData;
+		private long position;
+
+		public VerifyingOutputStream(InputStream expected) {
+			this.expected = expected;
+			this.expectedData = new byte[65536];
+			this.position = 0;
+		}
+
+		public long getPosition() {
+			return position;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int read = expected.read(expectedData, 0,
+						Math.min(len, expectedData.length));
+				assertTrue("Too much data at position " + position, read > 0);
+				for (int i = 0; i < read; ++i) {
+					if (b[off + i] != expectedData[i]) {
+						fail(String.format("Bytes at position #%d are different",
+								position + i));
+					}
+				}
+				position += read;
+				off += read;
+				len -= read;
+			}
+		}
+	}
+
 	private static byte[] makeBinaryData() {
 		Random random = new Random(1337L);
 		byte[] testData = new byte[200000];
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tarrio.debloat;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link RecentDistances}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class RecentDistancesTest extends TestCase {
+
+	private RecentDistances recent;
+
+	@Override
+	protected void setUp() throws Exception {
+		recent = new RecentDistances();
+	}
+
+	public void testPushesDistances() throws Exception {
+		assertEquals(0, recent.size());
+		for (int distance = 1; distance <= RecentDistances.SLOTS + 1; ++distance) {
+			recent.push(distance);
+		}
+		assertEquals(RecentDistances.SLOTS, recent.size());
+		for (int slot = 0; slot < RecentDistances.SLOTS; ++slot) {
+			assertEquals(RecentDistances.SLOTS + 1 - slot, recent.get(slot));
+		}
+	}
+
+	public void testMovesUsedDistanceToFront() throws Exception {
+		recent.push(30);
+		recent.push(20);
+		recent.push(10);
+		assertEquals(30, recent.use(2));
+		assertEquals(30, recent.get(0));
+		assertEquals(10, recent.get(1));
+		assertEquals(20, recent.get(2));
+		assertEquals(30, recent.use(0));
+		assertEquals(30, recent.get(0));
+		assertEquals(3, recent.size());
+	}
+
+	public void testFindsDistances() throws Exception {
+		recent.push(30);
+		recent.push(20);
+		assertEquals(0, recent.find(20));
+		assertEquals(1, recent.find(30));
+		assertEquals(-1, recent.find(10));
+	}
+
+	public void testClear() throws Exception {
+		recent.push(10);
+		recent.clear();
+		assertEquals(0, recent.size());
+		try {
+			recent.use(0);
+			fail("Expected an exception for the empty slot");
+		} catch (IndexOutOfBoundsException e) {
+			// Expected.
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat;
+
+import org.easymock.EasyMock;
+import org.easymock.IMocksControl;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link SymbolBuffer}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class SymbolBufferTest extends TestCase {
+
+	private SymbolBuffer buffer;
+
+	@Override
+	protected void setUp() throws Exception {
+		buffer = new SymbolBuffer(2);
+	}
+
+	public void testStoresSymbols() throws Exception {
+		buffer.addByte((byte) -56);
+		buffer.addBackRef(32768, 258);
+		buffer.addDictionaryRef(-1);
+		buffer.addReset();
+		buffer.add(Symbol.newBackRef(Integer.MAX_VALUE,
+				SymbolBuffer.MAX_LENGTH));
+
+		assertEquals(5, buffer.size());
+		assertEquals(SymbolBuffer.BYTE, buffer.getKind(0));
+		assertEquals((byte) -56, buffer.getByteValue(0));
+		assertEquals(SymbolBuffer.BACK_REF, buffer.getKind(1));
+		assertEquals(32768, buffer.getDistance(1));
+		assertEquals(258, buffer.getLength(1));
+		assertEquals(SymbolBuffer.DICTIONARY_REF, buffer.getKind(2));
+		assertEquals(-1, buffer.getEntry(2));
+		assertEquals(SymbolBuffer.RESET, buffer.getKind(3));
+		assertEquals(Symbol.newBackRef(Integer.MAX_VALUE,
+				SymbolBuffer.MAX_LENGTH), buffer.getSymbol(4));
+	}
+
+	public void testConvertsSymbols() throws Exception {
+		Symbol[] symbols = new Symbol[] { Symbol.newByte((byte) 'a'),
+				Symbol.newBackRef(4, 3), Symbol.newDictionaryRef(567),
+				Symbol.newReset() };
+		for (Symbol symbol : symbols) {
+			buffer.add(symbol);
+		}
+		for (int i = 0; i < symbols.length; ++i) {
+			assertEquals(symbols[i], buffer.getSymbol(i));
+		}
+	}
+
+	public void testStoresCheckpoints() throws Exception {
+		buffer.addCheckpoint(0);
+		buffer.add(Symbol.newCheckpoint(SymbolBuffer.MAX_OFFSET));
+
+		assertEquals(SymbolBuffer.CHECKPOINT, buffer.getKind(0));
+		assertEquals(0, buffer.getOffset(0));
+		assertEquals(SymbolBuffer.CHECKPOINT, buffer.getKind(1));
+		assertEquals(Symbol.newCheckpoint(SymbolBuffer.MAX_OFFSET),
+				buffer.getSymbol(1));
+		try {
+			buffer.addCheckpoint(SymbolBuffer.MAX_OFFSET + 1);
+			fail("Expected an exception for the large offset");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	public void testClear() throws Exception {
+		buffer.addReset();
+		buffer.clear();
+		assertEquals(0, buffer.size());
+		try {
+			buffer.getKind(0);
+			fail("Expected an exception for the out-of-bounds index");
+		} catch (IndexOutOfBoundsException e) {
+			// Expected.
+		}
+	}
+
+	public void testAddsBytes() throws Exception {
+		byte[] bytes = "abcdef".getBytes();
+		buffer.addReset();
+		buffer.addBytes(bytes, 1, 4);
+
+		assertEquals(5, buffer.size());
+		for (int i = 0; i < 4; ++i) {
+			assertEquals(Symbol.newByte(bytes[i + 1]), buffer.getSymbol(i + 1));
+		}
+	}
+
+	public void testStoresLiteralRuns() throws Exception {
+		byte[] bytes = "abcdef".getBytes();
+		buffer.addLiterals(bytes, 1, 4);
+		buffer.addBackRef(4, 3);
+		buffer.add(Symbol.newLiterals(bytes, 0, 2));
+
+		assertEquals(3, buffer.size());
+		assertEquals(SymbolBuffer.LITERALS, buffer.getKind(0));
+		assertEquals(4, buffer.getLength(0));
+		assertEquals(Symbol.newLiterals(bytes, 1, 4), buffer.getSymbol(0));
+		assertEquals(Symbol.newBackRef(4, 3), buffer.getSymbol(1));
+		assertEquals(Symbol.newLiterals(bytes, 0, 2), buffer.getSymbol(2));
+
+		SymbolBuffer copy = new SymbolBuffer();
+		copy.add(buffer, 2);
+		assertEquals(Symbol.newLiterals(bytes, 0, 2), copy.getSymbol(0));
+
+		buffer.clear();
+		buffer.addLiterals(bytes, 4, 2);
+		assertEquals(Symbol.newLiterals(bytes, 4, 2), buffer.getSymbol(0));
+	}
+
+	public void testStoresRepeatRefs() throws Exception {
+		buffer.addRepeatRef(2, 258);
+		buffer.add(Symbol.newRepeatRef(0, SymbolBuffer.MAX_LENGTH));
+
+		assertEquals(SymbolBuffer.REPEAT_REF, buffer.getKind(0));
+		assertEquals(2, buffer.getSlot(0));
+		assertEquals(258, buffer.getLength(0));
+		assertEquals(Symbol.newRepeatRef(0, SymbolBuffer.MAX_LENGTH),
+				buffer.getSymbol(1));
+
+		IMocksControl control = EasyMock.createStrictControl();
+		SymbolVisitor visitor = control.createMock(SymbolVisitor.class);
+		visitor.onRepeatRef(2, 258);
+		visitor.onRepeatRef(0, SymbolBuffer.MAX_LENGTH);
+		control.replay();
+
+		buffer.accept(visitor);
+		control.verify();
+	}
+
+	public void testReadsFromDecoder() throws Exception {
+		IMocksControl control = EasyMock.createControl();
+		Codec.Decoder decoder = control.createMock(Codec.Decoder.class);
+		EasyMock.expect(decoder.read()).andReturn(Symbol.newReset());
+		EasyMock.expect(decoder.read()).andReturn(Symbol.newBackRef(4, 3));
+		EasyMock.expect(decoder.read()).andReturn(Symbol.newCheckpoint(7));
+		EasyMock.expect(decoder.read()).andReturn(null);
+		control.replay();
+
+		assertEquals(2, buffer.readFrom(decoder, 2));
+		assertEquals(1, buffer.readFrom(decoder, 2));
+		control.verify();
+		assertEquals(Symbol.newReset(), buffer.getSymbol(0));
+		assertEquals(Symbol.newBackRef(4, 3), buffer.getSymbol(1));
+		assertEquals(Symbol.newCheckpoint(7), buffer.getSymbol(2));
+	}
+
+	public void testReadsFromBatchDecoder() throws Exception {
+		IMocksControl control = EasyMock.createControl();
+		Codec.BatchDecoder decoder = control
+				.createMock(Codec.BatchDecoder.class);
+		EasyMock.expect(decoder.read(buffer, 5)).andReturn(3);
+		control.replay();
+
+		assertEquals(3, buffer.readFrom(decoder, 5));
+		control.verify();
+	}
+
+	public void testWritesToEncoder() throws Exception {
+		buffer.addByte((byte) 'a');
+		buffer.addDictionaryRef(567);
+		IMocksControl control = EasyMock.createStrictControl();
+		Codec.Encoder encoder = control.createMock(Codec.Encoder.class);
+		encoder.write(Symbol.newByte((byte) 'a'));
+		encoder.write(Symbol.newDictionaryRef(567));
+		control.replay();
+
+		buffer.writeTo(encoder);
+		control.verify();
+	}
+
+	public void testWritesToBatchEncoder() throws Exception {
+		buffer.addByte((byte) 'a');
+		IMocksControl control = EasyMock.createControl();
+		Codec.BatchEncoder encoder = control
+				.createMock(Codec.BatchEncoder.class);
+		encoder.write(buffer);
+		control.replay();
+
+		buffer.writeTo(encoder);
+		control.verify();
+	}
+
+	public void testAcceptsVisitor() throws Exception {
+		buffer.addByte((byte) -56);
+		buffer.addBackRef(32768, SymbolBuffer.MAX_LENGTH);
+		buffer.addDictionaryRef(-1);
+		buffer.addReset();
+		buffer.addCheckpoint(SymbolBuffer.MAX_OFFSET);
+		IMocksControl control = EasyMock.createStrictControl();
+		SymbolVisitor visitor = control.createMock(SymbolVisitor.class);
+		visitor.onByte((byte) -56);
+		visitor.onBackRef(32768, SymbolBuffer.MAX_LENGTH);
+		visitor.onDictionaryRef(-1);
+		visitor.onReset();
+		visitor.onCheckpoint(SymbolBuffer.MAX_OFFSET);
+		control.replay();
+
+		buffer.accept(visitor);
+		control.verify();
+	}
+
+	public void testReportsByteSize() throws Exception {
+		assertEquals(0, buffer.getByteSize());
+		buffer.addByte((byte) 'a');
+		buffer.addLiterals("bcd".getBytes(), 0, 3);
+		buffer.addBackRef(4, 3);
+		assertEquals(3 * 8 + 3, buffer.getByteSize());
+		buffer.trimToSize();
+		assertEquals(3 * 8 + 3, buffer.getByteSize());
+		assertEquals(3, buffer.getLiteralBytes().length);
+		assertEquals(Symbol.newLiterals("bcd".getBytes(), 0, 3),
+				buffer.getSymbol(1));
+		buffer.addReset();
+		assertEquals(4, buffer.size());
+		assertEquals(Symbol.newReset(), buffer.getSymbol(3));
+	}
+
+	public void testAcceptsVisitorForRange() throws Exception {
+		buffer.addByte((byte) 'a');
+		buffer.addLiterals("bcd".getBytes(), 0, 3);
+		buffer.addRepeatRef(2, 5);
+		buffer.addReset();
+		IMocksControl control = EasyMock.createStrictControl();
+		SymbolVisitor visitor = control.createMock(SymbolVisitor.class);
+		visitor.onLiterals(EasyMock.aryEq(buffer.getLiteralBytes()),
+				EasyMock.eq(buffer.getLiteralOffset(1)), EasyMock.eq(3));
+		visitor.onRepeatRef(2, 5);
+		control.replay();
+
+		buffer.accept(visitor, 1, 3);
+		control.verify();
+	}
+
+	public void testVisitsDecoder() throws Exception {
+		IMocksControl control = EasyMock.createStrictControl();
+		Codec.Decoder decoder = control.createMock(Codec.Decoder.class);
+		SymbolVisitor visitor = control.createMock(SymbolVisitor.class);
+		EasyMock.expect(decoder.read()).andReturn(Symbol.newByte((byte) 'a'));
+		EasyMock.expect(decoder.read()).andReturn(Symbol.newBackRef(4, 3));
+		EasyMock.expect(decoder.read()).andReturn(null);
+		visitor.onByte((byte) 'a');
+		visitor.onBackRef(4, 3);
+		control.replay();
+
+		SymbolBuffer.visit(decoder, visitor);
+		control.verify();
+	}
+
+	public void testVisitsPushDecoder() throws Exception {
+		IMocksControl control = EasyMock.createControl();
+		Codec.PushDecoder decoder = control
+				.createMock(Codec.PushDecoder.class);
+		SymbolVisitor visitor = control.createMock(SymbolVisitor.class);
+		decoder.decode(visitor);
+		control.replay();
+
+		SymbolBuffer.visit(decoder, visitor);
+		control.verify();
+	}
+
+	public void testRejectsLongBackRefs() throws Exception {
+		try {
+			buffer.addBackRef(1, SymbolBuffer.MAX_LENGTH + 1);
+			fail("Expected an exception for the long back-reference");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+}
@@ -44,6 +44,27 @@ public class Lz77Test extends TestCase {
 			Symbol.newByte((byte) 'h'), Symbol.newByte((byte) 'i'),
 			Symbol.newByte((byte) 'j') };
 
+	private static final Symbol[] LITERAL_RUN_SYMBOLS = new Symbol[] {
+			Symbol.newLiterals("abcde".getBytes(), 0, 5),
+			Symbol.newBackRef(4, 3),
+			Symbol.newLiterals("fghij".getBytes(), 0, 5) };
+
+	private static final Symbol[] REPEAT_SYMBOLS = new Symbol[] {
+			Symbol.newLiterals("name=aaa;".getBytes(), 0, 9),
+			Symbol.newBackRef(9, 5),
+			Symbol.newLiterals("bbb".getBytes(), 0, 3),
+			Symbol.newRepeatRef(0, 6),
+			Symbol.newLiterals("ccc;".getBytes(), 0, 4) };
+
+	private static final Symbol[] LAZY_SYMBOLS = new Symbol[] {
+			Symbol.newLiterals("abcXbcdefYa".getBytes(), 0, 11),
+			Symbol.newBackRef(7, 5), Symbol.newByte((byte) 'Z') };
+
+	private static final Symbol[] GREEDY_SYMBOLS = new Symbol[] {
+			Symbol.newLiterals("abcXbcdefY".getBytes(), 0, 10),
+			Symbol.newBackRef(10, 3), Symbol.newBackRef(7, 3),
+			Symbol.newByte((byte) 'Z') };
+
 	private IMocksControl control;
 	private InputStream input;
 	private OutputStream output;
@@ -67,7 +88,54 @@ public class Lz77Test extends TestCase {
 
 		EasyMock.expect(codec.getEncoder(output)).andReturn(encoder);
 		encoder.setAlgorithm(compressor.getAlgorithmName());
-		for (Symbol symbol : SYMBOLS) {
+		for (Symbol symbol : LITERAL_RUN_SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		control.replay();
+		compressor.compress(input, codec.getEncoder(output));
+		control.verify();
+	}
+
+	public void testEncodesRepeatRefs() throws Exception {
+		input = new ByteArrayInputStream("name=aaa;name=bbb;name=ccc;"
+				.getBytes());
+
+		EasyMock.expect(codec.getEncoder(output)).andReturn(encoder);
+		encoder.setAlgorithm(compressor.getAlgorithmName());
+		for (Symbol symbol : REPEAT_SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		control.replay();
+		compressor.compress(input, codec.getEncoder(output));
+		control.verify();
+	}
+
+	public void testEncodesLazyMatches() throws Exception {
+		input = new ByteArrayInputStream("abcXbcdefYabcdefZ".getBytes());
+
+		EasyMock.expect(codec.getEncoder(output)).andReturn(encoder);
+		encoder.setAlgorithm(compressor.getAlgorithmName());
+		for (Symbol symbol : LAZY_SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		control.replay();
+		compressor.compress(input, codec.getEncoder(output));
+		control.verify();
+	}
+
+	public void testEncodesGreedyMatchesAtLowLevels() throws Exception {
+		input = new ByteArrayInputStream("abcXbcdefYabcdefZ".getBytes());
+		compressor = compressor.withLevel(1);
+
+		EasyMock.expect(codec.getEncoder(output)).andReturn(encoder);
+		encoder.setAlgorithm(compressor.getAlgorithmName());
+		for (Symbol symbol : GREEDY_SYMBOLS) {
 			encoder.write(symbol);
 		}
 		encoder.close();
@@ -77,6 +145,23 @@ public class Lz77Test extends TestCase {
 		control.verify();
 	}
 
+	public void testRejectsLevelsOutOfRange() throws Exception {
+		assertEquals(1, compressor.withLevel(1).getLevel());
+		assertEquals(9, compressor.withLevel(9).getLevel());
+		try {
+			compressor.withLevel(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		try {
+			compressor.withLevel(10);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
 	public void testDecodesSymbols() throws Exception {
 		EasyMock.expect(codec.getDecoder(input)).andReturn(decoder);
 		EasyMock.expect(decoder.getAlgoritm()).andReturn(
@@ -91,4 +176,34 @@ public class Lz77Test extends TestCase {
 		control.verify();
 		assertEquals("abcdebcdfghij", output.toString());
 	}
+
+	public void testDecodesLiteralRuns() throws Exception {
+		EasyMock.expect(codec.getDecoder(input)).andReturn(decoder);
+		EasyMock.expect(decoder.getAlgoritm()).andReturn(
+				compressor.getAlgorithmName());
+		for (Symbol symbol : LITERAL_RUN_SYMBOLS) {
+			EasyMock.expect(decoder.read()).andReturn(symbol);
+		}
+		EasyMock.expect(decoder.read()).andReturn(null);
+
+		control.replay();
+		compressor.decompress(codec.getDecoder(input), output);
+		control.verify();
+		assertEquals("abcdebcdfghij", output.toString());
+	}
+
+	public void testDecodesRepeatRefs() throws Exception {
+		EasyMock.expect(codec.getDecoder(input)).andReturn(decoder);
+		EasyMock.expect(decoder.getAlgoritm()).andReturn(
+				compressor.getAlgorithmName());
+		for (Symbol symbol : REPEAT_SYMBOLS) {
+			EasyMock.expect(decoder.read()).andReturn(symbol);
+		}
+		EasyMock.expect(decoder.read()).andReturn(null);
+
+		control.replay();
+		compressor.decompress(codec.getDecoder(input), output);
+		control.verify();
+		assertEquals("name=aaa;name=bbb;name=ccc;", output.toString());
+	}
 }
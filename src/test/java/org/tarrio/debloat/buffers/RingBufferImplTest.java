@@ -19,6 +19,7 @@ package org.tarrio.debloat.buffers;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.tarrio.debloat.buffers.RingBuffer;
 import org.tarrio.debloat.buffers.RingBufferImpl;
@@ -86,6 +87,18 @@ public class RingBufferImplTest extends TestCase {
 		assertNull(buffer.findPastMatch());
 	}
 
+	public void testFindPastMatchPacked() throws Exception {
+		byte[] testData = "12345678903456a34567b345c34d".getBytes();
+		RingBuffer buffer = makeBuffer(testData);
+		for (int i = 0; i < 10; ++i) {
+			assertEquals(0, buffer.findPastMatchPacked());
+			buffer.skip(1);
+		}
+		assertEquals(8L << 32 | 4, buffer.findPastMatchPacked());
+		buffer.skip(5);
+		assertEquals(13L << 32 | 5, buffer.findPastMatchPacked());
+	}
+
 	public void testFindPastMatchSmallBuffer() throws Exception {
 		byte[] testData = "12345678903456a34567b345c34d".getBytes();
 		RingBuffer buffer = makeBuffer(testData, 15, 6);
@@ -120,6 +133,116 @@ public class RingBufferImplTest extends TestCase {
 		assertNull(buffer.findPastMatch());
 	}
 
+	public void testFindPastMatchAfterManyWraps() throws Exception {
+		byte[] testData = new byte[10000];
+		for (int i = 0; i < testData.length; ++i) {
+			testData[i] = (byte) "abcde".charAt(i % 5);
+		}
+		RingBuffer buffer = makeBuffer(testData, 16, 8);
+		buffer.skip(5);
+		for (int i = 5; i < testData.length - 7; i += 7) {
+			Match match = buffer.findPastMatch();
+			assertNotNull(match);
+			assertEquals(5, match.getDistance());
+			assertEquals(7, match.getLength());
+			buffer.skip(match.getLength());
+		}
+	}
+
+	public void testFindLongPastMatchesAcrossWraps() throws Exception {
+		byte[] testData = new byte[5000];
+		for (int i = 0; i < testData.length; ++i) {
+			testData[i] = (byte) "abcdefghijklm".charAt(i % 13);
+		}
+		testData[4000] = 'X';
+		RingBuffer buffer = makeBuffer(testData, 64, 16);
+		buffer.skip(13);
+		int position = 13;
+		while (position < 4000 - 47) {
+			Match match = buffer.findPastMatch();
+			assertNotNull(match);
+			assertEquals(13, match.getDistance());
+			assertEquals(47, match.getLength());
+			buffer.skip(match.getLength());
+			position += match.getLength();
+		}
+		Match match = buffer.findPastMatch();
+		assertEquals(13, match.getDistance());
+		assertEquals(4000 - position, match.getLength());
+	}
+
+	public void testFindPastMatchStopsAtMaxChainLength() throws Exception {
+		byte[] testData = "abcdefabcXabcdef".getBytes();
+		RingBuffer buffer = makeBuffer(testData);
+		buffer.skip(10);
+		Match match = buffer.findPastMatch();
+		assertEquals(10, match.getDistance());
+		assertEquals(6, match.getLength());
+
+		buffer = makeLimitedBuffer(testData, 1, 258, Integer.MAX_VALUE);
+		buffer.skip(10);
+		match = buffer.findPastMatch();
+		assertEquals(4, match.getDistance());
+		assertEquals(3, match.getLength());
+	}
+
+	public void testFindPastMatchStopsAtNiceLength() throws Exception {
+		byte[] testData = "abcdefabcXabcdef".getBytes();
+		RingBuffer buffer = makeLimitedBuffer(testData, Integer.MAX_VALUE, 3,
+				Integer.MAX_VALUE);
+		buffer.skip(10);
+		Match match = buffer.findPastMatch();
+		assertEquals(4, match.getDistance());
+		assertEquals(3, match.getLength());
+	}
+
+	public void testSkipDoesNotIndexLongMatches() throws Exception {
+		byte[] testData = "abcdefghabcdefghcdefgh".getBytes();
+		RingBuffer buffer = makeLimitedBuffer(testData, Integer.MAX_VALUE,
+				258, 2);
+		assertEquals(8, buffer.read(new byte[8], 8));
+		Match match = buffer.findPastMatch();
+		assertEquals(8, match.getDistance());
+		assertEquals(8, match.getLength());
+		buffer.skip(match.getLength());
+		match = buffer.findPastMatch();
+		assertEquals(14, match.getDistance());
+		assertEquals(6, match.getLength());
+
+		buffer = makeBuffer(testData);
+		buffer.skip(16);
+		match = buffer.findPastMatch();
+		assertEquals(6, match.getDistance());
+		assertEquals(6, match.getLength());
+	}
+
+	public void testFindPastMatchBeyond4GiB() throws Exception {
+		RingBuffer buffer = new RingBufferImpl(new PatternInputStream(
+				"abcde".getBytes(), 10L << 29));
+		for (int step = 0; step < 2; ++step) {
+			for (int i = 0; i < 5 - step; ++i) {
+				buffer.skip(1 << 29);
+			}
+			for (int i = 0; i < 10; ++i) {
+				Match match = buffer.findPastMatch();
+				assertNotNull(match);
+				assertEquals(5, match.getDistance());
+				assertEquals(258, match.getLength());
+				buffer.skip(match.getLength());
+			}
+		}
+	}
+
+	public void testFindPastMatchAfterResetWindow() throws Exception {
+		byte[] testData = "1234512345".getBytes();
+		RingBuffer buffer = makeBuffer(testData);
+		buffer.skip(5);
+		buffer.resetWindow();
+		assertNull(buffer.findPastMatch());
+		buffer.skip(1);
+		assertNull(buffer.findPastMatch());
+	}
+
 	public void testFindPastMatchRepeatedString() throws Exception {
 		byte[] testData = "121212121212".getBytes();
 		RingBuffer buffer = makeBuffer(testData);
@@ -247,6 +370,14 @@ public class RingBufferImplTest extends TestCase {
 				bufferLength, lookupLength, bufferLength - lookupLength - 1);
 	}
 
+	private RingBuffer makeLimitedBuffer(byte[] testData, int maxChainLength,
+			int niceLength, int maxInsertLength) {
+		RingBufferImpl buffer = new RingBufferImpl(new ByteArrayInputStream(
+				testData));
+		buffer.setSearchLimits(maxChainLength, niceLength, maxInsertLength);
+		return buffer;
+	}
+
 	private RingBuffer makeBuffer(ByteArrayOutputStream stream) {
 		return new RingBufferImpl(stream);
 	}
@@ -256,6 +387,44 @@ public class RingBufferImplTest extends TestCase {
 		return new RingBufferImpl(stream, maxDistance, maxLength);
 	}
 
+	/**
+	 * An input stream that repeats a pattern up to a given length.
+	 */
+	private static class PatternInputStream extends InputStream {
+		private final byte[] block;
+		private final int period;
+		private long remaining;
+		private long position;
+
+		public PatternInputStream(byte[] pattern, long length) {
+			this.block = new byte[65536 + pattern.length];
+			for (int i = 0; i < block.length; ++i) {
+				block[i] = pattern[i % pattern.length];
+			}
+			this.period = pattern.length;
+			this.remaining = length;
+			this.position = 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			int read = (int) Math.min(Math.min(len, remaining), 65536);
+			System.arraycopy(block, (int) (position % period), b, off, read);
+			position += read;
+			remaining -= read;
+			return read;
+		}
+	}
+
 	private void assertByteArrayEquals(byte[] expected, byte[] actual,
 			int expectedOffset, int actualOffset, int length) {
 		for (int i = 0; i < length; ++i) {
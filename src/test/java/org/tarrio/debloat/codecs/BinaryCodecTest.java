@@ -0,0 +1,244 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+import org.tarrio.debloat.Codec.PushDecoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link BinaryCodec}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class BinaryCodecTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+
+	private static final Symbol[] SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 'a'), Symbol.newByte((byte) 'b'),
+			Symbol.newByte((byte) 'c'), Symbol.newByte((byte) 'd'),
+			Symbol.newBackRef(4, 3), Symbol.newDictionaryRef(567),
+			Symbol.newByte((byte) 'e'), Symbol.newBackRef(10, 258),
+			Symbol.newReset() };
+
+	private static final Symbol[] DECODED_SYMBOLS = new Symbol[] {
+			Symbol.newLiterals("abcd".getBytes(), 0, 4),
+			Symbol.newBackRef(4, 3), Symbol.newDictionaryRef(567),
+			Symbol.newByte((byte) 'e'), Symbol.newBackRef(10, 258),
+			Symbol.newReset() };
+
+	private static final byte[] HEADER = new byte[] { 'D', 'B', 'L', 'B', 1,
+			8, 't', 'e', 's', 't', 'A', 'l', 'g', 'o' };
+
+	private static final byte[] COMPRESSED_DATA = concat(HEADER, new byte[] {
+			33, 'a', 'b', 'c', 'd', 34, 3, (byte) 0xbb, 0x23, 9, 'e', 82,
+			(byte) 0x82, 2, 4, 0 });
+
+	private BinaryCodec codec;
+	private ByteArrayOutputStream output;
+	private Encoder encoder;
+
+	@Override
+	protected void setUp() throws Exception {
+		codec = new BinaryCodec();
+		output = new ByteArrayOutputStream();
+		encoder = codec.getEncoder(output);
+	}
+
+	public void testEncode() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		assertTrue(Arrays.equals(COMPRESSED_DATA, output.toByteArray()));
+	}
+
+	public void testEncodeBatch() throws Exception {
+		SymbolBuffer symbols = new SymbolBuffer();
+		for (Symbol symbol : SYMBOLS) {
+			symbols.add(symbol);
+		}
+		encoder.setAlgorithm(ALGORITHM);
+		symbols.writeTo(encoder);
+		encoder.close();
+
+		assertTrue(Arrays.equals(COMPRESSED_DATA, output.toByteArray()));
+	}
+
+	public void testEncodeLiteralRuns() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newLiterals("abc".getBytes(), 0, 3));
+		encoder.write(Symbol.newByte((byte) 'd'));
+		for (int i = 4; i < SYMBOLS.length; ++i) {
+			encoder.write(SYMBOLS[i]);
+		}
+		encoder.close();
+
+		assertTrue(Arrays.equals(COMPRESSED_DATA, output.toByteArray()));
+	}
+
+	public void testEncodeEmpty() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.close();
+
+		assertTrue(Arrays.equals(concat(HEADER, new byte[] { 0 }),
+				output.toByteArray()));
+	}
+
+	public void testDecode() throws Exception {
+		Decoder decoder = makeDecoder(COMPRESSED_DATA);
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : DECODED_SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+		assertNull(decoder.read());
+	}
+
+	public void testPushesSymbols() throws Exception {
+		PushDecoder decoder = (PushDecoder) makeDecoder(COMPRESSED_DATA);
+		assertEquals(DECODED_SYMBOLS[0], decoder.read());
+		SymbolBuffer symbols = new SymbolBuffer();
+		decoder.decode(symbols);
+
+		assertEquals(DECODED_SYMBOLS.length - 1, symbols.size());
+		for (int i = 1; i < DECODED_SYMBOLS.length; ++i) {
+			assertEquals(DECODED_SYMBOLS[i], symbols.getSymbol(i - 1));
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testRoundTripExtremeValues() throws Exception {
+		Symbol[] symbols = new Symbol[] {
+				Symbol.newBackRef(Integer.MAX_VALUE, Integer.MAX_VALUE),
+				Symbol.newBackRef(-1, -1), Symbol.newDictionaryRef(-1),
+				Symbol.newDictionaryRef(Integer.MIN_VALUE),
+				Symbol.newCheckpoint(Long.MAX_VALUE), Symbol.newCheckpoint(0) };
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : symbols) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		Decoder decoder = makeDecoder(output.toByteArray());
+		for (Symbol symbol : symbols) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testRoundTripRepeatRefs() throws Exception {
+		Symbol[] symbols = new Symbol[] { Symbol.newBackRef(7, 3),
+				Symbol.newRepeatRef(0, 258),
+				Symbol.newRepeatRef(Integer.MAX_VALUE,
+						SymbolBuffer.MAX_LENGTH) };
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : symbols) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		Decoder decoder = makeDecoder(output.toByteArray());
+		for (Symbol symbol : symbols) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+
+		SymbolBuffer pushed = new SymbolBuffer();
+		SymbolBuffer.visit(makeDecoder(output.toByteArray()), pushed);
+		assertEquals(symbols.length, pushed.size());
+		for (int i = 0; i < symbols.length; ++i) {
+			assertEquals(symbols[i], pushed.getSymbol(i));
+		}
+	}
+
+	public void testRoundTripLongLiteralRuns() throws Exception {
+		int count = BinaryCodec.MAX_LITERALS * 3 + 17;
+		encoder.setAlgorithm(ALGORITHM);
+		for (int i = 0; i < count; ++i) {
+			encoder.write(Symbol.newByte((byte) i));
+		}
+		encoder.close();
+
+		Decoder decoder = makeDecoder(output.toByteArray());
+		int i = 0;
+		Symbol symbol;
+		while ((symbol = decoder.read()) != null) {
+			byte[] bytes = ((Symbol.Literals) symbol).getBytes();
+			assertTrue(bytes.length <= BinaryCodec.MAX_LITERALS);
+			for (byte b : bytes) {
+				assertEquals((byte) i++, b);
+			}
+		}
+		assertEquals(count, i);
+	}
+
+	public void testFailsOnWrongMagic() throws Exception {
+		try {
+			makeDecoder("<?xml version=\"1.0\"?>".getBytes());
+			fail("Expected an exception for the wrong magic number");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public void testFailsOnTruncatedData() throws Exception {
+		Decoder decoder = makeDecoder(Arrays.copyOf(COMPRESSED_DATA,
+				COMPRESSED_DATA.length - 1));
+		for (Symbol symbol : DECODED_SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		try {
+			decoder.read();
+			fail("Expected an exception for the truncated data");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public void testFailsOnUnknownTag() throws Exception {
+		Decoder decoder = makeDecoder(concat(HEADER, new byte[] { 7, 0 }));
+		try {
+			decoder.read();
+			fail("Expected an exception for the unknown tag");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private Decoder makeDecoder(byte[] data) throws IOException {
+		return codec.getDecoder(new ByteArrayInputStream(data));
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] result = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+}
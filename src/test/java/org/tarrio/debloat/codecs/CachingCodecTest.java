@@ -0,0 +1,206 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.Codec.BatchDecoder;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.PushDecoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link CachingCodec}.
+ * 
+ * @author Jacobo Tarrio
+ */
+public class CachingCodecTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+
+	private static final Symbol[] SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 'a'), Symbol.newBackRef(4, 3),
+			Symbol.newDictionaryRef(567), Symbol.newReset(),
+			Symbol.newCheckpoint(1000) };
+
+	/**
+	 * The number of bytes a symbol without literals counts as in the cache.
+	 */
+	private static final int SYMBOL_BYTES = 8;
+
+	private CachingCodec codec;
+
+	@Override
+	protected void setUp() throws Exception {
+		codec = new CachingCodec(new XmlCodec(), 2 * SYMBOLS.length
+				* SYMBOL_BYTES);
+	}
+
+	public void testDecodesOnMiss() throws Exception {
+		assertDecodes(encode(SYMBOLS.length));
+		assertEquals(0, codec.getHitCount());
+		assertEquals(1, codec.getMissCount());
+		assertEquals(1, codec.getDocumentCount());
+		assertEquals(SYMBOLS.length * SYMBOL_BYTES, codec.getCachedBytes());
+	}
+
+	public void testReplaysOnHit() throws Exception {
+		byte[] data = encode(SYMBOLS.length);
+		assertDecodes(data);
+		assertDecodes(data);
+		assertDecodes(data);
+		assertEquals(2, codec.getHitCount());
+		assertEquals(1, codec.getMissCount());
+		assertEquals(1, codec.getDocumentCount());
+	}
+
+	public void testReplaysConcurrently() throws Exception {
+		byte[] data = encode(SYMBOLS.length);
+		assertDecodes(data);
+		Decoder first = codec.getDecoder(new ByteArrayInputStream(data));
+		Decoder second = codec.getDecoder(new ByteArrayInputStream(data));
+		for (Symbol symbol : SYMBOLS) {
+			assertEquals(symbol, first.read());
+			assertEquals(symbol, second.read());
+		}
+		assertNull(first.read());
+		assertNull(second.read());
+	}
+
+	public void testReplaysInBatches() throws Exception {
+		byte[] data = encode(SYMBOLS.length);
+		assertDecodes(data);
+		BatchDecoder decoder = (BatchDecoder) codec
+				.getDecoder(new ByteArrayInputStream(data));
+		assertEquals(SYMBOLS[0], decoder.read());
+		SymbolBuffer symbols = new SymbolBuffer();
+		assertEquals(2, decoder.read(symbols, 2));
+		assertEquals(SYMBOLS.length - 3,
+				decoder.read(symbols, Integer.MAX_VALUE));
+		assertEquals(SYMBOLS.length - 1, symbols.size());
+		for (int i = 1; i < SYMBOLS.length; ++i) {
+			assertEquals(SYMBOLS[i], symbols.getSymbol(i - 1));
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testPushesReplayedSymbols() throws Exception {
+		byte[] data = encode(SYMBOLS.length);
+		assertDecodes(data);
+		PushDecoder decoder = (PushDecoder) codec
+				.getDecoder(new ByteArrayInputStream(data));
+		assertEquals(SYMBOLS[0], decoder.read());
+		SymbolBuffer symbols = new SymbolBuffer();
+		decoder.decode(symbols);
+		assertEquals(SYMBOLS.length - 1, symbols.size());
+		for (int i = 1; i < SYMBOLS.length; ++i) {
+			assertEquals(SYMBOLS[i], symbols.getSymbol(i - 1));
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		byte[] first = encode(SYMBOLS.length);
+		byte[] second = encode(SYMBOLS.length - 1);
+		byte[] third = encode(SYMBOLS.length - 2);
+		codec.getDecoder(new ByteArrayInputStream(first));
+		codec.getDecoder(new ByteArrayInputStream(second));
+		codec.getDecoder(new ByteArrayInputStream(first));
+		codec.getDecoder(new ByteArrayInputStream(third));
+		assertEquals(1, codec.getEvictionCount());
+		assertEquals(2, codec.getDocumentCount());
+		assertEquals((2 * SYMBOLS.length - 2) * SYMBOL_BYTES,
+				codec.getCachedBytes());
+
+		codec.getDecoder(new ByteArrayInputStream(first));
+		assertEquals(2, codec.getHitCount());
+		codec.getDecoder(new ByteArrayInputStream(second));
+		assertEquals(4, codec.getMissCount());
+	}
+
+	public void testDoesNotCacheLargeDocuments() throws Exception {
+		codec = new CachingCodec(new XmlCodec(), (SYMBOLS.length - 1)
+				* SYMBOL_BYTES);
+		byte[] data = encode(SYMBOLS.length);
+		assertDecodes(data);
+		assertDecodes(data);
+		assertEquals(0, codec.getHitCount());
+		assertEquals(2, codec.getMissCount());
+		assertEquals(0, codec.getDocumentCount());
+	}
+
+	public void testCountsLiteralBytes() throws Exception {
+		codec = new CachingCodec(new XmlCodec(XmlCodec.Dialect.DENSE), 2000);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = codec.getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newLiterals(new byte[1500], 0, 1500));
+		encoder.close();
+		byte[] small = output.toByteArray();
+		output.reset();
+		encoder = codec.getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newLiterals(new byte[2500], 0, 2500));
+		encoder.close();
+		byte[] large = output.toByteArray();
+
+		codec.getDecoder(new ByteArrayInputStream(small));
+		assertEquals(1, codec.getDocumentCount());
+		assertEquals(SYMBOL_BYTES + 1500, codec.getCachedBytes());
+		codec.getDecoder(new ByteArrayInputStream(large));
+		assertEquals(1, codec.getDocumentCount());
+		assertEquals(SYMBOL_BYTES + 1500, codec.getCachedBytes());
+		assertEquals(0, codec.getEvictionCount());
+	}
+
+	public void testClear() throws Exception {
+		byte[] data = encode(SYMBOLS.length);
+		assertDecodes(data);
+		codec.clear();
+		assertEquals(0, codec.getDocumentCount());
+		assertEquals(0, codec.getCachedBytes());
+		assertDecodes(data);
+		assertEquals(2, codec.getMissCount());
+	}
+
+	private byte[] encode(int count) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = codec.getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		for (int i = 0; i < count; ++i) {
+			encoder.write(SYMBOLS[i]);
+		}
+		encoder.close();
+		return output.toByteArray();
+	}
+
+	private void assertDecodes(byte[] data) throws IOException {
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(data));
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+		assertNull(decoder.read());
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link CodecFactory}.
+ * 
+ * @author Jacobo Tarrio
+ */
+public class CodecFactoryTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+
+	private static final Symbol[] SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 'a'), Symbol.newBackRef(4, 3),
+			Symbol.newDictionaryRef(567), Symbol.newReset() };
+
+	public void testReturnsBuiltInCodecs() throws Exception {
+		assertTrue(CodecFactory.getCodec() instanceof XmlCodec);
+		assertTrue(CodecFactory.getCodec(CodecFactory.DENSE_XML) instanceof XmlCodec);
+		assertTrue(CodecFactory.getCodec(CodecFactory.COLUMNAR_XML) instanceof ColumnarXmlCodec);
+		assertTrue(CodecFactory.getCodec(CodecFactory.BINARY) instanceof BinaryCodec);
+		assertNull(CodecFactory.getCodec("bogus-codec"));
+		assertTrue(CodecFactory.getCodecNames().contains(CodecFactory.BINARY));
+	}
+
+	public void testDetectsBuiltInCodecs() throws Exception {
+		assertDetects(CodecFactory.XML, CodecFactory.XML);
+		assertDetects(CodecFactory.DENSE_XML, CodecFactory.XML);
+		assertDetects(CodecFactory.COLUMNAR_XML, CodecFactory.COLUMNAR_XML);
+		assertDetects(CodecFactory.BINARY, CodecFactory.BINARY);
+		assertDetects(CodecFactory.RANS, CodecFactory.RANS);
+	}
+
+	public void testDetectsXmlWithComments() throws Exception {
+		byte[] data = ("<?xml version=\"1.0\"?>\n<!-- A comment -->\n"
+				+ "<compressedColumns algorithm=\"testAlgo\"/>").getBytes();
+		assertEquals(CodecFactory.COLUMNAR_XML,
+				CodecFactory.detectCodec(new ByteArrayInputStream(data)));
+	}
+
+	public void testDecodesWithDetectedCodec() throws Exception {
+		for (String name : new String[] { CodecFactory.XML,
+				CodecFactory.DENSE_XML, CodecFactory.COLUMNAR_XML,
+				CodecFactory.BINARY, CodecFactory.RANS }) {
+			Decoder decoder = CodecFactory.getDecoder(new UnmarkableStream(
+					encode(name)));
+			assertEquals(ALGORITHM, decoder.getAlgoritm());
+			for (Symbol symbol : SYMBOLS) {
+				assertEquals(symbol, decoder.read());
+			}
+			assertNull(decoder.read());
+		}
+	}
+
+	public void testFailsOnUnknownData() throws Exception {
+		try {
+			CodecFactory.getDecoder(new ByteArrayInputStream("<html/>"
+					.getBytes()));
+			fail("Expected an exception for the unknown data");
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertNull(CodecFactory.detectCodec(new ByteArrayInputStream(
+				new byte[0])));
+	}
+
+	public void testRegistersProviders() throws Exception {
+		final Codec codec = new BinaryCodec();
+		CodecFactory.register(new CodecProvider() {
+			@Override
+			public String getName() {
+				return "test-codec";
+			}
+
+			@Override
+			public Codec getCodec() {
+				return codec;
+			}
+
+			@Override
+			public boolean matches(byte[] header, int length) {
+				return length > 0 && header[0] == 'T';
+			}
+		});
+		assertSame(codec, CodecFactory.getCodec("test-codec"));
+		assertTrue(CodecFactory.getCodecNames().contains("test-codec"));
+		assertEquals("test-codec", CodecFactory
+				.detectCodec(new ByteArrayInputStream("Test".getBytes())));
+	}
+
+	private void assertDetects(String encodingCodec, String detectedCodec)
+			throws IOException {
+		InputStream input = new BufferedInputStream(new ByteArrayInputStream(
+				encode(encodingCodec)));
+		assertEquals(detectedCodec, CodecFactory.detectCodec(input));
+		assertEquals(detectedCodec, CodecFactory.detectCodec(input));
+	}
+
+	private byte[] encode(String codec) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = CodecFactory.getCodec(codec).getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+		return output.toByteArray();
+	}
+
+	/**
+	 * A stream that does not support mark() and reset().
+	 */
+	private static class UnmarkableStream extends FilterInputStream {
+		public UnmarkableStream(byte[] data) {
+			super(new ByteArrayInputStream(data));
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
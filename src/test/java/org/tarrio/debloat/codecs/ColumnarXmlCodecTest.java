@@ -0,0 +1,207 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ColumnarXmlCodec}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class ColumnarXmlCodecTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+
+	private static final Symbol[] SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 'a'), Symbol.newByte((byte) 'b'),
+			Symbol.newByte((byte) 'c'), Symbol.newByte((byte) 'd'),
+			Symbol.newBackRef(4, 3), Symbol.newDictionaryRef(567),
+			Symbol.newByte((byte) 'e'), Symbol.newBackRef(10, 258),
+			Symbol.newReset() };
+
+	private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<compressedColumns algorithm=\"testAlgo\">\n";
+	private static final String XML_FOOTER = "</compressedColumns>\n";
+
+	private static final String COMPRESSED_XML = XML_HEADER + "<block>\n"
+			+ "<kinds>bbbbrdbrz</kinds>\n" + "<literals>YWJjZGU=</literals>\n"
+			+ "<distances>4 10</distances>\n"
+			+ "<lengths>3 258</lengths>\n" + "<entries>567</entries>\n"
+			+ "</block>\n" + XML_FOOTER;
+
+	private ColumnarXmlCodec codec;
+	private ByteArrayOutputStream output;
+	private Encoder encoder;
+
+	@Override
+	protected void setUp() throws Exception {
+		codec = new ColumnarXmlCodec();
+		output = new ByteArrayOutputStream();
+		encoder = codec.getEncoder(output);
+	}
+
+	public void testEncode() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		assertEquals(COMPRESSED_XML, output.toString());
+	}
+
+	public void testEncodeOmitsEmptyColumns() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newDictionaryRef(3));
+		encoder.write(Symbol.newReset());
+		encoder.close();
+
+		assertEquals(XML_HEADER + "<block>\n" + "<kinds>dz</kinds>\n"
+				+ "<entries>3</entries>\n" + "</block>\n" + XML_FOOTER,
+				output.toString());
+	}
+
+	public void testEncodeEmpty() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.close();
+
+		assertEquals(XML_HEADER + XML_FOOTER, output.toString());
+	}
+
+	public void testDecode() throws Exception {
+		Decoder decoder = makeDecoder(COMPRESSED_XML);
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+		assertNull(decoder.read());
+	}
+
+	public void testRoundTripLiteralRuns() throws Exception {
+		byte[] bytes = new byte[ColumnarXmlCodec.BLOCK_SIZE + 100];
+		for (int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) (i * 7);
+		}
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newLiterals(bytes, 0, 3));
+		encoder.write(Symbol.newBackRef(4, 3));
+		encoder.write(Symbol.newByte((byte) 'a'));
+		encoder.write(Symbol.newLiterals(bytes, 0, bytes.length));
+		encoder.close();
+
+		Decoder decoder = makeDecoder(output.toString());
+		assertEquals(Symbol.newLiterals(bytes, 0, 3), decoder.read());
+		assertEquals(Symbol.newBackRef(4, 3), decoder.read());
+		assertEquals(Symbol.newByte((byte) 'a'), decoder.read());
+		int split = ColumnarXmlCodec.BLOCK_SIZE - 4;
+		assertEquals(Symbol.newLiterals(bytes, 0, split), decoder.read());
+		assertEquals(Symbol.newLiterals(bytes, split, bytes.length - split),
+				decoder.read());
+		assertNull(decoder.read());
+	}
+
+	public void testRoundTripRepeatRefs() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newLiterals("abc".getBytes(), 0, 3));
+		encoder.write(Symbol.newBackRef(3, 4));
+		encoder.write(Symbol.newRepeatRef(0, 5));
+		encoder.write(Symbol.newRepeatRef(2, 6));
+		encoder.close();
+
+		assertEquals(XML_HEADER + "<block>\n" + "<kinds>lrpp</kinds>\n"
+				+ "<literals>YWJj</literals>\n" + "<distances>3</distances>\n"
+				+ "<slots>0 2</slots>\n" + "<lengths>3 4 5 6</lengths>\n"
+				+ "</block>\n" + XML_FOOTER, output.toString());
+		Decoder decoder = makeDecoder(output.toString());
+		assertEquals(Symbol.newLiterals("abc".getBytes(), 0, 3),
+				decoder.read());
+		assertEquals(Symbol.newBackRef(3, 4), decoder.read());
+		assertEquals(Symbol.newRepeatRef(0, 5), decoder.read());
+		assertEquals(Symbol.newRepeatRef(2, 6), decoder.read());
+		assertNull(decoder.read());
+	}
+
+	public void testRoundTripManyBlocks() throws Exception {
+		int count = ColumnarXmlCodec.BLOCK_SIZE * 3 + 17;
+		encoder.setAlgorithm(ALGORITHM);
+		for (int i = 0; i < count; ++i) {
+			encoder.write(makeSymbol(i));
+		}
+		encoder.close();
+
+		Decoder decoder = makeDecoder(output.toString());
+		for (int i = 0; i < count; ++i) {
+			assertEquals(makeSymbol(i), decoder.read());
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testFailsOnMismatchedColumns() throws Exception {
+		Decoder decoder = makeDecoder(XML_HEADER + "<block>\n"
+				+ "<kinds>bbr</kinds>\n" + "<literals>YQ==</literals>\n"
+				+ "<distances>4</distances>\n" + "<lengths>3</lengths>\n"
+				+ "</block>\n" + XML_FOOTER);
+		try {
+			decoder.read();
+			fail("Expected an exception for the mismatched columns");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public void testFailsOnInvalidNumbers() throws Exception {
+		Decoder decoder = makeDecoder(XML_HEADER + "<block>\n"
+				+ "<kinds>d</kinds>\n" + "<entries>5x</entries>\n"
+				+ "</block>\n" + XML_FOOTER);
+		try {
+			decoder.read();
+			fail("Expected an exception for the invalid number");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private Symbol makeSymbol(int i) {
+		switch (i % 7) {
+		case 0:
+		case 1:
+		case 2:
+			return Symbol.newByte((byte) i);
+		case 3:
+		case 4:
+			return Symbol.newBackRef(i % 32768, i % 259);
+		case 5:
+			return Symbol.newDictionaryRef(i);
+		default:
+			return Symbol.newReset();
+		}
+	}
+
+	private Decoder makeDecoder(String xml) throws IOException {
+		return codec.getDecoder(new ByteArrayInputStream(xml.getBytes()));
+	}
+}
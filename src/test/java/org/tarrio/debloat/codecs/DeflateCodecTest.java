@@ -0,0 +1,266 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.tarrio.debloat.CompressionAlgorithm;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+import org.tarrio.debloat.registry.CompressionAlgorithmRegistry;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link DeflateCodec}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class DeflateCodecTest extends TestCase {
+
+	private static final String ALGORITHM = "lz77";
+
+	private byte[] textData;
+	private byte[] randomData;
+
+	@Override
+	protected void setUp() throws Exception {
+		StringBuilder text = new StringBuilder();
+		Random random = new Random(1337L);
+		String[] words = new String[] { "en ", "un ", "lugar ", "de ", "la ",
+				"Mancha, ", "cuyo ", "nombre ", "no ", "quiero ",
+				"acordarme.\n" };
+		while (text.length() < 100000) {
+			text.append(words[random.nextInt(words.length)]);
+		}
+		textData = text.toString().getBytes();
+		randomData = new byte[50000];
+		random.nextBytes(randomData);
+	}
+
+	public void testGzipOutputCanBeInflated() throws Exception {
+		byte[] gzip = compress(DeflateCodec.Container.GZIP, textData);
+		assertTrue(Arrays.equals(textData, readAll(new GZIPInputStream(
+				new ByteArrayInputStream(gzip)))));
+	}
+
+	public void testZlibOutputCanBeInflated() throws Exception {
+		byte[] zlib = compress(DeflateCodec.Container.ZLIB, randomData);
+		assertTrue(Arrays.equals(randomData, readAll(new InflaterInputStream(
+				new ByteArrayInputStream(zlib)))));
+	}
+
+	public void testRawOutputCanBeInflated() throws Exception {
+		byte[] raw = compress(DeflateCodec.Container.RAW, textData);
+		assertTrue(Arrays.equals(textData, readAll(new InflaterInputStream(
+				new ByteArrayInputStream(raw), new Inflater(true)))));
+	}
+
+	public void testEmptyOutputCanBeInflated() throws Exception {
+		byte[] gzip = compress(DeflateCodec.Container.GZIP, new byte[0]);
+		assertEquals(0, readAll(new GZIPInputStream(new ByteArrayInputStream(
+				gzip))).length);
+	}
+
+	public void testRoundTrip() throws Exception {
+		for (DeflateCodec.Container container : DeflateCodec.Container
+				.values()) {
+			assertTrue(Arrays.equals(textData,
+					decompress(container, compress(container, textData))));
+			assertTrue(Arrays.equals(randomData,
+					decompress(container, compress(container, randomData))));
+		}
+	}
+
+	public void testDecodesGzipOutputStream() throws Exception {
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		GZIPOutputStream output = new GZIPOutputStream(gzip);
+		output.write(textData);
+		output.close();
+		assertTrue(Arrays.equals(textData, decompress(
+				DeflateCodec.Container.GZIP, gzip.toByteArray())));
+	}
+
+	public void testDecodesDeflaterOutput() throws Exception {
+		for (int level : new int[] { Deflater.NO_COMPRESSION,
+				Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION }) {
+			ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+			DeflaterOutputStream output = new DeflaterOutputStream(zlib,
+					new Deflater(level));
+			output.write(textData);
+			output.close();
+			assertTrue(Arrays.equals(textData, decompress(
+					DeflateCodec.Container.ZLIB, zlib.toByteArray())));
+		}
+	}
+
+	public void testStoresAlgorithmNameInGzip() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = new DeflateCodec().getEncoder(output);
+		encoder.setAlgorithm("otherAlgo");
+		encoder.close();
+		Decoder decoder = new DeflateCodec().getDecoder(new ByteArrayInputStream(
+				output.toByteArray()));
+		assertEquals("otherAlgo", decoder.getAlgoritm());
+		assertNull(decoder.read());
+	}
+
+	public void testAdjustsBackReferences() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = new DeflateCodec(DeflateCodec.Container.ZLIB)
+				.getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newByte((byte) 'a'));
+		encoder.write(Symbol.newByte((byte) 'b'));
+		encoder.write(Symbol.newBackRef(2, 2));
+		encoder.write(Symbol.newBackRef(1, 1000));
+		encoder.write(Symbol.newCheckpoint(1004));
+		encoder.write(Symbol.newBackRef(3, 259));
+		encoder.close();
+
+		byte[] expected = new byte[4 + 1000 + 259];
+		System.arraycopy("abab".getBytes(), 0, expected, 0, 4);
+		Arrays.fill(expected, 4, 1004, (byte) 'b');
+		for (int i = 1004; i < expected.length; ++i) {
+			expected[i] = expected[i - 3];
+		}
+		assertTrue(Arrays.equals(expected, readAll(new InflaterInputStream(
+				new ByteArrayInputStream(output.toByteArray())))));
+	}
+
+	public void testResolvesRepeatReferences() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = new DeflateCodec(DeflateCodec.Container.ZLIB)
+				.getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newLiterals("abcdefgh".getBytes(), 0, 8));
+		encoder.write(Symbol.newBackRef(8, 3));
+		encoder.write(Symbol.newByte((byte) 'z'));
+		encoder.write(Symbol.newBackRef(1, 3));
+		encoder.write(Symbol.newRepeatRef(1, 4));
+		encoder.write(Symbol.newRepeatRef(1, 3));
+		encoder.close();
+
+		assertEquals("abcdefghabczzzzhabcccc", new String(readAll(
+				new InflaterInputStream(new ByteArrayInputStream(output
+						.toByteArray())))));
+	}
+
+	public void testRejectsUnsupportedSymbols() throws Exception {
+		Encoder encoder = new DeflateCodec()
+				.getEncoder(new ByteArrayOutputStream());
+		encoder.setAlgorithm(ALGORITHM);
+		try {
+			encoder.write(Symbol.newDictionaryRef(3));
+			fail("Expected an exception for the dictionary reference");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		try {
+			encoder.write(Symbol.newBackRef(1, 3));
+			fail("Expected an exception for the back-reference past the start");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		try {
+			encoder.write(Symbol.newRepeatRef(0, 3));
+			fail("Expected an exception for the repeat reference with no history");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+	}
+
+	public void testRejectsUnsupportedSymbolsInBatches() throws Exception {
+		Encoder encoder = new DeflateCodec()
+				.getEncoder(new ByteArrayOutputStream());
+		encoder.setAlgorithm(ALGORITHM);
+		SymbolBuffer symbols = new SymbolBuffer();
+		symbols.addByte((byte) 'a');
+		symbols.addReset();
+		try {
+			symbols.writeTo(encoder);
+			fail("Expected an exception for the reset");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+	}
+
+	public void testFailsOnCorruptData() throws Exception {
+		byte[] gzip = compress(DeflateCodec.Container.GZIP, textData);
+		gzip[gzip.length - 5] ^= 1;
+		try {
+			decompress(DeflateCodec.Container.GZIP, gzip);
+			fail("Expected an exception for the checksum mismatch");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public void testFailsOnTruncatedData() throws Exception {
+		byte[] gzip = compress(DeflateCodec.Container.GZIP, textData);
+		try {
+			decompress(DeflateCodec.Container.GZIP,
+					Arrays.copyOf(gzip, gzip.length / 2));
+			fail("Expected an exception for the truncated data");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private byte[] compress(DeflateCodec.Container container, byte[] data)
+			throws IOException {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get(ALGORITHM);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		compressor.compress(new ByteArrayInputStream(data), new DeflateCodec(
+				container).getEncoder(output));
+		return output.toByteArray();
+	}
+
+	private byte[] decompress(DeflateCodec.Container container, byte[] data)
+			throws IOException {
+		CompressionAlgorithm compressor = CompressionAlgorithmRegistry
+				.getInstance().get(ALGORITHM);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		compressor.decompress(new DeflateCodec(container)
+				.getDecoder(new ByteArrayInputStream(data)), output);
+		return output.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			output.write(buffer, 0, read);
+		}
+		return output.toByteArray();
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.CompressionAlgorithm;
+import org.tarrio.debloat.registry.CompressionAlgorithmRegistry;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link DeflateTranscoder}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class DeflateTranscoderTest extends TestCase {
+
+	private byte[] data;
+
+	@Override
+	protected void setUp() throws Exception {
+		StringBuilder text = new StringBuilder();
+		Random random = new Random(1337L);
+		while (text.length() < 100000) {
+			text.append("word").append(random.nextInt(1000)).append(' ');
+		}
+		data = text.toString().getBytes();
+	}
+
+	public void testTranscodesGzip() throws Exception {
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		OutputStream output = new GZIPOutputStream(gzip);
+		output.write(data);
+		output.close();
+		assertTranscodes(gzip.toByteArray(), data, new XmlCodec());
+	}
+
+	public void testTranscodesMultipleGzipMembers() throws Exception {
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		for (int i = 0; i < 3; ++i) {
+			OutputStream output = new GZIPOutputStream(gzip);
+			output.write(data);
+			output.close();
+		}
+		byte[] expected = new byte[data.length * 3];
+		for (int i = 0; i < 3; ++i) {
+			System.arraycopy(data, 0, expected, i * data.length, data.length);
+		}
+		assertTranscodes(gzip.toByteArray(), expected, new BinaryCodec());
+	}
+
+	public void testTranscodesZlib() throws Exception {
+		ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+		OutputStream output = new DeflaterOutputStream(zlib);
+		output.write(data);
+		output.close();
+		assertTranscodes(zlib.toByteArray(), data, new RansCodec());
+	}
+
+	public void testTranscodesRawDeflate() throws Exception {
+		ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		OutputStream output = new DeflaterOutputStream(raw, new Deflater(
+				Deflater.BEST_COMPRESSION, true));
+		output.write(data);
+		output.close();
+		assertTranscodes(raw.toByteArray(), data, new XmlCodec());
+	}
+
+	public void testFailsOnInvalidData() throws Exception {
+		try {
+			DeflateTranscoder.transcode(new ByteArrayInputStream(
+					"not compressed data".getBytes()), new XmlCodec()
+					.getEncoder(new ByteArrayOutputStream()));
+			fail("Expected an exception for the invalid data");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private void assertTranscodes(byte[] compressed, byte[] expected,
+			Codec codec) throws IOException {
+		ByteArrayOutputStream transcoded = new ByteArrayOutputStream();
+		long count = DeflateTranscoder.transcode(new ByteArrayInputStream(
+				compressed), codec.getEncoder(transcoded));
+		assertTrue(count > 0 && count < expected.length);
+
+		CompressionAlgorithm lz77 = CompressionAlgorithmRegistry.getInstance()
+				.get("lz77");
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		lz77.decompress(codec.getDecoder(new ByteArrayInputStream(transcoded
+				.toByteArray())), output);
+		assertTrue(Arrays.equals(expected, output.toByteArray()));
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ParallelXmlDecoder}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class ParallelXmlDecoderTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+	private static final int SYMBOL_COUNT = 20000;
+	private static final int CHUNK_SIZE = 1000;
+
+	private ExecutorService executor;
+
+	@Override
+	protected void setUp() throws Exception {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	public void testDecodesVerboseDocument() throws Exception {
+		byte[] xml = encode(new XmlCodec());
+		assertDecodesAll(new ParallelXmlDecoder(new ByteArrayInputStream(xml),
+				executor, CHUNK_SIZE));
+	}
+
+	public void testDecodesDenseDocument() throws Exception {
+		byte[] xml = encode(new XmlCodec(XmlCodec.Dialect.DENSE));
+		assertDecodesAll(new ParallelXmlDecoder(new ByteArrayInputStream(xml),
+				executor, CHUNK_SIZE));
+	}
+
+	public void testDecodesWithDefaultChunkSize() throws Exception {
+		byte[] xml = encode(new XmlCodec());
+		assertDecodesAll(new ParallelXmlDecoder(new ByteArrayInputStream(xml),
+				2));
+	}
+
+	public void testDecodesFile() throws Exception {
+		File file = File.createTempFile("parallel", ".xml");
+		try {
+			FileOutputStream output = new FileOutputStream(file);
+			output.write(encode(new XmlCodec()));
+			output.close();
+			assertDecodesAll(new ParallelXmlDecoder(file, executor));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testReadsInBatches() throws Exception {
+		byte[] xml = encode(new XmlCodec());
+		assertReadsInBatches(new ParallelXmlDecoder(new ByteArrayInputStream(
+				xml), executor, CHUNK_SIZE));
+	}
+
+	public void testReadsInBatchesAfterFallingBack() throws Exception {
+		assertReadsInBatches(new ParallelXmlDecoder(new ByteArrayInputStream(
+				encodeWithComment()), executor, CHUNK_SIZE));
+	}
+
+	public void testPushesSymbols() throws Exception {
+		byte[] xml = encode(new XmlCodec());
+		assertPushesAll(new ParallelXmlDecoder(new ByteArrayInputStream(xml),
+				executor, CHUNK_SIZE));
+	}
+
+	public void testPushesSymbolsAfterFallingBack() throws Exception {
+		assertPushesAll(new ParallelXmlDecoder(new ByteArrayInputStream(
+				encodeWithComment()), executor, CHUNK_SIZE));
+	}
+
+	public void testFallsBackOnComments() throws Exception {
+		assertDecodesAll(new ParallelXmlDecoder(new ByteArrayInputStream(
+				encodeWithComment()), executor, CHUNK_SIZE));
+	}
+
+	public void testFallsBackOnCommentsInFirstChunk() throws Exception {
+		String xml = new String(encode(new XmlCodec()), "UTF-8");
+		int first = xml.indexOf("<byte");
+		xml = xml.substring(0, first) + "<!-- <byte value=\"1\"/> -->"
+				+ xml.substring(first);
+		assertDecodesAll(new ParallelXmlDecoder(new ByteArrayInputStream(xml
+				.getBytes("UTF-8")), executor, CHUNK_SIZE));
+	}
+
+	public void testFallsBackOnCommentsAfterRootElement() throws Exception {
+		String xml = new String(encode(new XmlCodec()), "UTF-8")
+				+ "<!-- <byte value=\"1\"/> -->\n";
+		assertDecodesAll(new ParallelXmlDecoder(new ByteArrayInputStream(xml
+				.getBytes("UTF-8")), executor, CHUNK_SIZE));
+	}
+
+	public void testFallsBackOnMarkupBeforeRootElement() throws Exception {
+		String xml = new String(encode(new XmlCodec()), "UTF-8");
+		int root = xml.indexOf("<" + XmlCodec.ROOT_TAG + " ");
+		String rootTag = xml.substring(root, xml.indexOf('>', root) + 1);
+		xml = xml.substring(0, root) + "<!DOCTYPE " + XmlCodec.ROOT_TAG
+				+ " [<!ENTITY one \"1\">]>\n<!-- " + rootTag
+				+ "<byte value=\"2\"/> -->\n" + xml.substring(root);
+		int middle = xml.indexOf("<byte value=\"1\"", xml.length() / 2);
+		assertTrue(middle != -1);
+		xml = xml.substring(0, middle) + "<byte value=\"&one;\""
+				+ xml.substring(middle + "<byte value=\"1\"".length());
+		assertDecodesAll(new ParallelXmlDecoder(new ByteArrayInputStream(xml
+				.getBytes("UTF-8")), executor, CHUNK_SIZE));
+	}
+
+	public void testFailsOnInvalidChunk() throws Exception {
+		String xml = new String(encode(new XmlCodec()), "UTF-8");
+		int middle = xml.indexOf("<reference", xml.length() / 2);
+		xml = xml.substring(0, middle) + "<reference distance=\"x\"/>"
+				+ xml.substring(middle);
+		Decoder decoder = new ParallelXmlDecoder(new ByteArrayInputStream(xml
+				.getBytes("UTF-8")), executor, CHUNK_SIZE);
+		try {
+			while (decoder.read() != null) {
+			}
+			fail("Expected an exception for the invalid element");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private void assertDecodesAll(Decoder decoder) throws IOException {
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (int i = 0; i < SYMBOL_COUNT; ++i) {
+			assertEquals(makeSymbol(i), decoder.read());
+		}
+		assertNull(decoder.read());
+		assertNull(decoder.read());
+	}
+
+	private byte[] encode(XmlCodec codec) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = codec.getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		for (int i = 0; i < SYMBOL_COUNT; ++i) {
+			encoder.write(makeSymbol(i));
+		}
+		encoder.close();
+		return output.toByteArray();
+	}
+
+	private byte[] encodeWithComment() throws IOException {
+		String xml = new String(encode(new XmlCodec()), "UTF-8");
+		int middle = xml.indexOf("<byte", xml.length() / 2);
+		xml = xml.substring(0, middle) + "<!-- <byte value=\"1\"/> -->"
+				+ xml.substring(middle);
+		return xml.getBytes("UTF-8");
+	}
+
+	private void assertReadsInBatches(ParallelXmlDecoder decoder)
+			throws IOException {
+		assertEquals(makeSymbol(0), decoder.read());
+		SymbolBuffer symbols = new SymbolBuffer();
+		int i = 1;
+		int count;
+		do {
+			symbols.clear();
+			count = decoder.read(symbols, 333);
+			assertEquals(count, symbols.size());
+			for (int j = 0; j < count; ++j) {
+				assertEquals(makeSymbol(i++), symbols.getSymbol(j));
+			}
+		} while (count == 333);
+		assertEquals(SYMBOL_COUNT, i);
+		assertEquals(0, decoder.read(symbols, Integer.MAX_VALUE));
+		assertNull(decoder.read());
+	}
+
+	private void assertPushesAll(ParallelXmlDecoder decoder)
+			throws IOException {
+		assertEquals(makeSymbol(0), decoder.read());
+		SymbolBuffer symbols = new SymbolBuffer();
+		decoder.decode(symbols);
+		assertEquals(SYMBOL_COUNT - 1, symbols.size());
+		for (int i = 1; i < SYMBOL_COUNT; ++i) {
+			assertEquals(makeSymbol(i), symbols.getSymbol(i - 1));
+		}
+		assertNull(decoder.read());
+	}
+
+	private Symbol makeSymbol(int i) {
+		switch (i % 5) {
+		case 0:
+			return Symbol.newLiterals(new byte[] { (byte) i, (byte) (i >> 8) },
+					0, 2);
+		case 1:
+			return Symbol.newBackRef(i % 32768, i % 259);
+		case 2:
+			return Symbol.newByte((byte) i);
+		case 3:
+			return Symbol.newDictionaryRef(i);
+		default:
+			return Symbol.newReset();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link RansCodec}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class RansCodecTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+
+	private static final Symbol[] SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 'a'), Symbol.newByte((byte) 'b'),
+			Symbol.newByte((byte) 'c'), Symbol.newByte((byte) 'd'),
+			Symbol.newBackRef(4, 3), Symbol.newDictionaryRef(567),
+			Symbol.newByte((byte) 'e'), Symbol.newBackRef(10, 258),
+			Symbol.newReset(), Symbol.newCheckpoint(5000000000L) };
+
+	private RansCodec codec;
+	private ByteArrayOutputStream output;
+	private Encoder encoder;
+
+	@Override
+	protected void setUp() throws Exception {
+		codec = new RansCodec();
+		output = new ByteArrayOutputStream();
+		encoder = codec.getEncoder(output);
+	}
+
+	public void testBuckets() throws Exception {
+		long[] values = new long[] { 0, 1, 15, 16, 23, 24, 31, 32, 1000,
+				65535, 65536, Integer.MAX_VALUE, 0xffffffffL };
+		for (long value : values) {
+			int bucket = RansCodec.bucketOf(value);
+			assertTrue(bucket < RansCodec.BUCKETS);
+			long base = RansCodec.baseOf(bucket);
+			assertTrue(base <= value);
+			assertTrue(value - base < 1L << RansCodec.extraBitsOf(bucket));
+		}
+		assertEquals(RansCodec.BUCKETS - 1, RansCodec.bucketOf(0xffffffffL));
+	}
+
+	public void testRoundTrip() throws Exception {
+		assertRoundTrips(SYMBOLS);
+	}
+
+	public void testRoundTripLiteralRuns() throws Exception {
+		byte[] bytes = new byte[RansCodec.BLOCK_SIZE + 1000];
+		new Random(1337L).nextBytes(bytes);
+		assertRoundTrips(new Symbol[] { Symbol.newLiterals(bytes, 0, 5),
+				Symbol.newBackRef(4, 3), Symbol.newLiterals(bytes, 5, 1),
+				Symbol.newLiterals(bytes, 6, RansCodec.BLOCK_SIZE - 6),
+				Symbol.newLiterals(bytes, RansCodec.BLOCK_SIZE, 1000) });
+	}
+
+	public void testRoundTripRepeatRefs() throws Exception {
+		assertRoundTrips(new Symbol[] { Symbol.newByte((byte) 'a'),
+				Symbol.newBackRef(1, 3), Symbol.newRepeatRef(0, 4),
+				Symbol.newRepeatRef(3, SymbolBuffer.MAX_LENGTH),
+				Symbol.newDictionaryRef(567), Symbol.newCheckpoint(8) });
+	}
+
+	public void testRoundTripEmpty() throws Exception {
+		assertRoundTrips(new Symbol[0]);
+	}
+
+	public void testRoundTripSingleValue() throws Exception {
+		Symbol[] symbols = new Symbol[1000];
+		Arrays.fill(symbols, Symbol.newByte((byte) 'x'));
+		assertRoundTrips(symbols);
+	}
+
+	public void testRoundTripExtremeValues() throws Exception {
+		assertRoundTrips(new Symbol[] {
+				Symbol.newBackRef(Integer.MAX_VALUE, SymbolBuffer.MAX_LENGTH),
+				Symbol.newBackRef(-1, 0), Symbol.newDictionaryRef(-1),
+				Symbol.newDictionaryRef(Integer.MIN_VALUE),
+				Symbol.newCheckpoint(SymbolBuffer.MAX_OFFSET),
+				Symbol.newCheckpoint(0) });
+	}
+
+	public void testRoundTripManyBlocks() throws Exception {
+		Random random = new Random(1337L);
+		Symbol[] symbols = new Symbol[RansCodec.BLOCK_SIZE * 2 + 17];
+		for (int i = 0; i < symbols.length; ++i) {
+			switch (random.nextInt(8)) {
+			case 0:
+				symbols[i] = Symbol.newBackRef(1 + random.nextInt(32768),
+						3 + random.nextInt(256));
+				break;
+			case 1:
+				symbols[i] = Symbol.newDictionaryRef(random.nextInt(4096));
+				break;
+			default:
+				symbols[i] = Symbol.newByte((byte) (' ' + random.nextInt(64)));
+				break;
+			}
+		}
+		assertRoundTrips(symbols);
+	}
+
+	public void testEncodesBatches() throws Exception {
+		SymbolBuffer symbols = new SymbolBuffer();
+		for (int i = 0; i < RansCodec.BLOCK_SIZE + 100; ++i) {
+			symbols.add(SYMBOLS[i % SYMBOLS.length]);
+		}
+		encoder.setAlgorithm(ALGORITHM);
+		for (int i = 0; i < symbols.size(); ++i) {
+			encoder.write(symbols.getSymbol(i));
+		}
+		encoder.close();
+		ByteArrayOutputStream batchOutput = new ByteArrayOutputStream();
+		Encoder batchEncoder = codec.getEncoder(batchOutput);
+		batchEncoder.setAlgorithm(ALGORITHM);
+		symbols.writeTo(batchEncoder);
+		batchEncoder.close();
+
+		assertTrue(Arrays.equals(output.toByteArray(),
+				batchOutput.toByteArray()));
+	}
+
+	public void testCompressesSkewedData() throws Exception {
+		Random random = new Random(1337L);
+		encoder.setAlgorithm(ALGORITHM);
+		int count = 100000;
+		for (int i = 0; i < count; ++i) {
+			encoder.write(Symbol.newByte((byte) (random.nextInt(16) == 0 ? random
+					.nextInt(256) : 'a' + random.nextInt(4))));
+		}
+		encoder.close();
+		assertTrue("Compressed to " + output.size() + " bytes",
+				output.size() < count * 3 / 8);
+	}
+
+	public void testFailsOnWrongMagic() throws Exception {
+		try {
+			codec.getDecoder(new ByteArrayInputStream(new byte[] { 'D', 'B',
+					'L', 'B', 1, 0, 0 }));
+			fail("Expected an exception for the wrong magic number");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public void testFailsOnTruncatedData() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+		byte[] data = output.toByteArray();
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(Arrays
+				.copyOf(data, data.length - 3)));
+		try {
+			while (decoder.read() != null) {
+			}
+			fail("Expected an exception for the truncated data");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private void assertRoundTrips(Symbol[] symbols) throws IOException {
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : symbols) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(output
+				.toByteArray()));
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : symbols) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+		assertNull(decoder.read());
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.tarrio.debloat.CheckpointingAlgorithm;
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.registry.CompressionAlgorithmRegistry;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link SeekIndex}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class SeekIndexTest extends TestCase {
+
+	private static final int CHECKPOINT_INTERVAL = 1000;
+
+	private byte[] data;
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		Random random = new Random(1337L);
+		data = new byte[20000];
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = (byte) ('a' + random.nextInt(4));
+		}
+		file = File.createTempFile("seekindex", ".xml");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testBuildsIndex() throws Exception {
+		compress("lz77", new XmlCodec());
+		List<SeekIndex.Entry> entries = SeekIndex.build(file).getEntries();
+		assertEquals(data.length / CHECKPOINT_INTERVAL, entries.size());
+		assertEquals(0, entries.get(0).getUncompressedOffset());
+		assertEquals(0, entries.get(0).getSymbolIndex());
+		for (int i = 1; i < entries.size(); ++i) {
+			assertTrue(entries.get(i).getUncompressedOffset() >= i
+					* CHECKPOINT_INTERVAL);
+			assertTrue(entries.get(i).getSymbolIndex() > entries.get(i - 1)
+					.getSymbolIndex());
+			assertTrue(entries.get(i).getByteOffset() > entries.get(i - 1)
+					.getByteOffset());
+		}
+	}
+
+	public void testFindsEntries() throws Exception {
+		compress("lz77", new XmlCodec());
+		SeekIndex index = SeekIndex.build(file);
+		List<SeekIndex.Entry> entries = index.getEntries();
+		assertSame(entries.get(0), index.find(0));
+		assertSame(entries.get(0), index.find(entries.get(1)
+				.getUncompressedOffset() - 1));
+		assertSame(entries.get(1),
+				index.find(entries.get(1).getUncompressedOffset()));
+		assertSame(entries.get(entries.size() - 1),
+				index.find(Long.MAX_VALUE));
+	}
+
+	public void testDecompressesRangesWithLz77() throws Exception {
+		compress("lz77", new XmlCodec());
+		assertDecompressesRanges(SeekIndex.build(file), "lz77");
+	}
+
+	public void testDecompressesRangesWithLzw() throws Exception {
+		compress("lzw", new XmlCodec());
+		assertDecompressesRanges(SeekIndex.build(file), "lzw");
+	}
+
+	public void testDecompressesRangesInDenseDialect() throws Exception {
+		compress("lz77", new XmlCodec(XmlCodec.Dialect.DENSE));
+		SeekIndex index = SeekIndex.build(file);
+		assertEquals("lz77", index.getAlgorithm());
+		assertDecompressesRanges(index, "lz77");
+	}
+
+	public void testStopsDecodingAtEndOfRange() throws Exception {
+		compress("lz77", new XmlCodec());
+		SeekIndex index = SeekIndex.build(file);
+		RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+		try {
+			truncated.setLength(index.getEntries().get(1).getByteOffset());
+		} finally {
+			truncated.close();
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		index.decompressRange(file, CompressionAlgorithmRegistry.getInstance()
+				.get("lz77"), 0, 100, output);
+		assertTrue(Arrays.equals(Arrays.copyOfRange(data, 0, 100),
+				output.toByteArray()));
+	}
+
+	public void testWritesAndReadsIndex() throws Exception {
+		compress("lzw", new XmlCodec());
+		SeekIndex index = SeekIndex.build(file);
+		ByteArrayOutputStream stored = new ByteArrayOutputStream();
+		index.write(stored);
+		SeekIndex readIndex = SeekIndex.read(new ByteArrayInputStream(stored
+				.toByteArray()));
+		assertEquals(index.getEntries().size(), readIndex.getEntries().size());
+		for (int i = 0; i < index.getEntries().size(); ++i) {
+			assertEquals(index.getEntries().get(i).toString(), readIndex
+					.getEntries().get(i).toString());
+		}
+		assertEquals("lzw", readIndex.getAlgorithm());
+		assertDecompressesRanges(readIndex, "lzw");
+	}
+
+	public void testFailsOnInvalidIndex() throws Exception {
+		try {
+			SeekIndex.read(new ByteArrayInputStream(new byte[16]));
+			fail("Expected an exception for the invalid index");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private void compress(String algorithm, Codec codec) throws IOException {
+		CheckpointingAlgorithm compressor = (CheckpointingAlgorithm) CompressionAlgorithmRegistry
+				.getInstance().get(algorithm);
+		compressor = compressor.withCheckpointInterval(CHECKPOINT_INTERVAL);
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			compressor.compress(new ByteArrayInputStream(data),
+					codec.getEncoder(output));
+		} finally {
+			output.close();
+		}
+	}
+
+	private void assertDecompressesRanges(SeekIndex index, String algorithm)
+			throws IOException {
+		long[][] ranges = new long[][] { { 0, 100 }, { 999, 2 }, { 1000, 1 },
+				{ 5432, 3210 }, { 19990, 100 }, { 0, data.length } };
+		for (long[] range : ranges) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			index.decompressRange(file, CompressionAlgorithmRegistry
+					.getInstance().get(algorithm), range[0], range[1], output);
+			int start = (int) range[0];
+			int end = (int) Math.min(range[0] + range[1], data.length);
+			assertTrue("Range at " + start, Arrays.equals(
+					Arrays.copyOfRange(data, start, end), output.toByteArray()));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.Codec.Decoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link SymbolStreamReader}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class SymbolStreamReaderTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+
+	private static final Symbol[] SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 200), Symbol.newBackRef(4, 3),
+			Symbol.newDictionaryRef(567), Symbol.newReset() };
+
+	private XMLStreamReader reader;
+
+	@Override
+	protected void setUp() throws Exception {
+		reader = new SymbolStreamReader(new ArrayDecoder(SYMBOLS), null);
+	}
+
+	public void testEvents() throws Exception {
+		assertEquals(XMLStreamConstants.START_DOCUMENT, reader.getEventType());
+
+		assertEquals(XMLStreamConstants.START_ELEMENT, reader.next());
+		assertEquals("compressedData", reader.getLocalName());
+		assertEquals(1, reader.getAttributeCount());
+		assertEquals(ALGORITHM, reader.getAttributeValue(null, "algorithm"));
+
+		assertStartElement("byte");
+		assertEquals("200", reader.getAttributeValue(null, "value"));
+		assertEndElement("byte");
+
+		assertStartElement("reference");
+		assertEquals(2, reader.getAttributeCount());
+		assertEquals("4", reader.getAttributeValue(null, "distance"));
+		assertEquals("3", reader.getAttributeValue(null, "length"));
+		assertEquals("length", reader.getAttributeLocalName(1));
+		assertEquals("3", reader.getAttributeValue(1));
+		assertNull(reader.getAttributeValue(null, "value"));
+		assertEndElement("reference");
+
+		assertStartElement("dictionary");
+		assertEquals("567", reader.getAttributeValue(null, "entry"));
+		assertEndElement("dictionary");
+
+		assertStartElement("reset");
+		assertEquals(0, reader.getAttributeCount());
+		assertEndElement("reset");
+
+		assertEndElement("compressedData");
+		assertTrue(reader.hasNext());
+		assertEquals(XMLStreamConstants.END_DOCUMENT, reader.next());
+		assertFalse(reader.hasNext());
+	}
+
+	public void testMatchesXmlCodecOutput() throws Exception {
+		StringWriter output = new StringWriter();
+		TransformerFactory.newInstance().newTransformer().transform(
+				new StAXSource(reader), new StreamResult(output));
+
+		Decoder decoder = new XmlCodec().getDecoder(new ByteArrayInputStream(
+				output.toString().getBytes("UTF-8")));
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testElementText() throws Exception {
+		reader.nextTag();
+		reader.nextTag();
+		assertEquals("", reader.getElementText());
+		assertTrue(reader.isEndElement());
+		assertEquals("byte", reader.getLocalName());
+	}
+
+	public void testReportsDecoderErrors() throws Exception {
+		reader = new SymbolStreamReader(new ArrayDecoder(SYMBOLS) {
+			@Override
+			public Symbol read() throws IOException {
+				throw new IOException("Broken");
+			}
+		}, null);
+		reader.next();
+		try {
+			reader.next();
+			fail("Expected an exception from the decoder");
+		} catch (XMLStreamException e) {
+			// Expected.
+		}
+	}
+
+	private void assertStartElement(String name) throws Exception {
+		assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+		assertEquals(name, reader.getLocalName());
+	}
+
+	private void assertEndElement(String name) throws Exception {
+		assertEquals(XMLStreamConstants.END_ELEMENT, reader.nextTag());
+		assertEquals(name, reader.getLocalName());
+	}
+
+	private static class ArrayDecoder implements Decoder {
+		private final Symbol[] symbols;
+		private int pos;
+
+		public ArrayDecoder(Symbol[] symbols) {
+			this.symbols = symbols;
+			this.pos = 0;
+		}
+
+		@Override
+		public String getAlgoritm() throws IOException {
+			return ALGORITHM;
+		}
+
+		@Override
+		public Symbol read() throws IOException {
+			return pos < symbols.length ? symbols[pos++] : null;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.tarrio.debloat.Codec;
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link Transcoder}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class TranscoderTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+
+	private static final Symbol[] SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 'a'), Symbol.newBackRef(4, 3),
+			Symbol.newDictionaryRef(567), Symbol.newReset(),
+			Symbol.newCheckpoint(1000) };
+
+	public void testTranscodesBetweenCodecs() throws Exception {
+		String[] names = new String[] { CodecFactory.XML,
+				CodecFactory.DENSE_XML, CodecFactory.COLUMNAR_XML,
+				CodecFactory.BINARY, CodecFactory.RANS };
+		for (String from : names) {
+			for (String to : names) {
+				Codec target = CodecFactory.getCodec(to);
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				long count = Transcoder.transcode(new ByteArrayInputStream(
+						encode(CodecFactory.getCodec(from))), target, output);
+				assertEquals(SYMBOLS.length, count);
+				assertDecodes(target.getDecoder(new ByteArrayInputStream(
+						output.toByteArray())));
+			}
+		}
+	}
+
+	public void testTranscodesDecoder() throws Exception {
+		Codec source = new BinaryCodec();
+		Codec target = new XmlCodec();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Transcoder.transcode(source.getDecoder(new ByteArrayInputStream(
+				encode(source))), target.getEncoder(output));
+		assertDecodes(target.getDecoder(new ByteArrayInputStream(output
+				.toByteArray())));
+	}
+
+	public void testFailsOnUnknownInput() throws Exception {
+		try {
+			Transcoder.transcode(new ByteArrayInputStream("unknown".getBytes()),
+					new XmlCodec(), new ByteArrayOutputStream());
+			fail("Expected an exception for the unknown input");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private byte[] encode(Codec codec) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = codec.getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+		return output.toByteArray();
+	}
+
+	private void assertDecodes(Decoder decoder) throws IOException {
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+	}
+}
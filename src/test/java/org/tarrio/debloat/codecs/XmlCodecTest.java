@@ -18,8 +18,10 @@ package org.tarrio.debloat.codecs;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 
 import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
 import org.tarrio.debloat.Codec.Decoder;
 import org.tarrio.debloat.Codec.Encoder;
 import org.tarrio.debloat.codecs.XmlCodec;
@@ -46,6 +48,22 @@ public class XmlCodecTest extends TestCase {
 			+ "  <dictionary entry=\"567\"/>\n"
 			+ "  <reset/>\n"
 			+ "</compressedData>\n";
+
+	private static final Symbol[] DENSE_SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 'a'), Symbol.newByte((byte) 'b'),
+			Symbol.newByte((byte) 'c'), Symbol.newByte((byte) 'd'),
+			Symbol.newBackRef(4, 3), Symbol.newDictionaryRef(567),
+			Symbol.newByte((byte) 'e'), Symbol.newReset() };
+
+	private static final Symbol[] DECODED_DENSE_SYMBOLS = new Symbol[] {
+			Symbol.newLiterals("abcd".getBytes(), 0, 4),
+			Symbol.newBackRef(4, 3), Symbol.newDictionaryRef(567),
+			Symbol.newByte((byte) 'e'), Symbol.newReset() };
+
+	private static final String DENSE_COMPRESSED_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<compressedData algorithm=\"testAlgo\" version=\"2\">"
+			+ "<l>YWJjZA==</l><r d=\"4\" l=\"3\"/><d e=\"567\"/><l>ZQ==</l><z/>"
+			+ "</compressedData>\n";
 	private XmlCodec codec;
 	private ByteArrayOutputStream output;
 	private Encoder encoder;
@@ -67,6 +85,122 @@ public class XmlCodecTest extends TestCase {
 		assertEquals(COMPRESSED_XML, output.toString());
 	}
 
+	public void testEncodeManySymbols() throws Exception {
+		StringBuilder expected = new StringBuilder(
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+						+ "<compressedData algorithm=\"testAlgo\">\n");
+		encoder.setAlgorithm(ALGORITHM);
+		for (int i = 0; i < 20000; ++i) {
+			encoder.write(Symbol.newByte((byte) i));
+			encoder.write(Symbol.newBackRef(i * 7, i % 259));
+			encoder.write(Symbol.newDictionaryRef(i * 100003));
+			expected.append(String.format("  <byte value=\"%d\"/>\n", i & 0xff));
+			expected.append(String.format(
+					"  <reference distance=\"%d\" length=\"%d\"/>\n", i * 7,
+					i % 259));
+			expected.append(String.format("  <dictionary entry=\"%d\"/>\n",
+					i * 100003));
+		}
+		encoder.close();
+		expected.append("</compressedData>\n");
+
+		assertEquals(expected.toString(), output.toString());
+	}
+
+	public void testEncodeBatches() throws Exception {
+		SymbolBuffer symbols = new SymbolBuffer();
+		for (Symbol symbol : SYMBOLS) {
+			symbols.add(symbol);
+		}
+		encoder.setAlgorithm(ALGORITHM);
+		symbols.writeTo(encoder);
+		encoder.close();
+
+		assertEquals(COMPRESSED_XML, output.toString());
+	}
+
+	public void testEncodeBatchesInDenseDialect() throws Exception {
+		SymbolBuffer symbols = new SymbolBuffer();
+		for (Symbol symbol : DENSE_SYMBOLS) {
+			symbols.add(symbol);
+		}
+		encoder = new XmlCodec(XmlCodec.Dialect.DENSE).getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		symbols.writeTo(encoder);
+		encoder.close();
+
+		assertEquals(DENSE_COMPRESSED_XML, output.toString());
+	}
+
+	public void testEncodeLiteralRuns() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newLiterals("abcd".getBytes(), 0, 4));
+		encoder.write(Symbol.newByte((byte) 'e'));
+		encoder.close();
+
+		String xml = output.toString();
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<compressedData algorithm=\"testAlgo\">\n"
+				+ "  <literals>YWJjZA==</literals>\n"
+				+ "  <byte value=\"101\"/>\n" + "</compressedData>\n", xml);
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(xml
+				.getBytes()));
+		assertEquals(Symbol.newLiterals("abcd".getBytes(), 0, 4),
+				decoder.read());
+		assertEquals(Symbol.newByte((byte) 'e'), decoder.read());
+		assertNull(decoder.read());
+	}
+
+	public void testEncodeLiteralRunsInDenseDialect() throws Exception {
+		encoder = new XmlCodec(XmlCodec.Dialect.DENSE).getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newLiterals("abc".getBytes(), 0, 3));
+		encoder.write(Symbol.newByte((byte) 'd'));
+		for (int i = 4; i < DENSE_SYMBOLS.length; ++i) {
+			encoder.write(DENSE_SYMBOLS[i]);
+		}
+		encoder.close();
+
+		assertEquals(DENSE_COMPRESSED_XML, output.toString());
+	}
+
+	public void testEncodeRepeatRefs() throws Exception {
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newBackRef(4, 3));
+		encoder.write(Symbol.newRepeatRef(0, 5));
+		encoder.close();
+
+		String xml = output.toString();
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<compressedData algorithm=\"testAlgo\">\n"
+				+ "  <reference distance=\"4\" length=\"3\"/>\n"
+				+ "  <repeat slot=\"0\" length=\"5\"/>\n"
+				+ "</compressedData>\n", xml);
+		Decoder decoder = new XmlCodec.DecoderImpl(new ByteArrayInputStream(
+				xml.getBytes()));
+		assertEquals(Symbol.newBackRef(4, 3), decoder.read());
+		assertEquals(Symbol.newRepeatRef(0, 5), decoder.read());
+		assertNull(decoder.read());
+	}
+
+	public void testEncodeRepeatRefsInDenseDialect() throws Exception {
+		encoder = new XmlCodec(XmlCodec.Dialect.DENSE).getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		encoder.write(Symbol.newByte((byte) 'a'));
+		encoder.write(Symbol.newRepeatRef(1, 5));
+		encoder.close();
+
+		String xml = output.toString();
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<compressedData algorithm=\"testAlgo\" version=\"2\">"
+				+ "<l>YQ==</l><p s=\"1\" l=\"5\"/></compressedData>\n", xml);
+		Decoder decoder = new XmlCodec.DecoderImpl(new ByteArrayInputStream(
+				xml.getBytes()));
+		assertEquals(Symbol.newByte((byte) 'a'), decoder.read());
+		assertEquals(Symbol.newRepeatRef(1, 5), decoder.read());
+		assertNull(decoder.read());
+	}
+
 	public void testDecodeSingleBytes() throws Exception {
 		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(
 				COMPRESSED_XML.getBytes()));
@@ -78,6 +212,90 @@ public class XmlCodecTest extends TestCase {
 		assertEquals(null, decoder.read());
 	}
 
+	public void testDecodeWithDocumentTypeDeclaration() throws Exception {
+		String xml = COMPRESSED_XML.replace("<compressedData",
+				"<!DOCTYPE compressedData [<!ENTITY a \"97\">]>\n"
+						+ "<!-- <byte value=\"98\"/> -->\n<compressedData")
+				.replace("\"97\"/>", "\"&a;\"/>");
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(xml
+				.getBytes()));
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testDecodeIncrementally() throws Exception {
+		String truncatedXml = COMPRESSED_XML.substring(0,
+				COMPRESSED_XML.indexOf("</compressedData>"));
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(
+				truncatedXml.getBytes()));
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (int i = 0; i < SYMBOLS.length; ++i) {
+			assertEquals(SYMBOLS[i], decoder.read());
+		}
+		try {
+			decoder.read();
+			fail("Expected an exception for the truncated document");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public void testEncodeDenseDialect() throws Exception {
+		encoder = new XmlCodec(XmlCodec.Dialect.DENSE).getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		for (Symbol symbol : DENSE_SYMBOLS) {
+			encoder.write(symbol);
+		}
+		encoder.close();
+
+		assertEquals(DENSE_COMPRESSED_XML, output.toString());
+	}
+
+	public void testEncodeDenseDialectLongLiteralRun() throws Exception {
+		encoder = new XmlCodec(XmlCodec.Dialect.DENSE).getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		for (int i = 0; i < 10000; ++i) {
+			encoder.write(Symbol.newByte((byte) i));
+		}
+		encoder.close();
+
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(output
+				.toByteArray()));
+		int i = 0;
+		Symbol symbol;
+		while ((symbol = decoder.read()) != null) {
+			byte[] bytes = ((Symbol.Literals) symbol).getBytes();
+			assertTrue(bytes.length <= XmlCodec.MAX_ELEMENT_LITERALS);
+			for (byte b : bytes) {
+				assertEquals((byte) i++, b);
+			}
+		}
+		assertEquals(10000, i);
+	}
+
+	public void testDecodeDenseDialect() throws Exception {
+		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(
+				DENSE_COMPRESSED_XML.getBytes()));
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : DECODED_DENSE_SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testDecodeDenseDialectWithParser() throws Exception {
+		Decoder decoder = new XmlCodec.DecoderImpl(new ByteArrayInputStream(
+				DENSE_COMPRESSED_XML.getBytes()));
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : DECODED_DENSE_SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+	}
+
 	public void testRoundtripCompressedData() throws Exception {
 		Decoder decoder = codec.getDecoder(new ByteArrayInputStream(
 				COMPRESSED_XML.getBytes()));
@@ -0,0 +1,303 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.SymbolBuffer;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link XmlScanningDecoder}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class XmlScanningDecoderTest extends TestCase {
+
+	private static final String ALGORITHM = "testAlgo";
+
+	private static final Symbol[] SYMBOLS = new Symbol[] {
+			Symbol.newByte((byte) 'a'), Symbol.newBackRef(4, 3),
+			Symbol.newDictionaryRef(567), Symbol.newReset() };
+
+	private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<compressedData algorithm=\"testAlgo\">\n";
+	private static final String XML_FOOTER = "</compressedData>\n";
+
+	public void testDecodesEncoderOutput() throws Exception {
+		assertDecodes(XML_HEADER + "  <byte value=\"97\"/>\n"
+				+ "  <reference distance=\"4\" length=\"3\"/>\n"
+				+ "  <dictionary entry=\"567\"/>\n" + "  <reset/>\n"
+				+ XML_FOOTER);
+	}
+
+	public void testDecodesWithoutDeclarationOrWhitespace() throws Exception {
+		assertDecodes("<compressedData algorithm=\"testAlgo\">"
+				+ "<byte value=\"97\" /><reference distance=\"4\" length=\"3\"/>"
+				+ "<dictionary entry=\"567\"/><reset />" + XML_FOOTER);
+	}
+
+	public void testFallsBackOnUnexpectedProlog() throws Exception {
+		assertDecodes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<!-- A comment -->\n"
+				+ "<compressedData algorithm=\"testAlgo\">\n"
+				+ "  <byte value=\"97\"/>\n"
+				+ "  <reference distance=\"4\" length=\"3\"/>\n"
+				+ "  <dictionary entry=\"567\"/>\n" + "  <reset/>\n"
+				+ XML_FOOTER);
+	}
+
+	public void testFallsBackOnComment() throws Exception {
+		assertDecodes(XML_HEADER + "  <byte value=\"97\"/>\n"
+				+ "  <!-- A comment -->\n"
+				+ "  <reference distance=\"4\" length=\"3\"/>\n"
+				+ "  <dictionary entry=\"567\"/>\n" + "  <reset/>\n"
+				+ XML_FOOTER);
+	}
+
+	public void testFallsBackOnReorderedAttributes() throws Exception {
+		assertDecodes(XML_HEADER + "  <byte value=\"97\"/>\n"
+				+ "  <reference length=\"3\" distance=\"4\"/>\n"
+				+ "  <dictionary entry=\"567\"/>\n" + "  <reset/>\n"
+				+ XML_FOOTER);
+	}
+
+	public void testFallsBackOnEntities() throws Exception {
+		assertDecodes(XML_HEADER + "  <byte value=\"97\"/>\n"
+				+ "  <reference distance=\"4\" length=\"3\"/>\n"
+				+ "  <dictionary entry=\"5&#54;7\"/>\n" + "  <reset/>\n"
+				+ XML_FOOTER);
+	}
+
+	public void testDecodesDenseDialect() throws Exception {
+		assertDecodes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<compressedData algorithm=\"testAlgo\" version=\"2\">"
+				+ "<l>YQ==</l><r d=\"4\" l=\"3\"/><d e=\"567\"/><z/>"
+				+ XML_FOOTER);
+	}
+
+	public void testFallsBackInDenseDialect() throws Exception {
+		assertDecodes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<compressedData algorithm=\"testAlgo\" version=\"2\">"
+				+ "<l>YQ==</l><r l=\"3\" d=\"4\"/><d e=\"567\"/><z/>"
+				+ XML_FOOTER);
+	}
+
+	public void testFallsBackOnLiteralRunWithEntities() throws Exception {
+		assertDecodes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<compressedData algorithm=\"testAlgo\" version=\"2\">"
+				+ "<l>Y&#81;==</l><r d=\"4\" l=\"3\"/><d e=\"567\"/><z/>"
+				+ XML_FOOTER);
+	}
+
+	public void testDecodesLiteralRuns() throws Exception {
+		String body = "  <literals>YWJj</literals>\n  <literals>ZA==</literals>\n";
+		Decoder decoder = makeDecoder(XML_HEADER + body + XML_FOOTER);
+		assertEquals(Symbol.newLiterals("abc".getBytes(), 0, 3),
+				decoder.read());
+		assertEquals(Symbol.newByte((byte) 'd'), decoder.read());
+		assertNull(decoder.read());
+
+		SymbolBuffer symbols = new SymbolBuffer();
+		makeDecoder(XML_HEADER + body + XML_FOOTER).decode(symbols);
+		assertEquals(2, symbols.size());
+		assertEquals(Symbol.newLiterals("abc".getBytes(), 0, 3),
+				symbols.getSymbol(0));
+		assertEquals(Symbol.newByte((byte) 'd'), symbols.getSymbol(1));
+	}
+
+	public void testDecodesRepeatRefs() throws Exception {
+		Decoder decoder = makeDecoder(XML_HEADER
+				+ "  <repeat slot=\"2\" length=\"7\"/>\n" + XML_FOOTER);
+		assertEquals(Symbol.newRepeatRef(2, 7), decoder.read());
+		assertNull(decoder.read());
+
+		SymbolBuffer symbols = new SymbolBuffer();
+		makeDecoder("<compressedData algorithm=\"testAlgo\" version=\"2\">"
+				+ "<p s=\"1\" l=\"3\"/>" + XML_FOOTER).decode(symbols);
+		assertEquals(1, symbols.size());
+		assertEquals(Symbol.newRepeatRef(1, 3), symbols.getSymbol(0));
+	}
+
+	public void testDecodesCheckpoints() throws Exception {
+		Decoder decoder = makeDecoder(XML_HEADER + "  <byte value=\"97\"/>\n"
+				+ "  <checkpoint offset=\"5000000000\"/>\n" + XML_FOOTER);
+		assertEquals(SYMBOLS[0], decoder.read());
+		assertEquals(Symbol.newCheckpoint(5000000000L), decoder.read());
+		assertNull(decoder.read());
+	}
+
+	public void testDecodesCheckpointsInDenseDialect() throws Exception {
+		Decoder decoder = makeDecoder("<compressedData algorithm=\"testAlgo\" version=\"2\">"
+				+ "<l>YQ==</l><c o=\"1000\"/>" + XML_FOOTER);
+		assertEquals(SYMBOLS[0], decoder.read());
+		assertEquals(Symbol.newCheckpoint(1000), decoder.read());
+		assertNull(decoder.read());
+	}
+
+	public void testReportsElementOffsets() throws Exception {
+		String body = "  <byte value=\"97\"/>\n";
+		XmlScanningDecoder decoder = new XmlScanningDecoder(
+				new ByteArrayInputStream((XML_HEADER + body
+						+ "  <checkpoint offset=\"1\"/>\n" + XML_FOOTER)
+						.getBytes()));
+		assertEquals(XML_HEADER.length() - 1, decoder.getElementOffset());
+		assertEquals(SYMBOLS[0], decoder.read());
+		assertEquals(Symbol.newCheckpoint(1), decoder.read());
+		assertEquals(XML_HEADER.length() + body.length() + 2,
+				decoder.getElementOffset());
+	}
+
+	public void testFailsOnUnknownDialect() throws Exception {
+		try {
+			makeDecoder("<compressedData algorithm=\"testAlgo\" version=\"99\">"
+					+ XML_FOOTER);
+			fail("Expected an exception for the unknown dialect");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public void testFailsOnTruncatedDocument() throws Exception {
+		Decoder decoder = makeDecoder(XML_HEADER + "  <byte value=\"97\"/>\n"
+				+ "  <reference distance=\"4\" len");
+		assertEquals(SYMBOLS[0], decoder.read());
+		try {
+			decoder.read();
+			fail("Expected an exception for the truncated document");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public void testAcceptsCommentsAfterRootElement() throws Exception {
+		assertDecodes(XML_HEADER + "  <byte value=\"97\"/>\n"
+				+ "  <reference distance=\"4\" length=\"3\"/>\n"
+				+ "  <dictionary entry=\"567\"/>\n" + "  <reset/>\n"
+				+ XML_FOOTER + "<!-- A comment -->\n<?instruction data?>\n");
+	}
+
+	public void testFailsOnContentAfterRootElement() throws Exception {
+		String[] trailers = new String[] { "garbage",
+				"<compressedData algorithm=\"testAlgo\"/>", "<!-- A comment" };
+		String[] bodies = new String[] { "  <byte value=\"97\"/>\n",
+				"  <!-- A comment -->\n  <byte value=\"97\"/>\n" };
+		for (String trailer : trailers) {
+			for (String body : bodies) {
+				Decoder decoder = makeDecoder(XML_HEADER + body + XML_FOOTER
+						+ trailer);
+				assertEquals(SYMBOLS[0], decoder.read());
+				try {
+					decoder.read();
+					fail("Expected an exception for the content after the root element");
+				} catch (IOException e) {
+					// Expected.
+				}
+			}
+		}
+	}
+
+	public void testDecodesAcrossBufferBoundaries() throws Exception {
+		StringBuilder xml = new StringBuilder(XML_HEADER);
+		for (int i = 0; i < 20000; ++i) {
+			xml.append(String.format("  <byte value=\"%d\"/>\n", i & 0xff));
+			xml.append(String.format(
+					"  <reference distance=\"%d\" length=\"%d\"/>\n", i, i % 259));
+		}
+		xml.append(XML_FOOTER);
+		Decoder decoder = makeDecoder(xml.toString());
+		for (int i = 0; i < 20000; ++i) {
+			assertEquals(Symbol.newByte((byte) i), decoder.read());
+			assertEquals(Symbol.newBackRef(i, i % 259), decoder.read());
+		}
+		assertNull(decoder.read());
+	}
+
+	public void testReadsLiteralRunsInBatches() throws Exception {
+		byte[] bytes = new byte[10000];
+		for (int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) (i * 7);
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Encoder encoder = new XmlCodec(XmlCodec.Dialect.DENSE)
+				.getEncoder(output);
+		encoder.setAlgorithm(ALGORITHM);
+		SymbolBuffer expected = new SymbolBuffer();
+		for (int i = 0; i < bytes.length; i += 4000) {
+			int length = Math.min(4000, bytes.length - i);
+			encoder.write(Symbol.newLiterals(bytes, i, length));
+			int chunk = Math.min(length, XmlCodec.MAX_ELEMENT_LITERALS);
+			expected.addLiterals(bytes, i, chunk);
+			if (length > chunk) {
+				expected.addLiterals(bytes, i + chunk, length - chunk);
+			}
+			if (length == 4000) {
+				encoder.write(Symbol.newReset());
+				expected.addReset();
+			}
+		}
+		encoder.close();
+
+		XmlScanningDecoder decoder = new XmlScanningDecoder(
+				new ByteArrayInputStream(output.toByteArray()));
+		SymbolBuffer symbols = new SymbolBuffer();
+		int read;
+		do {
+			read = decoder.read(symbols, 2);
+		} while (read == 2);
+		assertEquals(expected.size(), symbols.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			assertEquals(expected.getSymbol(i), symbols.getSymbol(i));
+		}
+	}
+
+	private void assertDecodes(String xml) throws IOException {
+		Decoder decoder = makeDecoder(xml);
+		assertEquals(ALGORITHM, decoder.getAlgoritm());
+		for (Symbol symbol : SYMBOLS) {
+			assertEquals(symbol, decoder.read());
+		}
+		assertNull(decoder.read());
+		assertNull(decoder.read());
+
+		XmlScanningDecoder batchDecoder = makeDecoder(xml);
+		SymbolBuffer symbols = new SymbolBuffer();
+		assertEquals(3, batchDecoder.read(symbols, 3));
+		assertEquals(SYMBOLS.length - 3, batchDecoder.read(symbols, 3));
+		assertEquals(0, batchDecoder.read(symbols, 3));
+		for (int i = 0; i < SYMBOLS.length; ++i) {
+			assertEquals(SYMBOLS[i], symbols.getSymbol(i));
+		}
+
+		symbols.clear();
+		makeDecoder(xml).decode(symbols);
+		assertEquals(SYMBOLS.length, symbols.size());
+		for (int i = 0; i < SYMBOLS.length; ++i) {
+			assertEquals(SYMBOLS[i], symbols.getSymbol(i));
+		}
+	}
+
+	private XmlScanningDecoder makeDecoder(String xml) throws IOException {
+		return new XmlScanningDecoder(new ByteArrayInputStream(xml.getBytes()));
+	}
+}
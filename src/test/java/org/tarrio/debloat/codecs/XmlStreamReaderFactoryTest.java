@@ -0,0 +1,123 @@
+/**
+ * Copyright 2012 Jacobo Tarrio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tarrio.debloat.codecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+
+import org.tarrio.debloat.Symbol;
+import org.tarrio.debloat.Codec.Decoder;
+import org.tarrio.debloat.Codec.Encoder;
+import org.tarrio.debloat.CompressionAlgorithm;
+import org.tarrio.debloat.registry.CompressionAlgorithmRegistry;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link XmlStreamReaderFactory}.
+ *
+ * @author Jacobo Tarrio
+ */
+public class XmlStreamReaderFactoryTest extends TestCase {
+
+	private byte[] data;
+	private CompressionAlgorithm lz77;
+
+	@Override
+	protected void setUp() throws Exception {
+		data = new byte[100000];
+		Random random = new Random(1234);
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = (byte) ('a' + random.nextInt(4));
+		}
+		lz77 = CompressionAlgorithmRegistry.getInstance().get("lz77");
+	}
+
+	public void testSourceDecompresses() throws Exception {
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		TransformerFactory.newInstance().newTransformer().transform(
+				XmlStreamReaderFactory.newSource(lz77,
+						new ByteArrayInputStream(data)), new StreamResult(xml));
+
+		ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+		lz77.decompress(new XmlCodec().getDecoder(new ByteArrayInputStream(xml
+				.toByteArray())), uncompressed);
+		assertTrue(Arrays.equals(data, uncompressed.toByteArray()));
+	}
+
+	public void testReportsCompressionErrors() throws Exception {
+		XMLStreamReader reader = XmlStreamReaderFactory.newXmlStreamReader(
+				lz77, new InputStream() {
+					@Override
+					public int read() throws IOException {
+						throw new IOException("Broken");
+					}
+				});
+		try {
+			while (reader.hasNext()) {
+				reader.next();
+			}
+			fail("Expected an exception from the compressor");
+		} catch (XMLStreamException e) {
+			// Expected.
+		}
+	}
+
+	public void testCloseStopsCompression() throws Exception {
+		final boolean[] failed = new boolean[] { false };
+		final Thread[] compressorThread = new Thread[1];
+		CompressionAlgorithm endless = new CompressionAlgorithm() {
+			@Override
+			public void compress(InputStream input, Encoder outputEncoder)
+					throws IOException {
+				compressorThread[0] = Thread.currentThread();
+				outputEncoder.setAlgorithm("endless");
+				try {
+					while (true) {
+						outputEncoder.write(Symbol.newReset());
+					}
+				} catch (IOException e) {
+					failed[0] = true;
+					throw e;
+				}
+			}
+
+			@Override
+			public void decompress(Decoder inputDecoder, OutputStream output)
+					throws IOException {
+			}
+		};
+		XMLStreamReader reader = XmlStreamReaderFactory.newXmlStreamReader(
+				endless, new ByteArrayInputStream(new byte[0]));
+		for (int i = 0; i < 10; ++i) {
+			reader.next();
+		}
+		reader.close();
+		compressorThread[0].join(10000);
+		assertTrue(failed[0]);
+	}
+}
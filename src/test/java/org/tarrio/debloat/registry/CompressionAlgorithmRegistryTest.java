@@ -23,7 +23,10 @@ import java.io.OutputStream;
 
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
+import org.tarrio.debloat.CheckpointingAlgorithm;
 import org.tarrio.debloat.CompressionAlgorithm;
+import org.tarrio.debloat.LeveledAlgorithm;
+import org.tarrio.debloat.algorithms.Lz77;
 import org.tarrio.debloat.Codec.Decoder;
 import org.tarrio.debloat.Codec.Encoder;
 import org.tarrio.debloat.registry.CompressionAlgorithmBinder;
@@ -75,6 +78,86 @@ public class CompressionAlgorithmRegistryTest extends TestCase {
 		control.verify();
 	}
 
+	public void testSetsLevelFromAlgorithmName() throws Exception {
+		LeveledAlgorithm leveledCompressor = control
+				.createMock(LeveledAlgorithm.class);
+		LeveledAlgorithm levelCompressor = control
+				.createMock(LeveledAlgorithm.class);
+		EasyMock.expect(provider.get()).andReturn(leveledCompressor);
+		EasyMock.expect(leveledCompressor.withLevel(3)).andReturn(
+				levelCompressor);
+
+		control.replay();
+		registry.registerFromModule(new CompressionAlgorithmRegistrationModule() {
+			@Override
+			public void configure(CompressionAlgorithmBinder binder) {
+				binder.bind(TEST_ALGORITHM).toProvider(provider);
+			}
+		});
+		assertEquals(levelCompressor, registry.get(TEST_ALGORITHM + ":3"));
+		control.verify();
+	}
+
+	public void testLevelDoesNotChangeRegisteredInstance() throws Exception {
+		control.replay();
+		registry.registerFromModule(new CompressionAlgorithmRegistrationModule() {
+			@Override
+			public void configure(CompressionAlgorithmBinder binder) {
+				binder.bind(TEST_ALGORITHM).toInstance(new Lz77());
+			}
+		});
+		LeveledAlgorithm fastCompressor = (LeveledAlgorithm) registry
+				.get(TEST_ALGORITHM + ":1");
+		LeveledAlgorithm defaultCompressor = (LeveledAlgorithm) registry
+				.get(TEST_ALGORITHM);
+		assertEquals(1, fastCompressor.getLevel());
+		assertEquals(Lz77.DEFAULT_LEVEL, defaultCompressor.getLevel());
+		assertNotSame(fastCompressor, defaultCompressor);
+		control.verify();
+	}
+
+	public void testCheckpointIntervalDoesNotChangeRegisteredInstance()
+			throws Exception {
+		control.replay();
+		registry.registerFromModule(new CompressionAlgorithmRegistrationModule() {
+			@Override
+			public void configure(CompressionAlgorithmBinder binder) {
+				binder.bind(TEST_ALGORITHM).toInstance(new Lz77());
+			}
+		});
+		CheckpointingAlgorithm registered = (CheckpointingAlgorithm) registry
+				.get(TEST_ALGORITHM);
+		CheckpointingAlgorithm checkpointing = registered
+				.withCheckpointInterval(1024);
+		assertEquals(1024, checkpointing.getCheckpointInterval());
+		assertNotSame(registered, checkpointing);
+		CheckpointingAlgorithm again = (CheckpointingAlgorithm) registry
+				.get(TEST_ALGORITHM);
+		assertSame(registered, again);
+		assertEquals(0, again.getCheckpointInterval());
+		control.verify();
+	}
+
+	public void testRejectsLevelForAlgorithmWithoutLevels() throws Exception {
+		EasyMock.expect(provider.get()).andReturn(compressor);
+
+		control.replay();
+		registry.registerFromModule(new CompressionAlgorithmRegistrationModule() {
+			@Override
+			public void configure(CompressionAlgorithmBinder binder) {
+				binder.bind(TEST_ALGORITHM).toProvider(provider);
+			}
+		});
+		try {
+			registry.get(TEST_ALGORITHM + ":3");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		assertNull(registry.get(BOGUS_ALGORITHM + ":3"));
+		control.verify();
+	}
+
 	public void testProvidesRegisteredInstance() throws Exception {
 		control.replay();
 		registry.registerFromModule(new CompressionAlgorithmRegistrationModule() {